@@ -27,4 +27,13 @@ public class ActivityUtil {
         return partitionedActivityFactory.activity(1, partitionId, 1, activity);
     }
 
+    public MiruPartitionedActivity removeViewActivity(MiruTenantId tenantId, MiruPartitionId partitionId, long time, String user, String doc) {
+        Map<String, List<String>> fieldsValues = Maps.newHashMap();
+        fieldsValues.put("user", Arrays.asList(user));
+        fieldsValues.put("doc", Arrays.asList(doc));
+
+        MiruActivity activity = new MiruActivity(tenantId, time, 1, false, new String[0], fieldsValues, Collections.emptyMap());
+        return partitionedActivityFactory.remove(1, partitionId, 1, activity);
+    }
+
 }
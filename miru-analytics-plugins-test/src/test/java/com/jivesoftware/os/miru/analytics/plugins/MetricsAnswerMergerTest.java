@@ -0,0 +1,73 @@
+package com.jivesoftware.os.miru.analytics.plugins;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.analytics.plugins.metrics.MetricsAnswer;
+import com.jivesoftware.os.miru.analytics.plugins.metrics.MetricsAnswerMerger;
+import com.jivesoftware.os.miru.analytics.plugins.metrics.MetricsQuery;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.plugin.solution.Waveform;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class MetricsAnswerMergerTest {
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+    private final MiruValue id = new MiruValue("a");
+
+    @Test
+    public void testMinPrefersRealZero() throws Exception {
+        MetricsAnswer merged = merge(MetricsQuery.Aggregate.min,
+            answer(new long[] { 0, 5, 0 }, new long[] { 2, 1, 0 }),
+            answer(new long[] { 5, 0, 0 }, new long[] { 1, 0, 0 }));
+
+        assertEquals(raw(merged.waveforms), new long[] { 0, 5, 0 });
+        assertEquals(raw(merged.counts), new long[] { 3, 1, 0 });
+    }
+
+    @Test
+    public void testMaxPrefersRealZero() throws Exception {
+        MetricsAnswer merged = merge(MetricsQuery.Aggregate.max,
+            answer(new long[] { -5, 0, -3 }, new long[] { 1, 0, 1 }),
+            answer(new long[] { 0, -7, 0 }, new long[] { 4, 1, 0 }));
+
+        assertEquals(raw(merged.waveforms), new long[] { 0, -7, -3 });
+        assertEquals(raw(merged.counts), new long[] { 5, 1, 1 });
+    }
+
+    @Test
+    public void testMergesAnswersWithoutCounts() throws Exception {
+        MetricsAnswer merged = merge(MetricsQuery.Aggregate.min,
+            new MetricsAnswer(Lists.newArrayList(Waveform.compressed(id, new long[] { 0, 5, 2 })), false),
+            answer(new long[] { 0, 7, 1 }, new long[] { 1, 1, 1 }));
+
+        assertEquals(raw(merged.waveforms), new long[] { 0, 5, 1 });
+    }
+
+    private MetricsAnswer merge(MetricsQuery.Aggregate aggregate, MetricsAnswer last, MetricsAnswer current) {
+        MetricsAnswerMerger merger = new MetricsAnswerMerger(new MiruTimeRange(0, 3), 3, aggregate);
+        return merger.merge(Optional.of(last), current, solutionLog);
+    }
+
+    private MetricsAnswer answer(long[] waveform, long[] counts) {
+        return new MetricsAnswer(Lists.newArrayList(Waveform.compressed(id, waveform)),
+            Collections.singletonList(Waveform.compressed(id, counts)),
+            false);
+    }
+
+    private long[] raw(List<Waveform> waveforms) {
+        assertEquals(waveforms.size(), 1);
+        long[] raw = new long[3];
+        waveforms.get(0).mergeWaveform(raw);
+        return raw;
+    }
+}
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.analytics.plugins;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.miru.analytics.plugins.analytics.Analytics;
 import com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsAnswer;
@@ -11,6 +12,7 @@ import com.jivesoftware.os.miru.api.MiruActorId;
 import com.jivesoftware.os.miru.api.MiruBackingStorage;
 import com.jivesoftware.os.miru.api.MiruHost;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -25,15 +27,21 @@ import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.miru.plugin.solution.MiruResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.plugin.solution.Waveform;
 import com.jivesoftware.os.miru.plugin.test.MiruPluginTestBootstrap;
 import com.jivesoftware.os.miru.service.MiruService;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 /**
  * @author jonathan
  */
@@ -42,12 +50,13 @@ public class MiruAnalyticsNGTest {
     private MiruTenantId tenant1 = new MiruTenantId("tenant1".getBytes());
     private MiruPartitionId partitionId = MiruPartitionId.of(1);
 
+    private MiruProvider<MiruService> miruProvider;
     private MiruService service;
     private AnalyticsInjectable injectable;
 
     @BeforeMethod
     public void setUpMethod() throws Exception {
-        MiruProvider<MiruService> miruProvider = new MiruPluginTestBootstrap().bootstrap(
+        this.miruProvider = new MiruPluginTestBootstrap().bootstrap(
             tenant1,
             partitionId,
             new MiruHost("logicalName"),
@@ -138,4 +147,162 @@ public class MiruAnalyticsNGTest {
         }
     }
 
+    @Test
+    public void testIncrementalMatchesFromScratch() throws Exception {
+        AnalyticsInjectable incrementalInjectable = new AnalyticsInjectable(miruProvider, new Analytics(true, 1024 * 1024, 2d));
+
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        int numberOfUsers = 5;
+        int numberOfDocument = 100;
+        int numberOfBuckets = 8;
+        long timespan = snowflakeIdPacker.pack(numberOfBuckets * TimeUnit.HOURS.toMillis(3), 0, 0);
+        long intervalPerActivity = timespan / 200;
+        long smallestTime = snowflakeIdPacker.pack(System.currentTimeMillis(), 0, 0) - timespan;
+        MiruTimeRange timeRange = new MiruTimeRange(smallestTime, smallestTime + timespan);
+        AtomicLong time = new AtomicLong(smallestTime);
+        Random rand = new Random(1234);
+        List<MiruPartitionedActivity> written = Lists.newArrayList();
+
+        writeViews(numberOfUsers, numberOfDocument, 10, intervalPerActivity, time, rand, written);
+        long firstTotal = assertIncrementalMatches(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange);
+        assertIncrementalMatches(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange);
+
+        writeViews(numberOfUsers, numberOfDocument, 10, intervalPerActivity, time, rand, written);
+        long secondTotal = assertIncrementalMatches(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange);
+        assertTrue(secondTotal > firstTotal);
+
+        List<MiruPartitionedActivity> removes = Lists.newArrayList();
+        for (int i = 0; i < written.size(); i += 7) {
+            MiruPartitionedActivity view = written.get(i);
+            removes.add(new ActivityUtil().removeViewActivity(tenant1, partitionId, view.timestamp,
+                view.activity.get().fieldsValues.get("user").get(0), view.activity.get().fieldsValues.get("doc").get(0)));
+        }
+        service.writeToIndex(removes);
+        long removedTotal = assertIncrementalMatches(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange);
+        assertTrue(removedTotal < secondTotal);
+
+        writeViews(numberOfUsers, numberOfDocument, 5, intervalPerActivity, time, rand, written);
+        assertIncrementalMatches(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange);
+    }
+
+    @Test
+    public void testIncrementalHitRate() throws Exception {
+        AnalyticsInjectable incrementalInjectable = new AnalyticsInjectable(miruProvider, new Analytics(true, 1024 * 1024, 2d));
+
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        int numberOfUsers = 5;
+        int numberOfBuckets = 8;
+        long timespan = snowflakeIdPacker.pack(numberOfBuckets * TimeUnit.HOURS.toMillis(3), 0, 0);
+        long intervalPerActivity = timespan / 200;
+        long smallestTime = snowflakeIdPacker.pack(System.currentTimeMillis(), 0, 0) - timespan;
+        MiruTimeRange timeRange = new MiruTimeRange(smallestTime, smallestTime + timespan);
+        AtomicLong time = new AtomicLong(smallestTime);
+        Random rand = new Random(1234);
+        List<MiruPartitionedActivity> written = Lists.newArrayList();
+
+        writeViews(numberOfUsers, 100, 10, intervalPerActivity, time, rand, written);
+        assertEquals(incrementalLog(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange), "0 current, 0 advanced, 5 missed.");
+        assertEquals(incrementalLog(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange), "5 current, 0 advanced, 0 missed.");
+
+        writeViews(numberOfUsers, 100, 10, intervalPerActivity, time, rand, written);
+        assertEquals(incrementalLog(incrementalInjectable, numberOfUsers, numberOfBuckets, timeRange), "0 current, 5 advanced, 0 missed.");
+
+        // sliding windows are keyed by their absolute range, so every poll misses
+        MiruTimeRange slidTimeRange = new MiruTimeRange(timeRange.smallestTimestamp + intervalPerActivity, timeRange.largestTimestamp + intervalPerActivity);
+        assertEquals(incrementalLog(incrementalInjectable, numberOfUsers, numberOfBuckets, slidTimeRange), "0 current, 0 advanced, 5 missed.");
+    }
+
+    private String incrementalLog(AnalyticsInjectable analyticsInjectable, int numberOfUsers, int numberOfBuckets, MiruTimeRange timeRange)
+        throws Exception {
+        ImmutableMap.Builder<String, MiruFilter> analyticsFilters = ImmutableMap.builder();
+        for (int i = 0; i < numberOfUsers; i++) {
+            String user = "bob" + i;
+            analyticsFilters.put(user, new MiruFilter(MiruFilterOperation.or, false,
+                Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.primary, "user", user)), null));
+        }
+        MiruResponse<AnalyticsAnswer> result = analyticsInjectable.score(new MiruRequest<>("test",
+            tenant1,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new AnalyticsQuery(
+                Collections.singletonList(new AnalyticsQueryScoreSet(
+                    "test",
+                    timeRange,
+                    numberOfBuckets)),
+                MiruFilter.NO_FILTER,
+                analyticsFilters.build()),
+            MiruSolutionLogLevel.INFO));
+
+        String prefix = "analytics incremental: ";
+        for (String line : result.log) {
+            int index = line.indexOf(prefix);
+            if (index >= 0) {
+                return line.substring(index + prefix.length());
+            }
+        }
+        throw new AssertionError("No incremental summary in " + result.log);
+    }
+
+    private void writeViews(int numberOfUsers,
+        int numberOfDocument,
+        int numberOfViewsPerUser,
+        long intervalPerActivity,
+        AtomicLong time,
+        Random rand,
+        List<MiruPartitionedActivity> written) throws Exception {
+        for (int d = 0; d < numberOfViewsPerUser; d++) {
+            for (int i = 0; i < numberOfUsers; i++) {
+                MiruPartitionedActivity view = new ActivityUtil().viewActivity(tenant1, partitionId, time.addAndGet(intervalPerActivity),
+                    "bob" + i, String.valueOf(rand.nextInt(numberOfDocument)));
+                service.writeToIndex(Collections.singletonList(view));
+                written.add(view);
+            }
+        }
+    }
+
+    /**
+     * @return the total count across every user's waveform, which must be the same with and without incremental analytics
+     */
+    private long assertIncrementalMatches(AnalyticsInjectable incrementalInjectable,
+        int numberOfUsers,
+        int numberOfBuckets,
+        MiruTimeRange timeRange) throws Exception {
+        long total = 0;
+        for (int i = 0; i < numberOfUsers; i++) {
+            String user = "bob" + i;
+            long[] expected = userWaveform(injectable, user, numberOfBuckets, timeRange);
+            long[] actual = userWaveform(incrementalInjectable, user, numberOfBuckets, timeRange);
+            assertEquals(actual, expected, "Waveform for " + user + " expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual));
+            for (long count : expected) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    private long[] userWaveform(AnalyticsInjectable analyticsInjectable, String user, int numberOfBuckets, MiruTimeRange timeRange) throws Exception {
+        MiruFieldFilter miruFieldFilter = MiruFieldFilter.ofTerms(MiruFieldType.primary, "user", user);
+        MiruFilter filter = new MiruFilter(MiruFilterOperation.or, false, Collections.singletonList(miruFieldFilter), null);
+        MiruResponse<AnalyticsAnswer> result = analyticsInjectable.score(new MiruRequest<>("test",
+            tenant1,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new AnalyticsQuery(
+                Collections.singletonList(new AnalyticsQueryScoreSet(
+                    "test",
+                    timeRange,
+                    numberOfBuckets)),
+                MiruFilter.NO_FILTER,
+                ImmutableMap.<String, MiruFilter>builder()
+                    .put(user, filter)
+                    .build()),
+            MiruSolutionLogLevel.NONE));
+
+        long[] rawWaveform = new long[numberOfBuckets];
+        for (Waveform waveform : result.answer.waveforms.get("test")) {
+            waveform.mergeWaveform(rawWaveform);
+        }
+        return rawWaveform;
+    }
+
 }
@@ -6,6 +6,8 @@ import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
+import com.jivesoftware.os.miru.plugin.cache.MiruIncrementalCacheIds;
+import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider.LastIdCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
 import com.jivesoftware.os.miru.plugin.index.MiruTimeIndex;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
@@ -15,6 +17,7 @@ import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -29,6 +32,24 @@ public class Analytics {
     private final MiruAggregateUtil aggregateUtil = new MiruAggregateUtil();
     private final MiruBitmapsDebug bitmapsDebug = new MiruBitmapsDebug();
 
+    private final boolean incrementalEnabled;
+    private final long incrementalMaxHeapPressureInBytes;
+    private final double incrementalHashIndexLoadFactor;
+
+    public Analytics() {
+        this(false, 0, 0d);
+    }
+
+    /**
+     * @param incrementalEnabled when true, waveforms for keyed terms are cached per partition along with the lastId they cover,
+     * and later queries only count the ids above that lastId
+     */
+    public Analytics(boolean incrementalEnabled, long incrementalMaxHeapPressureInBytes, double incrementalHashIndexLoadFactor) {
+        this.incrementalEnabled = incrementalEnabled;
+        this.incrementalMaxHeapPressureInBytes = incrementalMaxHeapPressureInBytes;
+        this.incrementalHashIndexLoadFactor = incrementalHashIndexLoadFactor;
+    }
+
     public interface Analysis<T, BM> {
 
         boolean consume(ToAnalyze<T, BM> toAnalyze) throws Exception;
@@ -44,6 +65,14 @@ public class Analytics {
         boolean analyzed(int index, T term, long[] waveformBuffer) throws Exception;
     }
 
+    public interface WaveformCacheKey<T> {
+
+        /**
+         * @return a key which is unique to the term and the filter used to build its bitmap
+         */
+        byte[] key(T term) throws Exception;
+    }
+
     public static class AnalyticsScoreable {
         public final MiruTimeRange timeRange;
         public final int divideTimeRangeIntoNSegments;
@@ -65,6 +94,29 @@ public class Analytics {
         StackBuffer stackBuffer,
         Analysis<T, BM> analysis,
         Analyzed<T> analyzed) throws Exception {
+        int lastId = context.getActivityIndex().lastId(stackBuffer);
+        return analyze(name, solutionLog, handle, context, authzExpression, timeRange, constraintsFilter, scoreables, lastId, stackBuffer, analysis,
+            null, analyzed);
+    }
+
+    /**
+     * @param lastId the largest id to count, which must not exceed the lastId used to filter the bitmaps given to the analysis
+     * @param waveformCacheKey keys the cached waveform of each term, or null to always count from scratch, which callers must pass
+     *                         whenever a term's filter reads a non-primary field
+     */
+    public <BM extends IBM, IBM, T> boolean analyze(String name,
+        MiruSolutionLog solutionLog,
+        MiruRequestHandle<BM, IBM, ?> handle,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruAuthzExpression authzExpression,
+        MiruTimeRange timeRange,
+        MiruFilter constraintsFilter,
+        AnalyticsScoreable[] scoreables,
+        int lastId,
+        StackBuffer stackBuffer,
+        Analysis<T, BM> analysis,
+        WaveformCacheKey<T> waveformCacheKey,
+        Analyzed<T> analyzed) throws Exception {
 
         MiruBitmaps<BM, IBM> bitmaps = handle.getBitmaps();
         MiruPartitionCoord coord = handle.getCoord();
@@ -103,8 +155,6 @@ public class Analytics {
         // Start building up list of bitmap operations to run
         List<IBM> ands = new ArrayList<>();
 
-        int lastId = context.getActivityIndex().lastId(stackBuffer);
-
         long start = System.currentTimeMillis();
         ands.add(bitmaps.buildTimeRangeMask(timeIndex, timeRange.smallestTimestamp, timeRange.largestTimestamp, stackBuffer));
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics timeRangeMask: {} millis.", System.currentTimeMillis() - start);
@@ -142,6 +192,7 @@ public class Analytics {
         start = System.currentTimeMillis();
         int[][] indexes = new int[scoreables.length][];
         long[][] rawWaveformBuffer = new long[scoreables.length][];
+        long[][] deltaWaveformBuffer = new long[scoreables.length][];
         for (int i = 0; i < scoreables.length; i++) {
             AnalyticsScoreable scoreable = scoreables[i];
             long currentTime = scoreable.timeRange.smallestTimestamp;
@@ -152,6 +203,7 @@ public class Analytics {
 
             indexes[i] = new int[scoreable.divideTimeRangeIntoNSegments + 1];
             rawWaveformBuffer[i] = new long[scoreable.divideTimeRangeIntoNSegments];
+            deltaWaveformBuffer[i] = new long[scoreable.divideTimeRangeIntoNSegments];
             for (int j = 0; j < indexes[i].length; j++) {
                 int closestId = timeIndex.getClosestId(currentTime, stackBuffer);
                 if (closestId < 0) {
@@ -163,15 +215,61 @@ public class Analytics {
         }
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics bucket boundaries: {} millis.", System.currentTimeMillis() - start);
 
+        boolean incremental = incrementalEnabled && waveformCacheKey != null && MiruIncrementalCacheIds.isIncrementalFilter(constraintsFilter);
+        LastIdCacheKeyValues waveformCache = incremental
+            ? context.getCacheProvider().getLastIdKeyValues("analytics-waveforms", -1, false, incrementalMaxHeapPressureInBytes, "cuckoo",
+                incrementalHashIndexLoadFactor)
+            : null;
+        byte[] cacheId = incremental
+            ? MiruIncrementalCacheIds.cacheId(bitmaps, context, canonicalQuery(name, authzExpression, timeRange, constraintsFilter, scoreables), stackBuffer)
+            : null;
+        List<byte[]> updatedKeys = new ArrayList<>();
+        List<byte[]> updatedValues = new ArrayList<>();
+
         start = System.currentTimeMillis();
         int[] count = new int[1];
+        int[] cacheCounts = new int[3];
 
         analysis.consume((term, waveformFiltered) -> {
             boolean found = false;
             if (!bitmaps.isEmpty(constrained)) {
                 BM answer = waveformFiltered;
                 bitmaps.inPlaceAnd(waveformFiltered, constrained);
-                if (!bitmaps.isEmpty(answer)) {
+                if (incremental) {
+                    byte[] key = waveformCacheKey.key(term);
+                    boolean[] cachedFound = { false };
+                    int cachedLastId = readWaveform(waveformCache, cacheId, key, lastId, rawWaveformBuffer, cachedFound, stackBuffer);
+                    found = cachedFound[0];
+                    if (cachedLastId == lastId) {
+                        cacheCounts[0]++;
+                    } else {
+                        if (cachedLastId >= 0) {
+                            bitmaps.inPlaceRemoveRange(answer, 0, cachedLastId + 1);
+                            cacheCounts[1]++;
+                        } else {
+                            cacheCounts[2]++;
+                        }
+                        if (!bitmaps.isEmpty(answer)) {
+                            found = true;
+                            for (int i = 0; i < deltaWaveformBuffer.length; i++) {
+                                Arrays.fill(deltaWaveformBuffer[i], 0);
+                            }
+                            bitmaps.boundedCardinalities(answer, indexes, deltaWaveformBuffer);
+                            for (int i = 0; i < deltaWaveformBuffer.length; i++) {
+                                for (int j = 0; j < deltaWaveformBuffer[i].length; j++) {
+                                    rawWaveformBuffer[i][j] += deltaWaveformBuffer[i][j];
+                                }
+                            }
+                        }
+                        updatedKeys.add(key);
+                        updatedValues.add(writeWaveform(found, rawWaveformBuffer));
+                    }
+
+                    if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
+                        solutionLog.log(MiruSolutionLogLevel.DEBUG, "analytics name: {}, cachedLastId: {}, waveform: {}.",
+                            term, cachedLastId, Arrays.toString(rawWaveformBuffer));
+                    }
+                } else if (!bitmaps.isEmpty(answer)) {
                     found = true;
                     for (int i = 0; i < rawWaveformBuffer.length; i++) {
                         Arrays.fill(rawWaveformBuffer[i], 0);
@@ -197,7 +295,111 @@ public class Analytics {
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics answered: {} millis.", System.currentTimeMillis() - start);
         solutionLog.log(MiruSolutionLogLevel.INFO, "analytics answered: {} iterations.", count[0]);
 
+        if (incremental) {
+            solutionLog.log(MiruSolutionLogLevel.INFO, "analytics incremental: {} current, {} advanced, {} missed.",
+                cacheCounts[0], cacheCounts[1], cacheCounts[2]);
+            log.inc("analytics>incremental>current", cacheCounts[0]);
+            log.inc("analytics>incremental>advanced", cacheCounts[1]);
+            log.inc("analytics>incremental>missed", cacheCounts[2]);
+            if (!updatedKeys.isEmpty()) {
+                start = System.currentTimeMillis();
+                waveformCache.put(cacheId, false, false, stream -> {
+                    for (int i = 0; i < updatedKeys.size(); i++) {
+                        if (!stream.stream(updatedKeys.get(i), updatedValues.get(i), lastId)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }, stackBuffer);
+                solutionLog.log(MiruSolutionLogLevel.INFO, "analytics cached {} waveforms: {} millis.", updatedKeys.size(),
+                    System.currentTimeMillis() - start);
+            }
+        }
+
         return resultsExhausted;
     }
 
+    /**
+     * Everything which decides the counts for ids up to a lastId, other than the term itself. Bucket boundaries are derived from
+     * the scoreables against a monotonic time index, so they never move for ids which are already indexed. The ranges are absolute,
+     * so a sliding window never reuses an earlier entry.
+     */
+    private static String canonicalQuery(String name,
+        MiruAuthzExpression authzExpression,
+        MiruTimeRange timeRange,
+        MiruFilter constraintsFilter,
+        AnalyticsScoreable[] scoreables) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(name)
+            .append('|').append(authzExpression)
+            .append('|').append(timeRange.smallestTimestamp).append(',').append(timeRange.largestTimestamp)
+            .append('|').append(constraintsFilter);
+        for (AnalyticsScoreable scoreable : scoreables) {
+            buf.append('|').append(scoreable.timeRange.smallestTimestamp)
+                .append(',').append(scoreable.timeRange.largestTimestamp)
+                .append(',').append(scoreable.divideTimeRangeIntoNSegments);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the lastId covered by the cached waveform, which has been read into the buffer, or -1 if it was missing or unusable,
+     * in which case the buffer is zeroed
+     */
+    private static int readWaveform(LastIdCacheKeyValues waveformCache,
+        byte[] cacheId,
+        byte[] key,
+        int lastId,
+        long[][] rawWaveformBuffer,
+        boolean[] found,
+        StackBuffer stackBuffer) throws Exception {
+
+        int length = 1;
+        for (long[] buffer : rawWaveformBuffer) {
+            length += 8 * buffer.length;
+        }
+        int expectedLength = length;
+        int[] cachedLastId = { -1 };
+        waveformCache.get(cacheId, new byte[][] { key }, (index, value, valueLastId) -> {
+            if (value != null && value.capacity() == expectedLength && valueLastId <= lastId) {
+                found[0] = value.get(0) == 1;
+                int offset = 1;
+                for (long[] buffer : rawWaveformBuffer) {
+                    for (int j = 0; j < buffer.length; j++) {
+                        buffer[j] = value.getLong(offset);
+                        offset += 8;
+                    }
+                }
+                cachedLastId[0] = valueLastId;
+            } else if (value != null) {
+                log.warn("Ignored analytics waveform for cache:{} with length:{} lastId:{} expected length:{} lastId:{}",
+                    waveformCache.name(), value.capacity(), valueLastId, expectedLength, lastId);
+            }
+            return true;
+        }, stackBuffer);
+
+        if (cachedLastId[0] == -1) {
+            found[0] = false;
+            for (long[] buffer : rawWaveformBuffer) {
+                Arrays.fill(buffer, 0);
+            }
+        }
+        return cachedLastId[0];
+    }
+
+    private static byte[] writeWaveform(boolean found, long[][] rawWaveformBuffer) {
+        int length = 1;
+        for (long[] buffer : rawWaveformBuffer) {
+            length += 8 * buffer.length;
+        }
+        ByteBuffer value = ByteBuffer.allocate(length);
+        value.put((byte) (found ? 1 : 0));
+        for (long[] buffer : rawWaveformBuffer) {
+            for (long count : buffer) {
+                value.putLong(count);
+            }
+        }
+        return value.array();
+    }
+
 }
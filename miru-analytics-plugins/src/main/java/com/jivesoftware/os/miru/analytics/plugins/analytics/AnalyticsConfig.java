@@ -0,0 +1,26 @@
+package com.jivesoftware.os.miru.analytics.plugins.analytics;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
+import org.merlin.config.defaults.LongDefault;
+
+/**
+ *
+ */
+public interface AnalyticsConfig extends Config {
+
+    /**
+     * Cached waveforms are keyed by the absolute time range and score sets, so only repeated queries over a fixed range are
+     * served incrementally. Sliding windows such as "the last 24 hours" miss on every poll and are always counted from scratch.
+     */
+    @BooleanDefault(false)
+    boolean getIncrementalEnabled();
+
+    @LongDefault(1024 * 1024)
+    long getIncrementalMaxHeapPressureInBytes();
+
+    @DoubleDefault(2d)
+    double getIncrementalHashIndexLoadFactor();
+
+}
@@ -21,7 +21,10 @@ public class AnalyticsPlugin implements MiruPlugin<AnalyticsEndpoints, Analytics
 
     @Override
     public Collection<MiruEndpointInjectable<AnalyticsInjectable>> getInjectables(MiruProvider<? extends Miru> miruProvider) {
-        Analytics analytics = new Analytics();
+        AnalyticsConfig config = miruProvider.getConfig(AnalyticsConfig.class);
+        Analytics analytics = new Analytics(config.getIncrementalEnabled(),
+            config.getIncrementalMaxHeapPressureInBytes(),
+            config.getIncrementalHashIndexLoadFactor());
 
         return Collections.singletonList(new MiruEndpointInjectable<>(
             AnalyticsInjectable.class,
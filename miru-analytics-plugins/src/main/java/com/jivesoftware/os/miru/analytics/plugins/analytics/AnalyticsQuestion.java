@@ -11,6 +11,7 @@ import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
+import com.jivesoftware.os.miru.plugin.cache.MiruIncrementalCacheIds;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
 import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
@@ -71,6 +72,8 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
             maxTimestamp = Math.max(maxTimestamp, scoreSet.timeRange.largestTimestamp);
         }
 
+        boolean incremental = MiruIncrementalCacheIds.isIncrementalFilter(
+            request.query.analyticsFilters.values().toArray(new MiruFilter[request.query.analyticsFilters.size()]));
         boolean resultsExhausted = analytics.analyze("analytics",
             solutionLog,
             handle,
@@ -79,6 +82,7 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
             new MiruTimeRange(minTimestamp, maxTimestamp),
             request.query.constraintsFilter,
             scoreables,
+            lastId,
             stackBuffer,
             (Analytics.ToAnalyze<MiruValue, BM> toAnalyze) -> {
                 for (Map.Entry<String, MiruFilter> entry : request.query.analyticsFilters.entrySet()) {
@@ -90,6 +94,8 @@ public class AnalyticsQuestion implements Question<AnalyticsQuery, AnalyticsAnsw
                 }
                 return true;
             },
+            incremental ? (MiruValue term) -> MiruIncrementalCacheIds.termKey(term.last() + '|' + request.query.analyticsFilters.get(term.last()))
+                : null,
             (int index, MiruValue term, long[] waveformBuffer) -> {
                 if (waveformBuffer == null) {
                     waveforms[index].add(Waveform.empty(term, scoreables[index].divideTimeRangeIntoNSegments));
@@ -2,10 +2,10 @@ package com.jivesoftware.os.miru.analytics.plugins.metrics;
 
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.solution.MiruBitSlicedUtil;
 import com.jivesoftware.os.miru.plugin.solution.Waveform;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,6 +15,8 @@ public class Metrics {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private final MiruBitSlicedUtil bitSlicedUtil = new MiruBitSlicedUtil();
+
     public <BM extends IBM, IBM> Waveform metricingSum(String id,
         MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
@@ -25,7 +27,7 @@ public class Metrics {
 
         log.debug("Get metricing for answers={}", answers);
 
-        long[] waveform = sum(indexes, numBits, answers, bitmaps);
+        long[] waveform = bitSlicedUtil.sum(bitmaps, answers.subList(0, numBits), indexes);
 
         return Waveform.compressed(new MiruValue(id), waveform);
     }
@@ -39,13 +41,14 @@ public class Metrics {
         throws Exception {
 
         log.debug("Get metricing for answers={}", answers);
-        long[] rawCardinalities = new long[indexes.length - 1];
-        bitmaps.boundedCardinalities(rawAnswer, new int[][] { indexes }, new long[][] { rawCardinalities });
-
-        long[] waveform = sum(indexes, numBits, answers, bitmaps);
+        long[][] sumAndCardinalities = bitSlicedUtil.sumAndCardinalities(bitmaps, rawAnswer, answers.subList(0, numBits), indexes);
+        long[] waveform = sumAndCardinalities[0];
+        long[] rawCardinalities = sumAndCardinalities[1];
 
         for (int i = 0; i < waveform.length; i++) {
-            waveform[i] /= rawCardinalities[i];
+            if (rawCardinalities[i] > 0) {
+                waveform[i] /= rawCardinalities[i];
+            }
         }
         return Waveform.compressed(new MiruValue(id), waveform);
     }
@@ -58,41 +61,89 @@ public class Metrics {
     10101 - b0 (card 3)
     -----
     12341   avg (1+2+3+4+1)/5 max 4, min 1 (cardinality 5)
+
+    max descends from b2: b2 is set for some (4), keep those, b1 and b0 answer the remaining bits (00).
+    min descends from b2: b2 is unset for some, keep those, b1 likewise, b0 is set for all remaining (1).
      */
-    public <BM extends IBM, IBM> Waveform metricingMin(MiruBitmaps<BM, IBM> bitmaps,
+    public <BM extends IBM, IBM> Waveform metricingMin(String id,
+        MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
         List<BM> answers,
         int[] indexes,
-        int numBits)
+        int numBits,
+        long[] rawCardinalities)
         throws Exception {
 
-        return null; // TODO
+        long[] ranks = rawCardinalities.clone();
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = Math.min(ranks[i], 1);
+        }
+        return Waveform.compressed(new MiruValue(id), bitSlicedUtil.valuesAtRanks(bitmaps, rawAnswer, answers.subList(0, numBits), indexes, ranks));
     }
 
-    public <BM extends IBM, IBM> Waveform metricingMax(MiruBitmaps<BM, IBM> bitmaps,
+    public <BM extends IBM, IBM> Waveform metricingMax(String id,
+        MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
         List<BM> answers,
         int[] indexes,
-        int numBits)
+        int numBits,
+        long[] rawCardinalities)
         throws Exception {
 
-        return null; // TODO
+        long[] ranks = rawCardinalities.clone();
+        return Waveform.compressed(new MiruValue(id), bitSlicedUtil.valuesAtRanks(bitmaps, rawAnswer, answers.subList(0, numBits), indexes, ranks));
     }
 
-    private <BM extends IBM, IBM> long[] sum(int[] indexes, int numBits, List<BM> answers, MiruBitmaps<BM, IBM> bitmaps) {
-        long[] waveform = new long[indexes.length];
-        long[] cardinalities = new long[indexes.length - 1];
-        for (int i = 0; i < numBits; i++) {
-            BM answer = answers.get(i);
-            if (answer != null) {
-                int multiplier = 1 << (numBits - 1 - i);
-                Arrays.fill(cardinalities, 0);
-                bitmaps.boundedCardinalities(answer, new int[][] { indexes }, new long[][] { cardinalities });
-                for (int j = 0; j < indexes.length; j++) {
-                    waveform[j] += multiplier * cardinalities[j];
-                }
-            }
+    public <BM extends IBM, IBM> Waveform metricingPercentile(String id,
+        MiruBitmaps<BM, IBM> bitmaps,
+        BM rawAnswer,
+        List<BM> answers,
+        int[] indexes,
+        int numBits,
+        double percentile,
+        long[] rawCardinalities)
+        throws Exception {
+
+        long[] ranks = rawCardinalities.clone();
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = MiruBitSlicedUtil.nearestRank(percentile, ranks[i]);
+        }
+        return Waveform.compressed(new MiruValue(id), bitSlicedUtil.valuesAtRanks(bitmaps, rawAnswer, answers.subList(0, numBits), indexes, ranks));
+    }
+
+    /**
+     * @param rawCardinalities the number of values in each segment of the raw answer, which min, max and percentile rank against
+     */
+    public <BM extends IBM, IBM> Waveform metricing(MetricsQuery.Aggregate aggregate,
+        double percentile,
+        String id,
+        MiruBitmaps<BM, IBM> bitmaps,
+        BM rawAnswer,
+        List<BM> answers,
+        int[] indexes,
+        int numBits,
+        long[] rawCardinalities)
+        throws Exception {
+
+        switch (aggregate) {
+            case sum:
+                return metricingSum(id, bitmaps, rawAnswer, answers, indexes, numBits);
+            case avg:
+                return metricingAvg(id, bitmaps, rawAnswer, answers, indexes, numBits);
+            case min:
+                return metricingMin(id, bitmaps, rawAnswer, answers, indexes, numBits, rawCardinalities);
+            case max:
+                return metricingMax(id, bitmaps, rawAnswer, answers, indexes, numBits, rawCardinalities);
+            case percentile:
+                return metricingPercentile(id, bitmaps, rawAnswer, answers, indexes, numBits, percentile, rawCardinalities);
+            default:
+                throw new IllegalArgumentException("Unsupported aggregate: " + aggregate);
         }
-        return waveform;
+    }
+
+    public <BM extends IBM, IBM> long[] rawCardinalities(MiruBitmaps<BM, IBM> bitmaps, BM rawAnswer, int[] indexes) {
+        long[] rawCardinalities = new long[indexes.length - 1];
+        bitmaps.boundedCardinalities(rawAnswer, new int[][] { indexes }, new long[][] { rawCardinalities });
+        return rawCardinalities;
     }
 }
@@ -15,13 +15,24 @@ public class MetricsAnswer implements Serializable {
         true);
 
     public final List<Waveform> waveforms;
+    /**
+     * The number of values in each segment of the waveform with the same id, so min, max and percentile can tell a value of 0
+     * from an empty segment. Null for the other aggregates, and from older readers.
+     */
+    public final List<Waveform> counts;
     public final boolean resultsExhausted;
 
+    public MetricsAnswer(List<Waveform> waveforms, boolean resultsExhausted) {
+        this(waveforms, null, resultsExhausted);
+    }
+
     @JsonCreator
     public MetricsAnswer(
         @JsonProperty("waveforms") List<Waveform> waveforms,
+        @JsonProperty("counts") List<Waveform> counts,
         @JsonProperty("resultsExhausted") boolean resultsExhausted) {
         this.waveforms = waveforms;
+        this.counts = counts;
         this.resultsExhausted = resultsExhausted;
     }
 
@@ -29,6 +40,7 @@ public class MetricsAnswer implements Serializable {
     public String toString() {
         return "MetricsAnswer{"
             + "waveforms=" + waveforms
+            + ", counts=" + counts
             + ", resultsExhausted=" + resultsExhausted
             + '}';
     }
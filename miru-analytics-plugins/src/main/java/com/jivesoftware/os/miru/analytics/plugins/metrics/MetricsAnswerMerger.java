@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.analytics.plugins.metrics;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.solution.MiruAnswerMerger;
@@ -19,10 +20,16 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
 
     private final MiruTimeRange timeRange;
     private final int divideTimeRangeIntoNSegments;
+    private final MetricsQuery.Aggregate aggregate;
 
     public MetricsAnswerMerger(MiruTimeRange timeRange, int divideTimeRangeIntoNSegments) {
+        this(timeRange, divideTimeRangeIntoNSegments, MetricsQuery.Aggregate.avg);
+    }
+
+    public MetricsAnswerMerger(MiruTimeRange timeRange, int divideTimeRangeIntoNSegments, MetricsQuery.Aggregate aggregate) {
         this.timeRange = timeRange;
         this.divideTimeRangeIntoNSegments = divideTimeRangeIntoNSegments;
+        this.aggregate = aggregate;
     }
 
     /**
@@ -41,33 +48,45 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
         }
 
         List<Waveform> mergedWaveforms;
+        List<Waveform> mergedCounts;
         MetricsAnswer lastAnswer = last.get();
         if (currentAnswer.waveforms == null) {
             if (lastAnswer.waveforms == null) {
                 solutionLog.log(MiruSolutionLogLevel.WARN, "merge: current and last waveforms are null.");
                 mergedWaveforms = null;
+                mergedCounts = null;
             } else {
                 solutionLog.log(MiruSolutionLogLevel.WARN, "merge: current waveforms are null, using last answer.");
                 mergedWaveforms = lastAnswer.waveforms;
+                mergedCounts = lastAnswer.counts;
             }
         } else {
 
-            List<Waveform> biggerList = lastAnswer.waveforms.size() > currentAnswer.waveforms.size() ? lastAnswer.waveforms : currentAnswer.waveforms;
-            Map<MiruValue, Waveform> smallerSet = lastAnswer.waveforms.size() > currentAnswer.waveforms.size()
-                ? toMap(currentAnswer.waveforms)
-                : toMap(lastAnswer.waveforms);
+            boolean lastBigger = lastAnswer.waveforms.size() > currentAnswer.waveforms.size();
+            List<Waveform> biggerList = lastBigger ? lastAnswer.waveforms : currentAnswer.waveforms;
+            Map<MiruValue, Waveform> smallerSet = lastBigger ? toMap(currentAnswer.waveforms) : toMap(lastAnswer.waveforms);
+            Map<MiruValue, Waveform> biggerCounts = lastBigger ? toMap(lastAnswer.counts) : toMap(currentAnswer.counts);
+            Map<MiruValue, Waveform> smallerCounts = lastBigger ? toMap(currentAnswer.counts) : toMap(lastAnswer.counts);
 
-            mergeWaveform(smallerSet, biggerList, solutionLog);
+            mergedCounts = isRanked() ? Lists.newArrayListWithCapacity(biggerList.size() + smallerSet.size()) : null;
+            mergeWaveform(smallerSet, biggerList, smallerCounts, biggerCounts, mergedCounts, solutionLog);
             mergedWaveforms = biggerList;
             solutionLog.log(MiruSolutionLogLevel.INFO, "merge: merged last answer size={}, with current answer size={}.",
                 lastAnswer.waveforms.size(), currentAnswer.waveforms.size());
         }
 
-        return new MetricsAnswer(mergedWaveforms, currentAnswer.resultsExhausted);
+        return new MetricsAnswer(mergedWaveforms, mergedCounts, currentAnswer.resultsExhausted);
 
     }
 
+    private boolean isRanked() {
+        return aggregate == MetricsQuery.Aggregate.min || aggregate == MetricsQuery.Aggregate.max || aggregate == MetricsQuery.Aggregate.percentile;
+    }
+
     private Map<MiruValue, Waveform> toMap(List<Waveform> waveforms) {
+        if (waveforms == null) {
+            return null;
+        }
         Map<MiruValue, Waveform> map = Maps.newHashMapWithExpectedSize(waveforms.size());
         for (Waveform waveform : waveforms) {
             map.put(waveform.getId(), waveform);
@@ -75,25 +94,77 @@ public class MetricsAnswerMerger implements MiruAnswerMerger<MetricsAnswer> {
         return map;
     }
 
-    private void mergeWaveform(Map<MiruValue, Waveform> mergedWaveforms, List<Waveform> waveforms, MiruSolutionLog solutionLog) {
+    private void mergeWaveform(Map<MiruValue, Waveform> mergedWaveforms,
+        List<Waveform> waveforms,
+        Map<MiruValue, Waveform> mergedWaveformCounts,
+        Map<MiruValue, Waveform> waveformCounts,
+        List<Waveform> mergedCounts,
+        MiruSolutionLog solutionLog) {
         long[] mergedWaveform = new long[divideTimeRangeIntoNSegments];
+        long[] hadWaveform = new long[divideTimeRangeIntoNSegments];
         for (Waveform waveform : waveforms) {
 
             Waveform had = mergedWaveforms.remove(waveform.getId());
             if (had != null) {
                 Arrays.fill(mergedWaveform, 0);
                 waveform.mergeWaveform(mergedWaveform);
-                had.mergeWaveform(mergedWaveform);
+                if (!isRanked()) {
+                    had.mergeWaveform(mergedWaveform);
+                } else {
+                    Arrays.fill(hadWaveform, 0);
+                    had.mergeWaveform(hadWaveform);
+                    long[] counts = counts(waveformCounts, waveform.getId(), mergedWaveform);
+                    long[] hadCounts = counts(mergedWaveformCounts, waveform.getId(), hadWaveform);
+                    for (int i = 0; i < mergedWaveform.length; i++) {
+                        // only segments which had values take part, since an empty segment also reads as 0
+                        if (hadCounts[i] > 0 && (counts[i] == 0 || prefer(hadWaveform[i], mergedWaveform[i]))) {
+                            mergedWaveform[i] = hadWaveform[i];
+                        }
+                        counts[i] += hadCounts[i];
+                    }
+                    mergedCounts.add(Waveform.compressed(waveform.getId(), counts));
+                }
                 waveform.compress(mergedWaveform);
                 if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
                     solutionLog.log(MiruSolutionLogLevel.DEBUG, "merge: key={} merging {} result {}",
                         waveform.getId(), had, waveform);
                 }
+            } else if (mergedCounts != null) {
+                Arrays.fill(mergedWaveform, 0);
+                waveform.mergeWaveform(mergedWaveform);
+                mergedCounts.add(Waveform.compressed(waveform.getId(), counts(waveformCounts, waveform.getId(), mergedWaveform)));
+            }
+        }
+        if (mergedCounts != null) {
+            for (Waveform had : mergedWaveforms.values()) {
+                Arrays.fill(hadWaveform, 0);
+                had.mergeWaveform(hadWaveform);
+                mergedCounts.add(Waveform.compressed(had.getId(), counts(mergedWaveformCounts, had.getId(), hadWaveform)));
             }
         }
         waveforms.addAll(mergedWaveforms.values());
     }
 
+    /**
+     * Answers without counts come from older readers, which could only mark a segment with a value of 0 as empty.
+     */
+    private long[] counts(Map<MiruValue, Waveform> counts, MiruValue id, long[] waveform) {
+        long[] result = new long[divideTimeRangeIntoNSegments];
+        Waveform count = counts == null ? null : counts.get(id);
+        if (count != null) {
+            count.mergeWaveform(result);
+        } else {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = waveform[i] != 0 ? 1 : 0;
+            }
+        }
+        return result;
+    }
+
+    private boolean prefer(long candidate, long existing) {
+        return aggregate == MetricsQuery.Aggregate.min ? candidate < existing : candidate > existing;
+    }
+
     @Override
     public MetricsAnswer done(Optional<MetricsAnswer> last, MetricsAnswer alternative, final MiruSolutionLog solutionLog) {
         return last.or(alternative);
@@ -41,7 +41,7 @@ public class MetricsInjectable {
                     request,
                     provider.getRemotePartition(MetricsRemotePartition.class))),
                 new MetricsAnswerEvaluator(),
-                new MetricsAnswerMerger(request.query.timeRange, request.query.divideTimeRangeIntoNSegments),
+                new MetricsAnswerMerger(request.query.timeRange, request.query.divideTimeRangeIntoNSegments, request.query.aggregate),
                 MetricsAnswer.EMPTY_RESULTS,
                 miru.getDefaultExecutor(),
                 request.logLevel);
@@ -20,6 +20,16 @@ public class MetricsQuery implements Serializable {
     public final String powerBitsFieldName;
     public final MiruFilter constraintsFilter;
     public final Map<String, MiruFilter> filters;
+    public final Aggregate aggregate;
+    public final double percentile;
+
+    public MetricsQuery(MiruTimeRange timeRange,
+        int divideTimeRangeIntoNSegments,
+        String powerBitsFieldName,
+        MiruFilter constraintsFilter,
+        Map<String, MiruFilter> filters) {
+        this(timeRange, divideTimeRangeIntoNSegments, powerBitsFieldName, constraintsFilter, filters, null, null);
+    }
 
     @JsonCreator
     public MetricsQuery(
@@ -27,7 +37,9 @@ public class MetricsQuery implements Serializable {
         @JsonProperty("divideTimeRangeIntoNSegments") int divideTimeRangeIntoNSegments,
         @JsonProperty("powerBitsFieldName") String powerBitsFieldName,
         @JsonProperty("constraintsFilter") MiruFilter constraintsFilter,
-        @JsonProperty("filters") Map<String, MiruFilter> filters) {
+        @JsonProperty("filters") Map<String, MiruFilter> filters,
+        @JsonProperty("aggregate") Aggregate aggregate,
+        @JsonProperty("percentile") Double percentile) {
         Preconditions.checkArgument(!MiruTimeRange.ALL_TIME.equals(timeRange), "Requires an explicit time range");
         this.timeRange = checkNotNull(timeRange);
         Preconditions.checkArgument(divideTimeRangeIntoNSegments > 0, "Segments must be at least 1");
@@ -35,6 +47,9 @@ public class MetricsQuery implements Serializable {
         this.powerBitsFieldName = checkNotNull(powerBitsFieldName);
         this.constraintsFilter = checkNotNull(constraintsFilter);
         this.filters = checkNotNull(filters);
+        this.aggregate = aggregate != null ? aggregate : Aggregate.avg;
+        this.percentile = percentile != null ? percentile : 95d;
+        Preconditions.checkArgument(this.percentile > 0 && this.percentile <= 100, "Percentile must be in (0, 100]");
     }
 
     @Override
@@ -45,6 +60,16 @@ public class MetricsQuery implements Serializable {
             ", powerBitsFieldName='" + powerBitsFieldName + '\'' +
             ", constraintsFilter=" + constraintsFilter +
             ", filters=" + filters +
+            ", aggregate=" + aggregate +
+            ", percentile=" + percentile +
             '}';
     }
+
+    /**
+     * How the values of each segment are aggregated. Percentiles use the nearest rank within each partition, and segments spanning
+     * partitions take the highest of the partition percentiles.
+     */
+    public enum Aggregate {
+        sum, avg, min, max, percentile
+    }
 }
@@ -133,7 +133,7 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
             if (closestId < 0) {
                 closestId = -(closestId + 1); // handle negative "theoretical insertion" index
             }
-            indexes[i] = timeIndex.getClosestId(currentTime, stackBuffer);
+            indexes[i] = closestId;
             currentTime += segmentDuration;
         }
 
@@ -149,10 +149,15 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
             powerBitIndexes.add(powerBitContainer);
         }
 
+        boolean ranked = request.query.aggregate == MetricsQuery.Aggregate.min
+            || request.query.aggregate == MetricsQuery.Aggregate.max
+            || request.query.aggregate == MetricsQuery.Aggregate.percentile;
         List<Waveform> waveforms = Lists.newArrayListWithCapacity(request.query.filters.size());
+        List<Waveform> counts = ranked ? Lists.newArrayListWithCapacity(request.query.filters.size()) : null;
         start = System.currentTimeMillis();
         for (Map.Entry<String, MiruFilter> entry : request.query.filters.entrySet()) {
             Waveform waveform = null;
+            long[] rawCardinalities = null;
             if (!bitmaps.isEmpty(constrained)) {
                 BM waveformFiltered = aggregateUtil.filter("metrics", bitmaps, context, entry.getValue(), solutionLog, null, lastId, -1, -1, stackBuffer);
 
@@ -169,7 +174,9 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
                         }
                     }
 
-                    waveform = metrics.metricingAvg(entry.getKey(), bitmaps, rawAnswer, answers, indexes, 64);
+                    rawCardinalities = ranked ? metrics.rawCardinalities(bitmaps, rawAnswer, indexes) : null;
+                    waveform = metrics.metricing(request.query.aggregate, request.query.percentile, entry.getKey(), bitmaps, rawAnswer, answers, indexes, 64,
+                        rawCardinalities);
                     if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
                         int cardinality = 0;
                         for (int i = 0; i < 64; i++) {
@@ -189,11 +196,16 @@ public class MetricsQuestion implements Question<MetricsQuery, MetricsAnswer, Me
                 waveform = Waveform.empty(new MiruValue(entry.getKey()), request.query.divideTimeRangeIntoNSegments);
             }
             waveforms.add(waveform);
+            if (ranked) {
+                counts.add(rawCardinalities != null
+                    ? Waveform.compressed(new MiruValue(entry.getKey()), rawCardinalities)
+                    : Waveform.empty(new MiruValue(entry.getKey()), request.query.divideTimeRangeIntoNSegments));
+            }
         }
         solutionLog.log(MiruSolutionLogLevel.INFO, "metrics answered: {} millis.", System.currentTimeMillis() - start);
         solutionLog.log(MiruSolutionLogLevel.INFO, "metrics answered: {} iterations.", request.query.filters.size());
 
-        MetricsAnswer result = new MetricsAnswer(waveforms, resultsExhausted);
+        MetricsAnswer result = new MetricsAnswer(waveforms, counts, resultsExhausted);
 
         return new MiruPartitionResponse<>(result, solutionLog.asList());
     }
@@ -1,14 +1,11 @@
 package com.jivesoftware.os.miru.anomaly.plugins;
 
-import com.google.common.math.LongMath;
 import com.jivesoftware.os.miru.anomaly.plugins.AnomalyAnswer.Waveform;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.solution.MiruBitSlicedUtil;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
-import java.util.Arrays;
 import java.util.List;
-import org.apache.commons.math.analysis.interpolation.LinearInterpolator;
-import org.apache.commons.math.analysis.polynomials.PolynomialSplineFunction;
 
 /**
  *
@@ -17,7 +14,7 @@ public class Anomaly {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
-    private final LinearInterpolator interpolator = new LinearInterpolator();
+    private final MiruBitSlicedUtil bitSlicedUtil = new MiruBitSlicedUtil();
 
     public <BM extends IBM, IBM> Waveform metricingSum(MiruBitmaps<BM, IBM> bitmaps,
         BM rawAnswer,
@@ -42,90 +39,129 @@ public class Anomaly {
 
         LOG.debug("Get metricing for answers={}", answers);
 
-        long[] rawCardinalities = new long[indexes.length - 1];
-        bitmaps.boundedCardinalities(rawAnswer, new int[][] { indexes }, new long[][] { rawCardinalities });
-
-        long[] waveform = sum(indexes, numBits, answers, bitmaps);
+        long[][] sumAndCardinalities = bitSlicedUtil.sumAndCardinalities(bitmaps, rawAnswer, answers.subList(0, numBits), indexes);
+        long[] waveform = sumAndCardinalities[0];
+        averageAndInterpolate(waveform, sumAndCardinalities[1]);
+        return new Waveform(waveform);
+    }
 
-        double[] x = new double[waveform.length];
-        double[] y = new double[waveform.length];
-        int count = 0;
-        int firstIndex = -1;
-        int lastIndex = -1;
+    /**
+     * Divides each bucket sum by its cardinality in place, then fills the empty buckets by linear interpolation between their
+     * nearest non-empty neighbors. Empty buckets before the first or after the last non-empty bucket repeat that bucket's average.
+     * Runs in a single pass without allocating, and leaves the waveform untouched if every bucket is empty.
+     */
+    static void averageAndInterpolate(long[] waveform, long[] cardinalities) {
+        int previous = -1;
         for (int i = 0; i < waveform.length; i++) {
-            if (rawCardinalities[i] > 0) {
-                if (firstIndex == -1) {
-                    firstIndex = i;
+            if (cardinalities[i] > 0) {
+                waveform[i] /= cardinalities[i];
+                if (previous == -1) {
+                    for (int j = 0; j < i; j++) {
+                        waveform[j] = waveform[i];
+                    }
+                } else if (i - previous > 1) {
+                    double y = waveform[previous];
+                    double slope = (waveform[i] - y) / (i - previous);
+                    for (int j = previous + 1; j < i; j++) {
+                        waveform[j] = (long) ((j - previous) * slope + y);
+                    }
                 }
-                lastIndex = i;
-
-                x[count] = i;
-                y[count] = waveform[i] / rawCardinalities[i];
-                count++;
+                previous = i;
             }
         }
+        if (previous != -1) {
+            for (int j = previous + 1; j < waveform.length; j++) {
+                waveform[j] = waveform[previous];
+            }
+        }
+    }
 
-        if (count == waveform.length) {
-            for (int i = 0; i < waveform.length; i++) {
-                if (rawCardinalities[i] > 0) {
-                    waveform[i] /= rawCardinalities[i];
+    /**
+     * Aggregates signed values given as separate positive and negative magnitudes, either of which may be absent. Ranks are taken in
+     * ascending signed order, so negatives come first with the largest magnitude first.
+     */
+    public <BM extends IBM, IBM> Waveform metricing(AnomalyQuery.Aggregate aggregate,
+        double percentile,
+        MiruBitmaps<BM, IBM> bitmaps,
+        int[] indexes,
+        BM positiveAnswer,
+        List<BM> positiveAnswers,
+        BM negativeAnswer,
+        List<BM> negativeAnswers)
+        throws Exception {
+
+        int numBuckets = indexes.length - 1;
+        long[] waveform = new long[numBuckets];
+        if (aggregate == AnomalyQuery.Aggregate.sum) {
+            if (positiveAnswer != null) {
+                long[] positiveSum = bitSlicedUtil.sum(bitmaps, positiveAnswers, indexes);
+                for (int i = 0; i < numBuckets; i++) {
+                    waveform[i] += positiveSum[i];
                 }
             }
-        } else if (count > 0) {
-            double[] ix = new double[count + 2];
-            double[] iy = new double[count + 2];
-            System.arraycopy(x, 0, ix, 1, count);
-            System.arraycopy(y, 0, iy, 1, count);
-
-            ix[0] = -1;
-            iy[0] = y[firstIndex];
-            ix[ix.length - 1] = x.length;
-            iy[iy.length - 1] = y[lastIndex];
-
-            PolynomialSplineFunction splineFunction = interpolator.interpolate(ix, iy);
-
-            long[] interpolated = new long[waveform.length];
-            for (int i = 0; i < waveform.length; i++) {
-                if (rawCardinalities[i] > 0) {
-                    interpolated[i] = waveform[i] / rawCardinalities[i];
-                } else {
-                    interpolated[i] = (long) splineFunction.value((double) i);
+            if (negativeAnswer != null) {
+                long[] negativeSum = bitSlicedUtil.sum(bitmaps, negativeAnswers, indexes);
+                for (int i = 0; i < numBuckets; i++) {
+                    waveform[i] -= negativeSum[i];
                 }
             }
-
-            waveform = interpolated;
+            return new Waveform(waveform);
         }
-        return new Waveform(waveform);
-    }
 
+        long[] positiveRanks = cardinalities(bitmaps, positiveAnswer, indexes);
+        long[] negativeRanks = cardinalities(bitmaps, negativeAnswer, indexes);
+        long[] counts = new long[numBuckets];
+        for (int i = 0; i < numBuckets; i++) {
+            long negativeCount = negativeRanks[i];
+            long count = positiveRanks[i] + negativeCount;
+            counts[i] = count;
+            long rank;
+            if (aggregate == AnomalyQuery.Aggregate.min) {
+                rank = Math.min(count, 1);
+            } else if (aggregate == AnomalyQuery.Aggregate.max) {
+                rank = count;
+            } else if (aggregate == AnomalyQuery.Aggregate.percentile) {
+                rank = MiruBitSlicedUtil.nearestRank(percentile, count);
+            } else {
+                throw new IllegalArgumentException("Unsupported aggregate: " + aggregate);
+            }
+            if (rank > 0 && rank <= negativeCount) {
+                negativeRanks[i] = negativeCount - rank + 1;
+                positiveRanks[i] = 0;
+            } else {
+                negativeRanks[i] = 0;
+                positiveRanks[i] = rank - negativeCount;
+            }
+        }
 
-    static <BM extends IBM, IBM> long[] sum(int[] indexes, int numBits, List<BM> answers, MiruBitmaps<BM, IBM> bitmaps) {
-        long[] waveform = null;
-        long[] rawCardinalities = new long[indexes.length - 1];
-
-        for (int i = 0; i < numBits; i++) {
-            BM answer = answers.get(i);
-            if (answer != null) {
-                Arrays.fill(rawCardinalities, 0);
-                bitmaps.boundedCardinalities(answer, new int[][] { indexes }, new long[][] { rawCardinalities });
-                if (waveform == null) {
-                    waveform = new long[rawCardinalities.length];
+        if (positiveAnswer != null) {
+            long[] values = bitSlicedUtil.valuesAtRanks(bitmaps, positiveAnswer, positiveAnswers, indexes, positiveRanks);
+            for (int i = 0; i < numBuckets; i++) {
+                if (positiveRanks[i] > 0) {
+                    waveform[i] = values[i];
                 }
-                long multiplier = (1L << i);
-                for (int j = 0; j < waveform.length; j++) {
-                    if (rawCardinalities[j] > 0) {
-                        long add = rawCardinalities[j] * multiplier;
-                        try {
-                            waveform[j] = LongMath.checkedAdd(waveform[j], add);
-                        } catch (Exception x) {
-                            waveform[j] = Long.MAX_VALUE;
-                            LOG.inc("overflows");
-                        }
-                    }
+            }
+        }
+        if (negativeAnswer != null) {
+            long[] values = bitSlicedUtil.valuesAtRanks(bitmaps, negativeAnswer, negativeAnswers, indexes, negativeRanks);
+            for (int i = 0; i < numBuckets; i++) {
+                if (negativeRanks[i] > 0) {
+                    waveform[i] = -values[i];
                 }
             }
         }
-        return waveform;
+        return new Waveform(waveform, counts);
+    }
+
+    private <BM extends IBM, IBM> long[] cardinalities(MiruBitmaps<BM, IBM> bitmaps, BM answer, int[] indexes) {
+        long[] cardinalities = new long[indexes.length - 1];
+        if (answer != null) {
+            bitmaps.boundedCardinalities(answer, new int[][] { indexes }, new long[][] { cardinalities });
+        }
+        return cardinalities;
+    }
 
+    private <BM extends IBM, IBM> long[] sum(int[] indexes, int numBits, List<BM> answers, MiruBitmaps<BM, IBM> bitmaps) {
+        return bitSlicedUtil.sum(bitmaps, answers.subList(0, numBits), indexes);
     }
 }
@@ -37,16 +37,27 @@ public class AnomalyAnswer implements Serializable {
     public static class Waveform implements Serializable {
 
         public final long[] waveform;
+        /**
+         * The number of values in each segment, so min, max and percentile can tell a value of 0 from an empty segment. Null for
+         * the other aggregates, and from older readers.
+         */
+        public final long[] counts;
 
         public Waveform(long[] waveform) {
+            this(waveform, null);
+        }
+
+        public Waveform(long[] waveform, long[] counts) {
             this.waveform = waveform;
+            this.counts = counts;
         }
 
         @JsonCreator
         public static Waveform fromJson(
-            @JsonProperty("waveform") byte[] waveform
+            @JsonProperty("waveform") byte[] waveform,
+            @JsonProperty("counts") byte[] counts
         ) throws Exception {
-            return new Waveform(FilerIO.bytesLongs(waveform));
+            return new Waveform(FilerIO.bytesLongs(waveform), counts == null ? null : FilerIO.bytesLongs(counts));
         }
 
         @JsonGetter("waveform")
@@ -54,10 +65,16 @@ public class AnomalyAnswer implements Serializable {
             return FilerIO.longsBytes(waveform);
         }
 
+        @JsonGetter("counts")
+        public byte[] getCountsAsBytes() throws Exception {
+            return counts == null ? null : FilerIO.longsBytes(counts);
+        }
+
         @Override
         public String toString() {
             return "Waveform{"
                 + "waveform=" + Arrays.toString(waveform)
+                + ", counts=" + Arrays.toString(counts)
                 + '}';
         }
     }
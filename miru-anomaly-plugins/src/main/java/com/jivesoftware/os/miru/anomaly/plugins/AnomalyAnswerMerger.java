@@ -13,7 +13,15 @@ import java.util.Map;
  */
 public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
 
-    public AnomalyAnswerMerger() {}
+    private final AnomalyQuery.Aggregate aggregate;
+
+    public AnomalyAnswerMerger() {
+        this(AnomalyQuery.Aggregate.avg);
+    }
+
+    public AnomalyAnswerMerger(AnomalyQuery.Aggregate aggregate) {
+        this.aggregate = aggregate;
+    }
 
     /**
      * Merges the last and current results, returning the merged result.
@@ -56,13 +64,27 @@ public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
             String key = addEntry.getKey();
             AnomalyAnswer.Waveform addWaveform = addEntry.getValue();
             AnomalyAnswer.Waveform mergedWaveform = mergedWaveforms.get(key);
+            boolean ranked = aggregate != AnomalyQuery.Aggregate.sum && aggregate != AnomalyQuery.Aggregate.avg;
             if (mergedWaveform == null) {
-                mergedWaveform = new AnomalyAnswer.Waveform(new long[addWaveform.waveform.length]);
+                int length = addWaveform.waveform.length;
+                mergedWaveform = new AnomalyAnswer.Waveform(new long[length], ranked ? new long[length] : null);
                 mergedWaveforms.put(key, mergedWaveform);
             }
 
-            for (int i = 0; i < mergedWaveform.waveform.length; i++) {
-                mergedWaveform.waveform[i] += addWaveform.waveform[i];
+            if (!ranked) {
+                for (int i = 0; i < mergedWaveform.waveform.length; i++) {
+                    mergedWaveform.waveform[i] += addWaveform.waveform[i];
+                }
+            } else {
+                for (int i = 0; i < mergedWaveform.waveform.length; i++) {
+                    // answers without counts come from older readers, which could only mark a segment with a value of 0 as empty
+                    long addCount = addWaveform.counts != null ? addWaveform.counts[i] : (addWaveform.waveform[i] != 0 ? 1 : 0);
+                    // only segments which had values take part, since an empty segment also reads as 0
+                    if (addCount > 0 && (mergedWaveform.counts[i] == 0 || prefer(addWaveform.waveform[i], mergedWaveform.waveform[i]))) {
+                        mergedWaveform.waveform[i] = addWaveform.waveform[i];
+                    }
+                    mergedWaveform.counts[i] += addCount;
+                }
             }
 
             if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
@@ -72,6 +94,10 @@ public class AnomalyAnswerMerger implements MiruAnswerMerger<AnomalyAnswer> {
         }
     }
 
+    private boolean prefer(long candidate, long existing) {
+        return aggregate == AnomalyQuery.Aggregate.min ? candidate < existing : candidate > existing;
+    }
+
     @Override
     public AnomalyAnswer done(Optional<AnomalyAnswer> last, AnomalyAnswer alternative, final MiruSolutionLog solutionLog) {
         return last.or(alternative);
@@ -40,7 +40,7 @@ public class AnomalyInjectable {
                     request,
                     provider.getRemotePartition(AnomalyRemotePartition.class))),
                 new AnomalyAnswerEvaluator(),
-                new AnomalyAnswerMerger(),
+                new AnomalyAnswerMerger(request.query.aggregate),
                 AnomalyAnswer.EMPTY_RESULTS,
                 miru.getDefaultExecutor(),
                 request.logLevel);
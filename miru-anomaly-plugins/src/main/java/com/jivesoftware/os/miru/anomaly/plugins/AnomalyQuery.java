@@ -23,6 +23,18 @@ public class AnomalyQuery implements Serializable {
     public final Map<String, MiruFilter> filters;
     public final String expansionField;
     public final List<String> expansionValues;
+    public final Aggregate aggregate;
+    public final double percentile;
+
+    public AnomalyQuery(MiruTimeRange timeRange,
+        int divideTimeRangeIntoNSegments,
+        String powerBitsFieldName,
+        MiruFilter constraintsFilter,
+        Map<String, MiruFilter> filters,
+        String expansionField,
+        List<String> expansionValues) {
+        this(timeRange, divideTimeRangeIntoNSegments, powerBitsFieldName, constraintsFilter, filters, expansionField, expansionValues, null, null);
+    }
 
     @JsonCreator
     public AnomalyQuery(
@@ -32,7 +44,9 @@ public class AnomalyQuery implements Serializable {
         @JsonProperty("constraintsFilter") MiruFilter constraintsFilter,
         @JsonProperty("filters") Map<String, MiruFilter> filters,
         @JsonProperty("expansionField") String expansionField,
-        @JsonProperty("expansionValues") List<String> expansionValues) {
+        @JsonProperty("expansionValues") List<String> expansionValues,
+        @JsonProperty("aggregate") Aggregate aggregate,
+        @JsonProperty("percentile") Double percentile) {
 
         Preconditions.checkArgument(!MiruTimeRange.ALL_TIME.equals(timeRange), "Requires an explicit time range");
         this.timeRange = Preconditions.checkNotNull(timeRange);
@@ -43,6 +57,9 @@ public class AnomalyQuery implements Serializable {
         this.filters = Preconditions.checkNotNull(filters);
         this.expansionField = expansionField;
         this.expansionValues = expansionValues;
+        this.aggregate = aggregate != null ? aggregate : Aggregate.avg;
+        this.percentile = percentile != null ? percentile : 95d;
+        Preconditions.checkArgument(this.percentile > 0 && this.percentile <= 100, "Percentile must be in (0, 100]");
     }
 
     @Override
@@ -54,7 +71,17 @@ public class AnomalyQuery implements Serializable {
             + ", filters=" + filters
             + ", expansionField=" + expansionField
             + ", expansionValues=" + expansionValues
+            + ", aggregate=" + aggregate
+            + ", percentile=" + percentile
             + '}';
     }
 
+    /**
+     * How the signed values of each segment are aggregated. Percentiles use the nearest rank within each partition, and segments
+     * spanning partitions take the highest of the partition percentiles.
+     */
+    public enum Aggregate {
+        sum, avg, min, max, percentile
+    }
+
 }
@@ -210,7 +210,17 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
                 BM waveformFiltered = aggregateUtil.filter("anomaly", bitmaps, context, entry.getValue(), solutionLog, null, lastId, -1, -1, stackBuffer);
 
                 BM rawAnswer = bitmaps.and(Arrays.asList(constrained, waveformFiltered));
-                if (!bitmaps.isEmpty(rawAnswer)) {
+                if (!bitmaps.isEmpty(rawAnswer) && request.query.aggregate != AnomalyQuery.Aggregate.avg) {
+                    BM positiveAnswer = positive.isSet() ? bitmaps.and(Arrays.asList(positive.getBitmap(), rawAnswer)) : null;
+                    BM negativeAnswer = negative.isSet() ? bitmaps.and(Arrays.asList(negative.getBitmap(), rawAnswer)) : null;
+                    waveform = anomaly.metricing(request.query.aggregate, request.query.percentile, bitmaps, indexes,
+                        positiveAnswer, powerBitAnswers(bitmaps, powerBitIndexes, positiveAnswer),
+                        negativeAnswer, powerBitAnswers(bitmaps, powerBitIndexes, negativeAnswer));
+                    if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
+                        solutionLog.log(MiruSolutionLogLevel.DEBUG, "anomaly name: {}, {} waveform: {}.",
+                            entry.getKey(), request.query.aggregate, Arrays.toString(waveform.waveform));
+                    }
+                } else if (!bitmaps.isEmpty(rawAnswer)) {
                     long[] mergedWaveform = new long[indexes.length - 1];
 
                     if (positive.isSet()) {
@@ -259,16 +269,7 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
         BM rawAnswer,
         BM signedAnswer) throws Exception {
 
-        List<BM> answers = Lists.newArrayList();
-        for (int i = 0; i < 64; i++) {
-            BitmapAndLastId<BM> powerBitIndex = powerBitIndexes.get(i);
-            if (powerBitIndex.isSet()) {
-                BM answer = bitmaps.and(Arrays.asList(powerBitIndex.getBitmap(), signedAnswer));
-                answers.add(answer);
-            } else {
-                answers.add(null);
-            }
-        }
+        List<BM> answers = powerBitAnswers(bitmaps, powerBitIndexes, signedAnswer);
 
         Waveform waveform = anomaly.metricingAvg(bitmaps, rawAnswer, answers, indexes, 64);
         if (solutionLog.isLogLevelEnabled(MiruSolutionLogLevel.DEBUG)) {
@@ -285,6 +286,23 @@ public class AnomalyQuestion implements Question<AnomalyQuery, AnomalyAnswer, An
         return waveform;
     }
 
+    private <BM extends IBM, IBM> List<BM> powerBitAnswers(MiruBitmaps<BM, IBM> bitmaps,
+        List<BitmapAndLastId<BM>> powerBitIndexes,
+        BM signedAnswer) {
+
+        List<BM> answers = Lists.newArrayListWithCapacity(64);
+        for (int i = 0; i < 64; i++) {
+            BitmapAndLastId<BM> powerBitIndex = powerBitIndexes.get(i);
+            if (signedAnswer != null && powerBitIndex.isSet()) {
+                BM answer = bitmaps.and(Arrays.asList(powerBitIndex.getBitmap(), signedAnswer));
+                answers.add(answer);
+            } else {
+                answers.add(null);
+            }
+        }
+        return answers;
+    }
+
     private <BM extends IBM, IBM> BitmapAndLastId<BM> fetchBits(
         MiruRequestContext<BM, IBM, ?> context,
         MiruSchema schema,
@@ -0,0 +1,52 @@
+package com.jivesoftware.os.miru.anomaly.plugins;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class AnomalyAnswerMergerTest {
+
+    private final MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+
+    @Test
+    public void testMinPrefersRealZero() throws Exception {
+        AnomalyAnswer merged = merge(AnomalyQuery.Aggregate.min,
+            new AnomalyAnswer.Waveform(new long[] { 0, 5, 0 }, new long[] { 2, 1, 0 }),
+            new AnomalyAnswer.Waveform(new long[] { 5, 0, 0 }, new long[] { 1, 0, 0 }));
+
+        assertEquals(merged.waveforms.get("a").waveform, new long[] { 0, 5, 0 });
+        assertEquals(merged.waveforms.get("a").counts, new long[] { 3, 1, 0 });
+    }
+
+    @Test
+    public void testMaxPrefersRealZero() throws Exception {
+        AnomalyAnswer merged = merge(AnomalyQuery.Aggregate.max,
+            new AnomalyAnswer.Waveform(new long[] { -5, 0, -3 }, new long[] { 1, 0, 1 }),
+            new AnomalyAnswer.Waveform(new long[] { 0, -7, 0 }, new long[] { 4, 1, 0 }));
+
+        assertEquals(merged.waveforms.get("a").waveform, new long[] { 0, -7, -3 });
+        assertEquals(merged.waveforms.get("a").counts, new long[] { 5, 1, 1 });
+    }
+
+    @Test
+    public void testMergesAnswersWithoutCounts() throws Exception {
+        AnomalyAnswer merged = merge(AnomalyQuery.Aggregate.min,
+            new AnomalyAnswer.Waveform(new long[] { 0, 5, 2 }),
+            new AnomalyAnswer.Waveform(new long[] { 0, 7, 1 }, new long[] { 1, 1, 1 }));
+
+        assertEquals(merged.waveforms.get("a").waveform, new long[] { 0, 5, 1 });
+    }
+
+    private AnomalyAnswer merge(AnomalyQuery.Aggregate aggregate, AnomalyAnswer.Waveform last, AnomalyAnswer.Waveform current) {
+        AnomalyAnswerMerger merger = new AnomalyAnswerMerger(aggregate);
+        AnomalyAnswer merged = merger.merge(Optional.absent(), new AnomalyAnswer(ImmutableMap.of("a", last), false), solutionLog);
+        return merger.merge(Optional.of(merged), new AnomalyAnswer(ImmutableMap.of("a", current), false), solutionLog);
+    }
+}
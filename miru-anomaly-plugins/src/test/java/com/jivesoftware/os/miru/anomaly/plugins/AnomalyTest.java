@@ -0,0 +1,152 @@
+package com.jivesoftware.os.miru.anomaly.plugins;
+
+import java.util.Random;
+import org.apache.commons.math.analysis.interpolation.LinearInterpolator;
+import org.apache.commons.math.analysis.polynomials.PolynomialSplineFunction;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class AnomalyTest {
+
+    @Test
+    public void testAverageAndInterpolate() throws Exception {
+        long[] waveform = { 0, 20, 0, 0, 50, 0, 0 };
+        long[] cardinalities = { 0, 2, 0, 0, 5, 0, 0 };
+        Anomaly.averageAndInterpolate(waveform, cardinalities);
+        long[] expected = { 10, 10, 10, 10, 10, 10, 10 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(waveform[i], expected[i], "index " + i);
+        }
+
+        waveform = new long[] { 0, 30, 0, 0, 0, 70, 0 };
+        cardinalities = new long[] { 0, 3, 0, 0, 0, 7, 0 };
+        Anomaly.averageAndInterpolate(waveform, cardinalities);
+        expected = new long[] { 10, 10, 10, 10, 10, 10, 10 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(waveform[i], expected[i], "index " + i);
+        }
+
+        waveform = new long[] { 0, 10, 0, 0, 40, 0 };
+        cardinalities = new long[] { 0, 1, 0, 0, 1, 0 };
+        Anomaly.averageAndInterpolate(waveform, cardinalities);
+        expected = new long[] { 10, 10, 20, 30, 40, 40 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(waveform[i], expected[i], "index " + i);
+        }
+
+        waveform = new long[] { 0, 0, 0 };
+        Anomaly.averageAndInterpolate(waveform, new long[3]);
+        for (int i = 0; i < waveform.length; i++) {
+            assertEquals(waveform[i], 0L);
+        }
+    }
+
+    @Test
+    public void testMatchesSplineInterpolation() throws Exception {
+        Random random = new Random(1234);
+        for (int run = 0; run < 1_000; run++) {
+            int numBuckets = 1 + random.nextInt(64);
+            double density = random.nextDouble();
+            long[] sums = new long[numBuckets];
+            long[] cardinalities = new long[numBuckets];
+            fill(random, density, sums, cardinalities);
+
+            long[] expected = splineAverageAndInterpolate(sums, cardinalities);
+            long[] waveform = sums.clone();
+            Anomaly.averageAndInterpolate(waveform, cardinalities);
+            for (int i = 0; i < numBuckets; i++) {
+                assertEquals(waveform[i], expected[i], "run " + run + " index " + i);
+            }
+        }
+    }
+
+    @Test(enabled = false)
+    public void testInterpolationPerformance() throws Exception {
+        Random random = new Random(1234);
+        int numSeries = 10_000;
+        int numBuckets = 288;
+        long[][] sums = new long[numSeries][numBuckets];
+        long[][] cardinalities = new long[numSeries][numBuckets];
+        for (int i = 0; i < numSeries; i++) {
+            fill(random, 0.5, sums[i], cardinalities[i]);
+        }
+
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            long splineTotal = 0;
+            for (int i = 0; i < numSeries; i++) {
+                splineTotal += splineAverageAndInterpolate(sums[i], cardinalities[i])[numBuckets / 2];
+            }
+            long splineElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long total = 0;
+            long[] waveform = new long[numBuckets];
+            for (int i = 0; i < numSeries; i++) {
+                System.arraycopy(sums[i], 0, waveform, 0, numBuckets);
+                Anomaly.averageAndInterpolate(waveform, cardinalities[i]);
+                total += waveform[numBuckets / 2];
+            }
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(total, splineTotal);
+            System.out.println("Interpolated " + numSeries + " series of " + numBuckets + " buckets"
+                + ", spline in " + (splineElapsed / 1_000_000) + " ms"
+                + ", in place in " + (elapsed / 1_000_000) + " ms");
+        }
+    }
+
+    private static void fill(Random random, double density, long[] sums, long[] cardinalities) {
+        for (int i = 0; i < sums.length; i++) {
+            if (random.nextDouble() < density) {
+                cardinalities[i] = 1 + random.nextInt(100);
+                sums[i] = cardinalities[i] * random.nextInt(1_000_000);
+            }
+        }
+    }
+
+    /**
+     * The spline based interpolation this replaced, with constant ends at the first and last known averages.
+     */
+    private static long[] splineAverageAndInterpolate(long[] waveform, long[] cardinalities) throws Exception {
+        double[] x = new double[waveform.length];
+        double[] y = new double[waveform.length];
+        int count = 0;
+        for (int i = 0; i < waveform.length; i++) {
+            if (cardinalities[i] > 0) {
+                x[count] = i;
+                y[count] = waveform[i] / cardinalities[i];
+                count++;
+            }
+        }
+
+        long[] interpolated = new long[waveform.length];
+        if (count == 0) {
+            System.arraycopy(waveform, 0, interpolated, 0, waveform.length);
+            return interpolated;
+        }
+
+        double[] ix = new double[count + 2];
+        double[] iy = new double[count + 2];
+        System.arraycopy(x, 0, ix, 1, count);
+        System.arraycopy(y, 0, iy, 1, count);
+        ix[0] = -1;
+        iy[0] = y[0];
+        ix[ix.length - 1] = waveform.length;
+        iy[iy.length - 1] = y[count - 1];
+
+        PolynomialSplineFunction splineFunction = new LinearInterpolator().interpolate(ix, iy);
+        for (int i = 0; i < waveform.length; i++) {
+            if (cardinalities[i] > 0) {
+                interpolated[i] = waveform[i] / cardinalities[i];
+            } else {
+                interpolated[i] = (long) splineFunction.value((double) i);
+            }
+        }
+        return interpolated;
+    }
+}
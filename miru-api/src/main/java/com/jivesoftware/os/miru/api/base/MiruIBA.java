@@ -71,7 +71,7 @@ public class MiruIBA implements Comparable<MiruIBA>, Serializable {
         long randMult = 0x5_DEEC_E66DL;
         long randAdd = 0xBL;
         long randMask = (1L << 48) - 1;
-        long seed = bytes.length;
+        long seed = length; // same as bytes.length for a whole array, so slices hash like their exact copy
         for (int i = offset; i < offset + length; i++) {
             long x = (seed * randMult + randAdd) & randMask;
 
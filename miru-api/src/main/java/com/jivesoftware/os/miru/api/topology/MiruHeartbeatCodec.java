@@ -0,0 +1,194 @@
+package com.jivesoftware.os.miru.api.topology;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruPartitionCoordInfo;
+import com.jivesoftware.os.miru.api.MiruPartitionState;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a {@link MiruHeartbeatRequest}. Tenant ids are written once to a dictionary and referenced by index,
+ * partition fields are masked so unchanged values cost nothing, timestamps are zig-zag varint deltas against the previous
+ * partition, and state/storage use their explicit indexes rather than ordinals.
+ */
+public class MiruHeartbeatCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_FULL_SNAPSHOT = 1;
+
+    private static final int MASK_INFO = 1;
+    private static final int MASK_QUERY_TIMESTAMP = 2;
+    private static final int MASK_LAST_TIMESTAMP = 4;
+
+    private MiruHeartbeatCodec() {
+    }
+
+    public static byte[] encode(MiruHeartbeatRequest request) {
+        Collection<PartitionInfo> active = request.active != null ? request.active : Collections.emptyList();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + active.size() * 16);
+        out.write(VERSION);
+        out.write(request.fullSnapshot ? FLAG_FULL_SNAPSHOT : 0);
+
+        Map<MiruTenantId, Integer> tenantIndexes = Maps.newHashMap();
+        List<MiruTenantId> tenantIds = Lists.newArrayList();
+        for (PartitionInfo partitionInfo : active) {
+            if (tenantIndexes.putIfAbsent(partitionInfo.tenantId, tenantIds.size()) == null) {
+                tenantIds.add(partitionInfo.tenantId);
+            }
+        }
+        writeVarint(out, tenantIds.size());
+        for (MiruTenantId tenantId : tenantIds) {
+            writeBytes(out, tenantId.getBytes());
+        }
+
+        writeVarint(out, active.size());
+        long prevQueryTimestamp = 0;
+        long prevLastTimestamp = 0;
+        for (PartitionInfo partitionInfo : active) {
+            writeVarint(out, tenantIndexes.get(partitionInfo.tenantId));
+            writeVarint(out, partitionInfo.partitionId);
+            int mask = (partitionInfo.info != null ? MASK_INFO : 0)
+                | (partitionInfo.queryTimestamp != -1 ? MASK_QUERY_TIMESTAMP : 0)
+                | (partitionInfo.lastTimestamp != -1 ? MASK_LAST_TIMESTAMP : 0);
+            out.write(mask);
+            if (partitionInfo.info != null) {
+                writeVarint(out, partitionInfo.info.state.getIndex());
+                writeVarint(out, partitionInfo.info.storage.getIndex());
+            }
+            if (partitionInfo.queryTimestamp != -1) {
+                writeZigZag(out, partitionInfo.queryTimestamp - prevQueryTimestamp);
+                prevQueryTimestamp = partitionInfo.queryTimestamp;
+            }
+            if (partitionInfo.lastTimestamp != -1) {
+                writeZigZag(out, partitionInfo.lastTimestamp - prevLastTimestamp);
+                prevLastTimestamp = partitionInfo.lastTimestamp;
+            }
+        }
+
+        writeCursors(out, request.partitionActiveUpdatesSinceCursors);
+        writeCursors(out, request.topologyUpdatesSinceCursors);
+        return out.toByteArray();
+    }
+
+    public static MiruHeartbeatRequest decode(byte[] bytes) {
+        int[] offset = { 0 };
+        byte version = bytes[offset[0]++];
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported heartbeat version: " + version);
+        }
+        int flags = bytes[offset[0]++];
+
+        int tenantCount = readVarint(bytes, offset);
+        MiruTenantId[] tenantIds = new MiruTenantId[tenantCount];
+        for (int i = 0; i < tenantCount; i++) {
+            tenantIds[i] = new MiruTenantId(readBytes(bytes, offset));
+        }
+
+        int partitionCount = readVarint(bytes, offset);
+        List<PartitionInfo> active = Lists.newArrayListWithCapacity(partitionCount);
+        long prevQueryTimestamp = 0;
+        long prevLastTimestamp = 0;
+        for (int i = 0; i < partitionCount; i++) {
+            MiruTenantId tenantId = tenantIds[readVarint(bytes, offset)];
+            int partitionId = readVarint(bytes, offset);
+            int mask = bytes[offset[0]++];
+            MiruPartitionCoordInfo info = null;
+            long queryTimestamp = -1;
+            long lastTimestamp = -1;
+            if ((mask & MASK_INFO) != 0) {
+                MiruPartitionState state = MiruPartitionState.fromIndex(readVarint(bytes, offset));
+                MiruBackingStorage storage = MiruBackingStorage.fromIndex(readVarint(bytes, offset));
+                info = new MiruPartitionCoordInfo(state, storage);
+            }
+            if ((mask & MASK_QUERY_TIMESTAMP) != 0) {
+                queryTimestamp = prevQueryTimestamp + readZigZag(bytes, offset);
+                prevQueryTimestamp = queryTimestamp;
+            }
+            if ((mask & MASK_LAST_TIMESTAMP) != 0) {
+                lastTimestamp = prevLastTimestamp + readZigZag(bytes, offset);
+                prevLastTimestamp = lastTimestamp;
+            }
+            active.add(new PartitionInfo(tenantId, partitionId, queryTimestamp, info, lastTimestamp));
+        }
+
+        List<NamedCursor> partitionActiveCursors = readCursors(bytes, offset);
+        List<NamedCursor> topologyCursors = readCursors(bytes, offset);
+        return new MiruHeartbeatRequest(active, partitionActiveCursors, topologyCursors, (flags & FLAG_FULL_SNAPSHOT) != 0);
+    }
+
+    private static void writeCursors(ByteArrayOutputStream out, Collection<NamedCursor> cursors) {
+        if (cursors == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, cursors.size());
+        for (NamedCursor cursor : cursors) {
+            writeBytes(out, cursor.name.getBytes(StandardCharsets.UTF_8));
+            writeZigZag(out, cursor.id);
+        }
+    }
+
+    private static List<NamedCursor> readCursors(byte[] bytes, int[] offset) {
+        int count = readVarint(bytes, offset);
+        List<NamedCursor> cursors = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            String name = new String(readBytes(bytes, offset), StandardCharsets.UTF_8);
+            cursors.add(new NamedCursor(name, readZigZag(bytes, offset)));
+        }
+        return cursors;
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] readBytes(byte[] bytes, int[] offset) {
+        int length = readVarint(bytes, offset);
+        byte[] result = Arrays.copyOfRange(bytes, offset[0], offset[0] + length);
+        offset[0] += length;
+        return result;
+    }
+
+    private static void writeZigZag(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static long readZigZag(byte[] bytes, int[] offset) {
+        long value = readVarlong(bytes, offset);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] offset) {
+        return (int) readVarlong(bytes, offset);
+    }
+
+    private static long readVarlong(byte[] bytes, int[] offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
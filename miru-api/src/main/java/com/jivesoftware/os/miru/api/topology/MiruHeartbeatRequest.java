@@ -11,6 +11,7 @@ public class MiruHeartbeatRequest {
     public Collection<PartitionInfo> active;
     public Collection<NamedCursor> partitionActiveUpdatesSinceCursors;
     public Collection<NamedCursor> topologyUpdatesSinceCursors;
+    public boolean fullSnapshot; // true when active carries the complete state of every partition on the host
 
     public MiruHeartbeatRequest() {
     }
@@ -18,9 +19,17 @@ public class MiruHeartbeatRequest {
     public MiruHeartbeatRequest(Collection<PartitionInfo> active,
         Collection<NamedCursor> partitionActiveUpdatesSinceCursors,
         Collection<NamedCursor> topologyUpdatesSinceCursors) {
+        this(active, partitionActiveUpdatesSinceCursors, topologyUpdatesSinceCursors, false);
+    }
+
+    public MiruHeartbeatRequest(Collection<PartitionInfo> active,
+        Collection<NamedCursor> partitionActiveUpdatesSinceCursors,
+        Collection<NamedCursor> topologyUpdatesSinceCursors,
+        boolean fullSnapshot) {
         this.active = active;
         this.partitionActiveUpdatesSinceCursors = partitionActiveUpdatesSinceCursors;
         this.topologyUpdatesSinceCursors = topologyUpdatesSinceCursors;
+        this.fullSnapshot = fullSnapshot;
     }
 
 }
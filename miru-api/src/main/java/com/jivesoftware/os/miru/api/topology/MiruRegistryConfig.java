@@ -25,4 +25,8 @@ public interface MiruRegistryConfig extends Config {
     // 180 days
     @LongDefault(15_552_000_000L)
     long getDefaultTopologyCleanupAfterMillis();
+
+    // concurrent commits of tenant topology markers to the hosts
+    @IntDefault(8)
+    int getTopologyUpdatesConcurrency();
 }
@@ -0,0 +1,39 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import java.util.List;
+
+/**
+ * Partitions written to a WAL node since a subscriber's last sequence. A reset means the subscriber's instanceId did not match,
+ * e.g. the WAL node restarted, and the subscriber should treat every partition as changed.
+ */
+public class MiruWALChanges {
+
+    public final long instanceId;
+    public final long sequence;
+    public final boolean reset;
+    public final List<TenantAndPartition> changes;
+
+    @JsonCreator
+    public MiruWALChanges(@JsonProperty("instanceId") long instanceId,
+        @JsonProperty("sequence") long sequence,
+        @JsonProperty("reset") boolean reset,
+        @JsonProperty("changes") List<TenantAndPartition> changes) {
+        this.instanceId = instanceId;
+        this.sequence = sequence;
+        this.reset = reset;
+        this.changes = changes;
+    }
+
+    @Override
+    public String toString() {
+        return "MiruWALChanges{" +
+            "instanceId=" + instanceId +
+            ", sequence=" + sequence +
+            ", reset=" + reset +
+            ", changes=" + changes +
+            '}';
+    }
+}
@@ -7,6 +7,7 @@ import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.routing.bird.shared.HostPort;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
@@ -68,6 +69,35 @@ public interface MiruWALClient<C extends MiruCursor<C, S>, S extends MiruSipCurs
     StreamBatch<MiruWALEntry, S> sipActivity(MiruTenantId tenantId,
         MiruPartitionId partitionId, S cursor, Set<TimeAndVersion> lastSeen, int batchSize) throws Exception;
 
+    /**
+     * @return true if the WAL nodes can be polled for changes, in which case the change feed methods below are implemented
+     */
+    default boolean supportsChangeFeed() {
+        return false;
+    }
+
+    /**
+     * @return the WAL nodes this client has routed to which can be polled for changes, empty if change notification is unsupported
+     */
+    default List<HostPort> getChangeFeedHosts() throws Exception {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the WAL nodes this client last routed the partition's activity to, empty if it has not been routed yet
+     */
+    default List<HostPort> getChangeFeedHosts(MiruTenantId tenantId, MiruPartitionId partitionId) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Long-polls a WAL node for partitions written since the given sequence, returning early as soon as there are changes. Only
+     * called when {@link #supportsChangeFeed()}.
+     */
+    default MiruWALChanges pollChanges(HostPort host, long instanceId, long sinceSequence, long timeoutMillis) throws Exception {
+        throw new IllegalStateException("Change feed is not supported by this WAL client");
+    }
+
     class StreamBatch<T, C> {
 
         public List<T> activities; // non final for json ser-der
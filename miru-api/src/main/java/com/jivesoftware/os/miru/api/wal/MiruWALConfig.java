@@ -2,6 +2,7 @@ package com.jivesoftware.os.miru.api.wal;
 
 import org.merlin.config.Config;
 import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.StringDefault;
 
 /**
@@ -17,4 +18,13 @@ public interface MiruWALConfig extends Config {
 
     @BooleanDefault(false)
     boolean getSecondaryAmzaWAL();
+
+    @IntDefault(1_000)
+    int getActivityFrameSize(); // entries per compressed block in binary activity responses
+
+    @BooleanDefault(false)
+    boolean getBinaryActivityTransport(); // client side, requires a WAL serving the binary activity endpoints
+
+    @IntDefault(10_000)
+    int getChangeFeedMaxChangesPerPoll();
 }
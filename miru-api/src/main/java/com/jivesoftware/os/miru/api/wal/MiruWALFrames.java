@@ -0,0 +1,542 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.topology.NamedCursor;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Binary transport for WAL activity batches. A body is a sequence of length-prefixed frames:
+ * <pre>
+ *   [byte ACTIVITIES][int compressedLength][int entryCount][snappy block]   (zero or more)
+ *   [byte TRAILER][int length][cursor, endOfWAL, suppressed]               (exactly one, last)
+ * </pre>
+ * Each activity block carries its own inline string and tenant dictionaries so frames decode independently as they arrive.
+ * Timestamps and versions are zig-zag varint deltas against the previous entry in the frame. Read events are rare on the
+ * activity WAL and are embedded as json.
+ */
+public class MiruWALFrames {
+
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final byte FRAME_ACTIVITIES = 1;
+    private static final byte FRAME_TRAILER = 2;
+
+    private static final int FLAG_ACTIVITY = 1;
+    private static final int FLAG_READ_EVENT = 2;
+    private static final int FLAG_REALTIME = 4;
+
+    private static final MiruPartitionedActivity.Type[] TYPES = MiruPartitionedActivity.Type.values();
+
+    public interface CursorCodec<C> {
+
+        void write(C cursor, DataOutputStream out) throws IOException;
+
+        C read(DataInputStream in) throws IOException;
+    }
+
+    public interface EntryStream {
+
+        boolean stream(MiruWALEntry entry) throws Exception;
+    }
+
+    public static final CursorCodec<AmzaSipCursor> SIP_CURSOR_CODEC = new CursorCodec<AmzaSipCursor>() {
+        @Override
+        public void write(AmzaSipCursor cursor, DataOutputStream out) throws IOException {
+            writeNamedCursors(cursor.cursors, out);
+            out.writeBoolean(cursor.endOfStream);
+        }
+
+        @Override
+        public AmzaSipCursor read(DataInputStream in) throws IOException {
+            List<NamedCursor> cursors = readNamedCursors(in);
+            return new AmzaSipCursor(cursors, in.readBoolean());
+        }
+    };
+
+    public static final CursorCodec<AmzaCursor> CURSOR_CODEC = new CursorCodec<AmzaCursor>() {
+        @Override
+        public void write(AmzaCursor cursor, DataOutputStream out) throws IOException {
+            writeNamedCursors(cursor.cursors, out);
+            out.writeBoolean(cursor.sipCursor != null);
+            if (cursor.sipCursor != null) {
+                SIP_CURSOR_CODEC.write(cursor.sipCursor, out);
+            }
+        }
+
+        @Override
+        public AmzaCursor read(DataInputStream in) throws IOException {
+            List<NamedCursor> cursors = readNamedCursors(in);
+            AmzaSipCursor sipCursor = in.readBoolean() ? SIP_CURSOR_CODEC.read(in) : null;
+            return new AmzaCursor(cursors, sipCursor);
+        }
+    };
+
+    private final ObjectMapper mapper;
+    private final int entriesPerFrame;
+
+    public MiruWALFrames(ObjectMapper mapper, int entriesPerFrame) {
+        this.mapper = mapper;
+        this.entriesPerFrame = entriesPerFrame;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public <C> long write(StreamBatch<MiruWALEntry, C> batch, CursorCodec<C> cursorCodec, OutputStream outputStream) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(outputStream);
+        DataOutputStream out = new DataOutputStream(counting);
+        List<MiruWALEntry> activities = batch.activities != null ? batch.activities : Lists.newArrayList();
+        FrameEncoder encoder = new FrameEncoder();
+        for (int i = 0; i < activities.size(); i += entriesPerFrame) {
+            int end = Math.min(activities.size(), i + entriesPerFrame);
+            encoder.reset();
+            for (int j = i; j < end; j++) {
+                encoder.encode(activities.get(j));
+            }
+            byte[] compressed = Snappy.compress(encoder.buf.toByteArray());
+            out.writeByte(FRAME_ACTIVITIES);
+            out.writeInt(compressed.length);
+            out.writeInt(end - i);
+            out.write(compressed);
+            out.flush();
+        }
+
+        ByteArrayOutputStream trailerBytes = new ByteArrayOutputStream();
+        DataOutputStream trailer = new DataOutputStream(trailerBytes);
+        trailer.writeBoolean(batch.cursor != null);
+        if (batch.cursor != null) {
+            cursorCodec.write(batch.cursor, trailer);
+        }
+        trailer.writeBoolean(batch.endOfWAL);
+        trailer.writeBoolean(batch.suppressed != null);
+        if (batch.suppressed != null) {
+            writeVarint(trailer, batch.suppressed.size());
+            for (TimeAndVersion timeAndVersion : batch.suppressed) {
+                writeZigZag(trailer, timeAndVersion.timestamp);
+                writeZigZag(trailer, timeAndVersion.version);
+            }
+        }
+        trailer.flush();
+        out.writeByte(FRAME_TRAILER);
+        out.writeInt(trailerBytes.size());
+        trailerBytes.writeTo(out);
+        out.flush();
+        return counting.count;
+    }
+
+    /**
+     * Decodes frames as they are read from the stream, handing each entry to the stream as soon as its frame is complete.
+     * Returns the batch with the entries that were streamed, or with no entries if the stream asked to stop.
+     */
+    public <C> StreamBatch<MiruWALEntry, C> read(InputStream inputStream, CursorCodec<C> cursorCodec, EntryStream stream) throws Exception {
+        DataInputStream in = new DataInputStream(inputStream);
+        FrameDecoder decoder = new FrameDecoder();
+        boolean streaming = true;
+        while (true) {
+            int frameType = in.read();
+            if (frameType == -1) {
+                throw new EOFException("Stream ended without a trailer");
+            }
+            int length = in.readInt();
+            if (frameType == FRAME_ACTIVITIES) {
+                int count = in.readInt();
+                byte[] compressed = new byte[length];
+                in.readFully(compressed);
+                decoder.reset(Snappy.uncompress(compressed));
+                for (int i = 0; i < count && streaming; i++) {
+                    streaming = stream.stream(decoder.decode());
+                }
+            } else if (frameType == FRAME_TRAILER) {
+                byte[] trailerBytes = new byte[length];
+                in.readFully(trailerBytes);
+                DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(trailerBytes));
+                C cursor = trailer.readBoolean() ? cursorCodec.read(trailer) : null;
+                boolean endOfWAL = trailer.readBoolean();
+                Set<TimeAndVersion> suppressed = null;
+                if (trailer.readBoolean()) {
+                    int count = readVarint(trailer);
+                    suppressed = Sets.newHashSetWithExpectedSize(count);
+                    for (int i = 0; i < count; i++) {
+                        suppressed.add(new TimeAndVersion(readZigZag(trailer), readZigZag(trailer)));
+                    }
+                }
+                return new StreamBatch<>(null, cursor, endOfWAL, suppressed);
+            } else {
+                throw new IOException("Unknown frame type: " + frameType);
+            }
+        }
+    }
+
+    public <C> StreamBatch<MiruWALEntry, C> read(InputStream inputStream, CursorCodec<C> cursorCodec) throws Exception {
+        List<MiruWALEntry> activities = Lists.newArrayList();
+        StreamBatch<MiruWALEntry, C> batch = read(inputStream, cursorCodec, activities::add);
+        batch.activities = activities;
+        return batch;
+    }
+
+    private class FrameEncoder {
+
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(64 * 1024);
+        private final DataOutputStream out = new DataOutputStream(buf);
+        private final Map<String, Integer> strings = Maps.newHashMap();
+        private final Map<ByteBuffer, Integer> tenants = Maps.newHashMap();
+        private long prevVersion;
+        private long prevTimestamp;
+        private long prevClockTimestamp;
+
+        private void reset() {
+            buf.reset();
+            strings.clear();
+            tenants.clear();
+            prevVersion = 0;
+            prevTimestamp = 0;
+            prevClockTimestamp = 0;
+        }
+
+        private void encode(MiruWALEntry entry) throws IOException {
+            MiruPartitionedActivity partitioned = entry.activity;
+            writeZigZag(out, entry.collisionId - partitioned.timestamp);
+            writeZigZag(out, entry.version - prevVersion);
+            prevVersion = entry.version;
+
+            writeVarint(out, partitioned.type.ordinal());
+            writeVarint(out, partitioned.writerId);
+            writeVarint(out, partitioned.partitionId.getId());
+            writeTenant(partitioned.tenantId);
+            writeVarint(out, partitioned.index);
+            writeZigZag(out, partitioned.timestamp - prevTimestamp);
+            prevTimestamp = partitioned.timestamp;
+            writeZigZag(out, partitioned.clockTimestamp - prevClockTimestamp);
+            prevClockTimestamp = partitioned.clockTimestamp;
+
+            MiruActivity activity = partitioned.activity.orNull();
+            MiruReadEvent readEvent = partitioned.readEvent.orNull();
+            int flags = (activity != null ? FLAG_ACTIVITY : 0)
+                | (readEvent != null ? FLAG_READ_EVENT : 0)
+                | (activity != null && activity.realtimeDelivery ? FLAG_REALTIME : 0);
+            out.writeByte(flags);
+
+            if (activity != null) {
+                writeTenant(activity.tenantId);
+                writeZigZag(out, activity.time - partitioned.timestamp);
+                writeZigZag(out, activity.version - entry.version);
+                if (activity.authz == null) {
+                    writeVarint(out, 0);
+                } else {
+                    writeVarint(out, activity.authz.length + 1);
+                    for (String authz : activity.authz) {
+                        writeString(authz);
+                    }
+                }
+                writeValues(activity.fieldsValues);
+                writeValues(activity.propsValues);
+            }
+            if (readEvent != null) {
+                byte[] json = mapper.writeValueAsBytes(readEvent);
+                writeVarint(out, json.length);
+                out.write(json);
+            }
+        }
+
+        private void writeValues(Map<String, List<String>> values) throws IOException {
+            if (values == null) {
+                writeVarint(out, 0);
+                return;
+            }
+            writeVarint(out, values.size() + 1);
+            for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+                writeString(entry.getKey());
+                List<String> list = entry.getValue();
+                if (list == null) {
+                    writeVarint(out, 0);
+                } else {
+                    writeVarint(out, list.size() + 1);
+                    for (String value : list) {
+                        writeString(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 0 is null, 1 introduces a new dictionary entry, n + 2 references dictionary entry n.
+         */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(out, 0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(out, index + 2);
+            } else {
+                strings.put(value, strings.size());
+                writeVarint(out, 1);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private void writeTenant(MiruTenantId tenantId) throws IOException {
+            if (tenantId == null) {
+                writeVarint(out, 0);
+                return;
+            }
+            byte[] bytes = tenantId.getBytes();
+            ByteBuffer key = ByteBuffer.wrap(bytes);
+            Integer index = tenants.get(key);
+            if (index != null) {
+                writeVarint(out, index + 2);
+            } else {
+                tenants.put(key, tenants.size());
+                writeVarint(out, 1);
+                writeVarint(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private class FrameDecoder {
+
+        private final List<String> strings = Lists.newArrayList();
+        private final List<byte[]> tenants = Lists.newArrayList();
+        private byte[] bytes;
+        private int offset;
+        private long prevVersion;
+        private long prevTimestamp;
+        private long prevClockTimestamp;
+
+        private void reset(byte[] bytes) {
+            this.bytes = bytes;
+            this.offset = 0;
+            strings.clear();
+            tenants.clear();
+            prevVersion = 0;
+            prevTimestamp = 0;
+            prevClockTimestamp = 0;
+        }
+
+        private MiruWALEntry decode() throws IOException {
+            long collisionDelta = zigZag(varlong());
+            long version = prevVersion + zigZag(varlong());
+            prevVersion = version;
+
+            MiruPartitionedActivity.Type type = TYPES[(int) varlong()];
+            int writerId = (int) varlong();
+            int partitionId = (int) varlong();
+            byte[] tenantId = readTenant();
+            int index = (int) varlong();
+            long timestamp = prevTimestamp + zigZag(varlong());
+            prevTimestamp = timestamp;
+            long clockTimestamp = prevClockTimestamp + zigZag(varlong());
+            prevClockTimestamp = clockTimestamp;
+
+            int flags = bytes[offset++];
+            MiruActivity activity = null;
+            MiruReadEvent readEvent = null;
+            if ((flags & FLAG_ACTIVITY) != 0) {
+                byte[] activityTenantId = readTenant();
+                long time = timestamp + zigZag(varlong());
+                long activityVersion = version + zigZag(varlong());
+                int authzCount = (int) varlong();
+                String[] authz = null;
+                if (authzCount > 0) {
+                    authz = new String[authzCount - 1];
+                    for (int i = 0; i < authz.length; i++) {
+                        authz[i] = readString();
+                    }
+                }
+                Map<String, List<String>> fieldsValues = readValues();
+                Map<String, List<String>> propsValues = readValues();
+                activity = new MiruActivity(activityTenantId != null ? new MiruTenantId(activityTenantId) : null,
+                    time,
+                    activityVersion,
+                    (flags & FLAG_REALTIME) != 0,
+                    authz,
+                    fieldsValues,
+                    propsValues);
+            }
+            if ((flags & FLAG_READ_EVENT) != 0) {
+                int length = (int) varlong();
+                readEvent = mapper.readValue(bytes, offset, length, MiruReadEvent.class);
+                offset += length;
+            }
+
+            MiruPartitionedActivity partitioned = MiruPartitionedActivity.fromJson(type, writerId, partitionId, tenantId, index, timestamp, clockTimestamp,
+                activity, readEvent);
+            return new MiruWALEntry(timestamp + collisionDelta, version, partitioned);
+        }
+
+        private Map<String, List<String>> readValues() {
+            int count = (int) varlong();
+            if (count == 0) {
+                return null;
+            }
+            Map<String, List<String>> values = Maps.newHashMapWithExpectedSize(count - 1);
+            for (int i = 0; i < count - 1; i++) {
+                String key = readString();
+                int size = (int) varlong();
+                List<String> list = null;
+                if (size > 0) {
+                    list = Lists.newArrayListWithCapacity(size - 1);
+                    for (int j = 0; j < size - 1; j++) {
+                        list.add(readString());
+                    }
+                }
+                values.put(key, list);
+            }
+            return values;
+        }
+
+        private String readString() {
+            int ref = (int) varlong();
+            if (ref == 0) {
+                return null;
+            } else if (ref == 1) {
+                int length = (int) varlong();
+                String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+                offset += length;
+                strings.add(value);
+                return value;
+            } else {
+                return strings.get(ref - 2);
+            }
+        }
+
+        private byte[] readTenant() {
+            int ref = (int) varlong();
+            if (ref == 0) {
+                return null;
+            } else if (ref == 1) {
+                int length = (int) varlong();
+                byte[] tenant = Arrays.copyOfRange(bytes, offset, offset + length);
+                offset += length;
+                tenants.add(tenant);
+                return tenant;
+            } else {
+                return tenants.get(ref - 2);
+            }
+        }
+
+        private long varlong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    private static void writeNamedCursors(Collection<NamedCursor> cursors, DataOutputStream out) throws IOException {
+        writeVarint(out, cursors.size());
+        for (NamedCursor cursor : cursors) {
+            byte[] name = cursor.name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, name.length);
+            out.write(name);
+            writeZigZag(out, cursor.id);
+        }
+    }
+
+    private static List<NamedCursor> readNamedCursors(DataInputStream in) throws IOException {
+        int count = readVarint(in);
+        List<NamedCursor> cursors = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[readVarint(in)];
+            in.readFully(name);
+            cursors.add(new NamedCursor(new String(name, StandardCharsets.UTF_8), readZigZag(in)));
+        }
+        return cursors;
+    }
+
+    private static void writeZigZag(DataOutputStream out, long value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readZigZag(DataInputStream in) throws IOException {
+        return zigZag(readVarlong(in));
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        return (int) readVarlong(in);
+    }
+
+    private static long readVarlong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream delegate;
+        private long count;
+
+        private CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.jivesoftware.os.miru.api.topology;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruPartitionCoordInfo;
+import com.jivesoftware.os.miru.api.MiruPartitionState;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruHeartbeatCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MiruTenantId tenant1 = new MiruTenantId("tenant1".getBytes(StandardCharsets.UTF_8));
+        MiruTenantId tenant2 = new MiruTenantId("tenant2".getBytes(StandardCharsets.UTF_8));
+        List<PartitionInfo> active = Arrays.asList(
+            new PartitionInfo(tenant1, 0, 1_450_000_000_000L, new MiruPartitionCoordInfo(MiruPartitionState.online, MiruBackingStorage.disk), -1),
+            new PartitionInfo(tenant1, 1, -1, null, 374353459262005248L),
+            new PartitionInfo(tenant2, 123_456, 1_449_999_999_000L, new MiruPartitionCoordInfo(MiruPartitionState.upgrading, MiruBackingStorage.memory),
+                374353307960893440L),
+            new PartitionInfo(tenant2, 7, -1, null, -1));
+        MiruHeartbeatRequest request = new MiruHeartbeatRequest(active,
+            Arrays.asList(new NamedCursor("00001_4846848290113083095", 374353459262005248L)),
+            Arrays.asList(new NamedCursor("a", 0), new NamedCursor("b", -1)),
+            true);
+
+        MiruHeartbeatRequest decoded = MiruHeartbeatCodec.decode(MiruHeartbeatCodec.encode(request));
+
+        assertTrue(decoded.fullSnapshot);
+        assertEquals(decoded.active.size(), active.size());
+        List<PartitionInfo> decodedActive = Lists.newArrayList(decoded.active);
+        for (int i = 0; i < active.size(); i++) {
+            PartitionInfo expected = active.get(i);
+            PartitionInfo got = decodedActive.get(i);
+            assertEquals(got.tenantId, expected.tenantId);
+            assertEquals(got.partitionId, expected.partitionId);
+            assertEquals(got.queryTimestamp, expected.queryTimestamp);
+            assertEquals(got.info, expected.info);
+            assertEquals(got.lastTimestamp, expected.lastTimestamp);
+        }
+        assertCursors(decoded.partitionActiveUpdatesSinceCursors, request.partitionActiveUpdatesSinceCursors);
+        assertCursors(decoded.topologyUpdatesSinceCursors, request.topologyUpdatesSinceCursors);
+    }
+
+    @Test
+    public void testSmallerThanJson() throws Exception {
+        List<PartitionInfo> active = Lists.newArrayList();
+        long now = 1_450_000_000_000L;
+        for (int t = 0; t < 100; t++) {
+            MiruTenantId tenantId = new MiruTenantId(("tenant" + t).getBytes(StandardCharsets.UTF_8));
+            for (int p = 0; p < 10; p++) {
+                active.add(new PartitionInfo(tenantId, p, now - t * 1_000 - p,
+                    new MiruPartitionCoordInfo(MiruPartitionState.online, MiruBackingStorage.disk), now - t * 10_000));
+            }
+        }
+        MiruHeartbeatRequest request = new MiruHeartbeatRequest(active, Arrays.asList(), Arrays.asList(), false);
+
+        int binary = MiruHeartbeatCodec.encode(request).length;
+        int json = new ObjectMapper().writeValueAsBytes(request).length;
+        assertTrue(binary * 5 < json, "binary:" + binary + " json:" + json);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        MiruHeartbeatRequest decoded = MiruHeartbeatCodec.decode(MiruHeartbeatCodec.encode(new MiruHeartbeatRequest(Arrays.asList(), null, null)));
+        assertTrue(decoded.active.isEmpty());
+        assertTrue(decoded.partitionActiveUpdatesSinceCursors.isEmpty());
+        assertTrue(decoded.topologyUpdatesSinceCursors.isEmpty());
+    }
+
+    private void assertCursors(Collection<NamedCursor> got, Collection<NamedCursor> expected) {
+        List<NamedCursor> gotList = Lists.newArrayList(got);
+        List<NamedCursor> expectedList = Lists.newArrayList(expected);
+        assertEquals(gotList.size(), expectedList.size());
+        for (int i = 0; i < expectedList.size(); i++) {
+            assertEquals(gotList.get(i).name, expectedList.get(i).name);
+            assertEquals(gotList.get(i).id, expectedList.get(i).id);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.jivesoftware.os.miru.api.wal;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
+import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.topology.NamedCursor;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruWALFramesTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final MiruTenantId tenantId = new MiruTenantId("tenant1".getBytes(StandardCharsets.UTF_8));
+    private final MiruPartitionedActivityFactory factory = new MiruPartitionedActivityFactory(() -> 1_450_000_000_000L);
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<MiruWALEntry> entries = entries(2_500, 0);
+        MiruReadEvent readEvent = new MiruReadEvent(tenantId.getBytes(), 1_450_000_000_123L, "stream".getBytes(StandardCharsets.UTF_8), MiruFilter.NO_FILTER);
+        entries.add(new MiruWALEntry(1_450_000_000_123L, 2L, factory.read(1, MiruPartitionId.of(3), 17, readEvent)));
+        entries.add(new MiruWALEntry(Long.MAX_VALUE, 3L, factory.begin(1, MiruPartitionId.of(3), tenantId, 42)));
+
+        AmzaCursor cursor = new AmzaCursor(Arrays.asList(new NamedCursor("00001_4846848290113083095", 374353459262005248L)),
+            new AmzaSipCursor(Arrays.asList(new NamedCursor("00002_5460278797972548316", 374353307965079552L)), true));
+        StreamBatch<MiruWALEntry, AmzaCursor> batch = new StreamBatch<>(entries, cursor, true,
+            Sets.newHashSet(new TimeAndVersion(1L, 2L), new TimeAndVersion(-1L, Long.MAX_VALUE)));
+
+        MiruWALFrames frames = new MiruWALFrames(mapper, 1_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = frames.write(batch, MiruWALFrames.CURSOR_CODEC, out);
+        assertEquals(written, out.size());
+
+        StreamBatch<MiruWALEntry, AmzaCursor> decoded = frames.read(new ByteArrayInputStream(out.toByteArray()), MiruWALFrames.CURSOR_CODEC);
+        assertEquals(decoded.activities.size(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEntry(decoded.activities.get(i), entries.get(i));
+        }
+        assertEquals(decoded.cursor.cursors.get(0).name, cursor.cursors.get(0).name);
+        assertEquals(decoded.cursor.cursors.get(0).id, cursor.cursors.get(0).id);
+        assertEquals(decoded.cursor.sipCursor.cursors.get(0).id, cursor.sipCursor.cursors.get(0).id);
+        assertTrue(decoded.cursor.sipCursor.endOfStream);
+        assertTrue(decoded.endOfWAL);
+        assertEquals(decoded.suppressed, batch.suppressed);
+    }
+
+    @Test
+    public void testEmptySip() throws Exception {
+        MiruWALFrames frames = new MiruWALFrames(mapper, 1_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frames.write(new StreamBatch<MiruWALEntry, AmzaSipCursor>(Lists.newArrayList(), null, false, null), MiruWALFrames.SIP_CURSOR_CODEC, out);
+
+        StreamBatch<MiruWALEntry, AmzaSipCursor> decoded = frames.read(new ByteArrayInputStream(out.toByteArray()), MiruWALFrames.SIP_CURSOR_CODEC);
+        assertTrue(decoded.activities.isEmpty());
+        assertNull(decoded.cursor);
+        assertFalse(decoded.endOfWAL);
+        assertNull(decoded.suppressed);
+    }
+
+    @Test
+    public void testIncrementalDecode() throws Exception {
+        List<MiruWALEntry> entries = entries(5_000, 1);
+        MiruWALFrames frames = new MiruWALFrames(mapper, 100);
+        PipedInputStream in = new PipedInputStream(4 * 1024);
+        PipedOutputStream out = new PipedOutputStream(in);
+
+        // the writer blocks once the pipe is full, so the reader must consume frames before the body is complete
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> written = executor.submit(() -> {
+                try {
+                    return frames.write(new StreamBatch<>(entries, null, false, null), MiruWALFrames.SIP_CURSOR_CODEC, out);
+                } finally {
+                    out.close();
+                }
+            });
+            AtomicInteger streamed = new AtomicInteger();
+            AtomicBoolean streamedBeforeWritten = new AtomicBoolean();
+            frames.read(in, MiruWALFrames.SIP_CURSOR_CODEC, entry -> {
+                if (streamed.get() == 0) {
+                    streamedBeforeWritten.set(!written.isDone());
+                }
+                assertEntry(entry, entries.get(streamed.getAndIncrement()));
+                return true;
+            });
+            assertEquals(streamed.get(), entries.size());
+            assertTrue(streamedBeforeWritten.get());
+            assertTrue(written.get() > 4 * 1024);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBytesAndDecodePer10kVersusJson() throws Exception {
+        List<MiruWALEntry> entries = entries(10_000, 2);
+        StreamBatch<MiruWALEntry, AmzaCursor> batch = new StreamBatch<>(entries,
+            new AmzaCursor(Arrays.asList(new NamedCursor("00001_4846848290113083095", 374353459262005248L)), null), false, null);
+        MiruWALFrames frames = new MiruWALFrames(mapper, 1_000);
+        JavaType jsonType = mapper.getTypeFactory().constructParametricType(StreamBatch.class, MiruWALEntry.class, AmzaCursor.class);
+
+        ByteArrayOutputStream binaryOut = new ByteArrayOutputStream();
+        frames.write(batch, MiruWALFrames.CURSOR_CODEC, binaryOut);
+        byte[] binary = binaryOut.toByteArray();
+        byte[] json = mapper.writeValueAsBytes(batch);
+
+        long binaryNanos = Long.MAX_VALUE;
+        long jsonNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            StreamBatch<MiruWALEntry, AmzaCursor> decoded = frames.read(new ByteArrayInputStream(binary), MiruWALFrames.CURSOR_CODEC);
+            binaryNanos = Math.min(binaryNanos, System.nanoTime() - start);
+            assertEquals(decoded.activities.size(), entries.size());
+
+            start = System.nanoTime();
+            StreamBatch<MiruWALEntry, AmzaCursor> decodedJson = mapper.readValue(json, jsonType);
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+            assertEquals(decodedJson.activities.size(), entries.size());
+        }
+
+        System.out.println("Per 10k activities: binary " + binary.length + " bytes in " + (binaryNanos / 1_000) + " us,"
+            + " json " + json.length + " bytes in " + (jsonNanos / 1_000) + " us");
+        assertTrue(binary.length * 4 < json.length, "binary:" + binary.length + " json:" + json.length);
+    }
+
+    private List<MiruWALEntry> entries(int count, long seed) {
+        Random random = new Random(seed);
+        String[] verbs = { "created", "modified", "commented", "liked", "shared" };
+        List<MiruWALEntry> entries = Lists.newArrayList();
+        long time = 1_450_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            time += 1 + random.nextInt(1_000);
+            MiruActivity activity = new MiruActivity.Builder(tenantId, time, time, random.nextBoolean(),
+                new String[] { "place_" + random.nextInt(100) })
+                .putFieldValue("objectId", "2_" + random.nextInt(1_000_000))
+                .putFieldValue("verb", verbs[random.nextInt(verbs.length)])
+                .putFieldValue("authors", "3_" + random.nextInt(1_000))
+                .putFieldValue("parent", "14_" + random.nextInt(10_000))
+                .putPropValue("subject", "Subject " + random.nextInt(100))
+                .build();
+            MiruPartitionedActivity partitioned = random.nextInt(10) == 0
+                ? factory.repair(1, MiruPartitionId.of(3), i, activity)
+                : factory.activity(1, MiruPartitionId.of(3), i, activity);
+            entries.add(new MiruWALEntry(time, time + random.nextInt(10), partitioned));
+        }
+        return entries;
+    }
+
+    private void assertEntry(MiruWALEntry got, MiruWALEntry expected) {
+        assertEquals(got.collisionId, expected.collisionId);
+        assertEquals(got.version, expected.version);
+        MiruPartitionedActivity gotActivity = got.activity;
+        MiruPartitionedActivity expectedActivity = expected.activity;
+        assertEquals(gotActivity.type, expectedActivity.type);
+        assertEquals(gotActivity.writerId, expectedActivity.writerId);
+        assertEquals(gotActivity.partitionId, expectedActivity.partitionId);
+        assertEquals(gotActivity.tenantId, expectedActivity.tenantId);
+        assertEquals(gotActivity.index, expectedActivity.index);
+        assertEquals(gotActivity.timestamp, expectedActivity.timestamp);
+        assertEquals(gotActivity.clockTimestamp, expectedActivity.clockTimestamp);
+        assertEquals(gotActivity.readEvent.orNull(), expectedActivity.readEvent.orNull());
+        assertEquals(gotActivity.activity.isPresent(), expectedActivity.activity.isPresent());
+        if (expectedActivity.activity.isPresent()) {
+            MiruActivity gotMiruActivity = gotActivity.activity.get();
+            MiruActivity expectedMiruActivity = expectedActivity.activity.get();
+            assertEquals(gotMiruActivity.tenantId, expectedMiruActivity.tenantId);
+            assertEquals(gotMiruActivity.time, expectedMiruActivity.time);
+            assertEquals(gotMiruActivity.version, expectedMiruActivity.version);
+            assertEquals(gotMiruActivity.realtimeDelivery, expectedMiruActivity.realtimeDelivery);
+            assertEquals(gotMiruActivity.authz, expectedMiruActivity.authz);
+            assertEquals(gotMiruActivity.fieldsValues, expectedMiruActivity.fieldsValues);
+            assertEquals(gotMiruActivity.propsValues, expectedMiruActivity.propsValues);
+        }
+    }
+}
@@ -126,6 +126,11 @@ public class MiruBitmapsRoaring implements MiruBitmaps<RoaringBitmap, RoaringBit
         RoaringInspection.cardinalityInBuckets(bitmap, indexBoundaries, rawWaveforms);
     }
 
+    @Override
+    public void boundedCardinalities(List<RoaringBitmap> bitmaps, int[] indexBoundaries, long[][] rawWaveforms) {
+        RoaringInspection.cardinalityInBuckets(bitmaps.toArray(new RoaringBitmap[bitmaps.size()]), indexBoundaries, rawWaveforms);
+    }
+
     @Override
     public RoaringBitmap create() {
         return new RoaringBitmap();
@@ -288,6 +288,61 @@ public class RoaringInspection {
         }
     }
 
+    /**
+     * Cardinalities in buckets for several bitmaps in a single walk of the boundaries, e.g. every bit plane of a bit-sliced value.
+     * The bucket for each container is resolved once for all bitmaps, and containers which fall entirely within a bucket are
+     * counted by their cardinality. Null bitmaps are skipped.
+     */
+    public static void cardinalityInBuckets(RoaringBitmap[] bitmaps, int[] indexes, long[][] buckets) {
+        int numBuckets = indexes.length - 1;
+        if (numBuckets < 1 || indexes[numBuckets] <= indexes[0]) {
+            return;
+        }
+        int[] positions = new int[bitmaps.length];
+        int firstKey = indexes[0] >>> 16;
+        int lastKey = (indexes[numBuckets] - 1) >>> 16;
+        int bucket = 0;
+        for (int key = firstKey; key <= lastKey; key++) {
+            int min = key << 16;
+            int max = min + (1 << 16);
+            while (indexes[bucket + 1] <= min) {
+                bucket++;
+            }
+            boolean contained = indexes[bucket] <= min && max <= indexes[bucket + 1];
+            for (int b = 0; b < bitmaps.length; b++) {
+                if (bitmaps[b] == null) {
+                    continue;
+                }
+                RoaringArray array = bitmaps[b].highLowContainer;
+                int pos = positions[b];
+                while (pos < array.size() && toIntUnsigned(array.getKeyAtIndex(pos)) < key) {
+                    pos++;
+                }
+                positions[b] = pos;
+                if (pos == array.size() || toIntUnsigned(array.getKeyAtIndex(pos)) != key) {
+                    continue;
+                }
+                Container container = array.getContainerAtIndex(pos);
+                if (contained) {
+                    buckets[b][bucket] += container.getCardinality();
+                } else {
+                    for (int bi = bucket; bi < numBuckets && indexes[bi] < max; bi++) {
+                        int start = Math.max(indexes[bi], min);
+                        int end = Math.min(indexes[bi + 1], max);
+                        if (start < end) {
+                            buckets[b][bi] += rangeCardinality(container, start - min, end - min);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int rangeCardinality(Container container, int startInclusive, int endExclusive) {
+        int rank = container.rank((short) (endExclusive - 1));
+        return startInclusive > 0 ? rank - container.rank((short) (startInclusive - 1)) : rank;
+    }
+
     private static int containerMin(RoaringBitmap bitmap, int pos) {
         return toIntUnsigned(bitmap.highLowContainer.getKeyAtIndex(pos)) << 16;
     }
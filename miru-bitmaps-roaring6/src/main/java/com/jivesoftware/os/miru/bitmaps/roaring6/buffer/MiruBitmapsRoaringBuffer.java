@@ -128,6 +128,11 @@ public class MiruBitmapsRoaringBuffer implements MiruBitmaps<MutableRoaringBitma
         RoaringBufferInspection.cardinalityInBuckets(bitmap, indexBoundaries, rawWaveform);
     }
 
+    @Override
+    public void boundedCardinalities(List<ImmutableRoaringBitmap> bitmaps, int[] indexBoundaries, long[][] rawWaveforms) {
+        RoaringBufferInspection.cardinalityInBuckets(bitmaps.toArray(new ImmutableRoaringBitmap[bitmaps.size()]), indexBoundaries, rawWaveforms);
+    }
+
     @Override
     public MutableRoaringBitmap create() {
         return new MutableRoaringBitmap();
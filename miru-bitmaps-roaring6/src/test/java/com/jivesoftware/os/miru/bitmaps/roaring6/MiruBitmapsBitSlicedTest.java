@@ -0,0 +1,100 @@
+package com.jivesoftware.os.miru.bitmaps.roaring6;
+
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.plugin.solution.MiruBitSlicedUtil;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class MiruBitmapsBitSlicedTest {
+
+    @Test
+    public void testAggregatesMatchBruteForce() throws Exception {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        MiruBitSlicedUtil bitSlicedUtil = new MiruBitSlicedUtil();
+        Random random = new Random(1234);
+        int numBits = 24;
+        int numIds = 300_000;
+
+        long[] values = new long[numIds];
+        RoaringBitmap answer = new RoaringBitmap();
+        List<RoaringBitmap> planes = Lists.newArrayList();
+        for (int i = 0; i < numBits; i++) {
+            planes.add(new RoaringBitmap());
+        }
+        for (int id = 0; id < numIds; id++) {
+            if (random.nextInt(4) != 0) {
+                values[id] = random.nextInt(1 << (numBits - 1)) >>> random.nextInt(numBits);
+                answer.add(id);
+                for (int i = 0; i < numBits; i++) {
+                    if (((values[id] >>> i) & 1) != 0) {
+                        planes.get(i).add(id);
+                    }
+                }
+            }
+        }
+        // the top bit is never set, so its plane is absent
+        planes.set(numBits - 1, null);
+
+        int[] indexes = { 0, 1_000, 65_536, 70_000, 70_001, 140_000, 262_144, 299_999 };
+        long[] cardinalities = new long[indexes.length - 1];
+        bitmaps.boundedCardinalities(answer, new int[][] { indexes }, new long[][] { cardinalities });
+        long[] minRanks = new long[cardinalities.length];
+        long[] percentileRanks = new long[cardinalities.length];
+        for (int i = 0; i < cardinalities.length; i++) {
+            minRanks[i] = Math.min(cardinalities[i], 1);
+            percentileRanks[i] = MiruBitSlicedUtil.nearestRank(95d, cardinalities[i]);
+        }
+
+        long[] sum = bitSlicedUtil.sum(bitmaps, planes, indexes);
+        long[] min = bitSlicedUtil.valuesAtRanks(bitmaps, answer, planes, indexes, minRanks);
+        long[] max = bitSlicedUtil.valuesAtRanks(bitmaps, answer, planes, indexes, cardinalities);
+        long[] p95 = bitSlicedUtil.valuesAtRanks(bitmaps, answer, planes, indexes, percentileRanks);
+
+        for (int i = 0; i < indexes.length - 1; i++) {
+            long[] bucket = new long[(int) cardinalities[i]];
+            int count = 0;
+            long expectedSum = 0;
+            for (int id = indexes[i]; id < indexes[i + 1]; id++) {
+                if (answer.contains(id)) {
+                    bucket[count++] = values[id];
+                    expectedSum += values[id];
+                }
+            }
+            Arrays.sort(bucket);
+            assertEquals(sum[i], expectedSum, "bucket:" + i);
+            if (count == 0) {
+                assertEquals(min[i], 0L);
+                assertEquals(max[i], 0L);
+                assertEquals(p95[i], 0L);
+            } else {
+                assertEquals(min[i], bucket[0], "bucket:" + i);
+                assertEquals(max[i], bucket[count - 1], "bucket:" + i);
+                assertEquals(p95[i], bucket[(int) percentileRanks[i] - 1], "bucket:" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testPlaneCardinalitiesSinglePass() throws Exception {
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        MiruBitSlicedUtil bitSlicedUtil = new MiruBitSlicedUtil();
+        List<RoaringBitmap> planes = Arrays.asList(
+            bitmaps.createWithBits(1, 2, 3, 70_000),
+            null,
+            bitmaps.createWithRange(0, 200_000));
+        int[] indexes = { 0, 2, 65_536, 150_000 };
+
+        long[][] cardinalities = bitSlicedUtil.planeCardinalities(bitmaps, planes, indexes);
+        assertEquals(cardinalities[0], new long[] { 1, 2, 1 });
+        assertEquals(cardinalities[1], new long[] { 0, 0, 0 });
+        assertEquals(cardinalities[2], new long[] { 2, 65_534, 84_464 });
+    }
+}
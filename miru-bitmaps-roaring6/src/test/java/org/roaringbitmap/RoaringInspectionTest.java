@@ -616,4 +616,33 @@ public class RoaringInspectionTest {
         assertEquals(keys.length, 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCardinalityInBuckets_multiple() throws Exception {
+        Random random = new Random(1234);
+        RoaringBitmap[] bitmaps = new RoaringBitmap[8];
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (i == 3) {
+                continue;
+            }
+            bitmaps[i] = new RoaringBitmap();
+            int step = 1 + random.nextInt(64);
+            for (int j = random.nextInt(step); j < 500_000; j += 1 + random.nextInt(step)) {
+                bitmaps[i].add(j);
+            }
+            if (i % 2 == 0) {
+                bitmaps[i].runOptimize();
+            }
+        }
+        int[] indexes = { 7, 65_536, 70_000, 200_001, 262_144, 499_999 };
+        long[][] cardinalityInBuckets = new long[bitmaps.length][indexes.length - 1];
+        RoaringInspection.cardinalityInBuckets(bitmaps, indexes, cardinalityInBuckets);
+        for (int i = 0; i < bitmaps.length; i++) {
+            long[][] expected = new long[1][indexes.length - 1];
+            if (bitmaps[i] != null) {
+                RoaringInspection.cardinalityInBuckets(bitmaps[i], new int[][] { indexes }, expected);
+            }
+            assertEquals(cardinalityInBuckets[i], expected[0]);
+        }
+    }
+
+}
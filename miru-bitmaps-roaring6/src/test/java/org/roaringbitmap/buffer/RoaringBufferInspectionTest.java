@@ -1,5 +1,6 @@
 package org.roaringbitmap.buffer;
 
+import java.util.Random;
 import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.RoaringInspection;
 import org.testng.annotations.Test;
@@ -169,4 +170,35 @@ public class RoaringBufferInspectionTest {
             assertEquals(cardinalityInBuckets[i][7], 1);
         }
     }
+
+    @Test
+    public void testCardinalityInBuckets_multiple() throws Exception {
+        Random random = new Random(1234);
+        ImmutableRoaringBitmap[] bitmaps = new ImmutableRoaringBitmap[8];
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (i == 3) {
+                continue;
+            }
+            MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+            int step = 1 + random.nextInt(64);
+            for (int j = random.nextInt(step); j < 500_000; j += 1 + random.nextInt(step)) {
+                bitmap.add(j);
+            }
+            if (i % 2 == 0) {
+                bitmap.runOptimize();
+            }
+            bitmaps[i] = bitmap;
+        }
+        int[] indexes = { 7, 65_536, 70_000, 200_001, 262_144, 499_999 };
+        long[][] cardinalityInBuckets = new long[bitmaps.length][indexes.length - 1];
+        RoaringBufferInspection.cardinalityInBuckets(bitmaps, indexes, cardinalityInBuckets);
+        for (int i = 0; i < bitmaps.length; i++) {
+            long[][] expected = new long[1][indexes.length - 1];
+            if (bitmaps[i] != null) {
+                RoaringBufferInspection.cardinalityInBuckets(bitmaps[i], new int[][] { indexes }, expected);
+            }
+            assertEquals(cardinalityInBuckets[i], expected[0]);
+        }
+    }
+
 }
@@ -31,7 +31,7 @@ class MiruBotBucket {
     private MiruTenantId miruTenantId;
     private MiruSchema miruSchema;
 
-    private final Random RAND = new Random();
+    private final Random RAND;
     private AtomicCounter totalActivitiesGenerated = new AtomicCounter();
 
     private final int numberOfFields;
@@ -41,9 +41,17 @@ class MiruBotBucket {
     MiruBotBucket(int numberOfFields,
         int valueSizeFactor,
         int birthRateFactor) {
+        this(numberOfFields, valueSizeFactor, birthRateFactor, new Random());
+    }
+
+    MiruBotBucket(int numberOfFields,
+        int valueSizeFactor,
+        int birthRateFactor,
+        Random random) {
         this.numberOfFields = numberOfFields;
         this.valueSizeFactor = valueSizeFactor;
         this.birthRateFactor = birthRateFactor;
+        this.RAND = random;
     }
 
     MiruSchema genSchema(MiruTenantId miruTenantId) {
@@ -107,7 +115,7 @@ class MiruBotBucket {
     }
 
     void birthNewFieldValue(MiruFieldDefinition miruFieldDefinition) {
-        StatedMiruValue statedMiruValue = StatedMiruValue.birth(valueSizeFactor);
+        StatedMiruValue statedMiruValue = StatedMiruValue.birth(valueSizeFactor, RAND);
         LOG.info("Birthed field: {}:{}", miruFieldDefinition.name, statedMiruValue.value.last());
 
         Set<StatedMiruValue> values = statedMiruValues.computeIfAbsent(
@@ -26,8 +26,12 @@ class StatedMiruValue {
     }
 
     static StatedMiruValue birth(int valueSizeFactor) {
+        return birth(valueSizeFactor, RAND);
+    }
+
+    static StatedMiruValue birth(int valueSizeFactor, Random random) {
         return new StatedMiruValue(
-            new MiruValue(RandomStringUtils.randomAlphanumeric(RAND.nextInt(valueSizeFactor) + 1)),
+            new MiruValue(RandomStringUtils.random(random.nextInt(valueSizeFactor) + 1, 0, 0, true, true, null, random)),
             State.UNKNOWN);
     }
 
@@ -0,0 +1,440 @@
+package com.jivesoftware.os.miru.bot.deployable;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.JiveEpochTimestampProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
+import com.jivesoftware.os.miru.api.MiruActorId;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.bot.deployable.MiruBotHarnessReport.MiruBotHarnessGCReport;
+import com.jivesoftware.os.miru.bot.deployable.MiruBotHarnessReport.MiruBotHarnessOpReport;
+import com.jivesoftware.os.miru.plugin.MiruProvider;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.miru.plugin.solution.MiruResponse;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.plugin.test.MiruPluginTestBootstrap;
+import com.jivesoftware.os.miru.reco.plugins.distincts.Distincts;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsAnswer;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsInjectable;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsQuery;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesAnswer;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesInjectable;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesQuery;
+import com.jivesoftware.os.miru.service.MiruService;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.merlin.config.Config;
+import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
+import org.merlin.config.defaults.StringDefault;
+
+/**
+ * Replays a seeded mix of bot writes, distincts queries and uniques queries against a reader started in-process over an in-memory
+ * WAL. The whole workload is generated up front from the seed, so runs differ only in the code under test. Operations are issued
+ * on a fixed schedule and their latency is measured from when they were scheduled to start, so a stalled reader shows up as
+ * latency rather than as fewer operations. Every query is checked against the values whose writes had completed when it started
+ * and the values whose writes had started when it finished.
+ */
+class MiruBotHarness {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    interface MiruBotHarnessConfig extends Config {
+
+        @StringDefault("")
+        String getLabel();
+
+        @LongDefault(1_234L)
+        long getSeed();
+
+        @StringDefault("disk")
+        String getBackingStorage();
+
+        @IntDefault(4)
+        int getNumberOfFields();
+
+        @IntDefault(10)
+        int getValueSizeFactor();
+
+        @IntDefault(50)
+        int getBirthRateFactor();
+
+        @IntDefault(100)
+        int getBotBucketSeed();
+
+        @IntDefault(1_000)
+        int getWritesPerSecond();
+
+        @IntDefault(10)
+        int getWriteBatchSize();
+
+        @IntDefault(20)
+        int getQueriesPerSecond();
+
+        @IntDefault(4)
+        int getQueryConcurrency();
+
+        @IntDefault(1)
+        int getDistinctsWeight();
+
+        @IntDefault(1)
+        int getUniquesWeight();
+
+        @LongDefault(10_000L)
+        long getWarmupMs();
+
+        @LongDefault(60_000L)
+        long getRuntimeMs();
+
+        @StringDefault("")
+        String getReportFile();
+    }
+
+    private enum Op {
+        write,
+        distincts,
+        uniques
+    }
+
+    private final MiruBotHarnessConfig config;
+
+    private final MiruTenantId tenantId = new MiruTenantId("mirubot-harness".getBytes(Charsets.UTF_8));
+    private final MiruPartitionId partitionId = MiruPartitionId.of(0);
+    private final MiruPartitionedActivityFactory partitionedActivityFactory = new MiruPartitionedActivityFactory();
+    private final OrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+    private final AtomicInteger walIndex = new AtomicInteger();
+
+    // field -> value -> sequence of the first write batch containing it
+    private final Map<String, ConcurrentMap<String, Long>> written = Maps.newHashMap();
+    private final AtomicLong startedBatches = new AtomicLong();
+    private final AtomicLong completedBatches = new AtomicLong();
+
+    private final long[] errors = new long[Op.values().length];
+    private final long[] incorrect = new long[Op.values().length];
+    private final AtomicLong lastCompletedNanos = new AtomicLong();
+
+    private MiruService service;
+    private DistinctsInjectable distinctsInjectable;
+    private UniquesInjectable uniquesInjectable;
+    private MiruTimeRange timeRange;
+
+    MiruBotHarness(MiruBotHarnessConfig config) {
+        this.config = config;
+    }
+
+    MiruBotHarnessReport run() throws Exception {
+        Random random = new Random(config.getSeed());
+        MiruBotBucket miruBotBucket = new MiruBotBucket(
+            config.getNumberOfFields(),
+            config.getValueSizeFactor(),
+            config.getBirthRateFactor(),
+            random);
+        MiruSchema miruSchema = miruBotBucket.genSchema(tenantId);
+        MiruFieldDefinition[] fieldDefinitions = miruSchema.getFieldDefinitions();
+        for (MiruFieldDefinition fieldDefinition : fieldDefinitions) {
+            written.put(fieldDefinition.name, Maps.newConcurrentMap());
+        }
+
+        long durationMs = config.getWarmupMs() + config.getRuntimeMs();
+        int batchSize = Math.max(1, config.getWriteBatchSize());
+        int numBatches = (int) (config.getWritesPerSecond() * durationMs / 1_000 / batchSize);
+        int numQueries = (int) (config.getQueriesPerSecond() * durationMs / 1_000);
+
+        List<Map<String, List<String>>> seeded = Collections.emptyList();
+        if (config.getBotBucketSeed() > 0) {
+            seeded = toFieldsValues(miruBotBucket.seed(config.getBotBucketSeed()));
+        }
+        List<List<Map<String, List<String>>>> batches = Lists.newArrayListWithCapacity(numBatches);
+        for (int i = 0; i < numBatches; i++) {
+            List<Map<String, StatedMiruValue>> batch = Lists.newArrayListWithCapacity(batchSize);
+            for (int j = 0; j < batchSize; j++) {
+                batch.add(miruBotBucket.genWriteMiruActivity(smv -> true));
+            }
+            batches.add(toFieldsValues(batch));
+        }
+        int totalWeight = Math.max(1, config.getDistinctsWeight() + config.getUniquesWeight());
+        Op[] queryOps = new Op[numQueries];
+        int[] queryFields = new int[numQueries];
+        for (int i = 0; i < numQueries; i++) {
+            queryOps[i] = random.nextInt(totalWeight) < config.getDistinctsWeight() ? Op.distincts : Op.uniques;
+            queryFields[i] = random.nextInt(fieldDefinitions.length);
+        }
+        LOG.info("Generated {} write batches of {} and {} queries from seed {}", numBatches, batchSize, numQueries, config.getSeed());
+
+        MiruProvider<MiruService> miruProvider = new MiruPluginTestBootstrap().bootstrap(tenantId,
+            partitionId,
+            new MiruHost("mirubot-harness"),
+            miruSchema,
+            MiruBackingStorage.valueOf(config.getBackingStorage()),
+            new MiruBitmapsRoaring(),
+            Collections.emptyList());
+        service = miruProvider.getMiru(tenantId);
+        distinctsInjectable = new DistinctsInjectable(miruProvider, new Distincts(miruProvider.getTermComposer()));
+        uniquesInjectable = new UniquesInjectable(miruProvider);
+
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        long now = new JiveEpochTimestampProvider().getTimestamp();
+        timeRange = new MiruTimeRange(
+            snowflakeIdPacker.pack(now - TimeUnit.DAYS.toMillis(1), 0, 0),
+            snowflakeIdPacker.pack(now + durationMs + TimeUnit.DAYS.toMillis(1), 0, 0));
+
+        if (!seeded.isEmpty()) {
+            write(seeded);
+            LOG.info("Wrote {} seeded activities", seeded.size());
+        }
+
+        long[] writeLatencies = new long[numBatches];
+        long[] queryLatencies = new long[numQueries];
+        Arrays.fill(writeLatencies, -1);
+        Arrays.fill(queryLatencies, -1);
+
+        MiruBotHarnessGCMonitor gcMonitor = new MiruBotHarnessGCMonitor();
+        gcMonitor.start();
+
+        ExecutorService dispatchers = Executors.newFixedThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("mirubot-harness-dispatch-%d").build());
+        ExecutorService queryExecutor = Executors.newFixedThreadPool(Math.max(1, config.getQueryConcurrency()),
+            new ThreadFactoryBuilder().setNameFormat("mirubot-harness-query-%d").build());
+        try {
+            long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            long warmupEndNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getWarmupMs());
+            long writeIntervalNanos = config.getWritesPerSecond() > 0 ? batchSize * 1_000_000_000L / config.getWritesPerSecond() : 0;
+            long queryIntervalNanos = config.getQueriesPerSecond() > 0 ? 1_000_000_000L / config.getQueriesPerSecond() : 0;
+
+            Future<?> writes = dispatchers.submit(() -> {
+                for (int i = 0; i < numBatches; i++) {
+                    long intended = startNanos + i * writeIntervalNanos;
+                    parkUntil(intended);
+                    boolean success = true;
+                    try {
+                        write(batches.get(i));
+                    } catch (Exception e) {
+                        LOG.error("Failed to write batch {}", new Object[] { i }, e);
+                        success = false;
+                    }
+                    completed(Op.write, i, intended, warmupEndNanos, success, true, writeLatencies);
+                }
+                return null;
+            });
+            Future<?> queries = dispatchers.submit(() -> {
+                for (int i = 0; i < numQueries; i++) {
+                    int index = i;
+                    long intended = startNanos + i * queryIntervalNanos;
+                    parkUntil(intended);
+                    queryExecutor.submit(() -> {
+                        Op op = queryOps[index];
+                        MiruFieldDefinition fieldDefinition = fieldDefinitions[queryFields[index]];
+                        boolean success = true;
+                        boolean correct = false;
+                        try {
+                            correct = (op == Op.distincts) ? distincts(fieldDefinition) : uniques(fieldDefinition);
+                        } catch (Exception e) {
+                            LOG.error("Failed to query {} for {}", new Object[] { op, fieldDefinition.name }, e);
+                            success = false;
+                        }
+                        completed(op, index, intended, warmupEndNanos, success, correct, queryLatencies);
+                    });
+                }
+                return null;
+            });
+
+            parkUntil(warmupEndNanos);
+            gcMonitor.record();
+            LOG.info("Warmed up after {}ms, recording for {}ms", config.getWarmupMs(), config.getRuntimeMs());
+
+            writes.get();
+            queries.get();
+            queryExecutor.shutdown();
+            if (!queryExecutor.awaitTermination(durationMs, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Gave up waiting for outstanding queries");
+            }
+            gcMonitor.stop();
+
+            long recordedMs = TimeUnit.NANOSECONDS.toMillis(Math.max(0, lastCompletedNanos.get() - warmupEndNanos));
+            List<MiruBotHarnessOpReport> ops = Lists.newArrayList();
+            ops.add(summarize(Op.write, writeLatencies, null, recordedMs));
+            ops.add(summarize(Op.distincts, queryLatencies, queryOps, recordedMs));
+            ops.add(summarize(Op.uniques, queryLatencies, queryOps, recordedMs));
+
+            boolean correct = true;
+            for (MiruBotHarnessOpReport op : ops) {
+                correct &= op.errors == 0 && op.incorrect == 0;
+            }
+            return new MiruBotHarnessReport(config.getLabel(),
+                config.getSeed(),
+                config.getBackingStorage(),
+                config.getWritesPerSecond(),
+                config.getQueriesPerSecond(),
+                config.getRuntimeMs(),
+                ops,
+                MiruBotHarnessGCReport.summarize(gcMonitor.getPauseMillis()),
+                correct);
+        } finally {
+            gcMonitor.stop();
+            queryExecutor.shutdownNow();
+            dispatchers.shutdownNow();
+        }
+    }
+
+    private void write(List<Map<String, List<String>>> activities) throws Exception {
+        long batch = startedBatches.incrementAndGet();
+        List<MiruPartitionedActivity> partitionedActivities = Lists.newArrayListWithCapacity(activities.size());
+        for (Map<String, List<String>> fieldsValues : activities) {
+            for (Map.Entry<String, List<String>> entry : fieldsValues.entrySet()) {
+                ConcurrentMap<String, Long> values = written.get(entry.getKey());
+                for (String value : entry.getValue()) {
+                    values.putIfAbsent(value, batch);
+                }
+            }
+            partitionedActivities.add(partitionedActivityFactory.activity(1,
+                partitionId,
+                walIndex.incrementAndGet(),
+                new MiruActivity(tenantId,
+                    orderIdProvider.nextId(),
+                    0,
+                    false,
+                    new String[0],
+                    fieldsValues,
+                    Collections.emptyMap())));
+        }
+        service.writeToIndex(partitionedActivities);
+        completedBatches.set(batch);
+    }
+
+    private boolean distincts(MiruFieldDefinition fieldDefinition) throws Exception {
+        long completed = completedBatches.get();
+        MiruResponse<DistinctsAnswer> response = distinctsInjectable.gatherDistincts(new MiruRequest<>("mirubot-harness",
+            tenantId,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new DistinctsQuery(timeRange, fieldDefinition.name, null, MiruFilter.NO_FILTER, null),
+            MiruSolutionLogLevel.NONE));
+
+        Set<String> found = Sets.newHashSet();
+        for (MiruValue value : response.answer.results) {
+            found.add(value.last());
+        }
+        Map<String, Long> values = written.get(fieldDefinition.name);
+        for (String value : found) {
+            if (!values.containsKey(value)) {
+                LOG.warn("Distincts for {} found unwritten value {}", fieldDefinition.name, value);
+                return false;
+            }
+        }
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (entry.getValue() <= completed && !found.contains(entry.getKey())) {
+                LOG.warn("Distincts for {} missed written value {}", fieldDefinition.name, entry.getKey());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean uniques(MiruFieldDefinition fieldDefinition) throws Exception {
+        long completed = completedBatches.get();
+        MiruResponse<UniquesAnswer> response = uniquesInjectable.gatherUniques(new MiruRequest<>("mirubot-harness",
+            tenantId,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new UniquesQuery(timeRange, fieldDefinition.name, null, MiruFilter.NO_FILTER, null),
+            MiruSolutionLogLevel.NONE));
+
+        Map<String, Long> values = written.get(fieldDefinition.name);
+        long lower = 0;
+        for (long batch : values.values()) {
+            if (batch <= completed) {
+                lower++;
+            }
+        }
+        long upper = values.size();
+        if (response.answer.uniques < lower || response.answer.uniques > upper) {
+            LOG.warn("Uniques for {} found {} but expected between {} and {}", fieldDefinition.name, response.answer.uniques, lower, upper);
+            return false;
+        }
+        return true;
+    }
+
+    private void completed(Op op, int index, long intended, long warmupEndNanos, boolean success, boolean correct, long[] latencies) {
+        long end = System.nanoTime();
+        lastCompletedNanos.accumulateAndGet(end, Math::max);
+        if (intended >= warmupEndNanos) {
+            synchronized (errors) {
+                if (!success) {
+                    errors[op.ordinal()]++;
+                } else if (!correct) {
+                    incorrect[op.ordinal()]++;
+                }
+            }
+            latencies[index] = end - intended;
+        }
+    }
+
+    private MiruBotHarnessOpReport summarize(Op op, long[] latencies, Op[] ops, long recordedMs) {
+        long[] recorded = new long[latencies.length];
+        int count = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            if (latencies[i] >= 0 && (ops == null || ops[i] == op)) {
+                recorded[count++] = latencies[i];
+            }
+        }
+        synchronized (errors) {
+            return MiruBotHarnessOpReport.summarize(op.name(), Arrays.copyOf(recorded, count), errors[op.ordinal()], incorrect[op.ordinal()],
+                recordedMs);
+        }
+    }
+
+    private static List<Map<String, List<String>>> toFieldsValues(List<Map<String, StatedMiruValue>> activities) {
+        List<Map<String, List<String>>> result = Lists.newArrayListWithCapacity(activities.size());
+        for (Map<String, StatedMiruValue> activity : activities) {
+            Map<String, List<String>> fieldsValues = Maps.newHashMap();
+            for (Map.Entry<String, StatedMiruValue> entry : activity.entrySet()) {
+                fieldsValues.put(entry.getKey(), Collections.singletonList(entry.getValue().value.last()));
+            }
+            result.add(fieldsValues);
+        }
+        return result;
+    }
+
+    private static void parkUntil(long nanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
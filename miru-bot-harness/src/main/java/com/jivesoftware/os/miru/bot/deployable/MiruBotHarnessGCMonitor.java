@@ -0,0 +1,61 @@
+package com.jivesoftware.os.miru.bot.deployable;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Collects the duration of every collection reported by the JVM while recording. Concurrent cycles are reported by some collectors
+ * as a single collection, so the durations are an upper bound on time spent paused.
+ */
+class MiruBotHarnessGCMonitor implements NotificationListener {
+
+    private final List<Long> pauseMillis = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean recording = new AtomicBoolean(false);
+
+    void start() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    void stop() {
+        recording.set(false);
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // never added
+                }
+            }
+        }
+    }
+
+    void record() {
+        pauseMillis.clear();
+        recording.set(true);
+    }
+
+    long[] getPauseMillis() {
+        return pauseMillis.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (recording.get() && GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            pauseMillis.add(info.getGcInfo().getDuration());
+        }
+    }
+}
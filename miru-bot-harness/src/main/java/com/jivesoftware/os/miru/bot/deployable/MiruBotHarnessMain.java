@@ -0,0 +1,54 @@
+package com.jivesoftware.os.miru.bot.deployable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.miru.bot.deployable.MiruBotHarness.MiruBotHarnessConfig;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.deployable.config.extractor.ConfigBinder;
+import java.io.File;
+
+/**
+ * Runs {@link MiruBotHarness} once and exits non-zero if any query was wrong or failed. The report is also written as json when a
+ * report file is configured, so runs can be compared across commits. Lives outside miru-bot-deployable so the in-process test
+ * bootstrap never ships with the bot.
+ */
+public class MiruBotHarnessMain {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    public static void main(String[] args) {
+        int status = new MiruBotHarnessMain().run(args);
+        System.exit(status);
+    }
+
+    private int run(String[] args) {
+        try {
+            ConfigBinder configBinder = new ConfigBinder(args);
+            MiruBotHarnessConfig config = configBinder.bind(MiruBotHarnessConfig.class);
+
+            LOG.info("Label: {}", config.getLabel());
+            LOG.info("Seed: {}", config.getSeed());
+            LOG.info("Backing storage: {}", config.getBackingStorage());
+            LOG.info("Number of fields: {}", config.getNumberOfFields());
+            LOG.info("Writes per second: {} in batches of {}", config.getWritesPerSecond(), config.getWriteBatchSize());
+            LOG.info("Queries per second: {} with concurrency {}", config.getQueriesPerSecond(), config.getQueryConcurrency());
+            LOG.info("Distincts:uniques weight: {}:{}", config.getDistinctsWeight(), config.getUniquesWeight());
+            LOG.info("Warmup: {}ms", config.getWarmupMs());
+            LOG.info("Runtime: {}ms", config.getRuntimeMs());
+
+            MiruBotHarnessReport report = new MiruBotHarness(config).run();
+            LOG.info("Report: {}", report);
+
+            if (!config.getReportFile().isEmpty()) {
+                File reportFile = new File(config.getReportFile());
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+                LOG.info("Wrote report to {}", reportFile.getAbsolutePath());
+            }
+            return report.correct ? 0 : 1;
+        } catch (Throwable t) {
+            LOG.error("Harness failed", t);
+            return 2;
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.jivesoftware.os.miru.bot.deployable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Arrays;
+import java.util.List;
+
+class MiruBotHarnessReport {
+
+    public String label;
+    public long seed;
+    public String backingStorage;
+    public int writesPerSecond;
+    public int queriesPerSecond;
+    public long runtimeMs;
+    public List<MiruBotHarnessOpReport> ops;
+    public MiruBotHarnessGCReport gc;
+    public boolean correct;
+
+    static class MiruBotHarnessOpReport {
+
+        public String name;
+        public long count;
+        public long errors;
+        public long incorrect;
+        public double throughputPerSecond;
+        public double p50Millis;
+        public double p99Millis;
+        public double p999Millis;
+        public double maxMillis;
+
+        @JsonCreator
+        MiruBotHarnessOpReport(
+            @JsonProperty("name") String name,
+            @JsonProperty("count") long count,
+            @JsonProperty("errors") long errors,
+            @JsonProperty("incorrect") long incorrect,
+            @JsonProperty("throughputPerSecond") double throughputPerSecond,
+            @JsonProperty("p50Millis") double p50Millis,
+            @JsonProperty("p99Millis") double p99Millis,
+            @JsonProperty("p999Millis") double p999Millis,
+            @JsonProperty("maxMillis") double maxMillis) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.incorrect = incorrect;
+            this.throughputPerSecond = throughputPerSecond;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.p999Millis = p999Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        /**
+         * @param latencyNanos latencies of the recorded operations, which is sorted in place
+         */
+        static MiruBotHarnessOpReport summarize(String name, long[] latencyNanos, long errors, long incorrect, long runtimeMs) {
+            Arrays.sort(latencyNanos);
+            return new MiruBotHarnessOpReport(name,
+                latencyNanos.length,
+                errors,
+                incorrect,
+                runtimeMs > 0 ? latencyNanos.length * 1_000d / runtimeMs : 0d,
+                percentile(latencyNanos, 0.5) / 1e6,
+                percentile(latencyNanos, 0.99) / 1e6,
+                percentile(latencyNanos, 0.999) / 1e6,
+                percentile(latencyNanos, 1.0) / 1e6);
+        }
+
+        public String toString() {
+            return String.format("%-10s count:%-8d errors:%-4d incorrect:%-4d throughput:%-10.1f p50:%-8.2f p99:%-8.2f p999:%-8.2f max:%.2f",
+                name, count, errors, incorrect, throughputPerSecond, p50Millis, p99Millis, p999Millis, maxMillis);
+        }
+    }
+
+    static class MiruBotHarnessGCReport {
+
+        public long count;
+        public long totalMillis;
+        public long p99Millis;
+        public long maxMillis;
+
+        @JsonCreator
+        MiruBotHarnessGCReport(
+            @JsonProperty("count") long count,
+            @JsonProperty("totalMillis") long totalMillis,
+            @JsonProperty("p99Millis") long p99Millis,
+            @JsonProperty("maxMillis") long maxMillis) {
+            this.count = count;
+            this.totalMillis = totalMillis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        /**
+         * @param pauseMillis durations of the recorded collections, which is sorted in place
+         */
+        static MiruBotHarnessGCReport summarize(long[] pauseMillis) {
+            Arrays.sort(pauseMillis);
+            return new MiruBotHarnessGCReport(pauseMillis.length,
+                Arrays.stream(pauseMillis).sum(),
+                percentile(pauseMillis, 0.99),
+                percentile(pauseMillis, 1.0));
+        }
+
+        public String toString() {
+            return String.format("%-10s count:%-8d total:%-8d p99:%-8d max:%d", "gc", count, totalMillis, p99Millis, maxMillis);
+        }
+    }
+
+    @JsonCreator
+    MiruBotHarnessReport(
+        @JsonProperty("label") String label,
+        @JsonProperty("seed") long seed,
+        @JsonProperty("backingStorage") String backingStorage,
+        @JsonProperty("writesPerSecond") int writesPerSecond,
+        @JsonProperty("queriesPerSecond") int queriesPerSecond,
+        @JsonProperty("runtimeMs") long runtimeMs,
+        @JsonProperty("ops") List<MiruBotHarnessOpReport> ops,
+        @JsonProperty("gc") MiruBotHarnessGCReport gc,
+        @JsonProperty("correct") boolean correct) {
+        this.label = label;
+        this.seed = seed;
+        this.backingStorage = backingStorage;
+        this.writesPerSecond = writesPerSecond;
+        this.queriesPerSecond = queriesPerSecond;
+        this.runtimeMs = runtimeMs;
+        this.ops = ops;
+        this.gc = gc;
+        this.correct = correct;
+    }
+
+    /**
+     * Nearest-rank percentile of a sorted array, or 0 when empty.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("MiruBotHarnessReport{label='").append(label).append('\'')
+            .append(", seed=").append(seed)
+            .append(", backingStorage=").append(backingStorage)
+            .append(", writesPerSecond=").append(writesPerSecond)
+            .append(", queriesPerSecond=").append(queriesPerSecond)
+            .append(", runtimeMs=").append(runtimeMs)
+            .append(", correct=").append(correct)
+            .append('}');
+        for (MiruBotHarnessOpReport op : ops) {
+            buf.append('\n').append(op);
+        }
+        buf.append('\n').append(gc);
+        return buf.toString();
+    }
+
+}
@@ -10,6 +10,7 @@ import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.topology.HostHeartbeat;
 import com.jivesoftware.os.miru.api.topology.MiruClusterClient;
+import com.jivesoftware.os.miru.api.topology.MiruHeartbeatCodec;
 import com.jivesoftware.os.miru.api.topology.MiruHeartbeatRequest;
 import com.jivesoftware.os.miru.api.topology.MiruHeartbeatResponse;
 import com.jivesoftware.os.miru.api.topology.MiruIngressUpdate;
@@ -18,6 +19,7 @@ import com.jivesoftware.os.miru.api.topology.MiruTenantConfig;
 import com.jivesoftware.os.miru.api.topology.MiruTopologyResponse;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.routing.bird.http.client.HttpClient;
 import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
@@ -28,10 +30,13 @@ import com.jivesoftware.os.routing.bird.shared.ClientCall.ClientResponse;
 import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MiruHttpClusterClient implements MiruClusterClient {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final long BINARY_HEARTBEAT_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     private final MiruStats miruStats;
     private final String routingTenantId;
@@ -39,6 +44,7 @@ public class MiruHttpClusterClient implements MiruClusterClient {
     private final NextClientStrategy nextClientStrategy;
     private final ObjectMapper requestMapper;
     private final HttpResponseMapper responseMapper;
+    private final AtomicLong binaryHeartbeatsRetryTimestamp = new AtomicLong(0);
 
     public MiruHttpClusterClient(MiruStats miruStats,
         String routingTenantId,
@@ -129,7 +135,36 @@ public class MiruHttpClusterClient implements MiruClusterClient {
 
     @Override
     public MiruHeartbeatResponse thumpthump(final MiruHost host, final MiruHeartbeatRequest heartbeatRequest) throws Exception {
+        // manage only rejects the binary endpoint until it is upgraded, so it is retried periodically rather than abandoned
+        if (System.currentTimeMillis() >= binaryHeartbeatsRetryTimestamp.get()) {
+            boolean[] unsupported = { false };
+            long encodeStart = System.nanoTime();
+            byte[] binaryHeartbeatRequest = MiruHeartbeatCodec.encode(heartbeatRequest);
+            LOG.set(ValueType.VALUE, "thumpthump>encodeMicros", (System.nanoTime() - encodeStart) / 1_000);
+            LOG.set(ValueType.COUNT, "thumpthump>bytes", binaryHeartbeatRequest.length);
+            LOG.set(ValueType.COUNT, "thumpthump>partitions", heartbeatRequest.active.size());
+            MiruHeartbeatResponse heartbeatResponse = send("thumpthump", client -> {
+                long start = System.currentTimeMillis();
+                HttpResponse response = client.postBytes("/miru/topology/thumpthump/binary/" + host.getLogicalName(), binaryHeartbeatRequest, null);
+                if (response.getStatusCode() == 404 || response.getStatusCode() == 415) {
+                    unsupported[0] = true;
+                    return new ClientResponse<>(null, true);
+                }
+                MiruHeartbeatResponse r = responseMapper.extractResultFromResponse(response, MiruHeartbeatResponse.class, null);
+                miruStats.egressed("/miru/topology/thumpthump/binary/" + host.getLogicalName(), 1, System.currentTimeMillis() - start);
+                return new ClientResponse<>(r, true);
+            });
+            if (heartbeatResponse != null || !unsupported[0]) {
+                return heartbeatResponse;
+            }
+            LOG.warn("Binary heartbeats are not supported by manage, falling back to json for {} millis", BINARY_HEARTBEAT_RETRY_MILLIS);
+            LOG.inc("thumpthump>binaryUnsupported");
+            binaryHeartbeatsRetryTimestamp.set(System.currentTimeMillis() + BINARY_HEARTBEAT_RETRY_MILLIS);
+        }
+
         String jsonHeartbeatRequest = requestMapper.writeValueAsString(heartbeatRequest);
+        LOG.set(ValueType.COUNT, "thumpthump>bytes", jsonHeartbeatRequest.length());
+        LOG.set(ValueType.COUNT, "thumpthump>partitions", heartbeatRequest.active.size());
         return send("thumpthump", client -> {
             long start = System.currentTimeMillis();
             HttpResponse response = client.postJson("/miru/topology/thumpthump/" + host.getLogicalName(), jsonHeartbeatRequest, null);
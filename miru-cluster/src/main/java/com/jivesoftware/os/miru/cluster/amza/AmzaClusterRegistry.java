@@ -11,6 +11,7 @@ import com.google.common.collect.MinMaxPriorityQueue;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.TimestampedValue;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.Consistency;
@@ -62,6 +63,7 @@ import com.jivesoftware.os.miru.cluster.marshaller.MiruTopologyColumnValueMarsha
 import com.jivesoftware.os.miru.cluster.rcvs.MiruTopologyColumnValue;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.rcvs.marshall.api.TypeMarshaller;
 import com.jivesoftware.os.rcvs.marshall.api.UtilLexMarshaller;
 import java.nio.ByteBuffer;
@@ -80,6 +82,10 @@ import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
@@ -126,6 +132,8 @@ public class AmzaClusterRegistry implements MiruClusterRegistry, RowChanges {
     private final long defaultTopologyDestroyAfterMillis;
     private final long defaultTopologyCleanupAfterMillis;
 
+    private final ExecutorService topologyUpdatesExecutor;
+
     private final AtomicBoolean ringInitialized = new AtomicBoolean(false);
     private final ConcurrentMap<String, EmbeddedClient> clientMap = Maps.newConcurrentMap();
 
@@ -137,7 +145,8 @@ public class AmzaClusterRegistry implements MiruClusterRegistry, RowChanges {
         long defaultTopologyIsStaleAfterMillis,
         long defaultTopologyIsIdleAfterMillis,
         long defaultTopologyDestroyAfterMillis,
-        long defaultTopologyCleanupAfterMillis) throws Exception {
+        long defaultTopologyCleanupAfterMillis,
+        int topologyUpdatesConcurrency) throws Exception {
         this.amzaService = amzaService;
         this.embeddedClientProvider = embeddedClientProvider;
         this.replicateTimeoutMillis = replicateTimeoutMillis;
@@ -147,6 +156,8 @@ public class AmzaClusterRegistry implements MiruClusterRegistry, RowChanges {
         this.defaultTopologyIsIdleAfterMillis = defaultTopologyIsIdleAfterMillis;
         this.defaultTopologyDestroyAfterMillis = defaultTopologyDestroyAfterMillis;
         this.defaultTopologyCleanupAfterMillis = defaultTopologyCleanupAfterMillis;
+        this.topologyUpdatesExecutor = Executors.newFixedThreadPool(topologyUpdatesConcurrency,
+            new ThreadFactoryBuilder().setNameFormat("topology-updates-%d").setDaemon(true).build());
     }
 
     private EmbeddedClient ensureClient(String name, PartitionProperties partitionProperties) throws Exception {
@@ -324,36 +335,51 @@ public class AmzaClusterRegistry implements MiruClusterRegistry, RowChanges {
 
     @Override
     public void updateTopologies(MiruHost host, Collection<TopologyUpdate> topologyUpdates) throws Exception {
+        long start = System.currentTimeMillis();
         final EmbeddedClient topologyInfoClient = topologyInfoClient(host);
         AmzaPartitionUpdates updates = new AmzaPartitionUpdates();
 
+        // one multi-get for every update that is missing its info or query timestamp
+        List<TopologyUpdate> incompleteUpdates = Lists.newArrayList();
+        for (TopologyUpdate topologyUpdate : topologyUpdates) {
+            if (!topologyUpdate.optionalInfo.isPresent() || topologyUpdate.queryTimestamp.or(-1L) == -1) {
+                incompleteUpdates.add(topologyUpdate);
+            }
+        }
+        Map<RawTenantAndPartition, MiruTopologyColumnValue> existingValues = Maps.newHashMapWithExpectedSize(incompleteUpdates.size());
+        if (!incompleteUpdates.isEmpty()) {
+            topologyInfoClient.get(Consistency.none, null, stream -> {
+                for (TopologyUpdate topologyUpdate : incompleteUpdates) {
+                    if (!stream.stream(toTopologyKey(topologyUpdate.coord.tenantId, topologyUpdate.coord.partitionId))) {
+                        return false;
+                    }
+                }
+                return true;
+            }, (byte[] prefix, byte[] key, byte[] value, long timestamp, long version) -> {
+                if (value != null) {
+                    existingValues.put(fromTopologyKey(key), topologyColumnValueMarshaller.fromBytes(value));
+                }
+                return true;
+            });
+        }
+
         for (TopologyUpdate topologyUpdate : topologyUpdates) {
             MiruPartitionCoord coord = topologyUpdate.coord;
             Optional<MiruPartitionCoordInfo> optionalInfo = topologyUpdate.optionalInfo;
             Optional<Long> refreshQueryTimestamp = topologyUpdate.queryTimestamp;
-            byte[] key = toTopologyKey(coord.tenantId, coord.partitionId);
+            MiruTopologyColumnValue existing = existingValues.get(new RawTenantAndPartition(coord.tenantId.getBytes(), coord.partitionId.getId()));
 
             MiruPartitionCoordInfo coordInfo;
             if (optionalInfo.isPresent()) {
                 coordInfo = optionalInfo.get();
+            } else if (existing != null) {
+                coordInfo = new MiruPartitionCoordInfo(existing.state, existing.storage);
             } else {
-                byte[] got = topologyInfoClient.getValue(Consistency.none, null, key);
-                if (got != null) {
-                    MiruTopologyColumnValue value = topologyColumnValueMarshaller.fromBytes(got);
-                    coordInfo = new MiruPartitionCoordInfo(value.state, value.storage);
-                } else {
-                    coordInfo = new MiruPartitionCoordInfo(MiruPartitionState.offline, MiruBackingStorage.memory);
-                }
+                coordInfo = new MiruPartitionCoordInfo(MiruPartitionState.offline, MiruBackingStorage.memory);
             }
             long queryTimestamp = refreshQueryTimestamp.or(-1L);
             if (queryTimestamp == -1) {
-                byte[] got = topologyInfoClient.getValue(Consistency.none, null, key);
-                if (got != null) {
-                    MiruTopologyColumnValue value = topologyColumnValueMarshaller.fromBytes(got);
-                    queryTimestamp = value.lastQueryTimestamp;
-                } else {
-                    queryTimestamp = 0;
-                }
+                queryTimestamp = existing != null ? existing.lastQueryTimestamp : 0;
             }
 
             MiruTopologyColumnValue value = new MiruTopologyColumnValue(coordInfo.state, coordInfo.storage, queryTimestamp);
@@ -365,22 +391,58 @@ public class AmzaClusterRegistry implements MiruClusterRegistry, RowChanges {
 
         topologyInfoClient.commit(Consistency.none, null, updates, replicateTimeoutMillis, TimeUnit.MILLISECONDS);
 
-        markTenantTopologyUpdated(topologyUpdates.stream()
+        int markedHosts = markTenantTopologyUpdated(topologyUpdates.stream()
             .filter(input -> input.optionalInfo.isPresent())
             .map(input -> input.coord.tenantId)
             .collect(Collectors.toSet()));
-    }
 
-    private void markTenantTopologyUpdated(Set<MiruTenantId> tenantIds) throws Exception {
+        // bucketed by powers of two so the number of metrics stays small, and zero when no tenant markers were needed
+        String hostsBucket = String.valueOf(Integer.highestOneBit(markedHosts));
+        LOG.set(ValueType.VALUE, "topology>update>markedHosts>" + hostsBucket + ">latencyMillis", System.currentTimeMillis() - start);
+        LOG.inc("topology>update>markedHosts>" + hostsBucket + ">count");
+        LOG.inc("topology>update>reads", incompleteUpdates.size());
+    }
+
+    /**
+     * Commits the tenant markers to the topology updates of every host, at most {@code topologyUpdatesConcurrency} at a time.
+     *
+     * @return the number of hosts that were marked
+     */
+    private int markTenantTopologyUpdated(Set<MiruTenantId> tenantIds) throws Exception {
+        if (tenantIds.isEmpty()) {
+            return 0;
+        }
+
         AmzaPartitionUpdates updates = new AmzaPartitionUpdates();
         for (MiruTenantId tenantId : tenantIds) {
             updates.set(toTenantKey(tenantId), EMPTY_BYTES, -1);
         }
 
+        List<Future<?>> futures = Lists.newArrayList();
         for (HostHeartbeat heartbeat : getAllHosts()) {
-            EmbeddedClient topologyUpdatesClient = topologyUpdatesClient(heartbeat.host);
-            topologyUpdatesClient.commit(Consistency.none, null, updates, replicateTimeoutMillis, TimeUnit.MILLISECONDS);
+            futures.add(topologyUpdatesExecutor.submit(() -> {
+                EmbeddedClient topologyUpdatesClient = topologyUpdatesClient(heartbeat.host);
+                topologyUpdatesClient.commit(Consistency.none, null, updates, replicateTimeoutMillis, TimeUnit.MILLISECONDS);
+                return null;
+            }));
+        }
+
+        Exception failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
         }
+        return futures.size();
     }
 
     @Override
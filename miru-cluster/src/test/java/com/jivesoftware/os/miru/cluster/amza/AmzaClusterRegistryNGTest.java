@@ -26,7 +26,10 @@ import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.marshall.JacksonJsonObjectTypeMarshaller;
 import com.jivesoftware.os.miru.api.marshall.MiruVoidByte;
 import com.jivesoftware.os.miru.api.topology.MiruIngressUpdate;
+import com.jivesoftware.os.miru.api.topology.MiruTenantTopologyUpdate;
 import com.jivesoftware.os.miru.api.topology.MiruTopologyStatus;
+import com.jivesoftware.os.miru.api.topology.NamedCursor;
+import com.jivesoftware.os.miru.api.topology.NamedCursorsResult;
 import com.jivesoftware.os.miru.api.topology.RangeMinMax;
 import com.jivesoftware.os.miru.cluster.MiruClusterRegistry;
 import com.jivesoftware.os.miru.cluster.MiruReplicaSet;
@@ -41,6 +44,8 @@ import com.jivesoftware.os.routing.bird.health.api.HealthChecker;
 import com.jivesoftware.os.routing.bird.health.api.HealthFactory;
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -112,7 +117,8 @@ public class AmzaClusterRegistryNGTest {
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.DAYS.toMillis(365),
-            TimeUnit.DAYS.toMillis(730));
+            TimeUnit.DAYS.toMillis(730),
+            4);
 
         replicaSetDirector = new MiruReplicaSetDirector(new OrderIdProviderImpl(new ConstantWriterIdProvider(1)), registry,
             stream -> {
@@ -179,6 +185,58 @@ public class AmzaClusterRegistryNGTest {
         assertEquals(status.partition.info.storage, MiruBackingStorage.memory);
     }
 
+    @Test
+    public void testUpdateTopologiesKeepsExistingAndMarksEveryHost() throws Exception {
+        hosts = addHosts(3);
+
+        Set<MiruHost> electedHosts = replicaSetDirector.electHostsForTenantPartition(tenantId,
+            partitionId,
+            new MiruReplicaSet(ArrayListMultimap.create(), Sets.<MiruHost>newHashSet(), numReplicas, numReplicas));
+        assertEquals(electedHosts.size(), 3);
+
+        MiruHost host = hosts.get(0);
+        MiruPartitionCoord coord = new MiruPartitionCoord(tenantId, partitionId, host);
+        MiruPartitionCoord missingCoord = new MiruPartitionCoord(tenantId, MiruPartitionId.of(1), host);
+        registry.updateIngress(new MiruIngressUpdate(tenantId, partitionId, new RangeMinMax(), System.currentTimeMillis(), false));
+        registry.updateTopologies(host, Arrays.asList(
+            new MiruClusterRegistry.TopologyUpdate(coord,
+                Optional.of(new MiruPartitionCoordInfo(MiruPartitionState.online, MiruBackingStorage.disk)),
+                Optional.of(1_234L))));
+
+        // the info and query timestamp each come from the existing value when missing, and a missing value gets defaults
+        registry.updateTopologies(host, Arrays.asList(
+            new MiruClusterRegistry.TopologyUpdate(coord, Optional.<MiruPartitionCoordInfo>absent(), Optional.of(5_678L)),
+            new MiruClusterRegistry.TopologyUpdate(missingCoord, Optional.<MiruPartitionCoordInfo>absent(), Optional.<Long>absent())));
+        MiruTopologyStatus status = getStatus(host);
+        assertEquals(status.partition.info.state, MiruPartitionState.online);
+        assertEquals(status.partition.info.storage, MiruBackingStorage.disk);
+        assertEquals(status.lastQueryTimestamp, 5_678L);
+
+        registry.updateTopologies(host, Arrays.asList(
+            new MiruClusterRegistry.TopologyUpdate(coord,
+                Optional.of(new MiruPartitionCoordInfo(MiruPartitionState.obsolete, MiruBackingStorage.disk)),
+                Optional.<Long>absent())));
+        status = getStatus(host);
+        assertEquals(status.partition.info.state, MiruPartitionState.obsolete);
+        assertEquals(status.lastQueryTimestamp, 5_678L);
+
+        for (MiruHost markedHost : hosts) {
+            NamedCursorsResult<Collection<MiruTenantTopologyUpdate>> updates = registry.getTopologyUpdatesForHost(markedHost,
+                Collections.<NamedCursor>emptyList());
+            assertEquals(updates.result.size(), 1);
+            assertEquals(updates.result.iterator().next().tenantId, tenantId);
+        }
+    }
+
+    private MiruTopologyStatus getStatus(MiruHost host) throws Exception {
+        for (MiruTopologyStatus status : registry.getTopologyStatusForTenantHost(tenantId, host)) {
+            if (status.partition.coord.partitionId.equals(partitionId)) {
+                return status;
+            }
+        }
+        throw new AssertionError("Missing status for " + partitionId);
+    }
+
     @Test
     public void testElectAndMoveReplica() throws Exception {
         hosts = addHosts(4);
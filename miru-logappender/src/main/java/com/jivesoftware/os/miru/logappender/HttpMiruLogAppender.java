@@ -157,7 +157,7 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
         }
     }
 
-    private String[] toStackTrace(Throwable throwable) {
+    static String[] toStackTrace(Throwable throwable) {
         if (throwable == null) {
             return null;
         }
@@ -370,7 +370,7 @@ public class HttpMiruLogAppender implements MiruLogAppender, Appender {
         }
     }
 
-    private static class EmptyLayout implements Layout<Serializable> {
+    static class EmptyLayout implements Layout<Serializable> {
 
         @Override
         public byte[] getFooter() {
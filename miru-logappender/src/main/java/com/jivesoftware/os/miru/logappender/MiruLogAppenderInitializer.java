@@ -35,6 +35,21 @@ public class MiruLogAppenderInitializer {
 
         @BooleanDefault(false)
         boolean getEnabled();
+
+        @BooleanDefault(false)
+        boolean getRingBufferEnabled();
+
+        @IntDefault(65_536)
+        int getRingBufferSize();
+
+        @LongDefault(1_000)
+        long getMaxBatchLatencyMillis();
+
+        @IntDefault(4)
+        int getMaxInFlightBatches();
+
+        @LongDefault(10_000)
+        long getStopTimeoutMillis();
     }
 
     public MiruLogAppender initialize(String datacenter,
@@ -45,7 +60,22 @@ public class MiruLogAppenderInitializer {
         String version,
         MiruLogAppenderConfig config,
         TenantAwareHttpClient<String> client) {
-        if (config.getEnabled()) {
+        if (config.getEnabled() && config.getRingBufferEnabled()) {
+            return new RingBufferMiruLogAppender(datacenter,
+                cluster,
+                host,
+                service,
+                instance,
+                version,
+                client,
+                config.getRingBufferSize(),
+                config.getBatchSize(),
+                config.getMaxBatchLatencyMillis(),
+                config.getIfEmptyPauseMillis(),
+                config.getIfErrorPauseMillis(),
+                config.getMaxInFlightBatches(),
+                config.getStopTimeoutMillis());
+        } else if (config.getEnabled()) {
             return new HttpMiruLogAppender(datacenter,
                 cluster,
                 host,
@@ -0,0 +1,115 @@
+package com.jivesoftware.os.miru.logappender;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, lock-free multi-producer single-consumer ring of reusable {@link MiruLogEvent} slots.
+ * <p>
+ * Producers {@link #claim()} a sequence, fill in {@link #slot(long)}, then {@link #publish(long)}. A full ring never blocks a producer,
+ * the event is dropped and counted instead. The single consumer {@link #drain(SlotConsumer, int)}s published slots in order and hands
+ * each slot back to producers as soon as its consumer callback returns, so the callback must not retain the slot.
+ */
+class MiruLogEventRingBuffer {
+
+    interface SlotConsumer {
+
+        void consume(MiruLogEvent slot) throws Exception;
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final MiruLogEvent[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head; // consumer only
+
+    MiruLogEventRingBuffer(int requestedCapacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1) << 1);
+        this.mask = capacity - 1;
+        this.slots = new MiruLogEvent[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new MiruLogEvent();
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the claimed sequence, or -1 if the ring is full and the event was dropped
+     */
+    long claim() {
+        long sequence = tail.get();
+        while (true) {
+            long available = sequences.get((int) (sequence & mask));
+            long delta = available - sequence;
+            if (delta == 0) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            } else if (delta < 0) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            sequence = tail.get();
+        }
+    }
+
+    MiruLogEvent slot(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    void publish(long sequence) {
+        sequences.lazySet((int) (sequence & mask), sequence + 1);
+    }
+
+    /**
+     * Consumer side. Stops at the first unpublished slot, so a slow producer never lets later events overtake it.
+     *
+     * @return the number of slots consumed
+     */
+    int drain(SlotConsumer consumer, int max) throws Exception {
+        int count = 0;
+        while (count < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            MiruLogEvent slot = slots[index];
+            try {
+                consumer.consume(slot);
+            } finally {
+                clear(slot);
+                sequences.lazySet(index, head + capacity);
+                head++;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    long size() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private static void clear(MiruLogEvent slot) {
+        slot.level = null;
+        slot.threadName = null;
+        slot.loggerName = null;
+        slot.methodName = null;
+        slot.lineNumber = null;
+        slot.message = null;
+        slot.timestamp = null;
+        slot.exceptionClass = null;
+        slot.thrownStackTrace = null;
+    }
+}
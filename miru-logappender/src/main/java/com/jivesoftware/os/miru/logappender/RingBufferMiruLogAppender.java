@@ -0,0 +1,414 @@
+package com.jivesoftware.os.miru.logappender;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
+import com.jivesoftware.os.routing.bird.http.client.RoundRobinStrategy;
+import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
+import com.jivesoftware.os.routing.bird.shared.ClientCall;
+import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.ErrorHandler;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.DefaultErrorHandler;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Appender mode for hot services. Application threads copy each event into a preallocated slot of a lock-free ring and never block;
+ * a full ring drops and counts. A single consumer serializes slots straight into the pending batch, flushes once the batch reaches
+ * {@code batchSize} or its oldest event is {@code maxBatchLatencyMillis} old, and posts snappy compressed batches with up to
+ * {@code maxInFlightBatches} requests outstanding. A batch which fails to serialize or submit is dropped and counted, and the consumer
+ * keeps draining; {@link #stop()} flushes the pending batch and waits up to {@code stopTimeoutMillis} for outstanding posts.
+ */
+public class RingBufferMiruLogAppender implements MiruLogAppender, Appender {
+
+    private final String datacenter;
+    private final String cluster;
+    private final String host;
+    private final String service;
+    private final String instance;
+    private final String version;
+    private final TenantAwareHttpClient<String> client;
+    private final MiruLogEventRingBuffer ringBuffer;
+    private final int batchSize;
+    private final long maxBatchLatencyNanos;
+    private final long ifEmptyPauseNanos;
+    private final long ifErrorPauseMillis;
+    private final int maxInFlightBatches;
+    private final long stopTimeoutMillis;
+
+    private final AtomicBoolean installed = new AtomicBoolean(false);
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicReference<RingConsumer> ringConsumer = new AtomicReference<>();
+    private final Layout<?> layout = new HttpMiruLogAppender.EmptyLayout();
+
+    private final AtomicLong sentEvents = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong failedPosts = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private ErrorHandler errorHandler = new DefaultErrorHandler(this);
+
+    private final NextClientStrategy nextClientStrategy = new RoundRobinStrategy();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String endpoint = "/miru/stumptown/intake/snappy";
+
+    RingBufferMiruLogAppender(String datacenter,
+        String cluster,
+        String host,
+        String service,
+        String instance,
+        String version,
+        TenantAwareHttpClient<String> client,
+        int ringBufferSize,
+        int batchSize,
+        long maxBatchLatencyMillis,
+        long ifEmptyPauseMillis,
+        long ifErrorPauseMillis,
+        int maxInFlightBatches,
+        long stopTimeoutMillis) {
+        this.datacenter = datacenter;
+        this.cluster = cluster;
+        this.host = host;
+        this.service = service;
+        this.instance = instance;
+        this.version = version;
+        this.client = client;
+        this.ringBuffer = new MiruLogEventRingBuffer(ringBufferSize);
+        this.batchSize = batchSize;
+        this.maxBatchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchLatencyMillis);
+        this.ifEmptyPauseNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(ifEmptyPauseMillis, maxBatchLatencyMillis));
+        this.ifErrorPauseMillis = ifErrorPauseMillis;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.stopTimeoutMillis = stopTimeoutMillis;
+    }
+
+    @Override
+    public void install() {
+        if (installed.compareAndSet(false, true)) {
+            LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+            Configuration config = ctx.getConfiguration();
+            config.addAppender(this);
+
+            for (LoggerConfig loggerConfig : config.getLoggers().values()) {
+                loggerConfig.addAppender(this, Level.INFO, null); // TODO expose to config
+            }
+        }
+
+        start();
+    }
+
+    @Override
+    public void append(LogEvent logEvent) {
+        if (!isStarted()) {
+            throw new IllegalStateException("MiruLogAppender " + getName() + " is not active");
+        }
+
+        long sequence = ringBuffer.claim();
+        if (sequence < 0) {
+            return;
+        }
+
+        MiruLogEvent slot = ringBuffer.slot(sequence);
+        try {
+            slot.datacenter = datacenter;
+            slot.cluster = cluster;
+            slot.host = host;
+            slot.service = service;
+            slot.instance = instance;
+            slot.version = version;
+            slot.level = logEvent.getLevel().name();
+            slot.threadName = logEvent.getThreadName();
+            slot.loggerName = logEvent.getLoggerName();
+
+            StackTraceElement source = logEvent.getSource();
+            if (source != null) {
+                slot.methodName = source.getMethodName();
+                slot.lineNumber = String.valueOf(source.getLineNumber());
+            }
+
+            Throwable thrown = logEvent.getThrown();
+            if (thrown != null) {
+                slot.exceptionClass = thrown.getClass().getCanonicalName();
+                slot.thrownStackTrace = HttpMiruLogAppender.toStackTrace(thrown);
+            }
+
+            slot.message = logEvent.getMessage().getFormattedMessage();
+            slot.timestamp = String.valueOf(logEvent.getTimeMillis());
+        } finally {
+            // always publish, a claimed but unpublished slot would stall the consumer
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    public long getDroppedCount() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    public long getSentEventCount() {
+        return sentEvents.get();
+    }
+
+    public long getSentBatchCount() {
+        return sentBatches.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public long getFailedPostCount() {
+        return failedPosts.get();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    @Override
+    public String getName() {
+        return cluster + "," + host + "," + instance + "," + service + "," + version;
+    }
+
+    @Override
+    public Layout<? extends Serializable> getLayout() {
+        return layout;
+    }
+
+    @Override
+    public boolean ignoreExceptions() {
+        return true;
+    }
+
+    @Override
+    public ErrorHandler getHandler() {
+        return errorHandler;
+    }
+
+    @Override
+    public void setHandler(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public State getState() {
+        return State.INITIALIZED;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            RingConsumer consumer = new RingConsumer();
+            Thread thread = new Thread(consumer, "miru-log-appender-ring-consumer");
+            thread.setDaemon(true);
+            thread.start();
+            ringConsumer.set(consumer);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (started.compareAndSet(true, false)) {
+            RingConsumer consumer = ringConsumer.getAndSet(null);
+            if (consumer != null) {
+                consumer.stop();
+            }
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    @Override
+    public boolean isStopped() {
+        return !started.get();
+    }
+
+    private class RingConsumer implements Runnable {
+
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Semaphore inFlight = new Semaphore(maxInFlightBatches);
+        private final ExecutorService senders = Executors.newFixedThreadPool(maxInFlightBatches, r -> {
+            Thread thread = new Thread(r, "miru-log-appender-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private ByteArrayOutputStream batchBytes;
+        private JsonGenerator generator;
+        private int batchCount;
+        private long batchStartNanos;
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        private long reportedDropped;
+
+        @Override
+        public void run() {
+            try {
+                while (running.get()) {
+                    try {
+                        int drained = ringBuffer.drain(this::write, batchSize - batchCount);
+                        if (batchCount > 0 && (batchCount >= batchSize || System.nanoTime() - batchStartNanos >= maxBatchLatencyNanos)) {
+                            flush();
+                        } else if (drained == 0) {
+                            LockSupport.parkNanos(ifEmptyPauseNanos);
+                        }
+                        reportDropped();
+                    } catch (Exception e) {
+                        failed(e);
+                        pauseAfterError();
+                    }
+                }
+                if (batchCount > 0) {
+                    try {
+                        flush();
+                    } catch (Exception e) {
+                        failed(e);
+                    }
+                }
+            } finally {
+                senders.shutdown();
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Drops the pending batch, since its events have already been released back to the ring.
+         */
+        private void failed(Exception e) {
+            failedBatches.incrementAndGet();
+            System.err.println("RingConsumer dropped a batch of " + batchCount + " events: " + e.getClass().getCanonicalName() + ": " + e.getMessage());
+            batchBytes = null;
+            generator = null;
+            batchCount = 0;
+        }
+
+        private void pauseAfterError() {
+            try {
+                Thread.sleep(ifErrorPauseMillis);
+            } catch (InterruptedException e) {
+                System.err.println("RingConsumer was interrupted while sleeping due to errors");
+                Thread.interrupted();
+            }
+        }
+
+        private void write(MiruLogEvent slot) throws IOException {
+            if (batchCount == 0) {
+                batchBytes = new ByteArrayOutputStream();
+                generator = objectMapper.getFactory().createGenerator(batchBytes);
+                generator.writeStartArray();
+                batchStartNanos = System.nanoTime();
+            }
+            objectMapper.writeValue(generator, slot);
+            batchCount++;
+        }
+
+        private void flush() throws Exception {
+            generator.writeEndArray();
+            generator.close();
+            byte[] compressed = Snappy.compress(batchBytes.toByteArray());
+            int count = batchCount;
+
+            batchBytes = null;
+            generator = null;
+            batchCount = 0;
+
+            inFlight.acquire();
+            try {
+                senders.submit(() -> {
+                    try {
+                        post(compressed, count);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (Exception e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void post(byte[] compressed, int count) {
+            // the final batch is posted after running is cleared, so always make at least one attempt
+            do {
+                try {
+                    HttpResponse httpResponse = client.call(
+                        "",
+                        nextClientStrategy,
+                        "ingress",
+                        client -> new ClientCall.ClientResponse<>(client.postBytes(endpoint, compressed, null), true));
+                    if (httpResponse.getStatusCode() != 202) {
+                        throw new Exception("Error [" + httpResponse.getStatusCode() + "] posting " + count + " events");
+                    }
+
+                    sentEvents.addAndGet(count);
+                    sentBatches.incrementAndGet();
+                    sentBytes.addAndGet(compressed.length);
+                    return;
+                } catch (Exception e) {
+                    failedPosts.incrementAndGet();
+                    System.err.println("Append failed for logger: " + e.getClass().getCanonicalName() + ": " + e.getMessage());
+                }
+
+                if (!running.get()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(ifErrorPauseMillis);
+                } catch (InterruptedException e) {
+                    System.err.println("RingConsumer sender was interrupted while sleeping due to errors");
+                    Thread.interrupted();
+                }
+            } while (running.get());
+        }
+
+        private void reportDropped() {
+            long dropped = ringBuffer.getDroppedCount();
+            if (dropped != reportedDropped) {
+                System.err.println("MiruLogAppender " + getName() + " dropped " + (dropped - reportedDropped) + " events due to a full ring buffer");
+                reportedDropped = dropped;
+            }
+        }
+
+        private void stop() {
+            running.set(false);
+            long deadline = System.currentTimeMillis() + stopTimeoutMillis;
+            try {
+                if (!stopped.await(stopTimeoutMillis, TimeUnit.MILLISECONDS)
+                    || !senders.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    System.err.println("RingConsumer did not finish sending within " + stopTimeoutMillis + " millis");
+                    senders.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                senders.shutdownNow();
+            }
+        }
+    }
+
+}
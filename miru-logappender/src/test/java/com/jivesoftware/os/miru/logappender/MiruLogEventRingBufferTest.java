@@ -0,0 +1,86 @@
+package com.jivesoftware.os.miru.logappender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MiruLogEventRingBufferTest {
+
+    @Test
+    public void testDropsWhenFull() throws Exception {
+        MiruLogEventRingBuffer ringBuffer = new MiruLogEventRingBuffer(4);
+        assertEquals(ringBuffer.capacity(), 4);
+
+        for (int i = 0; i < 6; i++) {
+            long sequence = ringBuffer.claim();
+            if (sequence >= 0) {
+                ringBuffer.slot(sequence).message = String.valueOf(i);
+                ringBuffer.publish(sequence);
+            }
+        }
+        assertEquals(ringBuffer.getDroppedCount(), 2);
+
+        List<String> messages = new ArrayList<>();
+        assertEquals(ringBuffer.drain(slot -> messages.add(slot.message), 10), 4);
+        assertEquals(messages.toString(), "[0, 1, 2, 3]");
+        assertEquals(ringBuffer.size(), 0);
+    }
+
+    @Test
+    public void testDrainStopsAtUnpublishedSlot() throws Exception {
+        MiruLogEventRingBuffer ringBuffer = new MiruLogEventRingBuffer(8);
+        long first = ringBuffer.claim();
+        long second = ringBuffer.claim();
+        ringBuffer.publish(second);
+
+        assertEquals(ringBuffer.drain(slot -> { }, 10), 0);
+        ringBuffer.publish(first);
+        assertEquals(ringBuffer.drain(slot -> { }, 10), 2);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 100_000;
+        MiruLogEventRingBuffer ringBuffer = new MiruLogEventRingBuffer(1_024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            String threadName = "p" + p;
+            executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    long sequence = ringBuffer.claim();
+                    if (sequence >= 0) {
+                        ringBuffer.slot(sequence).threadName = threadName;
+                        ringBuffer.slot(sequence).message = String.valueOf(i);
+                        ringBuffer.publish(sequence);
+                    }
+                }
+                latch.countDown();
+            });
+        }
+
+        int[] lastSeen = new int[producers];
+        java.util.Arrays.fill(lastSeen, -1);
+        long consumed = 0;
+        while (latch.getCount() > 0 || ringBuffer.size() > 0) {
+            consumed += ringBuffer.drain(slot -> {
+                int producer = Integer.parseInt(slot.threadName.substring(1));
+                int value = Integer.parseInt(slot.message);
+                assertTrue(value > lastSeen[producer], "out of order for " + slot.threadName);
+                lastSeen[producer] = value;
+            }, 256);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(consumed + ringBuffer.getDroppedCount(), (long) producers * perProducer);
+    }
+}
@@ -7,7 +7,9 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.cluster.MiruRegistryClusterClient;
 import com.jivesoftware.os.miru.manage.deployable.balancer.CaterpillarSelectHostsStrategy;
+import com.jivesoftware.os.miru.manage.deployable.balancer.LoadAwarePlacement;
 import com.jivesoftware.os.miru.manage.deployable.balancer.MiruRebalanceDirector;
+import com.jivesoftware.os.miru.manage.deployable.balancer.QueryRecencyPartitionLoadProvider;
 import com.jivesoftware.os.miru.manage.deployable.balancer.ShiftPredicate;
 import com.jivesoftware.os.miru.manage.deployable.balancer.UnhealthyTopologyShiftPredicate;
 import com.jivesoftware.os.miru.manage.deployable.region.MiruSchemaRegion;
@@ -210,6 +212,27 @@ public class MiruManageEndpoints {
         }
     }
 
+    @POST
+    @Path("/topology/balance")
+    @Produces(MediaType.TEXT_PLAIN)
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public Response balanceTopologies(@FormParam("maxMoves") @DefaultValue("100") int maxMoves,
+        @FormParam("dryRun") @DefaultValue("true") boolean dryRun,
+        @FormParam("queryHalfLifeMillis") @DefaultValue("3600000") long queryHalfLifeMillis,
+        @FormParam("queryWeight") @DefaultValue("1.0") double queryWeight,
+        @FormParam("sizeWeight") @DefaultValue("0.1") double sizeWeight,
+        @FormParam("rebuildPenalty") @DefaultValue("0.5") double rebuildPenalty) {
+        try {
+            LoadAwarePlacement.Plan plan = rebalanceDirector.balanceLoad(new QueryRecencyPartitionLoadProvider(queryHalfLifeMillis, 1L),
+                new LoadAwarePlacement(queryWeight, sizeWeight, rebuildPenalty, maxMoves),
+                dryRun);
+            return Response.ok(plan.report()).build();
+        } catch (Throwable t) {
+            LOG.error("POST /topology/balance {} {}", new Object[] { maxMoves, dryRun }, t);
+            return Response.serverError().entity(t.getMessage()).build();
+        }
+    }
+
     @DELETE
     @Path("/hosts/{logicalName}")
     @Produces(MediaType.TEXT_HTML)
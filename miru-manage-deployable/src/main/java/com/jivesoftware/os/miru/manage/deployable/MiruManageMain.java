@@ -291,7 +291,8 @@ public class MiruManageMain {
                 registryConfig.getDefaultTopologyIsStaleAfterMillis(),
                 registryConfig.getDefaultTopologyIsIdleAfterMillis(),
                 registryConfig.getDefaultTopologyDestroyAfterMillis(),
-                registryConfig.getDefaultTopologyCleanupAfterMillis());
+                registryConfig.getDefaultTopologyCleanupAfterMillis(),
+                registryConfig.getTopologyUpdatesConcurrency());
             amzaLifecycle.amzaService.watch(PartitionCreator.RING_INDEX.getPartitionName(), clusterRegistry);
 
             MiruSoyRenderer renderer = new MiruSoyRendererInitializer().initialize(rendererConfig);
@@ -0,0 +1,222 @@
+package com.jivesoftware.os.miru.manage.deployable.balancer;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Greedy load balancer over replica placements. Each pass repeatedly takes the most loaded host and moves the one replica that
+ * best narrows the gap to a host not already holding that partition, net of a penalty for the replica's rebuild cost, until no
+ * move helps or {@code maxMovesPerPass} is reached. Pure in-memory so it can be exercised against synthetic topologies.
+ */
+public class LoadAwarePlacement {
+
+    private final double queryWeight;
+    private final double sizeWeight;
+    private final double rebuildPenalty;
+    private final int maxMovesPerPass;
+
+    /**
+     * @param queryWeight    weight per unit of (query rate x query latency)
+     * @param sizeWeight     weight per byte of index size
+     * @param rebuildPenalty load that must be shed per unit of rebuild cost before a move is worth it
+     */
+    public LoadAwarePlacement(double queryWeight, double sizeWeight, double rebuildPenalty, int maxMovesPerPass) {
+        this.queryWeight = queryWeight;
+        this.sizeWeight = sizeWeight;
+        this.rebuildPenalty = rebuildPenalty;
+        this.maxMovesPerPass = maxMovesPerPass;
+    }
+
+    public double cost(PartitionLoad load) {
+        return queryWeight * load.queryRate * load.queryLatencyMillis + sizeWeight * load.sizeInBytes;
+    }
+
+    public Plan solve(List<MiruHost> hosts, ListMultimap<MiruHost, Replica> assignments) {
+        Map<MiruHost, Double> hostLoads = new LinkedHashMap<>();
+        ListMultimap<MiruHost, Replica> placed = ArrayListMultimap.create();
+        Map<TenantAndPartition, Set<MiruHost>> partitionHosts = Maps.newHashMap();
+        for (MiruHost host : hosts) {
+            hostLoads.put(host, 0d);
+        }
+        for (Map.Entry<MiruHost, Replica> entry : assignments.entries()) {
+            MiruHost host = entry.getKey();
+            Replica replica = entry.getValue();
+            hostLoads.merge(host, cost(replica.load), Double::sum);
+            placed.put(host, replica);
+            partitionHosts.computeIfAbsent(replica.tenantAndPartition, key -> Sets.newHashSet()).add(host);
+        }
+
+        Map<MiruHost, Double> before = Collections.unmodifiableMap(new LinkedHashMap<>(hostLoads));
+        List<Move> moves = Lists.newArrayList();
+        Map<TenantAndPartition, Set<MiruHost>> shifted = Maps.newHashMap();
+
+        while (moves.size() < maxMovesPerPass && hostLoads.size() > 1) {
+            MiruHost hottest = null;
+            double hottestLoad = Double.NEGATIVE_INFINITY;
+            for (Map.Entry<MiruHost, Double> entry : hostLoads.entrySet()) {
+                if (entry.getValue() > hottestLoad) {
+                    hottest = entry.getKey();
+                    hottestLoad = entry.getValue();
+                }
+            }
+
+            Replica bestReplica = null;
+            MiruHost bestTarget = null;
+            double bestBenefit = 0d;
+            for (Replica replica : placed.get(hottest)) {
+                double weight = cost(replica.load);
+                if (weight <= 0d) {
+                    continue;
+                }
+                Set<MiruHost> holding = partitionHosts.get(replica.tenantAndPartition);
+                for (Map.Entry<MiruHost, Double> entry : hostLoads.entrySet()) {
+                    MiruHost target = entry.getKey();
+                    if (holding.contains(target)) {
+                        continue;
+                    }
+                    // reduction in the sum of squared host loads: 2w((hot - cold) - w)
+                    double benefit = 2d * weight * ((hottestLoad - entry.getValue()) - weight) - rebuildPenalty * replica.load.rebuildCost;
+                    if (benefit > bestBenefit) {
+                        bestBenefit = benefit;
+                        bestReplica = replica;
+                        bestTarget = target;
+                    }
+                }
+            }
+
+            if (bestReplica == null) {
+                break;
+            }
+
+            double weight = cost(bestReplica.load);
+            hostLoads.merge(hottest, -weight, Double::sum);
+            hostLoads.merge(bestTarget, weight, Double::sum);
+            placed.remove(hottest, bestReplica);
+            placed.put(bestTarget, bestReplica);
+            Set<MiruHost> holding = partitionHosts.get(bestReplica.tenantAndPartition);
+            holding.remove(hottest);
+            holding.add(bestTarget);
+            shifted.put(bestReplica.tenantAndPartition, holding);
+            moves.add(new Move(bestReplica.tenantAndPartition, hottest, bestTarget, weight));
+        }
+
+        return new Plan(moves, before, Collections.unmodifiableMap(hostLoads), shifted);
+    }
+
+    /**
+     * Peak to average ratio of host loads, 1.0 is perfectly balanced.
+     */
+    public static double peakToAverage(Map<MiruHost, Double> hostLoads) {
+        if (hostLoads.isEmpty()) {
+            return 1d;
+        }
+        double max = 0d;
+        double sum = 0d;
+        for (double load : hostLoads.values()) {
+            max = Math.max(max, load);
+            sum += load;
+        }
+        double mean = sum / hostLoads.size();
+        return mean > 0d ? max / mean : 1d;
+    }
+
+    /**
+     * Coefficient of variation of host loads, 0.0 is perfectly balanced.
+     */
+    public static double coefficientOfVariation(Map<MiruHost, Double> hostLoads) {
+        if (hostLoads.isEmpty()) {
+            return 0d;
+        }
+        double sum = 0d;
+        for (double load : hostLoads.values()) {
+            sum += load;
+        }
+        double mean = sum / hostLoads.size();
+        if (mean <= 0d) {
+            return 0d;
+        }
+        double squares = 0d;
+        for (double load : hostLoads.values()) {
+            squares += (load - mean) * (load - mean);
+        }
+        return Math.sqrt(squares / hostLoads.size()) / mean;
+    }
+
+    public static class Replica {
+
+        public final TenantAndPartition tenantAndPartition;
+        public final PartitionLoad load;
+
+        public Replica(TenantAndPartition tenantAndPartition, PartitionLoad load) {
+            this.tenantAndPartition = tenantAndPartition;
+            this.load = load;
+        }
+    }
+
+    public static class Move {
+
+        public final TenantAndPartition tenantAndPartition;
+        public final MiruHost fromHost;
+        public final MiruHost toHost;
+        public final double load;
+
+        public Move(TenantAndPartition tenantAndPartition, MiruHost fromHost, MiruHost toHost, double load) {
+            this.tenantAndPartition = tenantAndPartition;
+            this.fromHost = fromHost;
+            this.toHost = toHost;
+            this.load = load;
+        }
+
+        @Override
+        public String toString() {
+            return tenantAndPartition.tenantId + "/" + tenantAndPartition.partitionId + " " + fromHost + " -> " + toHost + " load=" + load;
+        }
+    }
+
+    public static class Plan {
+
+        public final List<Move> moves;
+        public final Map<MiruHost, Double> loadBefore;
+        public final Map<MiruHost, Double> loadAfter;
+        /** Final replica hosts for every partition with at least one move. */
+        public final Map<TenantAndPartition, Set<MiruHost>> shiftedReplicaHosts;
+
+        public Plan(List<Move> moves,
+            Map<MiruHost, Double> loadBefore,
+            Map<MiruHost, Double> loadAfter,
+            Map<TenantAndPartition, Set<MiruHost>> shiftedReplicaHosts) {
+            this.moves = moves;
+            this.loadBefore = loadBefore;
+            this.loadAfter = loadAfter;
+            this.shiftedReplicaHosts = shiftedReplicaHosts;
+        }
+
+        public String report() {
+            StringBuilder buf = new StringBuilder();
+            buf.append("moves=").append(moves.size())
+                .append(" peakToAverage=").append(String.format("%.3f -> %.3f", peakToAverage(loadBefore), peakToAverage(loadAfter)))
+                .append(" coefficientOfVariation=").append(String.format("%.3f -> %.3f", coefficientOfVariation(loadBefore),
+                    coefficientOfVariation(loadAfter)))
+                .append('\n');
+            for (Map.Entry<MiruHost, Double> entry : loadBefore.entrySet()) {
+                buf.append(entry.getKey()).append(' ')
+                    .append(String.format("%.3f -> %.3f", entry.getValue(), loadAfter.get(entry.getKey())))
+                    .append('\n');
+            }
+            for (Move move : moves) {
+                buf.append(move).append('\n');
+            }
+            return buf.toString();
+        }
+    }
+}
@@ -197,6 +197,39 @@ public class MiruRebalanceDirector {
         LOG.inc("rebalance>missed", missed);
     }
 
+    public LoadAwarePlacement.Plan balanceLoad(PartitionLoadProvider loadProvider, LoadAwarePlacement placement, boolean dryRun) throws Exception {
+        LinkedHashSet<HostHeartbeat> hostHeartbeats = clusterRegistry.getAllHosts();
+        List<MiruHost> allHosts = hostHeartbeats.stream().map(input -> input.host).collect(Collectors.toList());
+
+        ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments = ArrayListMultimap.create();
+        Map<TenantAndPartition, List<MiruHost>> fromHosts = Maps.newHashMap();
+        List<MiruTenantId> tenantIds = miruWALClient.getAllTenantIds();
+        clusterRegistry.topologiesForTenants(tenantIds, status -> {
+            if (status != null) {
+                TenantAndPartition tenantAndPartition = new TenantAndPartition(status.partition.coord.tenantId, status.partition.coord.partitionId);
+                MiruHost host = status.partition.coord.host;
+                assignments.put(host, new LoadAwarePlacement.Replica(tenantAndPartition, loadProvider.getLoad(status)));
+                fromHosts.computeIfAbsent(tenantAndPartition, key -> Lists.newArrayList()).add(host);
+            }
+            return status;
+        });
+
+        LoadAwarePlacement.Plan plan = placement.solve(allHosts, assignments);
+        LOG.info("Load balance plan dryRun={}:\n{}", dryRun, plan.report());
+
+        if (!dryRun && !plan.moves.isEmpty()) {
+            Table<MiruTenantId, MiruPartitionId, Shift> shiftTable = HashBasedTable.create();
+            for (Map.Entry<TenantAndPartition, Set<MiruHost>> entry : plan.shiftedReplicaHosts.entrySet()) {
+                TenantAndPartition tenantAndPartition = entry.getKey();
+                shiftTable.put(tenantAndPartition.tenantId, tenantAndPartition.partitionId,
+                    new Shift(fromHosts.get(tenantAndPartition), Lists.newArrayList(entry.getValue())));
+            }
+            electHosts(shiftTable);
+        }
+        LOG.inc("rebalance>load>moves", plan.moves.size());
+        return plan;
+    }
+
     public void debugTenant(MiruTenantId tenantId, StringBuilder stringBuilder) throws Exception {
         clusterRegistry.debugTenant(tenantId, stringBuilder);
     }
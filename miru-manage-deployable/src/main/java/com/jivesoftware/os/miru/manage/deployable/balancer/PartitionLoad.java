@@ -0,0 +1,29 @@
+package com.jivesoftware.os.miru.manage.deployable.balancer;
+
+/**
+ * What it costs a reader to serve, and to rebuild, one replica of a partition.
+ */
+public class PartitionLoad {
+
+    public final double queryRate;
+    public final double queryLatencyMillis;
+    public final long sizeInBytes;
+    public final double rebuildCost;
+
+    public PartitionLoad(double queryRate, double queryLatencyMillis, long sizeInBytes, double rebuildCost) {
+        this.queryRate = queryRate;
+        this.queryLatencyMillis = queryLatencyMillis;
+        this.sizeInBytes = sizeInBytes;
+        this.rebuildCost = rebuildCost;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionLoad{"
+            + "queryRate=" + queryRate
+            + ", queryLatencyMillis=" + queryLatencyMillis
+            + ", sizeInBytes=" + sizeInBytes
+            + ", rebuildCost=" + rebuildCost
+            + '}';
+    }
+}
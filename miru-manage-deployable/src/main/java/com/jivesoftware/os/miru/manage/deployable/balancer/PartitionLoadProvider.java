@@ -0,0 +1,11 @@
+package com.jivesoftware.os.miru.manage.deployable.balancer;
+
+import com.jivesoftware.os.miru.api.topology.MiruTopologyStatus;
+
+/**
+ *
+ */
+public interface PartitionLoadProvider {
+
+    PartitionLoad getLoad(MiruTopologyStatus status);
+}
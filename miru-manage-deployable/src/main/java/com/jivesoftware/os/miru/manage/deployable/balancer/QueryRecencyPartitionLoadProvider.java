@@ -0,0 +1,31 @@
+package com.jivesoftware.os.miru.manage.deployable.balancer;
+
+import com.jivesoftware.os.miru.api.MiruPartitionState;
+import com.jivesoftware.os.miru.api.topology.MiruTopologyStatus;
+
+/**
+ * Estimates load from what heartbeats report today. Query demand decays with the age of the last reported query timestamp,
+ * latency is treated as uniform, and every replica carries a unit of size and rebuild cost so that count still balances
+ * when nothing is being queried.
+ */
+public class QueryRecencyPartitionLoadProvider implements PartitionLoadProvider {
+
+    private final long queryHalfLifeMillis;
+    private final long unitSizeInBytes;
+
+    public QueryRecencyPartitionLoadProvider(long queryHalfLifeMillis, long unitSizeInBytes) {
+        this.queryHalfLifeMillis = queryHalfLifeMillis;
+        this.unitSizeInBytes = unitSizeInBytes;
+    }
+
+    @Override
+    public PartitionLoad getLoad(MiruTopologyStatus status) {
+        double queryRate = 0d;
+        if (status.lastQueryTimestamp > 0) {
+            long age = Math.max(0, System.currentTimeMillis() - status.lastQueryTimestamp);
+            queryRate = Math.pow(2d, -(double) age / queryHalfLifeMillis);
+        }
+        boolean online = status.partition.info.state == MiruPartitionState.online;
+        return new PartitionLoad(queryRate, 1d, unitSizeInBytes, online ? 1d : 0d);
+    }
+}
@@ -7,11 +7,13 @@ import com.jivesoftware.os.miru.api.MiruStats;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.topology.MiruHeartbeatCodec;
 import com.jivesoftware.os.miru.api.topology.MiruHeartbeatRequest;
 import com.jivesoftware.os.miru.api.topology.MiruIngressUpdate;
 import com.jivesoftware.os.miru.cluster.MiruRegistryClusterClient;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.routing.bird.shared.ResponseHelper;
 import java.nio.charset.StandardCharsets;
 import javax.inject.Singleton;
@@ -187,6 +189,38 @@ public class MiruTopologyEndpoints {
         }
     }
 
+    @POST
+    @Path("/thumpthump/binary/{logicalName}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response thumpthumpBinary(@PathParam("logicalName") String logicalName,
+        byte[] body) {
+        try {
+            long start = System.currentTimeMillis();
+            long decodeStart = System.nanoTime();
+            MiruHeartbeatRequest request = MiruHeartbeatCodec.decode(body);
+            long decodeMicros = (System.nanoTime() - decodeStart) / 1_000;
+            MiruHost miruHost = new MiruHost(logicalName);
+            Response r = ResponseHelper.INSTANCE.jsonResponse(registry.thumpthump(miruHost, request));
+            long elapsed = System.currentTimeMillis() - start;
+            stats.ingressed("/thumpthump/binary/" + logicalName, 1, elapsed);
+            LOG.set(ValueType.VALUE, "thumpthump>decodeMicros", decodeMicros);
+            LOG.set(ValueType.VALUE, "thumpthump>processMillis", elapsed);
+            LOG.set(ValueType.COUNT, "thumpthump>bytes", body.length);
+            LOG.set(ValueType.COUNT, "thumpthump>partitions", request.active.size());
+            LOG.inc(request.fullSnapshot ? "thumpthump>snapshot" : "thumpthump>delta");
+            return r;
+        } catch (Exception x) {
+            String msg = "Failed to thumpthump for " + logicalName;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(msg, x);
+            } else {
+                LOG.error(msg + ": " + x.getMessage());
+            }
+            return ResponseHelper.INSTANCE.errorResponse(msg, x);
+        }
+    }
+
     @POST
     @Path("/allHosts")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -0,0 +1,123 @@
+package com.jivesoftware.os.miru.manage.deployable.balancer;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LoadAwarePlacementTest {
+
+    private static final int NUM_HOSTS = 10;
+    private static final int NUM_REPLICAS = 3;
+
+    @Test
+    public void testHotTenantSpreads() throws Exception {
+        List<MiruHost> hosts = hosts();
+        ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments = ArrayListMultimap.create();
+        // hot tenant piled onto the first three hosts
+        assign(assignments, hosts, "hot", 20, 0, new PartitionLoad(10d, 5d, 1L, 1d));
+        // cold tenants spread evenly
+        for (int t = 0; t < 10; t++) {
+            assign(assignments, hosts, "cold" + t, 3, t, new PartitionLoad(0.1d, 1d, 1L, 1d));
+        }
+
+        int maxMoves = 40;
+        LoadAwarePlacement placement = new LoadAwarePlacement(1d, 0.1d, 0.5d, maxMoves);
+        LoadAwarePlacement.Plan plan = placement.solve(hosts, assignments);
+
+        assertTrue(plan.moves.size() > 0);
+        assertTrue(plan.moves.size() <= maxMoves);
+        assertTrue(LoadAwarePlacement.peakToAverage(plan.loadAfter) < LoadAwarePlacement.peakToAverage(plan.loadBefore));
+        assertTrue(LoadAwarePlacement.coefficientOfVariation(plan.loadAfter) < LoadAwarePlacement.coefficientOfVariation(plan.loadBefore));
+        assertEquals(sum(plan.loadAfter), sum(plan.loadBefore), 1e-6);
+
+        for (Map.Entry<TenantAndPartition, Set<MiruHost>> entry : plan.shiftedReplicaHosts.entrySet()) {
+            assertEquals(entry.getValue().size(), NUM_REPLICAS, "Lost or duplicated a replica for " + entry.getKey());
+        }
+        for (LoadAwarePlacement.Move move : plan.moves) {
+            Set<MiruHost> replicaHosts = plan.shiftedReplicaHosts.get(move.tenantAndPartition);
+            assertTrue(replicaHosts != null && !replicaHosts.isEmpty());
+        }
+    }
+
+    @Test
+    public void testBalancedTopologyDoesNotMove() throws Exception {
+        List<MiruHost> hosts = hosts();
+        ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments = ArrayListMultimap.create();
+        for (int t = 0; t < NUM_HOSTS; t++) {
+            assign(assignments, hosts, "tenant" + t, 1, t, new PartitionLoad(1d, 1d, 1L, 1d));
+        }
+
+        LoadAwarePlacement.Plan plan = new LoadAwarePlacement(1d, 0.1d, 0.5d, 100).solve(hosts, assignments);
+        assertEquals(plan.moves.size(), 0);
+        assertTrue(plan.shiftedReplicaHosts.isEmpty());
+    }
+
+    @Test
+    public void testMaxMovesZero() throws Exception {
+        List<MiruHost> hosts = hosts();
+        ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments = ArrayListMultimap.create();
+        assign(assignments, hosts, "hot", 10, 0, new PartitionLoad(10d, 5d, 1L, 1d));
+
+        LoadAwarePlacement.Plan plan = new LoadAwarePlacement(1d, 0.1d, 0.5d, 0).solve(hosts, assignments);
+        assertEquals(plan.moves.size(), 0);
+        assertEquals(plan.loadAfter, plan.loadBefore);
+    }
+
+    @Test
+    public void testRebuildPenaltyPreventsMarginalMoves() throws Exception {
+        List<MiruHost> hosts = hosts();
+        ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments = ArrayListMultimap.create();
+        assign(assignments, hosts, "warm", 2, 0, new PartitionLoad(1d, 1d, 0L, 1d));
+
+        LoadAwarePlacement.Plan plan = new LoadAwarePlacement(1d, 0d, 1_000d, 100).solve(hosts, assignments);
+        assertEquals(plan.moves.size(), 0);
+    }
+
+    private List<MiruHost> hosts() {
+        List<MiruHost> hosts = Lists.newArrayList();
+        for (int i = 0; i < NUM_HOSTS; i++) {
+            hosts.add(new MiruHost("host" + i));
+        }
+        return hosts;
+    }
+
+    private void assign(ListMultimap<MiruHost, LoadAwarePlacement.Replica> assignments,
+        List<MiruHost> hosts,
+        String tenant,
+        int numPartitions,
+        int firstHost,
+        PartitionLoad load) {
+        MiruTenantId tenantId = new MiruTenantId(tenant.getBytes(StandardCharsets.UTF_8));
+        for (int p = 0; p < numPartitions; p++) {
+            TenantAndPartition tenantAndPartition = new TenantAndPartition(tenantId, MiruPartitionId.of(p));
+            Set<MiruHost> used = Sets.newHashSet();
+            for (int r = 0; r < NUM_REPLICAS; r++) {
+                MiruHost host = hosts.get((firstHost + r) % hosts.size());
+                if (used.add(host)) {
+                    assignments.put(host, new LoadAwarePlacement.Replica(tenantAndPartition, load));
+                }
+            }
+        }
+    }
+
+    private double sum(Map<MiruHost, Double> hostLoads) {
+        double sum = 0d;
+        for (double load : hostLoads.values()) {
+            sum += load;
+        }
+        return sum;
+    }
+}
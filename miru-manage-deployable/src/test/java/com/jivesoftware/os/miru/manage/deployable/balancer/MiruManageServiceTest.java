@@ -122,7 +122,8 @@ public class MiruManageServiceTest {
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.DAYS.toMillis(365),
-            TimeUnit.DAYS.toMillis(730));
+            TimeUnit.DAYS.toMillis(730),
+            4);
 
         clusterRegistry.registerSchema(tenantId, miruSchema);
 
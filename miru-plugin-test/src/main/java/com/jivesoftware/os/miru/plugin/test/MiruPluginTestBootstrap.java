@@ -209,7 +209,8 @@ public class MiruPluginTestBootstrap {
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.DAYS.toMillis(365),
-            TimeUnit.DAYS.toMillis(730));
+            TimeUnit.DAYS.toMillis(730),
+            4);
 
         MiruReplicaSetDirector replicaSetDirector = new MiruReplicaSetDirector(new OrderIdProviderImpl(new ConstantWriterIdProvider(1)), clusterRegistry,
             stream -> stream.descriptor("datacenter", "rack", miruHost), false);
@@ -20,6 +20,7 @@ import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MultiIndexTx;
 import com.jivesoftware.os.miru.plugin.index.TermIdStream;
 import com.jivesoftware.os.miru.plugin.query.LuceneBackedQueryParser;
+import com.jivesoftware.os.miru.plugin.query.MiruQueryFilterCache;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
@@ -132,6 +133,25 @@ public class LuceneBackedQueryParserTest {
         assertTrue(storage.contains(8));
     }
 
+    @Test
+    public void testFilterCache() throws Exception {
+        MiruQueryFilterCache filterCache = new MiruQueryFilterCache(10);
+        LuceneBackedQueryParser parserA = new LuceneBackedQueryParser("a", filterCache);
+        LuceneBackedQueryParser parserB = new LuceneBackedQueryParser("b", filterCache);
+
+        MiruFilter first = parserA.parse("en", false, "red AND blue");
+        Assert.assertSame(parserA.parse("en", false, "red AND blue"), first);
+        Assert.assertSame(new LuceneBackedQueryParser("a", filterCache).parse("en", false, "red AND blue"), first);
+        Assert.assertEquals(first, new LuceneBackedQueryParser("a").parse("en", false, "red AND blue"));
+
+        Assert.assertNotSame(parserB.parse("en", false, "red AND blue"), first);
+        Assert.assertNotSame(parserA.parse("en", true, "red AND blue"), first);
+        Assert.assertNotSame(parserA.parse("fr", false, "red AND blue"), first);
+
+        Assert.assertEquals(filterCache.stats().hitCount(), 2);
+        Assert.assertEquals(filterCache.stats().missCount(), 4);
+    }
+
     private MiruTermId term(String term) {
         return new MiruTermId(term.getBytes(StandardCharsets.UTF_8));
     }
@@ -223,6 +243,12 @@ public class LuceneBackedQueryParserTest {
             throw new UnsupportedOperationException("Nope");
         }
 
+        @Override
+        public void multiSet(MiruFieldDefinition fieldDefinition, MiruTermId[] termIds, int[][] ids, long[][] counts, StackBuffer stackBuffer)
+            throws Exception {
+            throw new UnsupportedOperationException("Nope");
+        }
+
         @Override
         public void setIfEmpty(MiruFieldDefinition fieldDefinition, MiruTermId termId, int id, long count, StackBuffer stackBuffer) throws Exception {
             throw new UnsupportedOperationException("Nope");
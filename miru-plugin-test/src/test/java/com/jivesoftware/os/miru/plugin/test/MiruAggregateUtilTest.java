@@ -2,6 +2,7 @@ package com.jivesoftware.os.miru.plugin.test;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
@@ -42,10 +43,17 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 import org.roaringbitmap.RoaringBitmap;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
 /**
  *
  */
@@ -165,6 +173,112 @@ public class MiruAggregateUtilTest {
         }
     }
 
+    @Test
+    public void testGatherFeaturesInParallel() throws Exception {
+        ExecutorService gatherExecutor = Executors.newFixedThreadPool(4);
+        try {
+            // few ids are split across feature groups, many ids across id ranges
+            for (int numIds : new int[] { 100, 50_000 }) {
+                Map<String, Integer> expected = gatherFeatures(numIds, null, 1);
+                Map<String, Integer> actual = gatherFeatures(numIds, gatherExecutor, 4);
+                assertFalse(expected.isEmpty());
+                assertEquals(actual, expected, "numIds:" + numIds);
+            }
+        } finally {
+            gatherExecutor.shutdownNow();
+        }
+    }
+
+    @Test(enabled = false)
+    public void testGatherFeaturesPerformance() throws Exception {
+        ExecutorService gatherExecutor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 5; round++) {
+                for (int threads : new int[] { 1, 2, 4, 8 }) {
+                    long start = System.currentTimeMillis();
+                    gatherFeatures(1_000_000, gatherExecutor, threads);
+                    System.out.println("Gathered with threads:" + threads + " in " + (System.currentTimeMillis() - start) + " ms");
+                }
+            }
+        } finally {
+            gatherExecutor.shutdownNow();
+        }
+    }
+
+    private Map<String, Integer> gatherFeatures(int numIds, ExecutorService gatherExecutor, int gatherThreads) throws Exception {
+        MiruPartitionCoord coord = new MiruPartitionCoord(new MiruTenantId("test".getBytes()), MiruPartitionId.of(0), new MiruHost("localhost"));
+        MiruAggregateUtil aggregateUtil = new MiruAggregateUtil();
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        int numFields = 4;
+        MiruFieldDefinition[] fieldDefinitions = new MiruFieldDefinition[numFields];
+        for (int i = 0; i < numFields; i++) {
+            fieldDefinitions[i] = new MiruFieldDefinition(i, "field" + i, Type.multiTerm, Prefix.NONE);
+        }
+        MiruSchema schema = new Builder("test", 1).setFieldDefinitions(fieldDefinitions).build();
+
+        // ids have zero to two terms per field from a small vocabulary, so features overlap across id ranges
+        GetAllTermIds getAllTermIds = (name, ids, offset, count, fieldDefinition, stackBuffer1) -> {
+            MiruTermId[][] termIds = new MiruTermId[count][];
+            for (int i = 0; i < count; i++) {
+                int id = ids[offset + i];
+                int numTerms = (id + fieldDefinition.fieldId) % 3;
+                termIds[i] = new MiruTermId[numTerms];
+                for (int j = 0; j < numTerms; j++) {
+                    termIds[i][j] = new MiruTermId(("term" + ((id * 31 + j * 7 + fieldDefinition.fieldId) % 13)).getBytes());
+                }
+            }
+            return termIds;
+        };
+
+        int[][] featureFieldIds = {
+            { 0 },
+            { 0, 1 },
+            { 1, 2 },
+            { 0, 2, 3 },
+            { 3 } };
+        Random random = new Random(1234);
+        RoaringBitmap[][] answers = new RoaringBitmap[2][featureFieldIds.length];
+        for (int i = 0; i < answers.length; i++) {
+            for (int j = 0; j < answers[i].length; j++) {
+                answers[i][j] = new RoaringBitmap();
+                for (int id = 0; id < numIds; id++) {
+                    if (random.nextInt(3) != 0) {
+                        answers[i][j].add(id);
+                    }
+                }
+            }
+        }
+
+        Map<String, Integer> features = Maps.newHashMap();
+        aggregateUtil.gatherFeatures("test",
+            coord,
+            bitmaps,
+            schema,
+            getAllTermIds,
+            null,
+            streamBitmaps -> {
+                for (int i = 0; i < answers.length; i++) {
+                    if (!streamBitmaps.stream(i, -1, 0, new MiruTermId(("parent" + i).getBytes()), numIds - 1, answers[i])) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            featureFieldIds,
+            Integer.MAX_VALUE,
+            (streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, featureId, termIds, count) -> {
+                if (featureId >= 0) {
+                    assertNull(features.put(answerTermId + "/" + featureId + "/" + Arrays.toString(termIds), count));
+                }
+                return true;
+            },
+            gatherExecutor,
+            gatherThreads,
+            new MiruSolutionLog(MiruSolutionLogLevel.NONE),
+            new StackBuffer());
+        return features;
+    }
+
     private void log(int streamIndex,
         int lastId,
         int answerFieldId,
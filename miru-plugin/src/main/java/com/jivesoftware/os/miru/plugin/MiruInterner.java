@@ -13,14 +13,14 @@ public abstract class MiruInterner<T extends MiruIBA> {
     public abstract T create(byte[] bytes);
 
     private final WeakHashMap<T, WeakReference<T>>[] pools;
-    private final MiruIBA[] keys;
+    private final SliceKey[] keys;
     private final boolean enabled;
 
     public MiruInterner(boolean enabled) {
         int concurencyLevel = 1024;
-        this.keys = new MiruIBA[concurencyLevel]; // TODO config
+        this.keys = new SliceKey[concurencyLevel]; // TODO config
         for (int i = 0; i < keys.length; i++) {
-            keys[i] = new MiruIBA(new byte[0]);
+            keys[i] = new SliceKey();
         }
         this.pools = new WeakHashMap[concurencyLevel];
         for (int i = 0; i < pools.length; i++) {
@@ -41,7 +41,7 @@ public abstract class MiruInterner<T extends MiruIBA> {
         if (!enabled) {
             byte[] exactBytes = new byte[length];
             System.arraycopy(bytes, offset, exactBytes, 0, length);
-            return create(bytes);
+            return create(exactBytes);
         }
         return doIntern(bytes, offset, length);
     }
@@ -50,12 +50,11 @@ public abstract class MiruInterner<T extends MiruIBA> {
     private T doIntern(byte[] bytes, int offset, int length) {
         int hashCode = MiruIBA.hashCode(bytes, offset, length);
         int index = Math.abs(hashCode % keys.length);
-        MiruIBA key = keys[index];
+        SliceKey key = keys[index];
         WeakHashMap<T, WeakReference<T>> pool = pools[index];
         synchronized (pool) {
-            byte[] exactBytes = new byte[length];
-            System.arraycopy(bytes, offset, exactBytes, 0, length);
-            key.mutate(exactBytes, hashCode);
+            // probe with the caller's slice, only copy when the term is new
+            key.slice(bytes, offset, length, hashCode);
 
             T res;
             WeakReference<T> ref = pool.get(key);
@@ -65,10 +64,61 @@ public abstract class MiruInterner<T extends MiruIBA> {
                 res = null;
             }
             if (res == null) {
+                byte[] exactBytes = new byte[length];
+                System.arraycopy(bytes, offset, exactBytes, 0, length);
                 res = create(exactBytes);
                 pool.put(res, new WeakReference<>(res));
             }
+            key.slice(null, 0, 0, 0);
             return res;
         }
     }
+
+    /**
+     * Lookup-only key that compares a slice of a larger array against interned values without copying it.
+     */
+    private static class SliceKey extends MiruIBA {
+
+        private byte[] sliceBytes;
+        private int sliceOffset;
+        private int sliceLength;
+        private int sliceHashCode;
+
+        private SliceKey() {
+            super(null);
+        }
+
+        private void slice(byte[] bytes, int offset, int length, int hashCode) {
+            this.sliceBytes = bytes;
+            this.sliceOffset = offset;
+            this.sliceLength = length;
+            this.sliceHashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return sliceHashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MiruIBA)) {
+                return false;
+            }
+            MiruIBA other = (MiruIBA) obj;
+            if (other.hashCode() != sliceHashCode) {
+                return false;
+            }
+            byte[] otherBytes = other.getBytes();
+            if (otherBytes.length != sliceLength) {
+                return false;
+            }
+            for (int i = 0; i < sliceLength; i++) {
+                if (otherBytes[i] != sliceBytes[sliceOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -72,6 +72,16 @@ public interface MiruBitmaps<BM extends IBM, IBM> {
      */
     void boundedCardinalities(IBM bitmap, int[][] indexBoundaries, long[][] rawWaveform);
 
+    /**
+     * Returns bounded cardinalities for each of the given bitmaps in a single walk of the boundaries, e.g. for every bit plane of a
+     * bit-sliced value. Null bitmaps are skipped, leaving their destination untouched.
+     *
+     * @param bitmaps         the bitmaps
+     * @param indexBoundaries index aligned boundaries, lower boundary is inclusive, upper boundary is exclusive
+     * @param rawWaveforms    destination per bitmap to write the waveform results
+     */
+    void boundedCardinalities(List<IBM> bitmaps, int[] indexBoundaries, long[][] rawWaveforms);
+
     boolean isEmpty(IBM bitmap);
 
     long sizeInBytes(IBM bitmap);
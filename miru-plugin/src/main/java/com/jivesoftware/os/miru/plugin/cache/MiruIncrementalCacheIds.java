@@ -0,0 +1,63 @@
+package com.jivesoftware.os.miru.plugin.cache;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cache ids for results which are kept up to date by applying only the ids above the lastId they cover. Ids are never removed from
+ * the removal index, so its cardinality is part of the cache id, and any removal orphans every result it might have invalidated.
+ */
+public class MiruIncrementalCacheIds {
+
+    public static <BM extends IBM, IBM> byte[] cacheId(MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> context,
+        String canonicalQuery,
+        StackBuffer stackBuffer) throws Exception {
+
+        BitmapAndLastId<BM> container = new BitmapAndLastId<>();
+        context.getRemovalIndex().getIndex(container, stackBuffer);
+        long removals = container.isSet() ? bitmaps.cardinality(container.getBitmap()) : 0;
+        byte[] queryHash = Hashing.murmur3_128().hashString(canonicalQuery, StandardCharsets.UTF_8).asBytes();
+        return Bytes.concat(queryHash, Longs.toByteArray(removals));
+    }
+
+    /**
+     * Only primary field indexes are append-only for existing ids. Latest and pairedLatest indexes move an id out of a term's bitmap
+     * once a newer activity arrives, so any filter which reads them invalidates results below the cached lastId.
+     */
+    public static boolean isIncrementalFilter(MiruFilter... filters) {
+        for (MiruFilter filter : filters) {
+            if (filter == null) {
+                continue;
+            }
+            if (filter.fieldFilters != null) {
+                for (MiruFieldFilter fieldFilter : filter.fieldFilters) {
+                    if (fieldFilter.fieldType != MiruFieldType.primary) {
+                        return false;
+                    }
+                }
+            }
+            if (filter.subFilters != null) {
+                for (MiruFilter subFilter : filter.subFilters) {
+                    if (!isIncrementalFilter(subFilter)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    public static byte[] termKey(String canonicalTerm) {
+        return Hashing.murmur3_128().hashString(canonicalTerm, StandardCharsets.UTF_8).asBytes();
+    }
+}
@@ -28,6 +28,12 @@ public interface MiruFieldIndex<BM extends IBM, IBM> {
 
     void set(MiruFieldDefinition fieldDefinition, MiruTermId termId, int[] ids, long[] counts, StackBuffer stackBuffer) throws Exception;
 
+    /**
+     * Sets the ids of many distinct terms in one field, equivalent to calling {@link #set} for each term. The counts array, and any
+     * of its elements, may be null when there are no cardinalities.
+     */
+    void multiSet(MiruFieldDefinition fieldDefinition, MiruTermId[] termIds, int[][] ids, long[][] counts, StackBuffer stackBuffer) throws Exception;
+
     void setIfEmpty(MiruFieldDefinition fieldDefinition, MiruTermId termId, int id, long count, StackBuffer stackBuffer) throws Exception;
 
     void remove(MiruFieldDefinition fieldDefinition, MiruTermId termId, int[] ids, StackBuffer stackBuffer) throws Exception;
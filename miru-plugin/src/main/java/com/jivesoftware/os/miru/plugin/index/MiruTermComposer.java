@@ -1,9 +1,6 @@
 package com.jivesoftware.os.miru.plugin.index;
 
 import com.google.common.base.Preconditions;
-import com.google.common.primitives.Bytes;
-import com.jivesoftware.os.filer.io.ByteArrayFiler;
-import com.jivesoftware.os.filer.io.FilerIO;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition.Prefix;
@@ -13,12 +10,14 @@ import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.plugin.MiruInterner;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
-import com.jivesoftware.os.rcvs.marshall.api.UtilLexMarshaller;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- *
+ * Composes and decomposes term bytes. Composition writes straight into a destination array, either caller-provided via
+ * {@link #composeInto} or a per-thread scratch buffer, so interning an already known term allocates nothing.
  */
 public class MiruTermComposer {
 
@@ -26,88 +25,139 @@ public class MiruTermComposer {
 
     private final Charset charset;
     private final MiruInterner<MiruTermId> termInterner;
+    private final boolean utf8;
+    private final int maxBytesPerChar;
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[256]);
 
     public MiruTermComposer(final Charset charset, MiruInterner<MiruTermId> termInterner) {
         this.charset = charset;
         this.termInterner = termInterner;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.maxBytesPerChar = (int) Math.ceil(charset.newEncoder().maxBytesPerChar());
     }
 
     public MiruTermId compose(MiruSchema schema, MiruFieldDefinition fieldDefinition, StackBuffer stackBuffer, String... parts) throws Exception {
-        return termInterner.intern(compose(schema, fieldDefinition, stackBuffer, parts, 0, parts.length));
+        byte[] dest = scratch(maxComposedLength(schema, fieldDefinition, parts));
+        int length = compose(schema, fieldDefinition, parts, 0, parts.length, dest, 0);
+        return termInterner.intern(dest, 0, length);
     }
 
-    private byte[] compose(MiruSchema schema,
+    /**
+     * Upper bound on the number of bytes {@link #composeInto} will write for the given parts.
+     */
+    public int maxComposedLength(MiruSchema schema, MiruFieldDefinition fieldDefinition, String... parts) {
+        CompositeFieldDefinition[] compositeFieldDefinitions = schema.getCompositeFieldDefinitions(fieldDefinition.fieldId);
+        if (compositeFieldDefinitions != null) {
+            int length = 0;
+            for (int i = 0; i < parts.length; i++) {
+                length += 4 + maxPartLength(compositeFieldDefinitions[i].definition.prefix, parts[i]);
+            }
+            return length;
+        } else {
+            return maxPartLength(fieldDefinition.prefix, parts[0]);
+        }
+    }
+
+    /**
+     * Writes the composed term into {@code dest} starting at {@code destOffset}. The array must have room for at least
+     * {@link #maxComposedLength} bytes.
+     *
+     * @return the number of bytes written
+     */
+    public int composeInto(MiruSchema schema,
         MiruFieldDefinition fieldDefinition,
         StackBuffer stackBuffer,
+        byte[] dest,
+        int destOffset,
+        String... parts) throws Exception {
+        return compose(schema, fieldDefinition, parts, 0, parts.length, dest, destOffset) - destOffset;
+    }
+
+    private int compose(MiruSchema schema,
+        MiruFieldDefinition fieldDefinition,
         String[] parts,
         int offset,
-        int length) throws Exception {
+        int length,
+        byte[] dest,
+        int destOffset) throws Exception {
 
         CompositeFieldDefinition[] compositeFieldDefinitions = schema.getCompositeFieldDefinitions(fieldDefinition.fieldId);
         if (compositeFieldDefinitions != null) {
-            ByteArrayFiler filer = new ByteArrayFiler(new byte[length * (4 + 1)]); // minimal predicted size
+            int position = destOffset;
             for (int i = 0; i < length; i++) {
-                //TODO optimize
-                byte[] bytes = composeBytes(compositeFieldDefinitions[i].definition.prefix, parts[offset + i]);
                 // all but last part are length prefixed
                 if ((offset + i) < compositeFieldDefinitions.length - 1) {
-                    FilerIO.writeInt(filer, bytes.length, "length", stackBuffer);
+                    int start = position + 4;
+                    int end = composePart(compositeFieldDefinitions[i].definition.prefix, parts[offset + i], dest, start);
+                    writeInt(end - start, dest, position);
+                    position = end;
+                } else {
+                    position = composePart(compositeFieldDefinitions[i].definition.prefix, parts[offset + i], dest, position);
                 }
-                filer.write(bytes);
             }
-            return filer.getBytes();
+            return position;
         } else {
-            return composeBytes(fieldDefinition.prefix, parts[offset]);
+            return composePart(fieldDefinition.prefix, parts[offset], dest, destOffset);
         }
     }
 
-    private byte[] composeBytes(MiruFieldDefinition.Prefix p, String part) {
-        byte[] termBytes;
+    private int maxPartLength(MiruFieldDefinition.Prefix p, String part) {
+        return (p != null ? p.length : 0) + part.length() * maxBytesPerChar;
+    }
+
+    private int composePart(MiruFieldDefinition.Prefix p, String part, byte[] dest, int offset) {
         if (p != null && p.type.isAnalyzed()) {
             int sepIndex = part.indexOf(p.separator);
             if (sepIndex < 0) {
                 throw new IllegalArgumentException("Term missing separator: " + part);
             }
 
-            String pre = part.substring(0, sepIndex);
-            String suf = part.substring(sepIndex + 1);
-            byte[] sufBytes = suf.getBytes(charset);
-
-            termBytes = new byte[p.length + sufBytes.length];
-            writePrefixBytes(p, pre, termBytes);
-            System.arraycopy(sufBytes, 0, termBytes, p.length, sufBytes.length);
+            writePrefixBytes(p, part, 0, sepIndex, dest, offset);
+            return encode(part, sepIndex + 1, part.length(), dest, offset + p.length);
         } else {
-            termBytes = part.getBytes(charset);
+            return encode(part, 0, part.length(), dest, offset);
         }
-        return termBytes;
     }
 
     public String[] decompose(MiruSchema schema, MiruFieldDefinition fieldDefinition, StackBuffer stackBuffer, MiruTermId term) throws IOException {
+        return decompose(schema, fieldDefinition, stackBuffer, term, null).toArray();
+    }
+
+    /**
+     * Lazily decomposes the term into {@code reuse}, or into a new view if {@code reuse} is null. Only part boundaries are
+     * resolved up front; each part is decoded to a string on first access.
+     */
+    public MiruTermParts decompose(MiruSchema schema,
+        MiruFieldDefinition fieldDefinition,
+        StackBuffer stackBuffer,
+        MiruTermId term,
+        MiruTermParts reuse) throws IOException {
+
+        MiruTermParts parts = reuse != null ? reuse : new MiruTermParts(this);
+        byte[] termBytes = term.getBytes();
         CompositeFieldDefinition[] compositeFieldDefinitions = schema.getCompositeFieldDefinitions(fieldDefinition.fieldId);
         if (compositeFieldDefinitions != null) {
-            String[] parts = new String[compositeFieldDefinitions.length];
-            byte[] termBytes = term.getBytes();
-            ByteArrayFiler filer = new ByteArrayFiler(termBytes);
+            parts.reset(termBytes, compositeFieldDefinitions.length);
+            int position = 0;
             for (int i = 0; i < compositeFieldDefinitions.length; i++) {
-                //TODO optimize
                 // all but last part are length prefixed
                 if (i < compositeFieldDefinitions.length - 1) {
-                    int length = FilerIO.readInt(filer, "length", stackBuffer);
-                    parts[i] = decomposeBytes(compositeFieldDefinitions[i].definition, termBytes, (int) filer.getFilePointer(), length);
-                    filer.skip(length);
+                    int length = readInt(termBytes, position);
+                    position += 4;
+                    parts.set(i, compositeFieldDefinitions[i].definition, position, length);
+                    position += length;
                 } else {
-                    parts[i] = decomposeBytes(compositeFieldDefinitions[i].definition, termBytes, (int) filer.getFilePointer(),
-                        (int) (filer.length() - filer.getFilePointer()));
+                    parts.set(i, compositeFieldDefinitions[i].definition, position, termBytes.length - position);
                 }
             }
-            return parts;
         } else {
-            byte[] bytes = term.getBytes();
-            return new String[] { decomposeBytes(fieldDefinition, bytes, 0, bytes.length) };
+            parts.reset(termBytes, 1);
+            parts.set(0, fieldDefinition, 0, termBytes.length);
         }
+        return parts;
     }
 
-    private String decomposeBytes(MiruFieldDefinition fieldDefinition, byte[] termBytes, int offset, int length) {
+    String decomposeBytes(MiruFieldDefinition fieldDefinition, byte[] termBytes, int offset, int length) {
         MiruFieldDefinition.Prefix p = fieldDefinition.prefix;
         if (p != null && p.type.isAnalyzed()) {
             String pre = readPrefixBytes(p, termBytes, offset);
@@ -118,24 +168,21 @@ public class MiruTermComposer {
         }
     }
 
-    private void writePrefixBytes(MiruFieldDefinition.Prefix p, String pre, byte[] termBytes) {
+    private void writePrefixBytes(MiruFieldDefinition.Prefix p, String part, int from, int to, byte[] dest, int offset) {
         if (p.type == MiruFieldDefinition.Prefix.Type.raw) {
-            byte[] preBytes = pre.getBytes(charset);
+            int end = encode(part, from, to, dest, offset);
+            int preLength = end - offset;
             // one byte for length
-            if (preBytes.length > (p.length - 1)) {
-                throw new IllegalArgumentException("Prefix overflow: " + preBytes.length + " > " + (p.length - 1) + " (did you forget 1 byte for length?)");
+            if (preLength > (p.length - 1)) {
+                throw new IllegalArgumentException("Prefix overflow: " + preLength + " > " + (p.length - 1) + " (did you forget 1 byte for length?)");
             }
-            System.arraycopy(preBytes, 0, termBytes, 0, preBytes.length);
-            termBytes[p.length - 1] = (byte) preBytes.length;
+            Arrays.fill(dest, end, offset + p.length - 1, (byte) 0);
+            dest[offset + p.length - 1] = (byte) preLength;
         } else if (p.type == MiruFieldDefinition.Prefix.Type.numeric) {
             if (p.length == 4) {
-                int v = Integer.parseInt(pre);
-                byte[] vBytes = UtilLexMarshaller.intToLex(v); //TODO would be nice to marshal to dest array
-                System.arraycopy(vBytes, 0, termBytes, 0, 4);
+                intToLex(parseInt(part, from, to), dest, offset);
             } else if (p.length == 8) {
-                long v = Long.parseLong(pre);
-                byte[] vBytes = UtilLexMarshaller.longToLex(v); //TODO would be nice to marshal to dest array
-                System.arraycopy(vBytes, 0, termBytes, 0, 8);
+                longToLex(parseLong(part, from, to), dest, offset);
             } else {
                 throw new IllegalStateException("Numeric prefix only supports int and long");
             }
@@ -151,16 +198,14 @@ public class MiruTermComposer {
         } else if (p.type == MiruFieldDefinition.Prefix.Type.numeric) {
             if (p.length == 4) {
                 try {
-                    int value = UtilLexMarshaller.intFromLex(termBytes, offset);
-                    return String.valueOf(value);
+                    return String.valueOf(intFromLex(termBytes, offset));
                 } catch (ArrayIndexOutOfBoundsException e) {
                     LOG.error("Failed to deserialize prefix", e);
                     throw e;
                 }
             } else if (p.length == 8) {
                 try {
-                    long value = UtilLexMarshaller.longFromLex(termBytes, offset);
-                    return String.valueOf(value);
+                    return String.valueOf(longFromLex(termBytes, offset));
                 } catch (ArrayIndexOutOfBoundsException e) {
                     LOG.error("Failed to deserialize prefix", e);
                     throw e;
@@ -178,62 +223,59 @@ public class MiruTermComposer {
         if (compositeFieldDefinitions != null) {
             Preconditions.checkArgument(parts.length <= compositeFieldDefinitions.length,
                 "Provided more value parts than we have composite field definitions");
-            //TODO optimize
+            byte[] dest = scratch(maxComposedLength(schema, fieldDefinition, parts) + 4);
             int headUpperBound = Math.min(compositeFieldDefinitions.length - 1, parts.length);
-            byte[] headBytes = compose(schema, fieldDefinition, stackBuffer, parts, 0, headUpperBound);
+            int position = compose(schema, fieldDefinition, parts, 0, headUpperBound, dest, 0);
             if (parts.length == compositeFieldDefinitions.length) {
                 int tailIndex = parts.length - 1;
-                byte[] tailBytes;
-                if (parts[tailIndex].indexOf(compositeFieldDefinitions[tailIndex].definition.prefix.separator) > -1) {
-                    tailBytes = composeBytes(compositeFieldDefinitions[tailIndex].definition.prefix, parts[tailIndex]);
+                Prefix tailPrefix = compositeFieldDefinitions[tailIndex].definition.prefix;
+                if (parts[tailIndex].indexOf(tailPrefix.separator) > -1) {
+                    position = composePart(tailPrefix, parts[tailIndex], dest, position);
                 } else {
-                    tailBytes = prefixLowerInclusiveBytes(compositeFieldDefinitions[tailIndex].definition.prefix, parts[tailIndex]);
+                    position = prefixLowerInclusiveBytes(tailPrefix, parts[tailIndex], dest, position);
                 }
-                return Bytes.concat(headBytes, tailBytes);
-            } else {
-                return headBytes;
             }
+            return Arrays.copyOf(dest, position);
         } else {
             Preconditions.checkArgument(parts.length == 1, "Provided multiple value parts for a non-composite field");
-            return prefixLowerInclusiveBytes(fieldDefinition.prefix, parts[0]);
+            byte[] dest = scratch(maxPartLength(fieldDefinition.prefix, parts[0]) + 4);
+            return Arrays.copyOf(dest, prefixLowerInclusiveBytes(fieldDefinition.prefix, parts[0], dest, 0));
         }
     }
 
-    private byte[] prefixLowerInclusiveBytes(MiruFieldDefinition.Prefix p, String pre) {
+    private int prefixLowerInclusiveBytes(MiruFieldDefinition.Prefix p, String pre, byte[] dest, int offset) {
         if (p.type == MiruFieldDefinition.Prefix.Type.raw || p.type == MiruFieldDefinition.Prefix.Type.wildcard) {
-            return pre.getBytes(charset);
+            return encode(pre, 0, pre.length(), dest, offset);
         } else if (p.type == MiruFieldDefinition.Prefix.Type.numeric) {
-            int v = Integer.parseInt(pre);
-            return UtilLexMarshaller.intToLex(v);
+            intToLex(parseInt(pre, 0, pre.length()), dest, offset);
+            return offset + 4;
         } else {
             throw new IllegalArgumentException("Can't range filter this field!");
         }
     }
 
-    private static final byte[] NULL_BYTE = new byte[] { 0 };
-
     public byte[] prefixUpperExclusive(MiruSchema schema, MiruFieldDefinition fieldDefinition, StackBuffer stackBuffer, String... parts) throws Exception {
         CompositeFieldDefinition[] compositeFieldDefinitions = schema.getCompositeFieldDefinitions(fieldDefinition.fieldId);
         if (compositeFieldDefinitions != null) {
             Preconditions.checkArgument(parts.length <= compositeFieldDefinitions.length,
                 "Provided more value parts than we have composite field definitions");
-            //TODO optimize
+            byte[] dest = scratch(maxComposedLength(schema, fieldDefinition, parts) + 4 + 1);
             int headUpperBound = Math.min(compositeFieldDefinitions.length - 1, parts.length);
-            byte[] headBytes = compose(schema, fieldDefinition, stackBuffer, parts, 0, headUpperBound);
+            int position = compose(schema, fieldDefinition, parts, 0, headUpperBound, dest, 0);
             if (parts.length == compositeFieldDefinitions.length) {
                 int tailIndex = parts.length - 1;
-                byte[] tailBytes;
-                if (parts[tailIndex].indexOf(compositeFieldDefinitions[tailIndex].definition.prefix.separator) > -1) {
-                    // OMG  need new byte[]{0} to make exclusive
-                    tailBytes = Bytes.concat(composeBytes(compositeFieldDefinitions[tailIndex].definition.prefix, parts[tailIndex]), NULL_BYTE);
+                Prefix tailPrefix = compositeFieldDefinitions[tailIndex].definition.prefix;
+                if (parts[tailIndex].indexOf(tailPrefix.separator) > -1) {
+                    position = composePart(tailPrefix, parts[tailIndex], dest, position);
+                    // OMG  need a trailing 0 to make exclusive
+                    dest[position++] = 0;
                 } else {
-                    tailBytes = prefixUpperExclusiveBytes(compositeFieldDefinitions[tailIndex].definition.prefix, parts[tailIndex]);
+                    position = prefixUpperExclusiveBytes(tailPrefix, parts[tailIndex], dest, position);
                 }
-                return Bytes.concat(headBytes, tailBytes);
             } else {
-                makeUpperExclusive(headBytes);
-                return headBytes;
+                makeUpperExclusive(dest, 0, position);
             }
+            return Arrays.copyOf(dest, position);
         } else {
             Preconditions.checkArgument(parts.length == 1, "Provided multiple value parts for a non-composite field");
             return prefixUpperExclusiveBytes(fieldDefinition.prefix, parts[0]);
@@ -241,32 +283,43 @@ public class MiruTermComposer {
     }
 
     public byte[] prefixUpperExclusiveBytes(Prefix p, String pre) {
+        byte[] dest = scratch(maxPartLength(p, pre) + 4);
+        return Arrays.copyOf(dest, prefixUpperExclusiveBytes(p, pre, dest, 0));
+    }
+
+    private int prefixUpperExclusiveBytes(Prefix p, String pre, byte[] dest, int offset) {
         if (p.type == MiruFieldDefinition.Prefix.Type.wildcard) {
-            byte[] raw = pre.getBytes(charset);
-            makeUpperExclusive(raw);
-            return raw;
+            int end = encode(pre, 0, pre.length(), dest, offset);
+            makeUpperExclusive(dest, offset, end - offset);
+            return end;
         } else if (p.type == MiruFieldDefinition.Prefix.Type.raw) {
-            byte[] preBytes = pre.getBytes(charset);
-            byte[] raw = new byte[p.length];
-            System.arraycopy(preBytes, 0, raw, 0, preBytes.length);
+            int end = encode(pre, 0, pre.length(), dest, offset);
+            if (end - offset > p.length) {
+                throw new ArrayIndexOutOfBoundsException("Prefix overflow: " + (end - offset) + " > " + p.length);
+            }
+            Arrays.fill(dest, end, offset + p.length, (byte) 0);
 
             // given: [64,72,96,127]
             // want: [64,72,97,-128]
-            makeUpperExclusive(raw);
-            return raw;
+            makeUpperExclusive(dest, offset, p.length);
+            return offset + p.length;
         } else if (p.type == MiruFieldDefinition.Prefix.Type.numeric) {
-            int v = Integer.parseInt(pre) + 1;
-            return UtilLexMarshaller.intToLex(v);
+            intToLex(parseInt(pre, 0, pre.length()) + 1, dest, offset);
+            return offset + 4;
         } else {
             throw new IllegalArgumentException("Can't range filter this field!");
         }
     }
 
     public static void makeUpperExclusive(byte[] raw) {
+        makeUpperExclusive(raw, 0, raw.length);
+    }
+
+    private static void makeUpperExclusive(byte[] raw, int offset, int length) {
         // given: [64,72,96,0] want: [64,72,97,1]
         // given: [64,72,96,127] want: [64,72,96,-128] because -128 is the next lex value after 127
         // given: [64,72,96,-1] want: [64,72,97,0] because -1 is the lex largest value and we roll to the next digit
-        for (int i = raw.length - 1; i >= 0; i--) {
+        for (int i = offset + length - 1; i >= offset; i--) {
             if (raw[i] == -1) {
                 raw[i] = 0;
             } else if (raw[i] == Byte.MAX_VALUE) {
@@ -278,4 +331,148 @@ public class MiruTermComposer {
             }
         }
     }
+
+    private byte[] scratch(int length) {
+        byte[] dest = scratch.get();
+        if (dest.length < length) {
+            dest = new byte[Math.max(length, dest.length * 2)];
+            scratch.set(dest);
+        }
+        return dest;
+    }
+
+    /**
+     * Encodes {@code s[from, to)} into {@code dest}, matching {@link String#getBytes(Charset)} including '?' for unpaired surrogates.
+     *
+     * @return the offset following the last byte written
+     */
+    private int encode(String s, int from, int to, byte[] dest, int offset) {
+        if (!utf8) {
+            byte[] bytes = s.substring(from, to).getBytes(charset);
+            System.arraycopy(bytes, 0, dest, offset, bytes.length);
+            return offset + bytes.length;
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dest[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                dest[offset++] = (byte) (0xC0 | (c >> 6));
+                dest[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    dest[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                    dest[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    dest[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    dest[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    dest[offset++] = '?';
+                }
+            } else {
+                dest[offset++] = (byte) (0xE0 | (c >> 12));
+                dest[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dest[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return offset;
+    }
+
+    private static int parseInt(String s, int from, int to) {
+        long value = parseLong(s, from, to);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Equivalent to {@link Long#parseLong(String)} over {@code s[from, to)} without the substring.
+     */
+    private static long parseLong(String s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to) {
+            char first = s.charAt(i);
+            if (first == '-' || first == '+') {
+                negative = first == '-';
+                i++;
+            }
+        }
+        if (i == to) {
+            throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+        }
+        // accumulate negatively so Long.MIN_VALUE does not overflow
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || result < multmin) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + s.substring(from, to) + "\"");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * In place equivalent of {@code UtilLexMarshaller.intToLex}: big endian with the sign bit flipped.
+     */
+    public static void intToLex(int v, byte[] dest, int offset) {
+        dest[offset] = (byte) ((v >>> 24) ^ 0x80);
+        dest[offset + 1] = (byte) (v >>> 16);
+        dest[offset + 2] = (byte) (v >>> 8);
+        dest[offset + 3] = (byte) v;
+    }
+
+    /**
+     * In place equivalent of {@code UtilLexMarshaller.longToLex}: big endian with the sign bit flipped.
+     */
+    public static void longToLex(long v, byte[] dest, int offset) {
+        dest[offset] = (byte) ((v >>> 56) ^ 0x80);
+        dest[offset + 1] = (byte) (v >>> 48);
+        dest[offset + 2] = (byte) (v >>> 40);
+        dest[offset + 3] = (byte) (v >>> 32);
+        dest[offset + 4] = (byte) (v >>> 24);
+        dest[offset + 5] = (byte) (v >>> 16);
+        dest[offset + 6] = (byte) (v >>> 8);
+        dest[offset + 7] = (byte) v;
+    }
+
+    public static int intFromLex(byte[] bytes, int offset) {
+        return ((bytes[offset] ^ 0x80) & 0xFF) << 24
+            | (bytes[offset + 1] & 0xFF) << 16
+            | (bytes[offset + 2] & 0xFF) << 8
+            | (bytes[offset + 3] & 0xFF);
+    }
+
+    public static long longFromLex(byte[] bytes, int offset) {
+        return ((long) ((bytes[offset] ^ 0x80) & 0xFF)) << 56
+            | ((long) (bytes[offset + 1] & 0xFF)) << 48
+            | ((long) (bytes[offset + 2] & 0xFF)) << 40
+            | ((long) (bytes[offset + 3] & 0xFF)) << 32
+            | ((long) (bytes[offset + 4] & 0xFF)) << 24
+            | ((long) (bytes[offset + 5] & 0xFF)) << 16
+            | ((long) (bytes[offset + 6] & 0xFF)) << 8
+            | ((long) (bytes[offset + 7] & 0xFF));
+    }
+
+    private static void writeInt(int v, byte[] dest, int offset) {
+        dest[offset] = (byte) (v >>> 24);
+        dest[offset + 1] = (byte) (v >>> 16);
+        dest[offset + 2] = (byte) (v >>> 8);
+        dest[offset + 3] = (byte) v;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+            | (bytes[offset + 1] & 0xFF) << 16
+            | (bytes[offset + 2] & 0xFF) << 8
+            | (bytes[offset + 3] & 0xFF);
+    }
 }
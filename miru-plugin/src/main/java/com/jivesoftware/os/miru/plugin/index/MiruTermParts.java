@@ -0,0 +1,90 @@
+package com.jivesoftware.os.miru.plugin.index;
+
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+
+/**
+ * Reusable, lazily decoded view over the parts of a composed term. Populated by
+ * {@link MiruTermComposer#decompose(com.jivesoftware.os.miru.api.activity.schema.MiruSchema, MiruFieldDefinition,
+ * com.jivesoftware.os.filer.io.api.StackBuffer, com.jivesoftware.os.miru.api.base.MiruTermId, MiruTermParts)}.
+ * Not thread safe, and only valid until the next decompose into the same instance.
+ */
+public class MiruTermParts {
+
+    private final MiruTermComposer termComposer;
+
+    private byte[] termBytes;
+    private int count;
+    private MiruFieldDefinition[] definitions = new MiruFieldDefinition[2];
+    private int[] offsets = new int[2];
+    private int[] lengths = new int[2];
+    private String[] decoded = new String[2];
+
+    MiruTermParts(MiruTermComposer termComposer) {
+        this.termComposer = termComposer;
+    }
+
+    void reset(byte[] termBytes, int count) {
+        this.termBytes = termBytes;
+        this.count = count;
+        if (definitions.length < count) {
+            definitions = new MiruFieldDefinition[count];
+            offsets = new int[count];
+            lengths = new int[count];
+            decoded = new String[count];
+        } else {
+            for (int i = 0; i < count; i++) {
+                decoded[i] = null;
+            }
+        }
+    }
+
+    void set(int index, MiruFieldDefinition definition, int offset, int length) {
+        definitions[index] = definition;
+        offsets[index] = offset;
+        lengths[index] = length;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public byte[] termBytes() {
+        return termBytes;
+    }
+
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public String get(int index) {
+        String part = decoded[index];
+        if (part == null) {
+            part = termComposer.decomposeBytes(definitions[index], termBytes, offsets[index], lengths[index]);
+            decoded[index] = part;
+        }
+        return part;
+    }
+
+    /**
+     * Decodes the given parts in the given order, e.g. to recompose a subset of a composite term.
+     */
+    public String[] select(int[] indexes) {
+        String[] parts = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            parts[i] = get(indexes[i]);
+        }
+        return parts;
+    }
+
+    public String[] toArray() {
+        String[] parts = new String[count];
+        for (int i = 0; i < count; i++) {
+            parts[i] = get(i);
+        }
+        return parts;
+    }
+}
@@ -10,7 +10,9 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -31,30 +33,50 @@ import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.highlight.TokenSources;
 
 /**
- * Due to its reliance on the Lucene {@link QueryParser}, this class is NOT thread-safe.
+ * Thread-safe; the Lucene {@link QueryParser} is not, so each thread reuses its own parser per analyzer. Parsed filters are
+ * served from an optional shared {@link MiruQueryFilterCache}.
  */
 public class LuceneBackedQueryParser implements MiruQueryParser {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final TermAnalyzers TERM_ANALYZERS = new TermAnalyzers();
+    private static final ThreadLocal<Map<ParserKey, QueryParser>> PARSERS = ThreadLocal.withInitial(HashMap::new);
+
     private final String defaultField;
-    private final TermAnalyzers termAnalyzers = new TermAnalyzers();
+    private final MiruQueryFilterCache filterCache;
 
     public LuceneBackedQueryParser(String defaultField) {
+        this(defaultField, null);
+    }
+
+    public LuceneBackedQueryParser(String defaultField, MiruQueryFilterCache filterCache) {
         this.defaultField = defaultField;
+        this.filterCache = filterCache;
     }
 
     @Override
     public MiruFilter parse(String locale, boolean useStopWords, String queryString) throws Exception {
-        Analyzer analyzer = termAnalyzers.findAnalyzer(locale, useStopWords);
-        QueryParser parser = new QueryParser(defaultField, analyzer);
-        parser.setDefaultOperator(Operator.AND);
+        if (filterCache != null) {
+            return filterCache.get(locale, useStopWords, defaultField, queryString, () -> doParse(locale, useStopWords, queryString));
+        } else {
+            return doParse(locale, useStopWords, queryString);
+        }
+    }
+
+    private MiruFilter doParse(String locale, boolean useStopWords, String queryString) throws ParseException {
+        Analyzer analyzer = TERM_ANALYZERS.findAnalyzer(locale, useStopWords);
+        QueryParser parser = PARSERS.get().computeIfAbsent(new ParserKey(defaultField, analyzer), key -> {
+            QueryParser queryParser = new QueryParser(key.defaultField, key.analyzer);
+            queryParser.setDefaultOperator(Operator.AND);
+            return queryParser;
+        });
         return makeFilter(parser.parse(queryString));
     }
 
     @Override
     public String highlight(String locale, boolean useStopWords, String query, String content, String pre, String post, int preview) {
-        Analyzer analyzer = termAnalyzers.findAnalyzer(locale, useStopWords);
+        Analyzer analyzer = TERM_ANALYZERS.findAnalyzer(locale, useStopWords);
         QueryParser parser = new QueryParser(defaultField, analyzer);
 
         String summary = null;
@@ -143,4 +165,32 @@ public class LuceneBackedQueryParser implements MiruQueryParser {
         }
     }
 
+    private static class ParserKey {
+
+        private final String defaultField;
+        private final Analyzer analyzer;
+
+        private ParserKey(String defaultField, Analyzer analyzer) {
+            this.defaultField = defaultField;
+            this.analyzer = analyzer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ParserKey that = (ParserKey) o;
+            return analyzer == that.analyzer && defaultField.equals(that.defaultField);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * defaultField.hashCode() + System.identityHashCode(analyzer);
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+package com.jivesoftware.os.miru.plugin.query;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of parsed full-text filters, shared by every {@link LuceneBackedQueryParser} handed out by a provider.
+ * Cached filters are shared across requests and must be treated as immutable.
+ */
+public class MiruQueryFilterCache {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final Cache<Key, MiruFilter> cache;
+
+    public MiruQueryFilterCache(int maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+    }
+
+    MiruFilter get(String locale, boolean useStopWords, String defaultField, String queryString, Callable<MiruFilter> parse) throws Exception {
+        Key key = new Key(locale, useStopWords, defaultField, queryString);
+        long[] parseNanos = { -1 };
+        MiruFilter filter;
+        try {
+            filter = cache.get(key, () -> {
+                long start = System.nanoTime();
+                MiruFilter parsed = parse.call();
+                parseNanos[0] = System.nanoTime() - start;
+                return parsed;
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        if (parseNanos[0] < 0) {
+            LOG.inc("queryParser>cache>hit");
+        } else {
+            LOG.inc("queryParser>cache>miss");
+            LOG.set(ValueType.VALUE, "queryParser>parse>latencyMicros", parseNanos[0] / 1_000);
+        }
+        CacheStats stats = cache.stats();
+        LOG.set(ValueType.VALUE, "queryParser>cache>hitRatePercent", (long) (stats.hitRate() * 100));
+        LOG.set(ValueType.COUNT, "queryParser>cache>size", cache.size());
+        return filter;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static class Key {
+
+        private final String locale;
+        private final boolean useStopWords;
+        private final String defaultField;
+        private final String queryString;
+        private final int hashCode;
+
+        private Key(String locale, boolean useStopWords, String defaultField, String queryString) {
+            this.locale = locale;
+            this.useStopWords = useStopWords;
+            this.defaultField = defaultField;
+            this.queryString = queryString;
+            this.hashCode = Objects.hash(locale, useStopWords, defaultField, queryString);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return useStopWords == key.useStopWords
+                && Objects.equals(locale, key.locale)
+                && Objects.equals(defaultField, key.defaultField)
+                && Objects.equals(queryString, key.queryString);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.plugin.solution;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Maps;
 import com.google.common.collect.MinMaxPriorityQueue;
@@ -48,6 +49,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.commons.lang.mutable.MutableLong;
@@ -84,6 +89,30 @@ public class MiruAggregateUtil {
         FeatureStream stream,
         MiruSolutionLog solutionLog,
         StackBuffer stackBuffer) throws Exception {
+        gatherFeatures(name, coord, bitmaps, schema, getAllTermIds, termFeatureCache, consumeAnswers, featureFieldIds, topNValuesPerFeature, stream,
+            null, 1, solutionLog, stackBuffer);
+    }
+
+    /**
+     * When given an executor and more than one thread, the ids for each answer term are gathered in chunks which are split
+     * across id ranges and, when there are too few ids to go around, across groups of features. Every task counts into its own
+     * tables, which are merged before the features are streamed, so the stream is still called from the calling thread.
+     * The term id lookups must be safe to call concurrently.
+     */
+    public <BM extends IBM, IBM> void gatherFeatures(String name,
+        MiruPartitionCoord coord,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruSchema schema,
+        GetAllTermIds getAllTermIds,
+        TimestampedCacheKeyValues termFeatureCache,
+        ConsumeBitmaps<BM> consumeAnswers,
+        int[][] featureFieldIds,
+        int topNValuesPerFeature,
+        FeatureStream stream,
+        ExecutorService gatherExecutor,
+        int gatherThreads,
+        MiruSolutionLog solutionLog,
+        StackBuffer stackBuffer) throws Exception {
 
         Set<Integer> uniqueFieldIds = Sets.newHashSet();
         for (int i = 0; i < featureFieldIds.length; i++) {
@@ -120,8 +149,13 @@ public class MiruAggregateUtil {
         boolean[][] featuresContained = new boolean[batchSize][featureFieldIds.length];
         int[] ids = new int[batchSize];
         long start = System.currentTimeMillis();
+        MiruSolutionProfile profile = solutionLog.getProfile();
+        long profileStart = profile.start();
 
         GatherFeatureMetrics metrics = new GatherFeatureMetrics();
+        GatherFeatureTasks tasks = (gatherExecutor != null && gatherThreads > 1)
+            ? new GatherFeatureTasks(gatherExecutor, gatherThreads, featureFieldIds.length, batchSize)
+            : null;
 
         consumeAnswers.consume((streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, answerBitmaps) -> {
             metrics.termCount++;
@@ -161,7 +195,7 @@ public class MiruAggregateUtil {
 
                     if (answerScoredLastId >= fromId) {
                         gatherFeaturesForTerm(name, bitmaps, schema, featureFieldIds, stackBuffer, uniqueFieldIds, getAllTermIds, fieldTerms,
-                            ids, featuresContained, answerBitmaps, features, gathered, fromId, answerScoredLastId, metrics);
+                            ids, featuresContained, answerBitmaps, features, gathered, fromId, answerScoredLastId, tasks, metrics);
                     }
 
                     termFeatureCache.rangeScan(cacheId, null, null, (key, value, timestamp) -> {
@@ -206,7 +240,7 @@ public class MiruAggregateUtil {
 
                         fromId = 0;
                         gatherFeaturesForTerm(name, bitmaps, schema, featureFieldIds, stackBuffer, uniqueFieldIds, getAllTermIds, fieldTerms,
-                            ids, featuresContained, answerBitmaps, features, null, fromId, answerScoredLastId, metrics);
+                            ids, featuresContained, answerBitmaps, features, null, fromId, answerScoredLastId, tasks, metrics);
 
                         for (int i = 0; i < features.length; i++) {
                             for (Entry<Feature> entry : features[i].entrySet()) {
@@ -251,24 +285,35 @@ public class MiruAggregateUtil {
                 metrics.maxFromId = -1;
 
                 gatherFeaturesForTerm(name, bitmaps, schema, featureFieldIds, stackBuffer, uniqueFieldIds, getAllTermIds, fieldTerms,
-                    ids, featuresContained, answerBitmaps, features, null, 0, answerScoredLastId, metrics);
+                    ids, featuresContained, answerBitmaps, features, null, 0, answerScoredLastId, tasks, metrics);
+
+                for (int i = 0; i < features.length; i++) {
+                    for (Entry<Feature> entry : features[i].entrySet()) {
+                        featureHeaps[i].add(new FeatureAndCount(entry.getElement(), entry.getCount(), answerScoredLastId));
+                    }
+                }
             }
 
             metrics.minToId = Math.min(metrics.minToId, answerScoredLastId);
             metrics.maxToId = Math.max(metrics.maxToId, answerScoredLastId);
 
-            for (int i = 0; i < featureHeaps.length; i++) {
-                for (FeatureAndCount featureAndCount : featureHeaps[i]) {
-                    Feature feature = featureAndCount.feature;
-                    metrics.featureCount++;
-                    boolean result = stream.stream(streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, feature.featureId, feature.termIds,
-                        featureAndCount.count);
-                    if (!result) {
-                        return false;
+            long streamStart = System.nanoTime();
+            try {
+                for (int i = 0; i < featureHeaps.length; i++) {
+                    for (FeatureAndCount featureAndCount : featureHeaps[i]) {
+                        Feature feature = featureAndCount.feature;
+                        metrics.featureCount++;
+                        boolean result = stream.stream(streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, feature.featureId,
+                            feature.termIds, featureAndCount.count);
+                        if (!result) {
+                            return false;
+                        }
                     }
                 }
+                return stream.stream(streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, -1, null, -1);
+            } finally {
+                metrics.streamNanos += System.nanoTime() - streamStart;
             }
-            return stream.stream(streamIndex, lastId, answerFieldId, answerTermId, answerScoredLastId, -1, null, -1);
         });
         LOG.info("Gathered name:{} coord:{} features:{} terms:{} elapsed:{}" +
                 " - cacheName:{} skipped:{} consumed:{} fromId:{}/{} toId:{}/{} cacheHits={} cacheSaves={}",
@@ -286,6 +331,16 @@ public class MiruAggregateUtil {
             metrics.minFromId, metrics.maxFromId,
             metrics.minToId, metrics.maxToId,
             metrics.cacheHitCount, metrics.cacheSaveCount);
+        solutionLog.log(MiruSolutionLogLevel.INFO, "Gathered name:{} phases collect:{}ms gather:{}ms merge:{}ms stream:{}ms threads:{} tasks:{}",
+            name,
+            TimeUnit.NANOSECONDS.toMillis(metrics.collectNanos),
+            TimeUnit.NANOSECONDS.toMillis(metrics.gatherNanos),
+            TimeUnit.NANOSECONDS.toMillis(metrics.mergeNanos),
+            TimeUnit.NANOSECONDS.toMillis(metrics.streamNanos),
+            tasks == null ? 1 : gatherThreads,
+            metrics.taskCount);
+        profile.stop(MiruSolutionProfile.Stage.gatherFeatures, profileStart);
+        profile.add(MiruSolutionProfile.Counter.idsGathered, metrics.consumedCount);
     }
 
     private static class GatherFeatureMetrics {
@@ -299,6 +354,39 @@ public class MiruAggregateUtil {
         private int consumedCount;
         private int cacheHitCount;
         private int cacheSaveCount;
+        private int taskCount;
+        private long collectNanos;
+        private long gatherNanos;
+        private long mergeNanos;
+        private long streamNanos;
+    }
+
+    private static final int GATHER_IDS_PER_TASK = 4_096;
+
+    /**
+     * Per-call state for parallel gathering. Each slot is only ever used by one task at a time and keeps its own count tables
+     * across chunks, so tables are merged once per answer term.
+     */
+    private static class GatherFeatureTasks {
+
+        private final ExecutorService executor;
+        private final int threads;
+        private final int batchSize;
+        private final int[] chunkIds;
+        private final boolean[][] chunkContained;
+        private final Multiset<Feature>[][] slotFeatures;
+        private final Set<Feature>[][] slotGathered;
+
+        @SuppressWarnings("unchecked")
+        private GatherFeatureTasks(ExecutorService executor, int threads, int featureCount, int batchSize) {
+            this.executor = executor;
+            this.threads = threads;
+            this.batchSize = batchSize;
+            this.chunkIds = new int[threads * GATHER_IDS_PER_TASK];
+            this.chunkContained = new boolean[chunkIds.length][featureCount];
+            this.slotFeatures = new Multiset[threads][featureCount];
+            this.slotGathered = new Set[threads][featureCount];
+        }
     }
 
     private <BM extends IBM, IBM> void gatherFeaturesForTerm(String name,
@@ -316,6 +404,7 @@ public class MiruAggregateUtil {
         Set<Feature>[] gathered,
         int fromIdInclusive,
         int toIdInclusive,
+        GatherFeatureTasks tasks,
         GatherFeatureMetrics metrics) throws Exception {
 
         MiruIntIterator[] intIters = new MiruIntIterator[answerBitmaps.length];
@@ -326,6 +415,13 @@ public class MiruAggregateUtil {
         }
 
         CollatingIntIterator iter = new CollatingIntIterator(intIters, false);
+        if (tasks != null) {
+            gatherFeaturesForTermInParallel(name, schema, featureFieldIds, getAllTermIds, iter, features, gathered, fromIdInclusive, toIdInclusive,
+                tasks, metrics);
+            return;
+        }
+
+        long start = System.nanoTime();
         int count = 0;
         while (iter.hasNext()) {
             ids[count] = iter.next(featuresContained[count]);
@@ -345,6 +441,146 @@ public class MiruAggregateUtil {
             gatherAndCountFeaturesForTerm(name, featureFieldIds, stackBuffer, uniqueFieldIds, getAllTermIds, fieldTerms,
                 ids, featuresContained, count, features, gathered, schema, metrics);
         }
+        metrics.gatherNanos += System.nanoTime() - start;
+    }
+
+    private void gatherFeaturesForTermInParallel(String name,
+        MiruSchema schema,
+        int[][] featureFieldIds,
+        GetAllTermIds getAllTermIds,
+        CollatingIntIterator iter,
+        Multiset<Feature>[] features,
+        Set<Feature>[] gathered,
+        int fromIdInclusive,
+        int toIdInclusive,
+        GatherFeatureTasks tasks,
+        GatherFeatureMetrics metrics) throws Exception {
+
+        int[] chunkIds = tasks.chunkIds;
+        boolean[][] chunkContained = tasks.chunkContained;
+        boolean more = true;
+        while (more) {
+            long start = System.nanoTime();
+            int count = 0;
+            while (count < chunkIds.length && iter.hasNext()) {
+                int id = iter.next(chunkContained[count]);
+                if (id < fromIdInclusive || id > toIdInclusive) {
+                    metrics.skippedCount++;
+                    continue;
+                }
+                metrics.consumedCount++;
+                chunkIds[count] = id;
+                count++;
+            }
+            more = iter.hasNext();
+            metrics.collectNanos += System.nanoTime() - start;
+
+            if (count > 0) {
+                start = System.nanoTime();
+                gatherChunk(name, schema, featureFieldIds, getAllTermIds, count, gathered != null, tasks, metrics);
+                metrics.gatherNanos += System.nanoTime() - start;
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int slot = 0; slot < tasks.threads; slot++) {
+            Multiset<Feature>[] slotFeatures = tasks.slotFeatures[slot];
+            Set<Feature>[] slotGathered = tasks.slotGathered[slot];
+            for (int i = 0; i < slotFeatures.length; i++) {
+                if (slotFeatures[i] != null) {
+                    for (Entry<Feature> entry : slotFeatures[i].entrySet()) {
+                        features[i].add(entry.getElement(), entry.getCount());
+                    }
+                    slotFeatures[i] = null;
+                }
+                if (slotGathered[i] != null) {
+                    if (gathered != null) {
+                        gathered[i].addAll(slotGathered[i]);
+                    }
+                    slotGathered[i] = null;
+                }
+            }
+        }
+        metrics.mergeNanos += System.nanoTime() - start;
+    }
+
+    private void gatherChunk(String name,
+        MiruSchema schema,
+        int[][] featureFieldIds,
+        GetAllTermIds getAllTermIds,
+        int count,
+        boolean trackGathered,
+        GatherFeatureTasks tasks,
+        GatherFeatureMetrics metrics) throws Exception {
+
+        // prefer id ranges, and spread features across the threads left over when there are too few ids to go around
+        int numRanges = Math.max(1, Math.min(tasks.threads, (count + GATHER_IDS_PER_TASK - 1) / GATHER_IDS_PER_TASK));
+        int numGroups = Math.max(1, Math.min(featureFieldIds.length, tasks.threads / numRanges));
+        int rangeSize = (count + numRanges - 1) / numRanges;
+
+        List<Future<?>> futures = new ArrayList<>(numRanges * numGroups);
+        for (int group = 0; group < numGroups; group++) {
+            int[][] groupFeatureFieldIds = new int[featureFieldIds.length][];
+            Set<Integer> groupFieldIds = Sets.newHashSet();
+            for (int i = group; i < featureFieldIds.length; i += numGroups) {
+                groupFeatureFieldIds[i] = featureFieldIds[i];
+                if (featureFieldIds[i] != null) {
+                    for (int fieldId : featureFieldIds[i]) {
+                        groupFieldIds.add(fieldId);
+                    }
+                }
+            }
+            for (int range = 0; range < numRanges; range++) {
+                int slot = group * numRanges + range;
+                int from = range * rangeSize;
+                int to = Math.min(from + rangeSize, count);
+                if (from >= to) {
+                    continue;
+                }
+                Multiset<Feature>[] slotFeatures = tasks.slotFeatures[slot];
+                Set<Feature>[] slotGathered = trackGathered ? tasks.slotGathered[slot] : null;
+                for (int i = group; i < featureFieldIds.length; i += numGroups) {
+                    if (slotFeatures[i] == null) {
+                        slotFeatures[i] = HashMultiset.create();
+                    }
+                    if (slotGathered != null && slotGathered[i] == null) {
+                        slotGathered[i] = Sets.newHashSet();
+                    }
+                }
+                metrics.taskCount++;
+                futures.add(tasks.executor.submit(() -> {
+                    StackBuffer stackBuffer = new StackBuffer();
+                    MiruTermId[][][] fieldTerms = new MiruTermId[schema.fieldCount()][][];
+                    int[] ids = new int[tasks.batchSize];
+                    boolean[][] contained = new boolean[tasks.batchSize][];
+                    for (int index = from; index < to; index += ids.length) {
+                        int batchCount = Math.min(ids.length, to - index);
+                        System.arraycopy(tasks.chunkIds, index, ids, 0, batchCount);
+                        System.arraycopy(tasks.chunkContained, index, contained, 0, batchCount);
+                        gatherAndCountFeaturesForTerm(name, groupFeatureFieldIds, stackBuffer, groupFieldIds, getAllTermIds, fieldTerms,
+                            ids, contained, batchCount, slotFeatures, slotGathered, schema, null);
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        boolean completed = false;
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
+        } finally {
+            if (!completed) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
     }
 
     private void gatherAndCountFeaturesForTerm(String name,
@@ -380,7 +616,7 @@ public class MiruAggregateUtil {
         for (int index = 0; index < count; index++) {
             NEXT_FEATURE:
             for (int i = 0; i < featureFieldIds.length; i++) {
-                if (contained[index][i]) {
+                if (contained[index][i] && featureFieldIds[i] != null) {
                     int[] fieldIds = featureFieldIds[i];
 
                     MiruTermId[][] termIds = new MiruTermId[fieldIds.length][];
@@ -701,6 +937,9 @@ public class MiruAggregateUtil {
         FieldMultiTermTxIndex<BM, IBM> multiTermTxIndex = new FieldMultiTermTxIndex<>(name, primaryFieldIndex, pivotFieldId, -1);
         TObjectIntHashMap<MiruTermId> distincts = new TObjectIntHashMap<>(batchSize);
 
+        MiruSolutionProfile profile = solutionLog.getProfile();
+        long profileStart = profile.start();
+
         int[] ids = new int[batchSize];
         int gets = 0;
         int fetched = 0;
@@ -752,6 +991,7 @@ public class MiruAggregateUtil {
             System.arraycopy(termIds, 0, consumableTermIds, 0, termIds.length);
             multiTermTxIndex.setTermIds(consumableTermIds);
             bitmaps.inPlaceAndNotMultiTx(answer, multiTermTxIndex, counts, counter, stackBuffer);
+            profile.add(MiruSolutionProfile.Counter.bitmapsTouched, consumableTermIds.length);
             bitmaps.inPlaceAndNot(answer, bitmaps.createWithBits(actualIds));
             //TODO possibly buggy, need to reevaluate
             /*bitmaps.inPlaceRemoveRange(answer, actualIds[0], actualIds[actualIds.length - 1] + 1);*/
@@ -765,6 +1005,8 @@ public class MiruAggregateUtil {
         }
         solutionLog.log(MiruSolutionLogLevel.INFO, "gather aggregate gets:{} fetched:{} getAllCost:{} andNotCost:{}",
             gets, fetched, getAllCost, andNotCost);
+        profile.stop(MiruSolutionProfile.Stage.gather, profileStart);
+        profile.add(MiruSolutionProfile.Counter.idsGathered, fetched);
     }
 
     public <BM extends IBM, IBM> BM filter(String name,
@@ -778,17 +1020,23 @@ public class MiruAggregateUtil {
         int maxWildcardExpansion,
         StackBuffer stackBuffer)
         throws Exception {
-        return filterInOut(name,
-            bitmaps,
-            context,
-            filter,
-            solutionLog,
-            termCollector,
-            true,
-            largestIndex,
-            considerIfIndexIdGreaterThanN,
-            maxWildcardExpansion,
-            stackBuffer);
+        MiruSolutionProfile profile = solutionLog.getProfile();
+        long profileStart = profile.start();
+        try {
+            return filterInOut(name,
+                bitmaps,
+                context,
+                filter,
+                solutionLog,
+                termCollector,
+                true,
+                largestIndex,
+                considerIfIndexIdGreaterThanN,
+                maxWildcardExpansion,
+                stackBuffer);
+        } finally {
+            profile.stop(MiruSolutionProfile.Stage.filter, profileStart);
+        }
     }
 
     private <BM extends IBM, IBM> BM filterInOut(String name,
@@ -854,6 +1102,7 @@ public class MiruAggregateUtil {
                         multiTxIndex.setTermIds(termIds);
                         BM r = bitmaps.orMultiTx(multiTxIndex, stackBuffer);
                         filterBitmaps.add(new SimpleInvertedIndex<>(r));
+                        solutionLog.getProfile().add(MiruSolutionProfile.Counter.bitmapsTouched, termIds.length);
                         solutionLog.log(MiruSolutionLogLevel.DEBUG, "filter: fieldId={} bitmaps={} aggregate took {} millis.",
                             fieldId, fieldTermIds.size(), System.currentTimeMillis() - start);
                     }
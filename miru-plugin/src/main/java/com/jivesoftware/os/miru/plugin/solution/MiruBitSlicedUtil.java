@@ -0,0 +1,140 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.google.common.math.LongMath;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bucketed aggregates over bit-sliced values, where plane i holds the ids whose value has bit i (2^i) set. Null planes have no bits
+ * set. Buckets are given by index boundaries, lower boundary inclusive and upper boundary exclusive.
+ */
+public class MiruBitSlicedUtil {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    /**
+     * Returns the bucketed cardinalities of every plane, computed in a single walk of the boundaries.
+     */
+    public <BM extends IBM, IBM> long[][] planeCardinalities(MiruBitmaps<BM, IBM> bitmaps, List<BM> planes, int[] indexes) {
+        long[][] cardinalities = new long[planes.size()][indexes.length - 1];
+        bitmaps.boundedCardinalities(Collections.<IBM>unmodifiableList(planes), indexes, cardinalities);
+        return cardinalities;
+    }
+
+    /**
+     * Returns the bucketed sums, saturating at Long.MAX_VALUE on overflow.
+     */
+    public <BM extends IBM, IBM> long[] sum(MiruBitmaps<BM, IBM> bitmaps, List<BM> planes, int[] indexes) {
+        return sum(planeCardinalities(bitmaps, planes, indexes), planes.size(), indexes.length - 1);
+    }
+
+    /**
+     * Returns the bucketed sums of the planes and the bucketed cardinalities of the answer, in that order, computed together in a
+     * single walk of the boundaries.
+     */
+    public <BM extends IBM, IBM> long[][] sumAndCardinalities(MiruBitmaps<BM, IBM> bitmaps, BM answer, List<BM> planes, int[] indexes) {
+        List<BM> all = new ArrayList<>(planes.size() + 1);
+        all.addAll(planes);
+        all.add(answer);
+        long[][] cardinalities = planeCardinalities(bitmaps, all, indexes);
+        return new long[][] { sum(cardinalities, planes.size(), indexes.length - 1), cardinalities[planes.size()] };
+    }
+
+    private long[] sum(long[][] cardinalities, int numPlanes, int numBuckets) {
+        long[] waveform = new long[numBuckets];
+        for (int i = 0; i < numPlanes; i++) {
+            long multiplier = 1L << i;
+            for (int j = 0; j < waveform.length; j++) {
+                if (cardinalities[i][j] > 0) {
+                    try {
+                        waveform[j] = LongMath.checkedAdd(waveform[j], LongMath.checkedMultiply(cardinalities[i][j], multiplier));
+                    } catch (ArithmeticException x) {
+                        waveform[j] = Long.MAX_VALUE;
+                        LOG.inc("overflows");
+                    }
+                }
+            }
+        }
+        return waveform;
+    }
+
+    /**
+     * Returns the value at the given 1-based rank in ascending order for each bucket, e.g. rank 1 is the minimum and the bucket
+     * cardinality is the maximum. Descends the planes from the most significant bit, keeping the candidates whose bit matches the
+     * bucket's answer, so each plane costs a few bitmap operations and one walk of the boundaries however many buckets there are.
+     * Buckets with a rank less than 1 are skipped and return 0.
+     *
+     * @param candidates the ids holding values, of which the planes are subsets
+     * @param ranks      the rank for each bucket, at most the bucket's cardinality in candidates
+     */
+    public <BM extends IBM, IBM> long[] valuesAtRanks(MiruBitmaps<BM, IBM> bitmaps,
+        BM candidates,
+        List<BM> planes,
+        int[] indexes,
+        long[] ranks) {
+
+        int numBuckets = indexes.length - 1;
+        long[] values = new long[numBuckets];
+        long[] remaining = Arrays.copyOf(ranks, numBuckets);
+        long[][] zeroCardinalities = new long[1][numBuckets];
+        for (int bit = planes.size() - 1; bit >= 0; bit--) {
+            BM plane = planes.get(bit);
+            if (plane == null) {
+                continue;
+            }
+
+            BM zeros = bitmaps.andNot(candidates, plane);
+            Arrays.fill(zeroCardinalities[0], 0);
+            bitmaps.boundedCardinalities(zeros, new int[][] { indexes }, zeroCardinalities);
+
+            BM oneMask = null;
+            boolean anyZero = false;
+            for (int b = 0; b < numBuckets; b++) {
+                if (remaining[b] < 1) {
+                    continue;
+                }
+                if (remaining[b] > zeroCardinalities[0][b]) {
+                    values[b] |= 1L << bit;
+                    remaining[b] -= zeroCardinalities[0][b];
+                    if (indexes[b] < indexes[b + 1]) {
+                        BM range = bitmaps.createWithRange(indexes[b], indexes[b + 1]);
+                        if (oneMask == null) {
+                            oneMask = range;
+                        } else {
+                            bitmaps.inPlaceOr(oneMask, range);
+                        }
+                    }
+                } else {
+                    anyZero = true;
+                }
+            }
+
+            if (oneMask == null) {
+                candidates = zeros;
+            } else if (!anyZero) {
+                candidates = bitmaps.and(Arrays.asList(candidates, plane));
+            } else {
+                BM ones = bitmaps.and(Arrays.asList(candidates, plane, oneMask));
+                candidates = bitmaps.andNot(zeros, oneMask);
+                bitmaps.inPlaceOr(candidates, ones);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the nearest rank for the given percentile (0-100] of count values, or 0 when there are no values.
+     */
+    public static long nearestRank(double percentile, long count) {
+        if (count <= 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100d * count);
+        return Math.max(1, Math.min(count, rank));
+    }
+}
@@ -12,12 +12,19 @@ public class MiruPartitionResponse<A> implements Serializable {
 
     public final A answer;
     public final List<String> log;
+    public final MiruSolutionProfile profile;
+
+    public MiruPartitionResponse(A answer, List<String> log) {
+        this(answer, log, null);
+    }
 
     @JsonCreator
     public MiruPartitionResponse(@JsonProperty("answer") A answer,
-            @JsonProperty("log") List<String> log) {
+            @JsonProperty("log") List<String> log,
+            @JsonProperty("profile") MiruSolutionProfile profile) {
         this.answer = answer;
         this.log = log;
+        this.profile = profile;
     }
 
 }
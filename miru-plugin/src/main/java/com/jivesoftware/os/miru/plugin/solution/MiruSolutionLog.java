@@ -15,16 +15,24 @@ public class MiruSolutionLog {
 
     private final MiruSolutionLogLevel level;
     private final List<String> log = new ArrayList<>();
+    private final MiruSolutionProfile profile;
     private volatile long lastLoggedTimestampMillis = -1;
 
     public MiruSolutionLog(MiruSolutionLogLevel level) {
         this.level = level;
+        // a log created while a partition is being solved records into that partition's profile
+        MiruSolutionProfile bound = MiruSolutionProfile.bound();
+        this.profile = bound != null ? bound : new MiruSolutionProfile();
     }
 
     public MiruSolutionLogLevel getLevel() {
         return level;
     }
 
+    public MiruSolutionProfile getProfile() {
+        return profile;
+    }
+
     public boolean isLogLevelEnabled(MiruSolutionLogLevel checkLevel) {
         return level.ordinal() <= checkLevel.ordinal();
     }
@@ -0,0 +1,153 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+
+/**
+ * Where a solution spent its time, as nanos and calls per {@link Stage} plus {@link Counter} totals. Recording only adds into
+ * preallocated slots, so it is cheap enough to leave on for every query, and nothing is formatted until someone asks.
+ * <p>
+ * A profile is bound to the solving thread while a partition is asked locally, so index code can count into it via
+ * {@link #count(Counter, long)} without being handed a solution log. Profiles travel back with each partition response and
+ * are merged per query.
+ */
+public class MiruSolutionProfile implements Serializable {
+
+    public enum Stage {
+        filter, authz, aggregate, gather, gatherFeatures, score, merge
+    }
+
+    public enum Counter {
+        bitmapsTouched, bytesDeserialized, idsGathered
+    }
+
+    private static final ThreadLocal<MiruSolutionProfile> BOUND = new ThreadLocal<>();
+
+    public final long[] stageNanos;
+    public final long[] stageCalls;
+    public final long[] counters;
+    private int partitions;
+
+    public MiruSolutionProfile() {
+        this(new long[Stage.values().length], new long[Stage.values().length], new long[Counter.values().length], 0);
+    }
+
+    @JsonCreator
+    public MiruSolutionProfile(@JsonProperty("stageNanos") long[] stageNanos,
+        @JsonProperty("stageCalls") long[] stageCalls,
+        @JsonProperty("counters") long[] counters,
+        @JsonProperty("partitions") int partitions) {
+        this.stageNanos = stageNanos;
+        this.stageCalls = stageCalls;
+        this.counters = counters;
+        this.partitions = partitions;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @return the end of the stage, which can start the next one
+     */
+    public long stop(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - startNanos;
+        stageCalls[stage.ordinal()]++;
+        return now;
+    }
+
+    public void add(Counter counter, long delta) {
+        counters[counter.ordinal()] += delta;
+    }
+
+    public long getNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public long getCalls(Stage stage) {
+        return stageCalls[stage.ordinal()];
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void markPartition() {
+        partitions++;
+    }
+
+    /**
+     * Adds another profile into this one. Slots the other side does not know about are left alone, so profiles from hosts
+     * running an older version still merge.
+     */
+    public void merge(MiruSolutionProfile other) {
+        if (other == null) {
+            return;
+        }
+        addAll(stageNanos, other.stageNanos);
+        addAll(stageCalls, other.stageCalls);
+        addAll(counters, other.counters);
+        partitions += other.partitions;
+    }
+
+    private static void addAll(long[] into, long[] from) {
+        if (from != null) {
+            for (int i = 0; i < into.length && i < from.length; i++) {
+                into[i] += from[i];
+            }
+        }
+    }
+
+    /**
+     * Binds a profile to the current thread.
+     *
+     * @return the previously bound profile, which should be restored with another bind when done
+     */
+    public static MiruSolutionProfile bind(MiruSolutionProfile profile) {
+        MiruSolutionProfile previous = BOUND.get();
+        if (profile == null) {
+            BOUND.remove();
+        } else {
+            BOUND.set(profile);
+        }
+        return previous;
+    }
+
+    /**
+     * @return the profile bound to the current thread, or null
+     */
+    public static MiruSolutionProfile bound() {
+        return BOUND.get();
+    }
+
+    /**
+     * Counts into the profile bound to the current thread, if any.
+     */
+    public static void count(Counter counter, long delta) {
+        MiruSolutionProfile profile = BOUND.get();
+        if (profile != null) {
+            profile.counters[counter.ordinal()] += delta;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("MiruSolutionProfile{partitions=").append(partitions);
+        for (Stage stage : Stage.values()) {
+            long calls = stageCalls[stage.ordinal()];
+            if (calls > 0) {
+                buf.append(", ").append(stage.name()).append('=').append(stageNanos[stage.ordinal()] / 1_000_000).append("ms/").append(calls);
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            buf.append(", ").append(counter.name()).append('=').append(counters[counter.ordinal()]);
+        }
+        return buf.append('}').toString();
+    }
+}
@@ -36,7 +36,18 @@ public class MiruSolvableFactory<Q, A, R> {
             try (MiruRequestHandle<BM, IBM, ?> handle = replica.acquireQueryHandle()) {
                 if (handle.isLocal()) {
                     long start = System.currentTimeMillis();
-                    MiruPartitionResponse<A> response = question.askLocal(handle, report);
+                    MiruSolutionProfile profile = new MiruSolutionProfile();
+                    MiruSolutionProfile previous = MiruSolutionProfile.bind(profile);
+                    MiruPartitionResponse<A> response;
+                    try {
+                        response = question.askLocal(handle, report);
+                    } finally {
+                        MiruSolutionProfile.bind(previous);
+                    }
+                    profile.markPartition();
+                    if (response != null) {
+                        response = new MiruPartitionResponse<>(response.answer, response.log, profile);
+                    }
                     long latency = System.currentTimeMillis() - start;
                     miruStats.egressed(queryKey + ">local", 1, latency);
                     miruStats.egressed(queryKey + ">local>" + replica.getCoord().tenantId.toString() + ">" + replica.getCoord().partitionId.getId(), 1,
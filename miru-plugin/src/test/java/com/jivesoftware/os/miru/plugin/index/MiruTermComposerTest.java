@@ -8,6 +8,7 @@ import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.MiruInterner;
+import com.jivesoftware.os.rcvs.marshall.api.UtilLexMarshaller;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Random;
@@ -16,6 +17,7 @@ import org.testng.annotations.Test;
 
 import static com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition.Type.singleTerm;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 public class MiruTermComposerTest {
 
@@ -191,4 +193,104 @@ public class MiruTermComposerTest {
                 composer.compose(schema, field3Definition, stackBuffer, "34 c", "d e"))),
             new MiruValue("34 c", "d e"));
     }
+
+    @Test
+    public void testLexMatchesMarshaller() throws Exception {
+        Random r = new Random(1234);
+        byte[] dest = new byte[9];
+        for (int i = 0; i < 10_000; i++) {
+            int intValue = r.nextInt();
+            MiruTermComposer.intToLex(intValue, dest, 1);
+            assertEquals(Arrays.copyOfRange(dest, 1, 5), UtilLexMarshaller.intToLex(intValue));
+            assertEquals(MiruTermComposer.intFromLex(dest, 1), intValue);
+
+            long longValue = r.nextLong();
+            MiruTermComposer.longToLex(longValue, dest, 1);
+            assertEquals(Arrays.copyOfRange(dest, 1, 9), UtilLexMarshaller.longToLex(longValue));
+            assertEquals(MiruTermComposer.longFromLex(dest, 1), longValue);
+        }
+    }
+
+    @Test
+    public void testComposeIntoMatchesCompose() throws Exception {
+        MiruTermComposer composer = new MiruTermComposer(Charsets.UTF_8, termInterner);
+        MiruFieldDefinition field1Definition = new MiruFieldDefinition(0,
+            "field1",
+            MiruFieldDefinition.Type.singleTerm,
+            new MiruFieldDefinition.Prefix(MiruFieldDefinition.Prefix.Type.numeric, 8, ' '));
+        MiruFieldDefinition field2Definition = new MiruFieldDefinition(1,
+            "field2",
+            MiruFieldDefinition.Type.singleTerm,
+            new MiruFieldDefinition.Prefix(MiruFieldDefinition.Prefix.Type.raw, 4, ' '));
+        MiruFieldDefinition field3Definition = new MiruFieldDefinition(2,
+            "field3",
+            MiruFieldDefinition.Type.singleTerm,
+            MiruFieldDefinition.Prefix.WILDCARD);
+        MiruSchema schema = new MiruSchema.Builder("test", 1)
+            .setFieldDefinitions(new MiruFieldDefinition[] { field1Definition, field2Definition, field3Definition })
+            .setComposite(ImmutableMap.of("field3", new String[] { "field1", "field2" }))
+            .build();
+        StackBuffer stackBuffer = new StackBuffer();
+
+        String[][] values = {
+            { "-12 \u00e9t\u00e9", "ab \ud83d\ude00" },
+            { "9223372036854775807 plain", "xyz \u4e2d\u6587" },
+            { "0 ", "a " }
+        };
+        MiruTermParts parts = null;
+        for (String[] value : values) {
+            byte[] dest = new byte[3 + composer.maxComposedLength(schema, field3Definition, value)];
+            int length = composer.composeInto(schema, field3Definition, stackBuffer, dest, 3, value);
+            MiruTermId termId = composer.compose(schema, field3Definition, stackBuffer, value);
+            assertEquals(Arrays.copyOfRange(dest, 3, 3 + length), termId.getBytes());
+
+            parts = composer.decompose(schema, field3Definition, stackBuffer, termId, parts);
+            assertEquals(parts.count(), 2);
+            assertEquals(parts.select(new int[] { 1 }), new String[] { value[1] });
+            assertEquals(parts.toArray(), value);
+            assertEquals(composer.decompose(schema, field3Definition, stackBuffer, termId), value);
+        }
+
+        // raw prefix padding must not leak bytes from a previous, longer prefix composed into the same scratch
+        MiruTermId longer = composer.compose(schema, field2Definition, stackBuffer, "abc 1");
+        MiruTermId shorter = composer.compose(schema, field2Definition, stackBuffer, "a 1");
+        assertEquals(shorter.getBytes(), new byte[] { 'a', 0, 0, 1, '1' });
+        assertEquals(composer.decompose(schema, field2Definition, stackBuffer, longer)[0], "abc 1");
+    }
+
+    @Test
+    public void testInternSliceReturnsSameInstance() throws Exception {
+        byte[] exact = "term".getBytes(StandardCharsets.UTF_8);
+        MiruTermId interned = termInterner.intern(exact);
+        byte[] padded = "xxtermyyyy".getBytes(StandardCharsets.UTF_8);
+        assertSame(termInterner.intern(padded, 2, 4), interned);
+        assertEquals(new MiruTermId(exact).hashCode(), interned.hashCode());
+    }
+
+    @Test
+    public void testComposeReusesInternedTerms() throws Exception {
+        MiruTermComposer composer = new MiruTermComposer(Charsets.UTF_8, termInterner);
+        MiruFieldDefinition fieldDefinition = new MiruFieldDefinition(0,
+            "field1",
+            MiruFieldDefinition.Type.singleTerm,
+            new MiruFieldDefinition.Prefix(MiruFieldDefinition.Prefix.Type.numeric, 4, ' '));
+        MiruSchema schema = new MiruSchema.Builder("test", 1).setFieldDefinitions(new MiruFieldDefinition[] { fieldDefinition }).build();
+        StackBuffer stackBuffer = new StackBuffer();
+
+        String[][] terms = new String[1_000][];
+        MiruTermId[] retained = new MiruTermId[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new String[] { i + " document-" + i };
+            retained[i] = composer.compose(schema, fieldDefinition, stackBuffer, terms[i]);
+        }
+
+        // the scratch buffer is shared across terms of every length, so later composes must neither corrupt nor copy earlier ones
+        for (int iteration = 0; iteration < 3; iteration++) {
+            for (int i = terms.length - 1; i >= 0; i--) {
+                MiruTermId composed = composer.compose(schema, fieldDefinition, stackBuffer, terms[i]);
+                assertSame(composed, retained[i]);
+                assertEquals(composer.decompose(schema, fieldDefinition, stackBuffer, composed), terms[i]);
+            }
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package com.jivesoftware.os.miru.plugin.solution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile.Counter;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile.Stage;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruSolutionProfileTest {
+
+    @Test
+    public void testStopAndAdd() throws Exception {
+        MiruSolutionProfile profile = new MiruSolutionProfile();
+        long start = profile.start();
+        long end = profile.stop(Stage.filter, start);
+        profile.stop(Stage.filter, end);
+        profile.add(Counter.bitmapsTouched, 3);
+        profile.add(Counter.bitmapsTouched, 4);
+
+        assertEquals(profile.getCalls(Stage.filter), 2);
+        assertTrue(profile.getNanos(Stage.filter) >= 0);
+        assertEquals(profile.getCalls(Stage.gather), 0);
+        assertEquals(profile.getCount(Counter.bitmapsTouched), 7);
+        assertEquals(profile.getCount(Counter.idsGathered), 0);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        MiruSolutionProfile profile = new MiruSolutionProfile();
+        profile.add(Counter.idsGathered, 10);
+        profile.markPartition();
+
+        MiruSolutionProfile other = new MiruSolutionProfile();
+        other.stop(Stage.gather, other.start());
+        other.add(Counter.idsGathered, 5);
+        other.markPartition();
+        profile.merge(other);
+
+        // a profile from an older host may know fewer slots
+        MiruSolutionProfile older = new MiruSolutionProfile(new long[] { 100 }, new long[] { 1 }, new long[] { 2 }, 1);
+        profile.merge(older);
+        profile.merge(null);
+
+        assertEquals(profile.getPartitions(), 3);
+        assertEquals(profile.getCalls(Stage.gather), 1);
+        assertEquals(profile.getCalls(Stage.filter), 1);
+        assertEquals(profile.getNanos(Stage.filter), 100);
+        assertEquals(profile.getCount(Counter.bitmapsTouched), 2);
+        assertEquals(profile.getCount(Counter.idsGathered), 15);
+    }
+
+    @Test
+    public void testBindCountAndRestore() throws Exception {
+        MiruSolutionProfile.count(Counter.bytesDeserialized, 100);
+
+        MiruSolutionProfile outer = new MiruSolutionProfile();
+        assertNull(MiruSolutionProfile.bind(outer));
+        MiruSolutionProfile inner = new MiruSolutionProfile();
+        MiruSolutionProfile previous = MiruSolutionProfile.bind(inner);
+        try {
+            assertSame(previous, outer);
+            MiruSolutionProfile.count(Counter.bytesDeserialized, 100);
+            assertSame(new MiruSolutionLog(MiruSolutionLogLevel.NONE).getProfile(), inner);
+        } finally {
+            MiruSolutionProfile.bind(previous);
+        }
+        MiruSolutionProfile.count(Counter.bytesDeserialized, 10);
+        assertSame(MiruSolutionProfile.bind(null), outer);
+        assertNull(MiruSolutionProfile.bound());
+
+        assertEquals(inner.getCount(Counter.bytesDeserialized), 100);
+        assertEquals(outer.getCount(Counter.bytesDeserialized), 10);
+        assertTrue(new MiruSolutionLog(MiruSolutionLogLevel.NONE).getProfile() != outer);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        MiruSolutionProfile profile = new MiruSolutionProfile();
+        profile.stop(Stage.score, profile.start());
+        profile.add(Counter.idsGathered, 42);
+        profile.markPartition();
+
+        ObjectMapper mapper = new ObjectMapper();
+        MiruSolutionProfile read = mapper.readValue(mapper.writeValueAsBytes(profile), MiruSolutionProfile.class);
+        assertEquals(read.getPartitions(), 1);
+        assertEquals(read.getCalls(Stage.score), 1);
+        assertEquals(read.getNanos(Stage.score), profile.getNanos(Stage.score));
+        assertEquals(read.getCount(Counter.idsGathered), 42);
+    }
+}
@@ -76,6 +76,7 @@ import com.jivesoftware.os.miru.plugin.plugin.LifecycleMiruPlugin;
 import com.jivesoftware.os.miru.plugin.plugin.MiruEndpointInjectable;
 import com.jivesoftware.os.miru.plugin.plugin.MiruPlugin;
 import com.jivesoftware.os.miru.plugin.query.LuceneBackedQueryParser;
+import com.jivesoftware.os.miru.plugin.query.MiruQueryFilterCache;
 import com.jivesoftware.os.miru.plugin.query.MiruQueryParser;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
 import com.jivesoftware.os.miru.service.MiruService;
@@ -271,6 +272,7 @@ public class MiruReaderMain {
             };
 
             final MiruTermComposer termComposer = new MiruTermComposer(Charsets.UTF_8, termInterner);
+            final MiruQueryFilterCache queryFilterCache = new MiruQueryFilterCache(miruServiceConfig.getQueryParserCacheMaxSize());
             final MiruActivityInternExtern internExtern = new MiruActivityInternExtern(
                 ibaInterner,
                 tenantInterner,
@@ -447,7 +449,8 @@ public class MiruReaderMain {
                     1000,
                     mapper,
                     walClientSickThreads,
-                    10_000);
+                    10_000,
+                    walConfig.getBinaryActivityTransport());
 
                 inboxReadTracker = new AmzaInboxReadTracker(amzaWALClient);
                 miruServiceLifecyle = new MiruServiceInitializer().initialize(miruServiceConfig,
@@ -580,7 +583,7 @@ public class MiruReaderMain {
 
                 @Override
                 public MiruQueryParser getQueryParser(String defaultField) {
-                    return new LuceneBackedQueryParser(defaultField);
+                    return new LuceneBackedQueryParser(defaultField, queryFilterCache);
                 }
 
                 @Override
@@ -10,8 +10,11 @@ import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
 import com.jivesoftware.os.miru.plugin.MiruProvider;
@@ -35,6 +38,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -270,4 +274,76 @@ public class MiruDistinctsNGTest {
         System.out.println("took: " + (System.currentTimeMillis() - s));
     }
 
+    @Test
+    public void constrainedPrefixTest() throws Exception {
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        long timespan = numberOfBuckets * snowflakeIdPacker.pack(TimeUnit.HOURS.toMillis(3), 0, 0);
+        long intervalPerActivity = timespan / 102;
+        AtomicLong time = new AtomicLong(snowflakeIdPacker.pack(System.currentTimeMillis(), 0, 0) - timespan);
+
+        for (int i = 0; i < 100; i++) {
+            service.writeToIndex(Collections.singletonList(util.viewActivity(tenant1, partitionId, time.addAndGet(intervalPerActivity), "bob",
+                    String.valueOf(i + 1), walIndex.incrementAndGet())));
+        }
+        for (int i = 100; i < 102; i++) {
+            service.writeToIndex(Collections.singletonList(util.viewActivity(tenant1, partitionId, time.addAndGet(intervalPerActivity), "jane",
+                    String.valueOf(i + 1), walIndex.incrementAndGet())));
+        }
+
+        long lastTime = time.get();
+        final MiruTimeRange timeRange = new MiruTimeRange(lastTime - timespan, lastTime);
+
+        // a narrow prefix over a large answer intersects the prefixed terms
+        Set<String> narrowTypes = Sets.newHashSet("1");
+        assertEquals(constrainedDistincts(timeRange, "bob", narrowTypes, "intersect"), expectedObjs(1, 100, narrowTypes));
+
+        // broad prefixes over a small answer gather the answer's terms
+        Set<String> broadTypes = Sets.newHashSet("0", "1", "2", "3");
+        assertEquals(constrainedDistincts(timeRange, "jane", broadTypes, "gather"), expectedObjs(101, 102, broadTypes));
+    }
+
+    private Set<String> constrainedDistincts(MiruTimeRange timeRange, String user, Set<String> types, String expectedPlan) throws Exception {
+        MiruRequest<DistinctsQuery> request = new MiruRequest<>("test",
+                tenant1,
+                MiruActorId.NOT_PROVIDED,
+                MiruAuthzExpression.NOT_PROVIDED,
+                new DistinctsQuery(timeRange,
+                        "obj",
+                        null,
+                        new MiruFilter(MiruFilterOperation.and,
+                                false,
+                                Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.primary, "user", user)),
+                                null),
+                        Lists.transform(Lists.newArrayList(types), MiruValue::new)),
+                MiruSolutionLogLevel.INFO);
+        MiruResponse<DistinctsAnswer> distinctsResult = injectable.gatherDistincts(request);
+
+        Set<String> distincts = Sets.newHashSet();
+        for (MiruValue result : distinctsResult.answer.results) {
+            distincts.add(result.last());
+        }
+
+        boolean planned = false;
+        for (String line : distinctsResult.log) {
+            if (line.contains("distincts gatherDirect: plan ")) {
+                assertTrue(line.contains("distincts gatherDirect: plan " + expectedPlan + " for "), line);
+                planned = true;
+            }
+        }
+        assertTrue(planned, "No plan in " + distinctsResult.log);
+        return distincts;
+    }
+
+    private Set<String> expectedObjs(int fromDoc, int toDoc, Set<String> types) {
+        Set<String> expected = Sets.newHashSet();
+        for (int i = fromDoc; i <= toDoc; i++) {
+            String doc = String.valueOf(i);
+            String type = String.valueOf(Math.abs(doc.hashCode()) % 4);
+            if (types.contains(type)) {
+                expected.add(type + " " + doc);
+            }
+        }
+        return expected;
+    }
+
 }
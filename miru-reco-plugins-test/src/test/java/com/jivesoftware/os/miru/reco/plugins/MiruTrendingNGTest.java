@@ -7,6 +7,7 @@ package com.jivesoftware.os.miru.reco.plugins;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.miru.analytics.plugins.analytics.Analytics;
 import com.jivesoftware.os.miru.api.MiruActorId;
@@ -35,16 +36,22 @@ import com.jivesoftware.os.miru.reco.plugins.trending.TrendingAnswer;
 import com.jivesoftware.os.miru.reco.plugins.trending.TrendingInjectable;
 import com.jivesoftware.os.miru.reco.plugins.trending.TrendingQuery;
 import com.jivesoftware.os.miru.reco.plugins.trending.TrendingQueryScoreSet;
+import com.jivesoftware.os.miru.reco.plugins.trending.Trendy;
 import com.jivesoftware.os.miru.service.MiruService;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
+
 /**
  * @author jonathan
  */
@@ -200,4 +207,88 @@ public class MiruTrendingNGTest {
 
     }
 
+    @Test(enabled = true)
+    public void candidatesTest() throws Exception {
+
+        Random rand = new Random(1_234);
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        long timespan = numberOfBuckets * snowflakeIdPacker.pack(TimeUnit.HOURS.toMillis(3), 0, 0);
+        long startTime = snowflakeIdPacker.pack(System.currentTimeMillis(), 0, 0) - timespan;
+
+        // rising, falling and flat documents of varying popularity
+        int numberOfDocuments = 500;
+        List<long[]> timeAndDocs = Lists.newArrayList();
+        for (int d = 0; d < numberOfDocuments; d++) {
+            int trend = d % 3;
+            int views = 1 + rand.nextInt(20);
+            for (int v = 0; v < views; v++) {
+                double u = rand.nextDouble();
+                double position = trend == 0 ? Math.sqrt(u) : trend == 1 ? 1 - Math.sqrt(u) : u;
+                timeAndDocs.add(new long[] { startTime + (long) (position * (timespan - 1)), d });
+            }
+        }
+        timeAndDocs.sort((a, b) -> Long.compare(a[0], b[0]));
+        for (long[] timeAndDoc : timeAndDocs) {
+            service.writeToIndex(Collections.singletonList(util.viewActivity(tenant1, partitionId, timeAndDoc[0], "bob" + rand.nextInt(10),
+                String.valueOf(timeAndDoc[1]), walIndex.incrementAndGet())));
+        }
+
+        MiruTimeRange timeRange = new MiruTimeRange(startTime, startTime + timespan);
+        TrendingAnswer exhaustive = candidatesQuery(timeRange, 0);
+        TrendingAnswer candidates = candidatesQuery(timeRange, 4);
+
+        for (TrendingQuery.Strategy strategy : TrendingQuery.Strategy.values()) {
+            List<Trendy> expected = exhaustive.scoreSets.get("test").results.get(strategy.name());
+            List<Trendy> actual = candidates.scoreSets.get("test").results.get(strategy.name());
+            Set<MiruValue> expectedValues = Sets.newHashSet();
+            for (Trendy trendy : expected) {
+                expectedValues.add(trendy.distinctValue);
+            }
+            int found = 0;
+            for (Trendy trendy : actual) {
+                if (expectedValues.contains(trendy.distinctValue)) {
+                    found++;
+                }
+            }
+            System.out.println(strategy + " recall:" + found + "/" + expected.size());
+
+            if (strategy == TrendingQuery.Strategy.LEADER) {
+                // leaders are bounded exactly, so the same ranks are found even if ties pick different values
+                assertEquals(actual.size(), expected.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(actual.get(i).rank, expected.get(i).rank);
+                }
+            }
+        }
+    }
+
+    private TrendingAnswer candidatesQuery(MiruTimeRange timeRange, int candidateMultiple) throws Exception {
+        MiruRequest<TrendingQuery> request = new MiruRequest<>("test",
+            tenant1,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new TrendingQuery(
+                Collections.singletonList(new TrendingQueryScoreSet(
+                    "test",
+                    EnumSet.allOf(TrendingQuery.Strategy.class),
+                    timeRange,
+                    32,
+                    10)),
+                MiruFilter.NO_FILTER,
+                "doc",
+                Collections.singletonList(Collections.singletonList(new DistinctsQuery(
+                    timeRange,
+                    "doc",
+                    null,
+                    MiruFilter.NO_FILTER,
+                    null))),
+                candidateMultiple,
+                null),
+            MiruSolutionLogLevel.NONE);
+        long start = System.currentTimeMillis();
+        MiruResponse<TrendingAnswer> response = injectable.scoreTrending(request);
+        System.out.println("Candidate multiple " + candidateMultiple + " took:" + (System.currentTimeMillis() - start));
+        return response.answer;
+    }
+
 }
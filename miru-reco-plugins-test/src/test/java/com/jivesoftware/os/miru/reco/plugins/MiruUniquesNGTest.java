@@ -114,6 +114,26 @@ public class MiruUniquesNGTest {
             Assert.assertEquals(uniquesResult.answer.uniques, numberOfUsers);
             System.out.println("uniquesResult: " + uniquesResult);
             System.out.println("took: " + (System.currentTimeMillis() - s));
+
+            s = System.currentTimeMillis();
+            MiruRequest<UniquesQuery> sketchRequest = new MiruRequest<>("test",
+                tenant1,
+                MiruActorId.NOT_PROVIDED,
+                MiruAuthzExpression.NOT_PROVIDED,
+                new UniquesQuery(timeRange,
+                    fieldDefinition.name,
+                    null,
+                    MiruFilter.NO_FILTER,
+                    null,
+                    UniquesQuery.Mode.sketch),
+                MiruSolutionLogLevel.INFO);
+            MiruResponse<UniquesAnswer> sketchResult = injectable.gatherUniques(sketchRequest);
+
+            // small enough to be exact
+            Assert.assertEquals(sketchResult.answer.uniques, numberOfUsers);
+            Assert.assertNull(sketchResult.answer.sketch);
+            System.out.println("sketchResult: " + sketchResult);
+            System.out.println("took: " + (System.currentTimeMillis() - s));
         }
     }
 
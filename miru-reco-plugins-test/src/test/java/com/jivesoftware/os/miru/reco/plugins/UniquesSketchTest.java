@@ -0,0 +1,154 @@
+package com.jivesoftware.os.miru.reco.plugins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.reco.plugins.uniques.Uniques;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesAnswer;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesAnswerMerger;
+import com.jivesoftware.os.miru.reco.plugins.uniques.UniquesSketch;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class UniquesSketchTest {
+
+    // three standard errors at precision 14
+    private static final double MAX_RELATIVE_ERROR = 3 * 1.04 / Math.sqrt(1 << Uniques.PRECISION);
+
+    @Test
+    public void testExactBelowThreshold() throws Exception {
+        UniquesSketch sketch = Uniques.createSketch();
+        assertEquals(sketch.cardinality(), 0);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < Uniques.EXACT_THRESHOLD - 1; i++) {
+                sketch.offer(UniquesSketch.hash(("value" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        sketch.offer(0L);
+        assertTrue(sketch.isExact());
+        assertEquals(sketch.cardinality(), Uniques.EXACT_THRESHOLD);
+
+        sketch.offer(UniquesSketch.hash("one more".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(sketch.isExact());
+        assertWithinBounds(sketch.cardinality(), Uniques.EXACT_THRESHOLD + 1);
+    }
+
+    @Test
+    public void testErrorBounds() throws Exception {
+        for (int cardinality : new int[] { 5_000, 20_000, 100_000, 1_000_000 }) {
+            for (int seed = 0; seed < 5; seed++) {
+                Random random = new Random(seed);
+                UniquesSketch sketch = Uniques.createSketch();
+                for (int i = 0; i < cardinality; i++) {
+                    long hash = UniquesSketch.hash(new String[] { "user", String.valueOf(random.nextLong()) });
+                    sketch.offer(hash);
+                    if (i % 3 == 0) {
+                        sketch.offer(hash);
+                    }
+                }
+                assertWithinBounds(sketch.cardinality(), cardinality);
+            }
+        }
+    }
+
+    @Test
+    public void testMergeMatchesUnion() throws Exception {
+        int numPartitions = 8;
+        UniquesSketch union = Uniques.createSketch();
+        UniquesSketch[] partitions = new UniquesSketch[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            partitions[i] = Uniques.createSketch();
+        }
+
+        Random random = new Random(1234);
+        int cardinality = 50_000;
+        for (int i = 0; i < cardinality; i++) {
+            long hash = UniquesSketch.hash(("value" + i).getBytes(StandardCharsets.UTF_8));
+            union.offer(hash);
+            // every value lands in one or two partitions, and small partitions stay exact
+            int partition = (i < Uniques.EXACT_THRESHOLD) ? 0 : 1 + random.nextInt(numPartitions - 1);
+            partitions[partition].offer(hash);
+            partitions[random.nextInt(numPartitions)].offer(hash);
+        }
+
+        UniquesSketch merged = partitions[0].copy();
+        for (int i = 1; i < numPartitions; i++) {
+            merged.merge(partitions[i]);
+        }
+        assertTrue(Arrays.equals(merged.getRegisters(), union.getRegisters()));
+        assertEquals(merged.cardinality(), union.cardinality());
+        assertWithinBounds(merged.cardinality(), cardinality);
+
+        UniquesSketch small = Uniques.createSketch();
+        UniquesSketch other = Uniques.createSketch();
+        for (int i = 0; i < 100; i++) {
+            small.offer(i + 1);
+            other.offer(i + 51);
+        }
+        small.merge(other);
+        assertTrue(small.isExact());
+        assertEquals(small.cardinality(), 150);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        UniquesSketch exact = Uniques.createSketch();
+        for (int i = 0; i < 1_000; i++) {
+            exact.offer(UniquesSketch.hash(("value" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        UniquesSketch exactRead = mapper.readValue(mapper.writeValueAsBytes(exact), UniquesSketch.class);
+        assertTrue(exactRead.isExact());
+        assertEquals(exactRead.cardinality(), 1_000);
+
+        UniquesSketch estimated = Uniques.createSketch();
+        for (int i = 0; i < 10_000; i++) {
+            estimated.offer(UniquesSketch.hash(("value" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        UniquesAnswer answer = new UniquesAnswer(estimated.cardinality(), false, estimated);
+        UniquesAnswer answerRead = mapper.readValue(mapper.writeValueAsBytes(answer), UniquesAnswer.class);
+        assertFalse(answerRead.sketch.isExact());
+        assertTrue(Arrays.equals(answerRead.sketch.getRegisters(), estimated.getRegisters()));
+        assertEquals(answerRead.uniques, estimated.cardinality());
+    }
+
+    @Test
+    public void testMergerDropsSketch() throws Exception {
+        MiruSolutionLog solutionLog = new MiruSolutionLog(MiruSolutionLogLevel.NONE);
+        UniquesAnswerMerger merger = new UniquesAnswerMerger();
+
+        UniquesSketch a = Uniques.createSketch();
+        UniquesSketch b = Uniques.createSketch();
+        for (int i = 0; i < 10; i++) {
+            a.offer(i + 1);
+            b.offer(i + 6);
+        }
+        UniquesAnswer first = new UniquesAnswer(a.cardinality(), false, a);
+        UniquesAnswer merged = merger.merge(Optional.absent(), first, solutionLog);
+        merged = merger.merge(Optional.of(merged), new UniquesAnswer(b.cardinality(), true, b), solutionLog);
+        assertEquals(merged.uniques, 15);
+        assertTrue(merged.resultsExhausted);
+        assertEquals(a.cardinality(), 10);
+
+        UniquesAnswer done = merger.done(Optional.of(merged), UniquesAnswer.EMPTY_RESULTS, solutionLog);
+        assertEquals(done.uniques, 15);
+        assertNull(done.sketch);
+    }
+
+    private static void assertWithinBounds(long estimate, long cardinality) {
+        double error = Math.abs(estimate - cardinality) / (double) cardinality;
+        assertTrue(error <= MAX_RELATIVE_ERROR, "estimate " + estimate + " for " + cardinality + " is off by " + error);
+    }
+}
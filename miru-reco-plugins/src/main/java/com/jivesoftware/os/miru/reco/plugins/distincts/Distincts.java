@@ -13,7 +13,9 @@ import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
 import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
+import com.jivesoftware.os.miru.plugin.index.MiruTermParts;
 import com.jivesoftware.os.miru.plugin.index.TermIdStream;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
@@ -52,11 +54,11 @@ public class Distincts {
         MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
 
         List<MiruValue> results = Lists.newArrayList();
+        MiruTermParts[] reuse = new MiruTermParts[1];
         gatherDirect(name, bitmaps, requestContext, query, gatherBatchSize, solutionLog,
             termId -> {
-                String[] in = termComposer.decompose(schema, fieldDefinition, stackBuffer, termId);
-                String[] out = recomposeParts(query, in);
-                return results.add(new MiruValue(out));
+                reuse[0] = termComposer.decompose(schema, fieldDefinition, stackBuffer, termId, reuse[0]);
+                return results.add(new MiruValue(recomposeParts(query, reuse[0])));
             });
 
         boolean resultsExhausted = query.timeRange.smallestTimestamp > requestContext.getTimeIndex().getLargestTimestamp();
@@ -82,33 +84,21 @@ public class Distincts {
         MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(fieldId);
 
         if (requestContext.getTimeIndex().intersects(query.timeRange)) {
-            if (MiruFilter.NO_FILTER.equals(query.constraintsFilter)) {
-                List<KeyRange> ranges = null;
-                if (query.prefixes != null && !query.prefixes.isEmpty()) {
-                    ranges = Lists.newArrayListWithCapacity(query.prefixes.size());
-                    for (MiruValue prefix : query.prefixes) {
-                        ranges.add(new KeyRange(
-                            termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, prefix.parts),
-                            termComposer.prefixUpperExclusive(schema, fieldDefinition, stackBuffer, prefix.parts)));
-                    }
+            MiruFieldIndex<BM, IBM> primaryFieldIndex = requestContext.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
+            List<KeyRange> ranges = null;
+            if (query.prefixes != null && !query.prefixes.isEmpty()) {
+                ranges = Lists.newArrayListWithCapacity(query.prefixes.size());
+                for (MiruValue prefix : query.prefixes) {
+                    ranges.add(new KeyRange(
+                        termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, prefix.parts),
+                        termComposer.prefixUpperExclusive(schema, fieldDefinition, stackBuffer, prefix.parts)));
                 }
+            }
 
-                requestContext.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary)
-                    .streamTermIdsForField(name, fieldId, ranges, termIdStream, stackBuffer);
+            if (MiruFilter.NO_FILTER.equals(query.constraintsFilter)) {
+                primaryFieldIndex.streamTermIdsForField(name, fieldId, ranges, termIdStream, stackBuffer);
             } else {
                 long start = System.currentTimeMillis();
-                final byte[][] prefixesAsBytes;
-                if (query.prefixes != null) {
-                    prefixesAsBytes = new byte[query.prefixes.size()][];
-                    int i = 0;
-                    for (MiruValue prefix : query.prefixes) {
-                        prefixesAsBytes[i++] = termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, prefix.parts);
-                    }
-                } else {
-                    prefixesAsBytes = new byte[0][];
-                }
-
-
                 List<IBM> ands = Lists.newArrayList();
                 int lastId = requestContext.getActivityIndex().lastId(stackBuffer);
                 BM constrained = aggregateUtil.filter(name, bitmaps, requestContext, query.constraintsFilter, solutionLog, null, lastId, -1, -1, stackBuffer);
@@ -127,6 +117,45 @@ public class Distincts {
                 }
                 solutionLog.log(MiruSolutionLogLevel.INFO, "distincts gatherDirect: setup {} ms.", System.currentTimeMillis() - start);
 
+                if (ranges != null) {
+                    // Gathering costs a stored term lookup per id in the answer, whereas intersecting costs a bitmap read per term
+                    // in the prefix ranges, so we only collect candidate terms while they number fewer than the answer.
+                    start = System.currentTimeMillis();
+                    long answerCardinality = bitmaps.cardinality(result);
+                    List<MiruTermId> candidateTermIds = Lists.newArrayList();
+                    primaryFieldIndex.streamTermIdsForField(name, fieldId, ranges,
+                        termId -> {
+                            candidateTermIds.add(termId);
+                            return candidateTermIds.size() <= answerCardinality;
+                        },
+                        stackBuffer);
+                    boolean intersectTerms = candidateTermIds.size() <= answerCardinality;
+                    solutionLog.log(MiruSolutionLogLevel.INFO, "distincts gatherDirect: plan {} for {}{} candidate terms against {} answer ids in {} ms.",
+                        intersectTerms ? "intersect" : "gather",
+                        candidateTermIds.size(),
+                        intersectTerms ? "" : "+",
+                        answerCardinality,
+                        System.currentTimeMillis() - start);
+
+                    if (intersectTerms) {
+                        start = System.currentTimeMillis();
+                        intersect(name, bitmaps, primaryFieldIndex, fieldId, result, candidateTermIds, gatherBatchSize, termIdStream, stackBuffer);
+                        solutionLog.log(MiruSolutionLogLevel.INFO, "distincts gatherDirect: intersect {} ms.", System.currentTimeMillis() - start);
+                        return;
+                    }
+                }
+
+                final byte[][] prefixesAsBytes;
+                if (query.prefixes != null) {
+                    prefixesAsBytes = new byte[query.prefixes.size()][];
+                    int i = 0;
+                    for (MiruValue prefix : query.prefixes) {
+                        prefixesAsBytes[i++] = termComposer.prefixLowerInclusive(schema, fieldDefinition, stackBuffer, prefix.parts);
+                    }
+                } else {
+                    prefixesAsBytes = new byte[0][];
+                }
+
                 start = System.currentTimeMillis();
                 //TODO expose batch size to query?
                 aggregateUtil.gather(name,
@@ -158,6 +187,35 @@ public class Distincts {
         }
     }
 
+    private <BM extends IBM, IBM> void intersect(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruFieldIndex<BM, IBM> primaryFieldIndex,
+        int fieldId,
+        BM answer,
+        List<MiruTermId> candidateTermIds,
+        int batchSize,
+        TermIdStream termIdStream,
+        StackBuffer stackBuffer) throws Exception {
+
+        for (int from = 0; from < candidateTermIds.size(); from += batchSize) {
+            List<MiruTermId> batch = candidateTermIds.subList(from, Math.min(from + batchSize, candidateTermIds.size()));
+            MiruTermId[] termIds = batch.toArray(new MiruTermId[batch.size()]);
+            boolean[] intersects = new boolean[termIds.length];
+            bitmaps.multiTx(
+                (tx, stackBuffer1) -> primaryFieldIndex.multiTxIndex(name, fieldId, termIds, -1, stackBuffer1, tx),
+                (index, lastId, bitmap) -> {
+                    intersects[index] = bitmap != null && bitmaps.intersects(answer, bitmap);
+                },
+                stackBuffer);
+
+            for (int i = 0; i < termIds.length; i++) {
+                if (intersects[i] && !termIdStream.stream(termIds[i])) {
+                    return;
+                }
+            }
+        }
+    }
+
     private boolean arrayStartsWith(byte[] termBytes, byte[] prefixAsBytes) {
         if (termBytes.length < prefixAsBytes.length) {
             return false;
@@ -186,9 +244,10 @@ public class Distincts {
             Set<MiruTermId> joinTerms = Sets.newHashSet();
             MiruFieldDefinition distinctFieldDefinition = schema.getFieldDefinition(distinctFieldId);
 
+            MiruTermParts parts = null;
             for (MiruTermId term : distinctTerms) {
-                String[] in = termComposer.decompose(schema, distinctFieldDefinition, stackBuffer, term);
-                String[] out = recomposeParts(distinctsQuery, in);
+                parts = termComposer.decompose(schema, distinctFieldDefinition, stackBuffer, term, parts);
+                String[] out = recomposeParts(distinctsQuery, parts);
                 joinTerms.add(termComposer.compose(schema, fromFieldDefinition, stackBuffer, out));
             }
 
@@ -196,15 +255,12 @@ public class Distincts {
         }
     }
 
-    private String[] recomposeParts(DistinctsQuery query, String[] in) {
-        if (query.gatherDistinctParts == null || query.gatherDistinctParts.length == 0 || (in.length <= 1 && query.gatherDistinctParts.length == 1)) {
-            return in;
-        }
-        String[] out = new String[query.gatherDistinctParts.length];
-        for (int i = 0; i < query.gatherDistinctParts.length; i++) {
-            out[i] = in[query.gatherDistinctParts[i]];
+    public String[] recomposeParts(DistinctsQuery query, MiruTermParts in) {
+        if (query.gatherDistinctParts == null || query.gatherDistinctParts.length == 0 || (in.count() <= 1 && query.gatherDistinctParts.length == 1)) {
+            return in.toArray();
         }
-        return out;
+        // only the selected parts are decoded
+        return in.select(query.gatherDistinctParts);
     }
 
 }
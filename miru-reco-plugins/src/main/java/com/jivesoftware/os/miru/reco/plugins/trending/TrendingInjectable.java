@@ -41,16 +41,24 @@ import org.apache.commons.math.stat.descriptive.rank.Percentile;
 import static com.google.common.base.Objects.firstNonNull;
 
 /**
- *
+ * Scores trending in two phases unless the candidate multiple is zero. The first phase asks every partition for just an older and
+ * a recent half count per distinct value, which bound the strategy scores, and keeps the values with the best bounds for each
+ * strategy as candidates. The second phase computes full waveforms only for the candidates.
  */
 public class TrendingInjectable {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    /**
+     * The first phase splits each time range into an older and a recent half.
+     */
+    static final int BOUND_SEGMENTS = 2;
+
     private final MiruProvider<? extends Miru> provider;
     private final Distincts distincts;
     private final Analytics analytics;
     private final int gatherDistinctsBatchSize;
+    private final int defaultCandidateMultiple;
 
     private final PeakDet peakDet = new PeakDet();
 
@@ -63,6 +71,7 @@ public class TrendingInjectable {
 
         TrendingPluginConfig config = miruProvider.getConfig(TrendingPluginConfig.class);
         this.gatherDistinctsBatchSize = config.getGatherDistinctsBatchSize();
+        this.defaultCandidateMultiple = config.getCandidateMultiple();
     }
 
     public MiruResponse<TrendingAnswer> scoreTrending(MiruRequest<TrendingQuery> request) throws MiruQueryServiceException, InterruptedException {
@@ -75,27 +84,48 @@ public class TrendingInjectable {
             MiruTenantId tenantId = request.tenantId;
             Miru miru = provider.getMiru(tenantId);
 
-            MiruTimeRange combinedTimeRange = getCombinedTimeRange(request);
-
-            Map<String, Integer> keyedSegments = Maps.newHashMap();
-            for (TrendingQueryScoreSet scoreSet : request.query.scoreSets) {
-                keyedSegments.put(scoreSet.key, scoreSet.divideTimeRangeIntoNSegments);
+            int candidateMultiple = firstNonNull(request.query.candidateMultiple, defaultCandidateMultiple);
+            MiruRequest<TrendingQuery> waveformRequest = request;
+            MiruResponse<AnalyticsAnswer> boundsResponse = null;
+            if (candidateMultiple > 0 && request.query.candidates == null) {
+                List<TrendingQueryScoreSet> boundScoreSets = Lists.newArrayListWithCapacity(request.query.scoreSets.size());
+                for (TrendingQueryScoreSet scoreSet : request.query.scoreSets) {
+                    boundScoreSets.add(new TrendingQueryScoreSet(scoreSet.key,
+                        scoreSet.strategies,
+                        scoreSet.timeRange,
+                        BOUND_SEGMENTS,
+                        scoreSet.desiredNumberOfDistincts));
+                }
+                boundsResponse = askTrending(miru, withQuery(request, new TrendingQuery(boundScoreSets,
+                    request.query.constraintsFilter,
+                    request.query.aggregateCountAroundField,
+                    request.query.distinctQueries,
+                    candidateMultiple,
+                    null)));
+
+                int[] distinctCount = new int[1];
+                List<MiruValue> candidates = selectCandidates(request.query.scoreSets,
+                    boundsResponse.answer != null ? boundsResponse.answer.waveforms : null,
+                    candidateMultiple,
+                    distinctCount);
+                LOG.inc("trending>distincts", distinctCount[0]);
+                LOG.inc("trending>candidates", candidates.size());
+
+                waveformRequest = withQuery(request, new TrendingQuery(request.query.scoreSets,
+                    request.query.constraintsFilter,
+                    request.query.aggregateCountAroundField,
+                    request.query.distinctQueries,
+                    candidateMultiple,
+                    candidates));
             }
 
-            MiruResponse<AnalyticsAnswer> analyticsResponse = miru.askAndMerge(tenantId,
-                new MiruSolvableFactory<>(request.name, provider.getStats(), "trending", new TrendingQuestion(distincts,
-                    analytics,
-                    gatherDistinctsBatchSize,
-                    combinedTimeRange,
-                    request,
-                    provider.getRemotePartition(TrendingRemotePartition.class))),
-                new AnalyticsAnswerEvaluator(),
-                new AnalyticsAnswerMerger(keyedSegments),
-                AnalyticsAnswer.EMPTY_RESULTS,
-                miru.getDefaultExecutor(),
-                request.logLevel);
+            MiruResponse<AnalyticsAnswer> analyticsResponse = null;
+            if (waveformRequest.query.candidates == null || !waveformRequest.query.candidates.isEmpty()) {
+                analyticsResponse = askTrending(miru, waveformRequest);
+            }
 
-            Map<String, List<Waveform>> keyedWaveforms = (analyticsResponse.answer != null && analyticsResponse.answer.waveforms != null)
+            Map<String, List<Waveform>> keyedWaveforms = (analyticsResponse != null && analyticsResponse.answer != null
+                && analyticsResponse.answer.waveforms != null)
                 ? analyticsResponse.answer.waveforms
                 : Collections.emptyMap();
 
@@ -202,23 +232,35 @@ public class TrendingInjectable {
                 keyedScoreSets.put(queryScoreSet.key, new TrendingAnswerScoreSet(strategySortedTrendies));
             }
 
-            ImmutableList<String> solutionLog = ImmutableList.<String>builder()
-                .addAll(analyticsResponse.log)
-                .build();
+            ImmutableList.Builder<String> solutionLog = ImmutableList.builder();
+            ImmutableList.Builder<MiruSolution> solutions = ImmutableList.builder();
+            Set<Integer> incompletePartitionIds = Sets.newTreeSet();
+            long totalElapsed = 0;
+            boolean missingSchema = false;
+            for (MiruResponse<AnalyticsAnswer> response : Arrays.asList(boundsResponse, analyticsResponse)) {
+                if (response != null) {
+                    solutionLog.addAll(response.log);
+                    solutions.addAll(firstNonNull(response.solutions, Collections.<MiruSolution>emptyList()));
+                    incompletePartitionIds.addAll(firstNonNull(response.incompletePartitionIds, Collections.<Integer>emptyList()));
+                    totalElapsed += response.totalElapsed;
+                    missingSchema |= response.missingSchema;
+                }
+            }
+            if (waveformRequest.query.candidates != null) {
+                solutionLog.add("Computed waveforms for " + waveformRequest.query.candidates.size() + " candidates with a multiple of "
+                    + candidateMultiple + ".");
+            }
+            List<String> log = solutionLog.build();
             if (LOG.isTraceEnabled()) {
-                LOG.trace("Solution for {}:\n{}", tenantId, solutionLog);
+                LOG.trace("Solution for {}:\n{}", tenantId, log);
             }
 
             return new MiruResponse<>(new TrendingAnswer(keyedDistinctWaveforms, keyedScoreSets),
-                ImmutableList.<MiruSolution>builder()
-                    .addAll(firstNonNull(analyticsResponse.solutions, Collections.<MiruSolution>emptyList()))
-                    .build(),
-                analyticsResponse.totalElapsed,
-                analyticsResponse.missingSchema,
-                ImmutableList.<Integer>builder()
-                    .addAll(firstNonNull(analyticsResponse.incompletePartitionIds, Collections.<Integer>emptyList()))
-                    .build(),
-                solutionLog);
+                solutions.build(),
+                totalElapsed,
+                missingSchema,
+                ImmutableList.copyOf(incompletePartitionIds),
+                log);
         } catch (MiruPartitionUnavailableException | InterruptedException e) {
             throw e;
         } catch (Exception e) {
@@ -264,6 +306,95 @@ public class TrendingInjectable {
         }
     }
 
+    /**
+     * Picks the values with the best upper bounds for each strategy of each score set from their older and recent half counts.
+     * The bound for leaders is exact, so no leader is ever missed. Highest peaks are bounded by the total count, and a rising slope
+     * by the recent count, neither of which is tight, and peaks have no cheap bound so they also use the total count. The multiple
+     * trades the work of the second phase against the chance of missing one of these.
+     *
+     * @param scoreSets           the score sets of the query
+     * @param keyedBoundWaveforms the waveforms of {@link #BOUND_SEGMENTS} buckets for each score set
+     * @param candidateMultiple   the number of candidates per strategy, as a multiple of the desired number of distincts
+     * @param distinctCount       receives the number of distinct values that were bounded
+     * @return the candidates of every score set
+     */
+    static List<MiruValue> selectCandidates(List<TrendingQueryScoreSet> scoreSets,
+        Map<String, List<Waveform>> keyedBoundWaveforms,
+        int candidateMultiple,
+        int[] distinctCount) {
+
+        if (keyedBoundWaveforms == null) {
+            return Collections.emptyList();
+        }
+
+        Set<MiruValue> candidates = Sets.newLinkedHashSet();
+        long[] waveform = new long[BOUND_SEGMENTS];
+        for (TrendingQueryScoreSet scoreSet : scoreSets) {
+            List<Waveform> waveforms = keyedBoundWaveforms.get(scoreSet.key);
+            if (waveforms == null) {
+                continue;
+            }
+            distinctCount[0] = Math.max(distinctCount[0], waveforms.size());
+
+            int maximumSize = (int) Math.min(Integer.MAX_VALUE, (long) candidateMultiple * scoreSet.desiredNumberOfDistincts);
+            MinMaxPriorityQueue<Trendy> totalBounds = null;
+            MinMaxPriorityQueue<Trendy> recentBounds = null;
+            for (Strategy strategy : scoreSet.strategies) {
+                if (strategy == Strategy.LINEAR_REGRESSION) {
+                    recentBounds = MinMaxPriorityQueue.maximumSize(maximumSize).create();
+                } else if (totalBounds == null) {
+                    totalBounds = MinMaxPriorityQueue.maximumSize(maximumSize).create();
+                }
+            }
+
+            for (Waveform entry : waveforms) {
+                Arrays.fill(waveform, 0);
+                entry.mergeWaveform(waveform);
+                long older = waveform[0];
+                long recent = waveform[1];
+                if (totalBounds != null && older + recent > 0) {
+                    totalBounds.add(new Trendy(entry.getId(), older + recent));
+                }
+                if (recentBounds != null && recent > 0) {
+                    recentBounds.add(new Trendy(entry.getId(), recent));
+                }
+            }
+
+            for (MinMaxPriorityQueue<Trendy> bounds : Arrays.asList(totalBounds, recentBounds)) {
+                if (bounds != null) {
+                    for (Trendy trendy : bounds) {
+                        candidates.add(trendy.distinctValue);
+                    }
+                }
+            }
+        }
+        return Lists.newArrayList(candidates);
+    }
+
+    private MiruResponse<AnalyticsAnswer> askTrending(Miru miru, MiruRequest<TrendingQuery> request) throws Exception {
+        Map<String, Integer> keyedSegments = Maps.newHashMap();
+        for (TrendingQueryScoreSet scoreSet : request.query.scoreSets) {
+            keyedSegments.put(scoreSet.key, scoreSet.divideTimeRangeIntoNSegments);
+        }
+
+        return miru.askAndMerge(request.tenantId,
+            new MiruSolvableFactory<>(request.name, provider.getStats(), "trending", new TrendingQuestion(distincts,
+                analytics,
+                gatherDistinctsBatchSize,
+                getCombinedTimeRange(request),
+                request,
+                provider.getRemotePartition(TrendingRemotePartition.class))),
+            new AnalyticsAnswerEvaluator(),
+            new AnalyticsAnswerMerger(keyedSegments),
+            AnalyticsAnswer.EMPTY_RESULTS,
+            miru.getDefaultExecutor(),
+            request.logLevel);
+    }
+
+    private static MiruRequest<TrendingQuery> withQuery(MiruRequest<TrendingQuery> request, TrendingQuery query) {
+        return new MiruRequest<>(request.name, request.tenantId, request.actorId, request.authzExpression, query, request.logLevel);
+    }
+
     private MiruTimeRange getCombinedTimeRange(MiruRequest<TrendingQuery> request) {
         long minTimestamp = Long.MAX_VALUE;
         long maxTimestamp = Long.MIN_VALUE;
@@ -10,4 +10,11 @@ public interface TrendingPluginConfig extends Config {
 
     @IntDefault(100)
     int getGatherDistinctsBatchSize();
+
+    /**
+     * Full waveforms are computed for this many times the desired number of distincts per strategy, or for every distinct if zero.
+     * Candidate pruning is approximate, since the slope and peak bounds are not tight, so it is off unless configured or requested.
+     */
+    @IntDefault(0)
+    int getCandidateMultiple();
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsQuery;
 import java.io.Serializable;
 import java.util.List;
@@ -22,17 +23,40 @@ public class TrendingQuery implements Serializable {
     public final MiruFilter constraintsFilter;
     public final String aggregateCountAroundField;
     public final List<List<DistinctsQuery>> distinctQueries; // inner lists are OR'd together, outer list is AND'd together
+    /**
+     * Full waveforms are only computed for this many times the desired number of distincts, picked by a cheap upper bound.
+     * Null uses the plugin default, and zero or less computes full waveforms for every distinct value. Results are approximate when
+     * positive, since a value whose bound misses the cut is never scored even if its full waveform would have ranked.
+     */
+    public final Integer candidateMultiple;
+    /**
+     * Set by the first phase of a candidate pruned query, in which case partitions only compute waveforms for the values of their
+     * distinct queries which are also among these.
+     */
+    public final List<MiruValue> candidates;
+
+    public TrendingQuery(
+        List<TrendingQueryScoreSet> scoreSets,
+        MiruFilter constraintsFilter,
+        String aggregateCountAroundField,
+        List<List<DistinctsQuery>> distinctQueries) {
+        this(scoreSets, constraintsFilter, aggregateCountAroundField, distinctQueries, null, null);
+    }
 
     @JsonCreator
     public TrendingQuery(
         @JsonProperty("scoreSets") List<TrendingQueryScoreSet> scoreSets,
         @JsonProperty("constraintsFilter") MiruFilter constraintsFilter,
         @JsonProperty("aggregateCountAroundField") String aggregateCountAroundField,
-        @JsonProperty("distinctQueries") List<List<DistinctsQuery>> distinctQueries) {
+        @JsonProperty("distinctQueries") List<List<DistinctsQuery>> distinctQueries,
+        @JsonProperty("candidateMultiple") Integer candidateMultiple,
+        @JsonProperty("candidates") List<MiruValue> candidates) {
         this.scoreSets = Preconditions.checkNotNull(scoreSets);
         this.constraintsFilter = Preconditions.checkNotNull(constraintsFilter);
         this.aggregateCountAroundField = Preconditions.checkNotNull(aggregateCountAroundField);
         this.distinctQueries = Preconditions.checkNotNull(distinctQueries);
+        this.candidateMultiple = candidateMultiple;
+        this.candidates = candidates;
     }
 
     @Override
@@ -42,6 +66,8 @@ public class TrendingQuery implements Serializable {
             ", constraintsFilter=" + constraintsFilter +
             ", aggregateCountAroundField='" + aggregateCountAroundField + '\'' +
             ", distinctQueries=" + distinctQueries +
+            ", candidateMultiple=" + candidateMultiple +
+            ", candidates=" + (candidates != null ? candidates.size() : null) +
             '}';
     }
 }
@@ -89,45 +89,26 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
         }
 
         long start = System.currentTimeMillis();
-        MiruTermId[] termIds;
-
-        Set<MiruTermId> andTerms = null;
-        for (List<DistinctsQuery> distinctsQueries : request.query.distinctQueries) {
-            Set<MiruTermId> orTerms = null;
-            for (DistinctsQuery distinctsQuery : distinctsQueries) {
-                Set<MiruTermId> distinctTerms = Sets.newHashSet();
-                distincts.gatherDirect("trending", bitmaps, handle.getRequestContext(), distinctsQuery, gatherDistinctsBatchSize, solutionLog,
-                    termId -> {
-                        distinctTerms.add(termId);
-                        return true;
-                    });
+        MiruTermId[] termIds = gatherDistincts(bitmaps, context, schema, fieldDefinition, termComposer, stackBuffer, solutionLog);
+        solutionLog.log(MiruSolutionLogLevel.INFO, "Gathered {} distincts for {} queries in {} ms.",
+            termIds.length, request.query.distinctQueries.size(), (System.currentTimeMillis() - start));
 
-                Set<MiruTermId> recomposed = distincts.recomposeDistincts(schema, fieldDefinition, stackBuffer, termComposer, distinctTerms, distinctsQuery);
-                if (orTerms == null) {
-                    orTerms = recomposed;
-                } else {
-                    orTerms.addAll(recomposed);
-                }
+        if (request.query.candidates != null) {
+            // the candidates span every partition, so each partition still only scores its own distincts
+            Set<MiruTermId> candidateTermIds = Sets.newHashSetWithExpectedSize(request.query.candidates.size());
+            for (MiruValue candidate : request.query.candidates) {
+                candidateTermIds.add(termComposer.compose(schema, fieldDefinition, stackBuffer, candidate.parts));
             }
-
-            if (orTerms != null) {
-                if (andTerms == null) {
-                    andTerms = orTerms;
-                } else {
-                    andTerms.retainAll(orTerms);
+            List<MiruTermId> retained = Lists.newArrayListWithCapacity(Math.min(termIds.length, candidateTermIds.size()));
+            for (MiruTermId termId : termIds) {
+                if (candidateTermIds.contains(termId)) {
+                    retained.add(termId);
                 }
             }
+            termIds = retained.toArray(new MiruTermId[retained.size()]);
+            solutionLog.log(MiruSolutionLogLevel.INFO, "Retained {} of {} candidates.", termIds.length, candidateTermIds.size());
         }
 
-        if (andTerms != null) {
-            termIds = andTerms.toArray(new MiruTermId[andTerms.size()]);
-        } else {
-            termIds = new MiruTermId[0];
-        }
-
-        solutionLog.log(MiruSolutionLogLevel.INFO, "Gathered {} distincts for {} queries in {} ms.",
-            termIds.length, request.query.distinctQueries.size(), (System.currentTimeMillis() - start));
-
         start = System.currentTimeMillis();
 
         List<TrendingQueryScoreSet> scoreSets = request.query.scoreSets;
@@ -180,6 +161,49 @@ public class TrendingQuestion implements Question<TrendingQuery, AnalyticsAnswer
         return new MiruPartitionResponse<>(result, solutionLog.asList());
     }
 
+    private <BM extends IBM, IBM> MiruTermId[] gatherDistincts(MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> context,
+        MiruSchema schema,
+        MiruFieldDefinition fieldDefinition,
+        MiruTermComposer termComposer,
+        StackBuffer stackBuffer,
+        MiruSolutionLog solutionLog) throws Exception {
+
+        Set<MiruTermId> andTerms = null;
+        for (List<DistinctsQuery> distinctsQueries : request.query.distinctQueries) {
+            Set<MiruTermId> orTerms = null;
+            for (DistinctsQuery distinctsQuery : distinctsQueries) {
+                Set<MiruTermId> distinctTerms = Sets.newHashSet();
+                distincts.gatherDirect("trending", bitmaps, context, distinctsQuery, gatherDistinctsBatchSize, solutionLog,
+                    termId -> {
+                        distinctTerms.add(termId);
+                        return true;
+                    });
+
+                Set<MiruTermId> recomposed = distincts.recomposeDistincts(schema, fieldDefinition, stackBuffer, termComposer, distinctTerms, distinctsQuery);
+                if (orTerms == null) {
+                    orTerms = recomposed;
+                } else {
+                    orTerms.addAll(recomposed);
+                }
+            }
+
+            if (orTerms != null) {
+                if (andTerms == null) {
+                    andTerms = orTerms;
+                } else {
+                    andTerms.retainAll(orTerms);
+                }
+            }
+        }
+
+        if (andTerms != null) {
+            return andTerms.toArray(new MiruTermId[andTerms.size()]);
+        } else {
+            return new MiruTermId[0];
+        }
+    }
+
     @Override
     public MiruPartitionResponse<AnalyticsAnswer> askRemote(MiruHost host,
         MiruPartitionId partitionId,
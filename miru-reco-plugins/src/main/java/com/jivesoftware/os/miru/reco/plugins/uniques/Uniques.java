@@ -0,0 +1,82 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
+import com.jivesoftware.os.miru.plugin.index.MiruTermParts;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.reco.plugins.distincts.Distincts;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsQuery;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+
+/**
+ * Counts the distinct values of a partition into a {@link UniquesSketch} as the distinct term ids stream by, without collecting
+ * them. Term ids are hashed directly unless only some of their parts are wanted, in which case the selected parts are hashed so
+ * terms which differ only in the other parts count once.
+ */
+public class Uniques {
+
+    private static final MetricLogger log = MetricLoggerFactory.getLogger();
+
+    public static final int PRECISION = 14;
+    /**
+     * Exact below this many distinct values, which as raw hashes take about as much room as the 2^14 registers.
+     */
+    public static final int EXACT_THRESHOLD = 2_048;
+
+    private final Distincts distincts;
+    private final MiruTermComposer termComposer;
+
+    public Uniques(Distincts distincts, MiruTermComposer termComposer) {
+        this.distincts = distincts;
+        this.termComposer = termComposer;
+    }
+
+    public static UniquesSketch createSketch() {
+        return new UniquesSketch(PRECISION, EXACT_THRESHOLD);
+    }
+
+    public <BM extends IBM, IBM> UniquesAnswer gather(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        UniquesQuery query,
+        int gatherBatchSize,
+        StackBuffer stackBuffer,
+        MiruSolutionLog solutionLog)
+        throws Exception {
+
+        MiruSchema schema = requestContext.getSchema();
+        MiruFieldDefinition fieldDefinition = schema.getFieldDefinition(schema.getFieldId(query.gatherUniquesForField));
+        DistinctsQuery distinctsQuery = query.toDistinctsQuery();
+
+        long start = System.currentTimeMillis();
+        UniquesSketch sketch = createSketch();
+        if (query.gatherDistinctParts == null || query.gatherDistinctParts.length == 0) {
+            distincts.gatherDirect(name, bitmaps, requestContext, distinctsQuery, gatherBatchSize, solutionLog,
+                termId -> {
+                    sketch.offer(UniquesSketch.hash(termId.getBytes()));
+                    return true;
+                });
+        } else {
+            MiruTermParts[] reuse = new MiruTermParts[1];
+            distincts.gatherDirect(name, bitmaps, requestContext, distinctsQuery, gatherBatchSize, solutionLog,
+                termId -> {
+                    reuse[0] = termComposer.decompose(schema, fieldDefinition, stackBuffer, termId, reuse[0]);
+                    sketch.offer(UniquesSketch.hash(distincts.recomposeParts(distinctsQuery, reuse[0])));
+                    return true;
+                });
+        }
+        solutionLog.log(MiruSolutionLogLevel.INFO, "uniques sketch: exact:{} cardinality:{} in {} ms.",
+            sketch.isExact(), sketch.cardinality(), System.currentTimeMillis() - start);
+
+        boolean resultsExhausted = query.timeRange.smallestTimestamp > requestContext.getTimeIndex().getLargestTimestamp();
+        UniquesAnswer result = new UniquesAnswer(sketch.cardinality(), resultsExhausted, sketch);
+        log.debug("result={}", result);
+        return result;
+    }
+}
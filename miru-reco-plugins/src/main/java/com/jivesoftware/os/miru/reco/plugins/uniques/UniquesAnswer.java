@@ -13,19 +13,32 @@ public class UniquesAnswer implements Serializable {
 
     public final long uniques;
     public final boolean resultsExhausted;
+    /**
+     * Only set on partition answers in sketch mode, and merged away before the final answer.
+     */
+    public final UniquesSketch sketch;
 
     public UniquesAnswer(
         long uniques,
         boolean resultsExhausted) {
+        this(uniques, resultsExhausted, null);
+    }
+
+    public UniquesAnswer(
+        long uniques,
+        boolean resultsExhausted,
+        UniquesSketch sketch) {
         this.uniques = uniques;
         this.resultsExhausted = resultsExhausted;
+        this.sketch = sketch;
     }
 
     @JsonCreator
     public static UniquesAnswer fromJson(
         @JsonProperty("uniques") long uniques,
-        @JsonProperty("resultsExhausted") boolean resultsExhausted) {
-        return new UniquesAnswer(uniques, resultsExhausted);
+        @JsonProperty("resultsExhausted") boolean resultsExhausted,
+        @JsonProperty("sketch") UniquesSketch sketch) {
+        return new UniquesAnswer(uniques, resultsExhausted, sketch);
     }
 
     @Override
@@ -33,6 +46,7 @@ public class UniquesAnswer implements Serializable {
         return "UniquesAnswer{"
             + "uniques=" + uniques
             + ", resultsExhausted=" + resultsExhausted
+            + ", sketch=" + sketch
             + '}';
     }
 
@@ -0,0 +1,27 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerEvaluator;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+
+/**
+ *
+ */
+public class UniquesAnswerEvaluator implements MiruAnswerEvaluator<UniquesAnswer> {
+
+    @Override
+    public boolean isDone(UniquesAnswer answer, MiruSolutionLog solutionLog) {
+        solutionLog.log(MiruSolutionLogLevel.INFO, "Results exhausted = {}", answer.resultsExhausted);
+        return answer.resultsExhausted;
+    }
+
+    @Override
+    public boolean stopOnUnsolvablePartition() {
+        return false;
+    }
+
+    @Override
+    public boolean useParallelSolver() {
+        return false;
+    }
+}
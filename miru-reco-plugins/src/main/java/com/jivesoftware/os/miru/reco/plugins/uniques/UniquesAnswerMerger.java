@@ -0,0 +1,49 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.google.common.base.Optional;
+import com.jivesoftware.os.miru.plugin.solution.MiruAnswerMerger;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+
+/**
+ * Merges the sketches of partition answers, so only sketches are ever unioned. The final answer drops the sketch and keeps the count.
+ */
+public class UniquesAnswerMerger implements MiruAnswerMerger<UniquesAnswer> {
+
+    /**
+     * Merges the last and current results, returning the merged result.
+     *
+     * @param last          the last merge result
+     * @param currentAnswer the next result to merge
+     * @return the merged result
+     */
+    @Override
+    public UniquesAnswer merge(Optional<UniquesAnswer> last, UniquesAnswer currentAnswer, MiruSolutionLog solutionLog) {
+        if (!last.isPresent() || last.get().sketch == null) {
+            return currentAnswer;
+        }
+        UniquesAnswer lastAnswer = last.get();
+        if (currentAnswer.sketch == null) {
+            return new UniquesAnswer(lastAnswer.uniques, currentAnswer.resultsExhausted, lastAnswer.sketch);
+        }
+
+        // partition answers are never mutated, merged answers are our own
+        UniquesSketch sketch = lastAnswer.sketch.copy();
+        sketch.merge(currentAnswer.sketch);
+        UniquesAnswer mergedAnswer = new UniquesAnswer(sketch.cardinality(), currentAnswer.resultsExhausted, sketch);
+
+        solutionLog.log(MiruSolutionLogLevel.INFO, "Merged:" +
+                "\n  From: uniques={}" +
+                "\n  With: uniques={}" +
+                "\n  To:   uniques={} exact={}",
+            lastAnswer.uniques, currentAnswer.uniques, mergedAnswer.uniques, sketch.isExact());
+
+        return mergedAnswer;
+    }
+
+    @Override
+    public UniquesAnswer done(Optional<UniquesAnswer> last, UniquesAnswer alternative, final MiruSolutionLog solutionLog) {
+        UniquesAnswer answer = last.or(alternative);
+        return answer.sketch == null ? answer : new UniquesAnswer(answer.uniques, answer.resultsExhausted);
+    }
+}
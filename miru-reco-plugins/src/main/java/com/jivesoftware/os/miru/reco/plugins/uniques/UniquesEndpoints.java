@@ -1,7 +1,10 @@
 package com.jivesoftware.os.miru.reco.plugins.uniques;
 
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequestAndReport;
 import com.jivesoftware.os.miru.plugin.solution.MiruResponse;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
@@ -10,10 +13,12 @@ import javax.inject.Singleton;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.nustaq.serialization.FSTConfiguration;
 
 import static com.jivesoftware.os.miru.reco.plugins.uniques.UniquesConstants.CUSTOM_QUERY_ENDPOINT;
 import static com.jivesoftware.os.miru.reco.plugins.uniques.UniquesConstants.UNIQUES_PREFIX;
@@ -23,6 +28,7 @@ import static com.jivesoftware.os.miru.reco.plugins.uniques.UniquesConstants.UNI
 public class UniquesEndpoints {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
+    private static final FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
 
     private final UniquesInjectable injectable;
     private final ResponseHelper responseHelper = ResponseHelper.INSTANCE;
@@ -59,4 +65,31 @@ public class UniquesEndpoints {
         }
     }
 
+    @POST
+    @Path(CUSTOM_QUERY_ENDPOINT + "/{partitionId}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response gatherUniques(@PathParam("partitionId") int id, byte[] rawBytes) {
+        MiruPartitionId partitionId = MiruPartitionId.of(id);
+
+        MiruRequestAndReport<UniquesQuery, UniquesReport> requestAndReport;
+        try {
+            requestAndReport = (MiruRequestAndReport<UniquesQuery, UniquesReport>) conf.asObject(rawBytes);
+        } catch (Exception e) {
+            log.error("Failed to deserialize request", e);
+            return Response.serverError().build();
+        }
+
+        try {
+            MiruPartitionResponse<UniquesAnswer> result = injectable.gatherUniques(partitionId, requestAndReport);
+            byte[] responseBytes = result != null ? conf.asByteArray(result) : new byte[0];
+            return Response.ok(responseBytes, MediaType.APPLICATION_OCTET_STREAM).build();
+        } catch (MiruPartitionUnavailableException | InterruptedException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Unavailable " + e.getMessage()).build();
+        } catch (Exception e) {
+            log.error("Failed to gather uniques for tenant: {} partition: {}", new Object[] { requestAndReport.request.tenantId, partitionId.getId() }, e);
+            return Response.serverError().build();
+        }
+    }
+
 }
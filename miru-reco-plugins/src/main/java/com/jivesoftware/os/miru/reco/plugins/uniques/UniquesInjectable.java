@@ -1,12 +1,17 @@
 package com.jivesoftware.os.miru.reco.plugins.uniques;
 
+import com.google.common.base.Optional;
 import com.jivesoftware.os.miru.api.MiruQueryServiceException;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.plugin.Miru;
 import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.partition.MiruPartitionUnavailableException;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequestAndReport;
 import com.jivesoftware.os.miru.plugin.solution.MiruResponse;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvableFactory;
 import com.jivesoftware.os.miru.reco.plugins.distincts.Distincts;
 import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsAnswer;
@@ -26,21 +31,22 @@ public class UniquesInjectable {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private final MiruProvider<? extends Miru> provider;
+    private final Uniques uniques;
 
     public UniquesInjectable(MiruProvider<? extends Miru> provider) {
         this.provider = provider;
+        this.uniques = new Uniques(new Distincts(provider.getTermComposer()), provider.getTermComposer());
     }
 
     public MiruResponse<UniquesAnswer> gatherUniques(MiruRequest<UniquesQuery> request) throws MiruQueryServiceException, InterruptedException {
         try {
 
             UniquesQuery uniquesQuery = request.query;
+            if (uniquesQuery.mode == UniquesQuery.Mode.sketch) {
+                return sketchUniques(request);
+            }
 
-            DistinctsQuery distinctsQuery = new DistinctsQuery(uniquesQuery.timeRange,
-                uniquesQuery.gatherUniquesForField,
-                uniquesQuery.gatherDistinctParts,
-                uniquesQuery.constraintsFilter,
-                uniquesQuery.prefixes);
+            DistinctsQuery distinctsQuery = uniquesQuery.toDistinctsQuery();
 
             MiruRequest<DistinctsQuery> distinctsRequest = new MiruRequest<>(request.name,
                 request.tenantId,
@@ -65,6 +71,52 @@ public class UniquesInjectable {
         }
     }
 
+    private MiruResponse<UniquesAnswer> sketchUniques(MiruRequest<UniquesQuery> request) throws Exception {
+        LOG.debug("askAndMerge: request={}", request);
+        MiruTenantId tenantId = request.tenantId;
+        Miru miru = provider.getMiru(tenantId);
+        return miru.askAndMerge(tenantId,
+            new MiruSolvableFactory<>(request.name, provider.getStats(), "sketchUniques", new UniquesQuestion(uniques,
+                request,
+                provider.getRemotePartition(UniquesRemotePartition.class))),
+            new UniquesAnswerEvaluator(),
+            new UniquesAnswerMerger(),
+            UniquesAnswer.EMPTY_RESULTS,
+            miru.getDefaultExecutor(),
+            request.logLevel);
+    }
+
+    public MiruPartitionResponse<UniquesAnswer> gatherUniques(MiruPartitionId partitionId,
+        MiruRequestAndReport<UniquesQuery, UniquesReport> requestAndReport)
+        throws MiruQueryServiceException, InterruptedException {
+        try {
+            LOG.debug("askImmediate: partitionId={} request={}", partitionId, requestAndReport.request);
+            LOG.trace("askImmediate: report={}", requestAndReport.report);
+
+            MiruTenantId tenantId = requestAndReport.request.tenantId;
+            Miru miru = provider.getMiru(tenantId);
+            return miru.askImmediate(
+                tenantId,
+                partitionId,
+                new MiruSolvableFactory<>(
+                    requestAndReport.request.name,
+                    provider.getStats(),
+                    "sketchUniques",
+                    new UniquesQuestion(
+                        uniques,
+                        requestAndReport.request,
+                        provider.getRemotePartition(UniquesRemotePartition.class))),
+                Optional.fromNullable(requestAndReport.report),
+                UniquesAnswer.EMPTY_RESULTS,
+                MiruSolutionLogLevel.NONE);
+        } catch (MiruPartitionUnavailableException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            //TODO throw http error codes
+            throw new MiruQueryServiceException("Failed to gather uniques for partition: " + partitionId.getId(), e);
+        }
+    }
+
     private MiruResponse<DistinctsAnswer> gatherDistincts(MiruRequest<DistinctsQuery> request) throws MiruQueryServiceException, InterruptedException {
         try {
             Distincts distincts = new Distincts(provider.getTermComposer());
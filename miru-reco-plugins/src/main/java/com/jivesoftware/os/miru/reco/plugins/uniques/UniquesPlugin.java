@@ -4,8 +4,8 @@ import com.jivesoftware.os.miru.plugin.Miru;
 import com.jivesoftware.os.miru.plugin.MiruProvider;
 import com.jivesoftware.os.miru.plugin.plugin.MiruEndpointInjectable;
 import com.jivesoftware.os.miru.plugin.plugin.MiruPlugin;
+import com.jivesoftware.os.miru.plugin.solution.FstRemotePartitionReader;
 import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
-import com.jivesoftware.os.miru.reco.plugins.distincts.Distincts;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -22,7 +22,6 @@ public class UniquesPlugin implements MiruPlugin<UniquesEndpoints, UniquesInject
     @Override
     public Collection<MiruEndpointInjectable<UniquesInjectable>> getInjectables(MiruProvider<? extends Miru> miruProvider) {
 
-        Distincts uniques = new Distincts(miruProvider.getTermComposer());
         return Collections.singletonList(new MiruEndpointInjectable<>(
             UniquesInjectable.class,
             new UniquesInjectable(miruProvider)
@@ -31,6 +30,7 @@ public class UniquesPlugin implements MiruPlugin<UniquesEndpoints, UniquesInject
 
     @Override
     public Collection<MiruRemotePartition<?, ?, ?>> getRemotePartitions(MiruProvider<? extends Miru> miruProvider) {
-        return Collections.emptyList();
+        return Collections.singletonList(new UniquesRemotePartition(
+            new FstRemotePartitionReader(miruProvider.getReaderHttpClient(), miruProvider.getReaderStrategyCache(), false)));
     }
 }
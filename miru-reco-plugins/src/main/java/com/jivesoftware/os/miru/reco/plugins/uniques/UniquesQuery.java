@@ -6,6 +6,7 @@ import com.google.common.base.Preconditions;
 import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.reco.plugins.distincts.DistinctsQuery;
 import java.io.Serializable;
 import java.util.List;
 
@@ -14,11 +15,33 @@ import java.util.List;
  */
 public class UniquesQuery implements Serializable {
 
+    public enum Mode {
+        /**
+         * Every partition gathers its distinct values, which are unioned and counted.
+         */
+        exact,
+        /**
+         * Every partition counts into a {@link UniquesSketch}, and only the sketches are merged. Exact until a partition or the merge
+         * sees more than {@link Uniques#EXACT_THRESHOLD} distinct values, and an estimate within 2.4% for 99.7% of queries beyond.
+         */
+        sketch
+    }
+
     public final MiruTimeRange timeRange;
     public final String gatherUniquesForField;
     public final int[] gatherDistinctParts;
     public final MiruFilter constraintsFilter;
     public final List<MiruValue> prefixes;
+    public final Mode mode;
+
+    public UniquesQuery(
+        MiruTimeRange timeRange,
+        String gatherUniquesForField,
+        int[] gatherDistinctParts,
+        MiruFilter constraintsFilter,
+        List<MiruValue> prefixes) {
+        this(timeRange, gatherUniquesForField, gatherDistinctParts, constraintsFilter, prefixes, Mode.exact);
+    }
 
     @JsonCreator
     public UniquesQuery(
@@ -26,13 +49,19 @@ public class UniquesQuery implements Serializable {
         @JsonProperty("gatherUniquesForField") String gatherUniquesForField,
         @JsonProperty("gatherDistinctParts") int[] gatherDistinctParts,
         @JsonProperty("constraints") MiruFilter constraintsFilter,
-        @JsonProperty("prefixes") List<MiruValue> prefixes) {
+        @JsonProperty("prefixes") List<MiruValue> prefixes,
+        @JsonProperty("mode") Mode mode) {
         this.gatherDistinctParts = gatherDistinctParts;
         Preconditions.checkArgument(!MiruTimeRange.ALL_TIME.equals(timeRange), "Requires an explicit time range");
         this.timeRange = Preconditions.checkNotNull(timeRange);
         this.gatherUniquesForField = Preconditions.checkNotNull(gatherUniquesForField);
         this.prefixes = prefixes;
         this.constraintsFilter = constraintsFilter;
+        this.mode = mode != null ? mode : Mode.exact;
+    }
+
+    public DistinctsQuery toDistinctsQuery() {
+        return new DistinctsQuery(timeRange, gatherUniquesForField, gatherDistinctParts, constraintsFilter, prefixes);
     }
 
     @Override
@@ -42,6 +71,7 @@ public class UniquesQuery implements Serializable {
             ", gatherUniquesForField='" + gatherUniquesForField + '\'' +
             ", constraintsFilter=" + constraintsFilter +
             ", prefixes=" + prefixes +
+            ", mode=" + mode +
             '}';
     }
 }
@@ -0,0 +1,63 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.google.common.base.Optional;
+import com.jivesoftware.os.filer.io.api.StackBuffer;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruQueryServiceException;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
+import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequestHandle;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
+import com.jivesoftware.os.miru.plugin.solution.Question;
+
+/**
+ *
+ */
+public class UniquesQuestion implements Question<UniquesQuery, UniquesAnswer, UniquesReport> {
+
+    private final Uniques uniques;
+    private final MiruRequest<UniquesQuery> request;
+    private final MiruRemotePartition<UniquesQuery, UniquesAnswer, UniquesReport> remotePartition;
+
+    public UniquesQuestion(Uniques uniques,
+        MiruRequest<UniquesQuery> request,
+        MiruRemotePartition<UniquesQuery, UniquesAnswer, UniquesReport> remotePartition) {
+        this.uniques = uniques;
+        this.request = request;
+        this.remotePartition = remotePartition;
+    }
+
+    @Override
+    public <BM extends IBM, IBM> MiruPartitionResponse<UniquesAnswer> askLocal(MiruRequestHandle<BM, IBM, ?> handle,
+        Optional<UniquesReport> report) throws Exception {
+
+        MiruSolutionLog solutionLog = new MiruSolutionLog(request.logLevel);
+        MiruRequestContext<BM, IBM, ?> context = handle.getRequestContext();
+        MiruBitmaps<BM, IBM> bitmaps = handle.getBitmaps();
+        StackBuffer stackBuffer = new StackBuffer();
+
+        //TODO config batch size
+        return new MiruPartitionResponse<>(uniques.gather("uniques", bitmaps, context, request.query, 100, stackBuffer, solutionLog),
+            solutionLog.asList());
+    }
+
+    @Override
+    public MiruPartitionResponse<UniquesAnswer> askRemote(MiruHost host,
+        MiruPartitionId partitionId,
+        Optional<UniquesReport> report) throws MiruQueryServiceException {
+        return remotePartition.askRemote(host, partitionId, request, report);
+    }
+
+    @Override
+    public Optional<UniquesReport> createReport(Optional<UniquesAnswer> answer) {
+        Optional<UniquesReport> report = Optional.absent();
+        if (answer.isPresent()) {
+            report = Optional.of(new UniquesReport(answer.get().uniques));
+        }
+        return report;
+    }
+}
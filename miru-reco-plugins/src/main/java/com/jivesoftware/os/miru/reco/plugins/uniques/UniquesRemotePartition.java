@@ -0,0 +1,50 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.google.common.base.Optional;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruQueryServiceException;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.plugin.solution.MiruPartitionResponse;
+import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartition;
+import com.jivesoftware.os.miru.plugin.solution.MiruRemotePartitionReader;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.mlogger.core.EndPointMetrics;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+
+import static com.jivesoftware.os.miru.reco.plugins.uniques.UniquesConstants.CUSTOM_QUERY_ENDPOINT;
+import static com.jivesoftware.os.miru.reco.plugins.uniques.UniquesConstants.UNIQUES_PREFIX;
+
+/**
+ *
+ */
+public class UniquesRemotePartition implements MiruRemotePartition<UniquesQuery, UniquesAnswer, UniquesReport> {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final EndPointMetrics endPointMetrics = new EndPointMetrics("process", LOG);
+
+    private final MiruRemotePartitionReader remotePartitionReader;
+
+    public UniquesRemotePartition(MiruRemotePartitionReader remotePartitionReader) {
+        this.remotePartitionReader = remotePartitionReader;
+    }
+
+    private String getEndpoint(MiruPartitionId partitionId) {
+        return UNIQUES_PREFIX + CUSTOM_QUERY_ENDPOINT + "/" + partitionId.getId();
+    }
+
+    @Override
+    public MiruPartitionResponse<UniquesAnswer> askRemote(MiruHost host,
+        MiruPartitionId partitionId,
+        MiruRequest<UniquesQuery> request,
+        Optional<UniquesReport> report) throws MiruQueryServiceException {
+        return remotePartitionReader.read("uniques",
+            host,
+            getEndpoint(partitionId),
+            request,
+            UniquesAnswer.class,
+            report,
+            endPointMetrics,
+            UniquesAnswer.EMPTY_RESULTS);
+    }
+}
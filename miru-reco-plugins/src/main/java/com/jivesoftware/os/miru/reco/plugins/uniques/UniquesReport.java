@@ -0,0 +1,25 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+
+/**
+ *
+ */
+public class UniquesReport implements Serializable {
+
+    public final long uniques;
+
+    @JsonCreator
+    public UniquesReport(@JsonProperty("uniques") long uniques) {
+        this.uniques = uniques;
+    }
+
+    @Override
+    public String toString() {
+        return "UniquesReport{" +
+            "uniques=" + uniques +
+            '}';
+    }
+}
@@ -0,0 +1,266 @@
+package com.jivesoftware.os.miru.reco.plugins.uniques;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A mergeable count of distinct values, fed with 64-bit hashes of the values. Small sets keep their hashes and count exactly, so the
+ * only error is a 64-bit hash collision, which is negligible below billions of values. Once more than {@code exactThreshold} hashes
+ * are held, they are folded into 2^precision HyperLogLog registers and the count becomes an estimate.
+ * <p>
+ * Estimates use Ertl's improved raw estimator, which needs no bias correction tables and holds a relative standard error of
+ * 1.04 / sqrt(2^precision) across the whole range, e.g. 0.81% at precision 14, so about 99.7% of estimates fall within 2.4% of the
+ * true count. Merging sketches of the same precision and threshold gives exactly the sketch of the union, so the error does not
+ * grow with the number of partitions merged.
+ */
+public class UniquesSketch implements Serializable {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final long EMPTY = 0L;
+    private static final long ZERO_HASH = 0x9E3779B97F4A7C15L;
+
+    public final int precision;
+    public final int exactThreshold;
+
+    private long[] hashes; // open addressed, null once registers are in use
+    private int hashCount;
+    private byte[] registers;
+
+    public UniquesSketch(int precision, int exactThreshold) {
+        Preconditions.checkArgument(precision >= 4 && precision <= 18, "Precision must be between 4 and 18");
+        Preconditions.checkArgument(exactThreshold >= 0, "Exact threshold must not be negative");
+        this.precision = precision;
+        this.exactThreshold = exactThreshold;
+        if (exactThreshold > 0) {
+            this.hashes = new long[tableSize(exactThreshold)];
+        } else {
+            this.registers = new byte[1 << precision];
+        }
+    }
+
+    @JsonCreator
+    public static UniquesSketch fromJson(@JsonProperty("precision") int precision,
+        @JsonProperty("exactThreshold") int exactThreshold,
+        @JsonProperty("hashes") long[] hashes,
+        @JsonProperty("registers") byte[] registers) {
+        UniquesSketch sketch = new UniquesSketch(precision, exactThreshold);
+        if (registers != null) {
+            Preconditions.checkArgument(registers.length == 1 << precision, "Registers do not match precision");
+            sketch.hashes = null;
+            sketch.hashCount = 0;
+            sketch.registers = registers;
+        } else if (hashes != null) {
+            for (long hash : hashes) {
+                sketch.offer(hash);
+            }
+        }
+        return sketch;
+    }
+
+    public static long hash(byte[] bytes) {
+        return HASH_FUNCTION.hashBytes(bytes).asLong();
+    }
+
+    public static long hash(String[] parts) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        for (String part : parts) {
+            if (part == null) {
+                hasher.putInt(-1);
+            } else {
+                hasher.putInt(part.length());
+                hasher.putString(part, StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    public void offer(long hash) {
+        if (hash == EMPTY) {
+            hash = ZERO_HASH;
+        }
+        if (hashes != null) {
+            int mask = hashes.length - 1;
+            int index = (int) mix(hash) & mask;
+            while (hashes[index] != EMPTY) {
+                if (hashes[index] == hash) {
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            if (hashCount < exactThreshold) {
+                hashes[index] = hash;
+                hashCount++;
+                return;
+            }
+            toRegisters();
+        }
+        offerRegister(registers, precision, hash);
+    }
+
+    /**
+     * Adds every value of the other sketch into this one.
+     */
+    public void merge(UniquesSketch other) {
+        Preconditions.checkArgument(other.precision == precision && other.exactThreshold == exactThreshold,
+            "Cannot merge sketches with precision/threshold %s/%s into %s/%s", other.precision, other.exactThreshold, precision, exactThreshold);
+        if (other.hashes != null) {
+            for (long hash : other.hashes) {
+                if (hash != EMPTY) {
+                    offer(hash);
+                }
+            }
+        } else {
+            if (hashes != null) {
+                toRegisters();
+            }
+            for (int i = 0; i < registers.length; i++) {
+                if (other.registers[i] > registers[i]) {
+                    registers[i] = other.registers[i];
+                }
+            }
+        }
+    }
+
+    public UniquesSketch copy() {
+        UniquesSketch copy = new UniquesSketch(precision, exactThreshold);
+        copy.hashes = hashes != null ? hashes.clone() : null;
+        copy.hashCount = hashCount;
+        copy.registers = registers != null ? registers.clone() : null;
+        return copy;
+    }
+
+    @JsonIgnore
+    public boolean isExact() {
+        return hashes != null;
+    }
+
+    public long cardinality() {
+        if (hashes != null) {
+            return hashCount;
+        }
+        return estimate(registers, precision);
+    }
+
+    @JsonGetter("hashes")
+    public long[] getHashes() {
+        if (hashes == null) {
+            return null;
+        }
+        long[] compact = new long[hashCount];
+        int count = 0;
+        for (long hash : hashes) {
+            if (hash != EMPTY) {
+                compact[count++] = hash;
+            }
+        }
+        return compact;
+    }
+
+    @JsonGetter("registers")
+    public byte[] getRegisters() {
+        return registers;
+    }
+
+    private void toRegisters() {
+        byte[] registers = new byte[1 << precision];
+        for (long hash : hashes) {
+            if (hash != EMPTY) {
+                offerRegister(registers, precision, hash);
+            }
+        }
+        this.registers = registers;
+        this.hashes = null;
+        this.hashCount = 0;
+    }
+
+    private static void offerRegister(byte[] registers, int precision, long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // leading zeros of the remaining bits, plus one, capped by the number of remaining bits
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    static long estimate(byte[] registers, int precision) {
+        int m = registers.length;
+        int q = 64 - precision;
+        int[] histogram = new int[q + 2];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+        if (histogram[0] == m) {
+            return 0;
+        }
+        double z = m * tau(1d - (double) histogram[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma((double) histogram[0] / m);
+        return Math.round(m / (2d * Math.log(2)) * m / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1d) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1d;
+        double z = x;
+        double zPrevious;
+        do {
+            x *= x;
+            zPrevious = z;
+            z += x * y;
+            y += y;
+        } while (z != zPrevious);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0d || x == 1d) {
+            return 0d;
+        }
+        double y = 1d;
+        double z = 1 - x;
+        double zPrevious;
+        do {
+            x = Math.sqrt(x);
+            zPrevious = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (z != zPrevious);
+        return z / 3;
+    }
+
+    private static int tableSize(int exactThreshold) {
+        // at most half full
+        return Integer.highestOneBit(Math.max(exactThreshold, 1) * 2 - 1) << 1;
+    }
+
+    private static long mix(long hash) {
+        // the low bits index the table, so spread the high bits that pick registers into them
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "UniquesSketch{"
+            + "precision=" + precision
+            + ", exactThreshold=" + exactThreshold
+            + ", exact=" + isExact()
+            + ", cardinality=" + cardinality()
+            + '}';
+    }
+}
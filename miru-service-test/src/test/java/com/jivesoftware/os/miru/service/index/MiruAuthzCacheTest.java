@@ -0,0 +1,146 @@
+package com.jivesoftware.os.miru.service.index;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.index.MiruActivityInternExtern;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzCache;
+import com.jivesoftware.os.miru.service.index.auth.MiruAuthzUtils;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.roaringbitmap.RoaringBitmap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class MiruAuthzCacheTest {
+
+    private final MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+    private final MiruAuthzExpression expression = new MiruAuthzExpression(ImmutableList.of("a", "b"));
+
+    private Map<String, RoaringBitmap> indexes;
+    private AtomicInteger retrieved;
+    private MiruAuthzCache<RoaringBitmap, RoaringBitmap> cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        indexes = Maps.newConcurrentMap();
+        indexes.put("a", RoaringBitmap.bitmapOf(1, 2));
+        indexes.put("b", RoaringBitmap.bitmapOf(3));
+        indexes.put("c", RoaringBitmap.bitmapOf(4));
+        retrieved = new AtomicInteger();
+        cache = new MiruAuthzCache<>(bitmaps,
+            CacheBuilder.newBuilder().maximumSize(10),
+            new MiruActivityInternExtern(null, null, Interners.newWeakInterner(), null),
+            new MiruAuthzUtils<>(bitmaps));
+    }
+
+    @Test
+    public void testSetIsAppendedWithoutRecompose() throws Exception {
+        RoaringBitmap composite = getOrCompose(expression);
+        assertEquals(composite, RoaringBitmap.bitmapOf(1, 2, 3));
+        assertEquals(retrieved.get(), 2);
+        assertSame(getOrCompose(expression), composite);
+
+        set("a", 10, 11);
+        set("b", 12);
+        set("c", 13);
+        RoaringBitmap appended = getOrCompose(expression);
+        assertEquals(appended, RoaringBitmap.bitmapOf(1, 2, 3, 10, 11, 12));
+        assertEquals(retrieved.get(), 2);
+        // earlier readers keep what they were given
+        assertEquals(composite, RoaringBitmap.bitmapOf(1, 2, 3));
+    }
+
+    @Test
+    public void testRemoveRecomposes() throws Exception {
+        getOrCompose(expression);
+        indexes.get("a").remove(1);
+        cache.increment("a");
+
+        assertEquals(getOrCompose(expression), RoaringBitmap.bitmapOf(2, 3));
+        assertEquals(retrieved.get(), 4);
+
+        // the new composite is fed by both of its authz values
+        set("a", 20);
+        set("b", 21);
+        assertEquals(getOrCompose(expression), RoaringBitmap.bitmapOf(2, 3, 20, 21));
+        assertEquals(retrieved.get(), 4);
+    }
+
+    @Test
+    public void testConcurrentMissesComposeOnce() throws Exception {
+        CountDownLatch composing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<RoaringBitmap>> futures = Lists.newArrayList();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> cache.getOrCompose(expression, authz -> {
+                    retrieved.incrementAndGet();
+                    composing.countDown();
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    return indexes.get(authz);
+                })));
+            }
+            assertTrue(composing.await(10, TimeUnit.SECONDS));
+            // ids set while composing are queued for the composite
+            set("b", 30);
+            release.countDown();
+
+            for (Future<RoaringBitmap> future : futures) {
+                assertEquals(future.get(), RoaringBitmap.bitmapOf(1, 2, 3, 30));
+            }
+            assertEquals(retrieved.get(), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSizeInBytes() throws Exception {
+        assertEquals(cache.sizeInBytes(), 0);
+        getOrCompose(expression);
+        long composed = cache.sizeInBytes();
+        assertTrue(composed > 0);
+
+        int[] ids = new int[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1_000 + i * 7;
+        }
+        set("a", ids);
+        getOrCompose(expression);
+        assertTrue(cache.sizeInBytes() > composed);
+
+        cache.clear();
+        assertEquals(cache.sizeInBytes(), 0);
+    }
+
+    private RoaringBitmap getOrCompose(MiruAuthzExpression authzExpression) throws Exception {
+        return cache.getOrCompose(authzExpression, authz -> {
+            retrieved.incrementAndGet();
+            return indexes.get(authz);
+        });
+    }
+
+    private void set(String authz, int... ids) {
+        for (int id : ids) {
+            indexes.get(authz).add(id);
+        }
+        cache.append(authz, ids);
+    }
+}
@@ -64,6 +64,48 @@ public class MiruFieldIndexTest {
         assertTrue(bitmaps.isSet(getIndex(invertedIndex, stackBuffer).getBitmap(), 3));
     }
 
+    @Test(dataProvider = "miruIndexDataProvider")
+    public <BM extends IBM, IBM> void testMultiSetFieldTerms(MiruBitmaps<BM, IBM> bitmaps,
+        MiruSchema schema,
+        MiruFieldIndex<BM, IBM> miruFieldIndex,
+        MiruBackingStorage miruBackingStorage) throws Exception {
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruTermId[] termIds = {
+            new MiruTermId("multi1".getBytes()),
+            new MiruTermId("multi2".getBytes()),
+            new MiruTermId("multi3".getBytes())
+        };
+        miruFieldIndex.set(schema.getFieldDefinition(0), termIds[0], new int[] { 1 }, null, stackBuffer);
+
+        miruFieldIndex.multiSet(schema.getFieldDefinition(0),
+            termIds,
+            new int[][] { { 2, 70_000 }, { 3 }, { 5, 6 } },
+            null,
+            stackBuffer);
+
+        int[][] expected = { { 1, 2, 70_000 }, { 3 }, { 5, 6 } };
+        for (int i = 0; i < termIds.length; i++) {
+            MiruInvertedIndex<BM, IBM> invertedIndex = miruFieldIndex.get("test", 0, termIds[i]);
+            List<Integer> actual = Lists.newArrayList();
+            MiruIntIterator iter = bitmaps.intIterator(getIndex(invertedIndex, stackBuffer).getBitmap());
+            while (iter.hasNext()) {
+                actual.add(iter.next());
+            }
+            assertEquals(actual, Arrays.asList(ArrayUtils.toObject(expected[i])));
+        }
+
+        int[] lastIds = new int[termIds.length];
+        miruFieldIndex.multiGetLastIds("test", 0, termIds, lastIds, stackBuffer);
+        assertEquals(lastIds, new int[] { 70_000, 3, 6 });
+
+        Set<MiruTermId> found = Sets.newHashSet();
+        miruFieldIndex.streamTermIdsForField("test", 0, null, termId -> {
+            found.add(termId);
+            return true;
+        }, stackBuffer);
+        assertEquals(found, Sets.newHashSet(termIds));
+    }
+
     @Test(dataProvider = "miruIndexDataProviderWithData")
     public <BM extends IBM, IBM> void testExpectedData(MiruBitmaps<BM, IBM> bitmaps,
         MiruFieldIndex<BM, IBM> miruFieldIndex,
@@ -309,13 +309,60 @@ public class MiruInvertedIndexTest {
         MiruInvertedIndex<RoaringBitmap, RoaringBitmap> atomizedIndex = buildInvertedIndex(true, bitmaps);
         atomizedIndex.set(stackBuffer, 1, 2, 3, 4);
 
+        MiruInvertedIndex<RoaringBitmap, RoaringBitmap> deltaIndex = buildInvertedIndex(true, 8, bitmaps);
+        deltaIndex.set(stackBuffer, 1, 2, 3, 4);
+
         return new Object[][] {
             { mergedIndex, Arrays.asList(1, 2, 3, 4) },
-            { atomizedIndex, Arrays.asList(1, 2, 3, 4) }
+            { atomizedIndex, Arrays.asList(1, 2, 3, 4) },
+            { deltaIndex, Arrays.asList(1, 2, 3, 4) }
         };
     }
 
+    @Test
+    public void testDeltaFold() throws Exception {
+        StackBuffer stackBuffer = new StackBuffer();
+        MiruBitmapsRoaring bitmaps = new MiruBitmapsRoaring();
+        MiruInvertedIndex<RoaringBitmap, RoaringBitmap> index = buildInvertedIndex(true, 4, bitmaps);
+
+        // pending deltas
+        index.set(stackBuffer, 1, 2);
+        index.set(stackBuffer, 70_000);
+        assertEquals(index.lastId(stackBuffer), 70_000);
+        assertEquals(getIndex(index, stackBuffer).getLastId(), 70_000);
+        assertTrue(Arrays.equals(getIndex(index, stackBuffer).getBitmap().toArray(), new int[] { 1, 2, 70_000 }));
+
+        // crosses the threshold and folds
+        index.set(stackBuffer, 5, 6);
+        assertEquals(index.lastId(stackBuffer), 70_000);
+        assertEquals(getIndex(index, stackBuffer).getLastId(), 70_000);
+        assertTrue(Arrays.equals(getIndex(index, stackBuffer).getBitmap().toArray(), new int[] { 1, 2, 5, 6, 70_000 }));
+
+        // remove folds pending deltas first
+        index.set(stackBuffer, 70_001);
+        index.remove(stackBuffer, 1, 70_000);
+        assertEquals(getIndex(index, stackBuffer).getLastId(), 70_001);
+        assertTrue(Arrays.equals(getIndex(index, stackBuffer).getBitmap().toArray(), new int[] { 2, 5, 6, 70_001 }));
+
+        // andNot folds pending deltas first
+        index.set(stackBuffer, 7);
+        index.andNot(RoaringBitmap.bitmapOf(2, 7), stackBuffer);
+        assertTrue(Arrays.equals(getIndex(index, stackBuffer).getBitmap().toArray(), new int[] { 5, 6, 70_001 }));
+
+        // a delta alone makes the index
+        MiruInvertedIndex<RoaringBitmap, RoaringBitmap> deltaOnly = buildInvertedIndex(true, 4, bitmaps);
+        deltaOnly.set(stackBuffer, 3);
+        assertEquals(deltaOnly.lastId(stackBuffer), 3);
+        assertTrue(Arrays.equals(getIndex(deltaOnly, stackBuffer).getBitmap().toArray(), new int[] { 3 }));
+    }
+
     private <BM extends IBM, IBM> MiruInvertedIndex<BM, IBM> buildInvertedIndex(boolean atomized, MiruBitmaps<BM, IBM> bitmaps) throws Exception {
+        return buildInvertedIndex(atomized, 0, bitmaps);
+    }
+
+    private <BM extends IBM, IBM> MiruInvertedIndex<BM, IBM> buildInvertedIndex(boolean atomized,
+        int deltaFoldThreshold,
+        MiruBitmaps<BM, IBM> bitmaps) throws Exception {
         return new LabInvertedIndex<>(
             new OrderIdProviderImpl(new ConstantWriterIdProvider(1), new SnowflakeIdPacker(), new JiveEpochTimestampProvider()),
             bitmaps,
@@ -335,7 +382,9 @@ public class MiruInvertedIndexTest {
             IndexTestUtil.buildValueIndex("bitmap"),
             new byte[] { 0 },
             IndexTestUtil.buildValueIndex("term"),
-            new Object());
+            new Object(),
+            atomized,
+            deltaFoldThreshold);
     }
 
     @Test(groups = "slow", enabled = false, description = "Concurrency test")
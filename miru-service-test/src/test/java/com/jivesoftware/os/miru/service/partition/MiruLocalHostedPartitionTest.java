@@ -317,6 +317,7 @@ public class MiruLocalHostedPartitionTest {
             new RCVSSipIndexMarshaller(),
             resourceLocator,
             config.getPartitionAuthzCacheSize(),
+            config.getFieldIndexDeltaFoldThreshold(),
             new StripingLocksProvider<>(8),
             new StripingLocksProvider<>(8),
             new StripingLocksProvider<>(8),
@@ -384,7 +385,8 @@ public class MiruLocalHostedPartitionTest {
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.DAYS.toMillis(365),
-            TimeUnit.DAYS.toMillis(730));
+            TimeUnit.DAYS.toMillis(730),
+            4);
         clusterRegistry.heartbeat(host);
 
         OrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(0), new SnowflakeIdPacker(), new JiveEpochTimestampProvider());
@@ -401,8 +403,8 @@ public class MiruLocalHostedPartitionTest {
                 readTrackingWALWriter,
                 clusterClient));
 
-        partitionEventHandler = new MiruPartitionHeartbeatHandler(clusterClient, new AtomicBoolean(false));
-        rebuildDirector = new MiruRebuildDirector(Long.MAX_VALUE);
+        partitionEventHandler = new MiruPartitionHeartbeatHandler(clusterClient, new AtomicBoolean(false), 60);
+        rebuildDirector = new MiruRebuildDirector(Long.MAX_VALUE, partitionEventHandler::getQueryTimestamp, Collections.emptyMap(), 600_000, 5_000, 10_000);
         factory = new MiruPartitionedActivityFactory();
 
         scheduledBootstrapService = mock(ScheduledExecutorService.class);
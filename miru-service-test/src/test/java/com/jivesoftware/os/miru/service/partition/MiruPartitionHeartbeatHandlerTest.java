@@ -0,0 +1,191 @@
+package com.jivesoftware.os.miru.service.partition;
+
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.MiruPartitionCoordInfo;
+import com.jivesoftware.os.miru.api.MiruPartitionState;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.topology.MiruHeartbeatRequest;
+import com.jivesoftware.os.miru.api.topology.MiruHeartbeatResponse;
+import com.jivesoftware.os.miru.api.topology.PartitionInfo;
+import com.jivesoftware.os.routing.bird.shared.HostPort;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruPartitionHeartbeatHandlerTest {
+
+    private final MiruHost host = new MiruHost("localhost:49600");
+    private final MiruTenantId tenantId = new MiruTenantId("test".getBytes(StandardCharsets.UTF_8));
+    private final MiruPartitionCoord coord1 = new MiruPartitionCoord(tenantId, MiruPartitionId.of(1), host);
+    private final MiruPartitionCoord coord2 = new MiruPartitionCoord(tenantId, MiruPartitionId.of(2), host);
+    private final MiruPartitionCoordInfo online = new MiruPartitionCoordInfo(MiruPartitionState.online, MiruBackingStorage.disk);
+
+    @Test
+    public void testDeltaSuppressesUnchanged() throws Exception {
+        CapturingClusterClient clusterClient = new CapturingClusterClient();
+        MiruPartitionHeartbeatHandler handler = new MiruPartitionHeartbeatHandler(clusterClient, new AtomicBoolean(false), 1_000);
+
+        handler.updateInfo(coord1, online);
+        handler.updateLastTimestamp(coord1, 10L);
+        handler.updateInfo(coord2, online);
+        handler.thumpthump(host);
+        assertTrue(clusterClient.last().fullSnapshot);
+        assertEquals(clusterClient.last().active.size(), 2);
+
+        // same info and last timestamp again, nothing should be sent
+        handler.updateInfo(coord1, online);
+        handler.updateLastTimestamp(coord1, 10L);
+        handler.thumpthump(host);
+        assertFalse(clusterClient.last().fullSnapshot);
+        assertTrue(clusterClient.last().active.isEmpty());
+
+        // only the changed field is sent
+        handler.updateInfo(coord1, online);
+        handler.updateLastTimestamp(coord1, 20L);
+        handler.thumpthump(host);
+        List<PartitionInfo> active = Lists.newArrayList(clusterClient.last().active);
+        assertEquals(active.size(), 1);
+        assertEquals(active.get(0).partitionId, 1);
+        assertNull(active.get(0).info);
+        assertEquals(active.get(0).lastTimestamp, 20L);
+        assertEquals(active.get(0).queryTimestamp, -1L);
+    }
+
+    @Test
+    public void testFullSnapshotResendsAcknowledged() throws Exception {
+        CapturingClusterClient clusterClient = new CapturingClusterClient();
+        MiruPartitionHeartbeatHandler handler = new MiruPartitionHeartbeatHandler(clusterClient, new AtomicBoolean(false), 3);
+
+        handler.updateInfo(coord1, online);
+        handler.updateQueryTimestamp(coord1, 100L);
+        handler.updateInfo(coord2, online);
+        assertEquals(handler.getQueryTimestamp(coord1), 100L);
+        handler.thumpthump(host);
+        assertEquals(handler.getQueryTimestamp(coord1), 100L);
+        assertEquals(handler.getQueryTimestamp(coord2), -1L);
+        handler.thumpthump(host);
+        handler.thumpthump(host);
+        assertTrue(clusterClient.last().active.isEmpty());
+
+        handler.thumpthump(host);
+        assertTrue(clusterClient.last().fullSnapshot);
+        List<PartitionInfo> active = Lists.newArrayList(clusterClient.last().active);
+        assertEquals(active.size(), 2);
+        for (PartitionInfo partitionInfo : active) {
+            assertEquals(partitionInfo.info, online);
+            if (partitionInfo.partitionId == 1) {
+                assertEquals(partitionInfo.queryTimestamp, 100L);
+            }
+        }
+
+        handler.removed(coord2);
+        handler.thumpthump(host);
+        handler.thumpthump(host);
+        handler.thumpthump(host);
+        assertTrue(clusterClient.last().fullSnapshot);
+        assertEquals(clusterClient.last().active.size(), 1);
+    }
+
+    @Test
+    public void testFailedHeartbeatIsRetried() throws Exception {
+        CapturingClusterClient clusterClient = new CapturingClusterClient();
+        MiruPartitionHeartbeatHandler handler = new MiruPartitionHeartbeatHandler(clusterClient, new AtomicBoolean(false), 1_000);
+
+        handler.thumpthump(host);
+        handler.updateInfo(coord1, online);
+        clusterClient.fail = true;
+        try {
+            handler.thumpthump(host);
+        } catch (Exception e) {
+            // expected
+        }
+        clusterClient.fail = false;
+        handler.thumpthump(host);
+        List<PartitionInfo> active = Lists.newArrayList(clusterClient.last().active);
+        assertEquals(active.size(), 1);
+        assertEquals(active.get(0).info, online);
+    }
+
+    @Test
+    public void testWALChangesWakeHostedPartitions() throws Exception {
+        MiruPartitionHeartbeatHandler handler = new MiruPartitionHeartbeatHandler(new CapturingClusterClient(), new AtomicBoolean(false), 1_000);
+        AtomicInteger woken1 = new AtomicInteger();
+        AtomicInteger woken2 = new AtomicInteger();
+        handler.registerSipWaker(coord1, woken1::incrementAndGet);
+        handler.registerSipWaker(coord2, woken2::incrementAndGet);
+
+        handler.walChanged(tenantId, MiruPartitionId.of(1));
+        handler.walChanged(tenantId, MiruPartitionId.of(3));
+        assertEquals(woken1.get(), 1);
+        assertEquals(woken2.get(), 0);
+        assertEquals(handler.getWALChangedCount(coord1), 1L);
+        assertEquals(handler.getWALChangedCount(coord2), 0L);
+
+        // changes in the same millisecond must still be distinguishable
+        handler.walChanged(tenantId, MiruPartitionId.of(1));
+        assertEquals(handler.getWALChangedCount(coord1), 2L);
+
+        handler.walResync();
+        assertEquals(woken1.get(), 3);
+        assertEquals(woken2.get(), 1);
+        assertEquals(handler.getWALChangedCount(coord1), 3L);
+
+        handler.removed(coord1);
+        handler.walChanged(tenantId, MiruPartitionId.of(1));
+        assertEquals(woken1.get(), 3);
+        assertEquals(handler.getWALChangedCount(coord1), 0L);
+    }
+
+    @Test
+    public void testWALNotifyingPerHost() throws Exception {
+        MiruPartitionHeartbeatHandler handler = new MiruPartitionHeartbeatHandler(new CapturingClusterClient(), new AtomicBoolean(false), 1_000);
+        HostPort wal1 = new HostPort("wal1", 10_000);
+        HostPort wal2 = new HostPort("wal2", 10_000);
+        HostPort wal3 = new HostPort("wal3", 10_000);
+
+        assertFalse(handler.isWALNotifying(Arrays.asList(wal1, wal2)));
+        assertFalse(handler.isWALNotifying(Collections.emptyList()));
+
+        handler.setWALNotifying(wal2, true);
+        assertTrue(handler.isWALNotifying(Arrays.asList(wal1, wal2)));
+        assertFalse(handler.isWALNotifying(Collections.singletonList(wal3)));
+
+        handler.setWALNotifying(wal2, false);
+        assertFalse(handler.isWALNotifying(Arrays.asList(wal1, wal2)));
+    }
+
+    private static class CapturingClusterClient extends NoOpClusterClient {
+
+        private final List<MiruHeartbeatRequest> requests = Lists.newArrayList();
+        private boolean fail;
+
+        @Override
+        public MiruHeartbeatResponse thumpthump(MiruHost host, MiruHeartbeatRequest heartbeatRequest) throws Exception {
+            if (fail) {
+                throw new Exception("failed");
+            }
+            requests.add(heartbeatRequest);
+            return null;
+        }
+
+        private MiruHeartbeatRequest last() {
+            return requests.get(requests.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.jivesoftware.os.miru.service.partition;
+
+import com.google.common.base.Charsets;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.MiruPartitionState;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.plugin.partition.MiruRoutablePartition;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolution;
+import com.jivesoftware.os.miru.service.partition.MiruTenantRoutingTopology.PartitionGroup;
+import com.jivesoftware.os.miru.service.partition.cluster.PartitionAndHost;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class MiruTenantRoutingTopologyTest {
+
+    private final String requestName = "test";
+    private final String queryKey = "TestExecuteQuery";
+    private final MiruTenantId tenantId = new MiruTenantId("test".getBytes(Charsets.UTF_8));
+
+    private MiruHostedPartitionComparison partitionComparison;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        partitionComparison = new MiruHostedPartitionComparison(1_000, 95, System::currentTimeMillis);
+    }
+
+    @Test
+    public void testSnapshotOrdering() throws Exception {
+        MiruTenantRoutingTopology topology = new MiruTenantRoutingTopology(tenantId, partitionComparison, topology(3, 3, Long.MAX_VALUE));
+
+        // with no data, partitions are descending and replicas are in host order, and the snapshot is reused
+        List<PartitionGroup> groups = topology.allPartitionsInOrder(requestName, queryKey);
+        assertSame(topology.allPartitionsInOrder(requestName, queryKey), groups);
+        assertEquals(groups.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            PartitionGroup group = groups.get(i);
+            assertEquals(group.partitionId, MiruPartitionId.of(2 - i));
+            assertEquals(group.partitions.size(), 3);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(group.partitions.get(j).host, host(j));
+            }
+        }
+
+        // host 2 answered partition 1, so it moves to the top of that replica set only
+        partitionComparison.analyzeSolutions(Collections.singletonList(new MiruSolution(
+            new MiruPartitionCoord(tenantId, MiruPartitionId.of(1), host(2)), 0, 0, Collections.emptyList(), null)), requestName, queryKey);
+        List<PartitionGroup> adjusted = topology.allPartitionsInOrder(requestName, queryKey);
+        assertSame(adjusted.get(0), groups.get(0));
+        assertSame(adjusted.get(2), groups.get(2));
+        assertEquals(adjusted.get(1).partitions.get(0).host, host(2));
+        assertEquals(adjusted.get(1).partitions.get(1).host, host(0));
+        assertEquals(adjusted.get(1).partitions.get(2).host, host(1));
+
+        PartitionGroup single = topology.partitionInOrder(MiruPartitionId.of(1), requestName, queryKey);
+        assertEquals(single.partitions, adjusted.get(1).partitions);
+        assertSame(topology.partitionInOrder(MiruPartitionId.of(1), requestName, "otherQueryKey"), groups.get(1));
+        assertNull(topology.partitionInOrder(MiruPartitionId.of(3), requestName, queryKey).partitions);
+    }
+
+    @Test
+    public void testDestroyedReplicasAreSkipped() throws Exception {
+        TreeMap<PartitionAndHost, MiruRoutablePartition> partitions = topology(2, 2, Long.MAX_VALUE);
+        MiruRoutablePartition destroyed = new MiruRoutablePartition(host(0), MiruPartitionId.of(0), false,
+            MiruPartitionState.online, MiruBackingStorage.disk, 1L);
+        partitions.put(new PartitionAndHost(destroyed.partitionId, destroyed.host), destroyed);
+        MiruTenantRoutingTopology topology = new MiruTenantRoutingTopology(tenantId, partitionComparison, partitions);
+
+        List<PartitionGroup> groups = topology.allPartitionsInOrder(requestName, queryKey);
+        assertEquals(groups.get(0).partitions.size(), 2);
+        assertEquals(groups.get(1).partitions.size(), 1);
+        assertEquals(groups.get(1).partitions.get(0).host, host(1));
+    }
+
+    @Test(enabled = false)
+    public void testRoutingBenchmark() throws Exception {
+        int numPartitions = 5_000;
+        int numReplicas = 3;
+        TreeMap<PartitionAndHost, MiruRoutablePartition> partitions = topology(numPartitions, numReplicas, Long.MAX_VALUE);
+        MiruTenantRoutingTopology topology = new MiruTenantRoutingTopology(tenantId, partitionComparison, partitions);
+
+        for (int round = 0; round < 2; round++) {
+            String label = (round == 0) ? "cold" : "warm";
+            long start = System.nanoTime();
+            int count = 0;
+            for (int i = 0; i < 1_000; i++) {
+                count += topology.allPartitionsInOrder(requestName, queryKey).size();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(label + ": " + numPartitions + " partitions x " + numReplicas + " replicas routed in "
+                + (elapsed / 1_000 / 1_000) + " us per query, count=" + count);
+
+            // every replica set has a recent answer for the second round
+            for (int p = 0; p < numPartitions; p++) {
+                partitionComparison.analyzeSolutions(Collections.singletonList(new MiruSolution(
+                    new MiruPartitionCoord(tenantId, MiruPartitionId.of(p), host(p % numReplicas)), 0, 0, Collections.emptyList(), null)),
+                    requestName, queryKey);
+            }
+        }
+    }
+
+    private TreeMap<PartitionAndHost, MiruRoutablePartition> topology(int numPartitions, int numReplicas, long destroyAfterTimestamp) {
+        TreeMap<PartitionAndHost, MiruRoutablePartition> topology = new TreeMap<>();
+        for (int p = 0; p < numPartitions; p++) {
+            for (int r = 0; r < numReplicas; r++) {
+                MiruRoutablePartition partition = new MiruRoutablePartition(host(r), MiruPartitionId.of(p), false,
+                    MiruPartitionState.online, MiruBackingStorage.disk, destroyAfterTimestamp);
+                topology.put(new PartitionAndHost(partition.partitionId, partition.host), partition);
+            }
+        }
+        return topology;
+    }
+
+    private MiruHost host(int index) {
+        return new MiruHost("logicalName_" + (49_600 + index));
+    }
+}
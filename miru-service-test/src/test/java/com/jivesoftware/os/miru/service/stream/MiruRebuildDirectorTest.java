@@ -0,0 +1,119 @@
+package com.jivesoftware.os.miru.service.stream;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.service.partition.MiruLocalHostedPartition;
+import java.util.Collections;
+import java.util.Map;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MiruRebuildDirectorTest {
+
+    private final MiruHost host = new MiruHost("localhost:49600");
+    private final MiruTenantId tenantA = new MiruTenantId("a".getBytes(Charsets.UTF_8));
+    private final MiruTenantId tenantB = new MiruTenantId("b".getBytes(Charsets.UTF_8));
+
+    @Test
+    public void testQueriedPartitionsGoFirst() throws Exception {
+        Map<MiruPartitionCoord, Long> queryTimestamps = Maps.newHashMap();
+        MiruRebuildDirector director = new MiruRebuildDirector(100, coord -> queryTimestamps.getOrDefault(coord, -1L),
+            Collections.emptyMap(), 60_000, 5_000, 10_000);
+
+        MiruPartitionCoord idle = coord(tenantA, 1);
+        MiruPartitionCoord queried = coord(tenantB, 2);
+        queryTimestamps.put(queried, System.currentTimeMillis());
+
+        Optional<MiruRebuildDirector.Token> blocker = director.acquire(coord(tenantA, 9), 100);
+        assertTrue(blocker.isPresent());
+        assertFalse(director.acquire(idle, 10).isPresent());
+        assertFalse(director.acquire(queried, 100).isPresent());
+        director.release(blocker.get());
+
+        // the idle partition asks first, but the queried partition needs the whole budget so it holds the idle one back
+        assertFalse(director.acquire(idle, 10).isPresent());
+        Optional<MiruRebuildDirector.Token> token = director.acquire(queried, 100);
+        assertTrue(token.isPresent());
+        assertFalse(director.acquire(idle, 10).isPresent());
+
+        director.release(token.get());
+        assertTrue(director.acquire(idle, 10).isPresent());
+    }
+
+    @Test
+    public void testCheaperAndHeavierFirstWithinTier() throws Exception {
+        MiruRebuildDirector director = new MiruRebuildDirector(100, coord -> -1L,
+            ImmutableMap.of(tenantB, 10d), 60_000, 5_000, 10_000);
+
+        MiruPartitionCoord expensive = coord(tenantA, 1);
+        MiruPartitionCoord cheap = coord(tenantA, 2);
+        MiruPartitionCoord weighted = coord(tenantB, 3);
+
+        Optional<MiruRebuildDirector.Token> blocker = director.acquire(coord(tenantA, 9), 100);
+        assertTrue(blocker.isPresent());
+        assertFalse(director.acquire(expensive, 90).isPresent());
+        assertFalse(director.acquire(cheap, 20).isPresent());
+        assertFalse(director.acquire(weighted, 80).isPresent());
+        director.release(blocker.get());
+
+        // the weighted tenant and then the cheap partition fill the budget ahead of the expensive one
+        assertFalse(director.acquire(expensive, 90).isPresent());
+        assertTrue(director.acquire(weighted, 80).isPresent());
+        assertTrue(director.acquire(cheap, 20).isPresent());
+        assertFalse(director.acquire(expensive, 90).isPresent());
+    }
+
+    @Test
+    public void testPrioritizedTierHoldsBackOthers() throws Exception {
+        MiruRebuildDirector director = new MiruRebuildDirector(100, coord -> -1L,
+            Collections.emptyMap(), 60_000, 5_000, 10_000);
+
+        MiruPartitionCoord running = coord(tenantA, 1);
+        MiruPartitionCoord prioritized = coord(tenantA, 2);
+        MiruPartitionCoord other = coord(tenantB, 3);
+
+        Optional<MiruRebuildDirector.Token> runningToken = director.acquire(running, 50);
+        assertTrue(runningToken.isPresent());
+        director.prioritize(partition(prioritized));
+        assertFalse(director.acquire(prioritized, 80).isPresent());
+        assertFalse(director.acquire(other, 10).isPresent());
+
+        Map<MiruTenantId, Long> timeToServe = director.getTimeToServe();
+        assertEquals(timeToServe.size(), 2);
+        assertTrue(timeToServe.get(tenantB) > timeToServe.get(tenantA));
+
+        director.release(runningToken.get());
+        assertTrue(director.acquire(prioritized, 80).isPresent());
+        assertTrue(director.acquire(other, 10).isPresent());
+    }
+
+    @Test
+    public void testParseTenantWeights() throws Exception {
+        Map<MiruTenantId, Double> weights = MiruRebuildDirector.parseTenantWeights(" a:2.5, b:0.5 ,");
+        assertEquals(weights.size(), 2);
+        assertEquals(weights.get(tenantA), Double.valueOf(2.5));
+        assertEquals(weights.get(tenantB), Double.valueOf(0.5));
+        assertTrue(MiruRebuildDirector.parseTenantWeights("").isEmpty());
+    }
+
+    private MiruPartitionCoord coord(MiruTenantId tenantId, int partitionId) {
+        return new MiruPartitionCoord(tenantId, MiruPartitionId.of(partitionId), host);
+    }
+
+    private MiruLocalHostedPartition<?, ?, ?, ?> partition(MiruPartitionCoord coord) {
+        MiruLocalHostedPartition<?, ?, ?, ?> partition = mock(MiruLocalHostedPartition.class);
+        when(partition.getCoord()).thenReturn(coord);
+        return partition;
+    }
+}
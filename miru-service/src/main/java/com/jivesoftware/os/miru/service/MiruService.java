@@ -36,6 +36,7 @@ import com.jivesoftware.os.miru.plugin.solution.MiruResponse;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolution;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLog;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvable;
 import com.jivesoftware.os.miru.plugin.solution.MiruSolvableFactory;
 import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
@@ -50,6 +51,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author jonathan
@@ -65,6 +68,7 @@ public class MiruService implements Miru {
     private final MiruSchemaProvider schemaProvider;
     private final Executor defaultExecutor;
     private final ExecutorService parallelExecutor;
+    private final double profileSampleRate;
     private final MiruBitmapsDebug bitmapsDebug = new MiruBitmapsDebug();
 
     public MiruService(MiruHost localhost,
@@ -73,7 +77,8 @@ public class MiruService implements Miru {
         MiruSolver solver,
         MiruSchemaProvider schemaProvider,
         Executor defaultExecutor,
-        ExecutorService parallelExecutor) {
+        ExecutorService parallelExecutor,
+        double profileSampleRate) {
 
         this.localhost = localhost;
         this.partitionDirector = partitionDirector;
@@ -82,6 +87,7 @@ public class MiruService implements Miru {
         this.schemaProvider = schemaProvider;
         this.defaultExecutor = defaultExecutor;
         this.parallelExecutor = parallelExecutor;
+        this.profileSampleRate = profileSampleRate;
     }
 
     public void writeToIndex(List<MiruPartitionedActivity> partitionedActivities) throws Exception {
@@ -121,6 +127,7 @@ public class MiruService implements Miru {
         List<MiruSolution> solutions = Lists.newArrayList();
         List<Integer> incompletePartitionIds = Lists.newArrayList();
         final MiruSolutionLog solutionLog = new MiruSolutionLog(logLevel);
+        final MiruSolutionProfile profile = solutionLog.getProfile();
         solutionLog.log(MiruSolutionLogLevel.INFO, "Solving: host:{} tenantId:{} question:{}", localhost, tenantId, solvableFactory.getQuestion());
         long totalElapsed;
 
@@ -163,11 +170,14 @@ public class MiruService implements Miru {
                         solutionLog.log(MiruSolutionLogLevel.INFO, "Solved partition:{}. elapse:{} millis",
                             expectedSolution.getPartitionId(), (System.currentTimeMillis() - expectedSolution.getStart()));
                         solutions.add(solved.solution);
+                        profile.merge(solved.profile);
 
                         A currentAnswer = solved.answer;
                         solutionLog.log(MiruSolutionLogLevel.INFO, "Merging solution set from partition:{}", expectedSolution.getPartitionId());
                         long start = System.currentTimeMillis();
+                        long mergeStart = profile.start();
                         A merged = merger.merge(lastAnswer, currentAnswer, solutionLog);
+                        profile.stop(MiruSolutionProfile.Stage.merge, mergeStart);
                         solutionLog.log(MiruSolutionLogLevel.INFO, "Merged. elapse:{} millis", (System.currentTimeMillis() - start));
 
                         lastAnswer = Optional.of(merged);
@@ -189,6 +199,7 @@ public class MiruService implements Miru {
         LOG.inc("askAndMerge", tenantId.toString());
         LOG.inc("askAndMerge>query>" + solvableFactory.getQueryKey());
         LOG.inc("askAndMerge>query>" + solvableFactory.getQueryKey(), tenantId.toString());
+        recordProfile(solvableFactory.getQueryKey(), profile, solutionLog);
 
         return new MiruResponse<>(answer, solutions, totalElapsed, false, incompletePartitionIds, solutionLog.asList());
     }
@@ -216,6 +227,7 @@ public class MiruService implements Miru {
 
         A answer;
         MiruSolutionLog solutionLog = new MiruSolutionLog(logLevel);
+        MiruSolutionProfile profile = solutionLog.getProfile();
         List<MiruSolution> solutions = Lists.newArrayList();
         List<Integer> incompletePartitionIds = Lists.newArrayList();
         long totalElapsed;
@@ -248,7 +260,10 @@ public class MiruService implements Miru {
                     solutionLog.log(MiruSolutionLogLevel.INFO, "Solved partition:{}. elapse:{} millis",
                         partitionId, (System.currentTimeMillis() - start));
                     solutions.add(solved.solution);
+                    profile.merge(solved.profile);
+                    long mergeStart = profile.start();
                     lastAnswer = Optional.of(merger.merge(Optional.absent(), solved.answer, solutionLog));
+                    profile.stop(MiruSolutionProfile.Stage.merge, mergeStart);
                 }
 
                 partitionComparison.analyzeSolutions(solutions, solvableFactory.getRequestName(), solvableFactory.getQueryKey());
@@ -258,10 +273,29 @@ public class MiruService implements Miru {
         } finally {
             totalElapsed = LOG.stopTimer("askAndMergePartition");
         }
+        recordProfile(solvableFactory.getQueryKey(), profile, solutionLog);
 
         return new MiruResponse<>(answer, solutions, totalElapsed, false, incompletePartitionIds, solutionLog.asList());
     }
 
+    private void recordProfile(String queryKey, MiruSolutionProfile profile, MiruSolutionLog solutionLog) {
+        solutionLog.log(MiruSolutionLogLevel.INFO, "Profile {}", profile);
+        if (profileSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < profileSampleRate) {
+            LOG.inc("profile>" + queryKey + ">samples");
+            LOG.inc("profile>" + queryKey + ">partitions", profile.getPartitions());
+            for (MiruSolutionProfile.Stage stage : MiruSolutionProfile.Stage.values()) {
+                long calls = profile.getCalls(stage);
+                if (calls > 0) {
+                    LOG.inc("profile>" + queryKey + ">" + stage.name() + ">micros", TimeUnit.NANOSECONDS.toMicros(profile.getNanos(stage)));
+                    LOG.inc("profile>" + queryKey + ">" + stage.name() + ">calls", calls);
+                }
+            }
+            for (MiruSolutionProfile.Counter counter : MiruSolutionProfile.Counter.values()) {
+                LOG.inc("profile>" + queryKey + ">" + counter.name(), profile.getCount(counter));
+            }
+        }
+    }
+
     @Override
     public <Q, A, P> MiruPartitionResponse<A> askImmediate(
         MiruTenantId tenantId,
@@ -35,6 +35,9 @@ public interface MiruServiceConfig extends Config {
     @LongDefault(5_000)
     long getHeartbeatIntervalInMillis();
 
+    @IntDefault(60)
+    int getHeartbeatFullSnapshotEvery();
+
     @LongDefault(5_000)
     long getEnsurePartitionsIntervalInMillis();
 
@@ -98,6 +101,13 @@ public interface MiruServiceConfig extends Config {
     @IntDefault(10_000)
     int getPartitionAuthzCacheSize();
 
+    /**
+     * Atomized field terms take small writes as sorted id deltas until this many ids are pending, then fold them into their
+     * bitmaps. Zero writes the bitmaps directly.
+     */
+    @IntDefault(0)
+    int getFieldIndexDeltaFoldThreshold();
+
     @BooleanDefault(true)
     boolean getPartitionDeleteChunkStoreOnClose();
 
@@ -110,6 +120,12 @@ public interface MiruServiceConfig extends Config {
     @LongDefault(60_000)
     long getPartitionCyaSipIntervalInMillis();
 
+    @BooleanDefault(false)
+    boolean getPartitionSipOnWALNotification();
+
+    @LongDefault(5_000)
+    long getWALChangePollTimeoutMillis();
+
     @IntDefault(65_536)
     int getFieldIndexNumberOfLocks();
 
@@ -143,6 +159,12 @@ public interface MiruServiceConfig extends Config {
     @IntDefault(8)
     int getParallelSolversExecutorThreads();
 
+    /**
+     * Fraction of queries whose merged solution profile is recorded to metrics.
+     */
+    @DoubleDefault(0.01)
+    double getSolutionProfileSampleRate();
+
     @IntDefault(24)
     int getRebuilderThreads();
 
@@ -161,6 +183,15 @@ public interface MiruServiceConfig extends Config {
     @LongDefault(10_000_000)
     long getMaxRebuildActivityCount();
 
+    @LongDefault(600_000)
+    long getRebuildDemandWindowMillis();
+
+    @StringDefault("")
+    String getRebuildTenantWeights();
+
+    @LongDefault(10_000)
+    long getRebuildEstimatedActivitiesPerSecond();
+
     @ClassDefault(IllegalStateException.class)
     Class<? extends MiruBitmaps<?, ?>> getBitmapsClass();
 
@@ -280,4 +311,7 @@ public interface MiruServiceConfig extends Config {
 
     @StringDefault("")
     String getBackfillVerboseStreamIds();
+
+    @IntDefault(10_000)
+    int getQueryParserCacheMaxSize();
 }
@@ -58,6 +58,7 @@ import com.jivesoftware.os.miru.service.partition.MiruLocalPartitionFactory;
 import com.jivesoftware.os.miru.service.partition.MiruMergeChits;
 import com.jivesoftware.os.miru.service.partition.MiruPartitionAccessor.IndexStrategy;
 import com.jivesoftware.os.miru.service.partition.MiruPartitionHeartbeatHandler;
+import com.jivesoftware.os.miru.service.partition.MiruWALChangeListener;
 import com.jivesoftware.os.miru.service.partition.MiruRemoteQueryablePartitionFactory;
 import com.jivesoftware.os.miru.service.partition.MiruSipTrackerFactory;
 import com.jivesoftware.os.miru.service.partition.MiruTenantTopologyFactory;
@@ -292,6 +293,7 @@ public class MiruServiceInitializer {
             sipIndexMarshaller,
             resourceLocator,
             config.getPartitionAuthzCacheSize(),
+            config.getFieldIndexDeltaFoldThreshold(),
             fieldIndexStripingLocksProvider,
             streamStripingLocksProvider,
             authzStripingLocksProvider,
@@ -307,8 +309,21 @@ public class MiruServiceInitializer {
             config.getFsyncOnCommit(),
             config.getTimeIndexVerboseLogging());
 
-        MiruPartitionHeartbeatHandler heartbeatHandler = new MiruPartitionHeartbeatHandler(clusterClient, atleastOneThumpThump);
-        MiruRebuildDirector rebuildDirector = new MiruRebuildDirector(config.getMaxRebuildActivityCount());
+        MiruPartitionHeartbeatHandler heartbeatHandler = new MiruPartitionHeartbeatHandler(clusterClient,
+            atleastOneThumpThump,
+            config.getHeartbeatFullSnapshotEvery());
+        ExecutorService walChangeExecutor = Executors.newCachedThreadPool(new NamedThreadFactory(threadGroup, "wal-changes"));
+        MiruWALChangeListener walChangeListener = new MiruWALChangeListener(walClient,
+            heartbeatHandler,
+            walChangeExecutor,
+            config.getWALChangePollTimeoutMillis(),
+            config.getHeartbeatIntervalInMillis());
+        MiruRebuildDirector rebuildDirector = new MiruRebuildDirector(config.getMaxRebuildActivityCount(),
+            heartbeatHandler::getQueryTimestamp,
+            MiruRebuildDirector.parseTenantWeights(config.getRebuildTenantWeights()),
+            config.getRebuildDemandWindowMillis(),
+            config.getPartitionRebuildIntervalInMillis(),
+            config.getRebuildEstimatedActivitiesPerSecond());
 
         MiruIndexRepairs indexRepairs = new MiruIndexRepairs() {
             private final AtomicBoolean current = new AtomicBoolean(false);
@@ -382,7 +397,8 @@ public class MiruServiceInitializer {
             solver,
             schemaProvider,
             solverExecutor,
-            parallelExecutor);
+            parallelExecutor,
+            config.getSolutionProfileSampleRate());
 
         return new MiruLifecyle<MiruService>() {
 
@@ -395,6 +411,11 @@ public class MiruServiceInitializer {
             public void start() throws Exception {
                 long heartbeatInterval = config.getHeartbeatIntervalInMillis();
                 serviceScheduledExecutor.scheduleWithFixedDelay(partitionDirector::heartbeat, 0, heartbeatInterval, TimeUnit.MILLISECONDS);
+                if (config.getPartitionSipOnWALNotification() && !walClient.supportsChangeFeed()) {
+                    LOG.warn("Partition sip on WAL notification is enabled but the WAL client has no change feed, sipping on ingress");
+                } else if (config.getPartitionSipOnWALNotification()) {
+                    serviceScheduledExecutor.scheduleWithFixedDelay(walChangeListener::discover, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+                }
                 leapCache.start("contextCache", config.getLabLeapCacheCleanupIntervalMillis(), throwable -> {
                     LOG.error("Failure in LAB leap cache cleaner", throwable);
                     return false;
@@ -404,6 +425,8 @@ public class MiruServiceInitializer {
             @Override
             public void stop() throws Exception {
                 serviceScheduledExecutor.shutdownNow();
+                walChangeListener.stop();
+                walChangeExecutor.shutdownNow();
                 scheduledBootstrapExecutor.shutdownNow();
                 scheduledRebuildExecutor.shutdownNow();
                 scheduledSipMigrateExecutor.shutdownNow();
@@ -1,59 +1,98 @@
 package com.jivesoftware.os.miru.service.index.auth;
 
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.MiruActivityInternExtern;
-import java.util.Map;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Caches composite authz bitmaps keyed on the versions of their authz values. Setting ids for an authz does not change its version,
+ * the ids are instead queued on every cached composite containing it and OR'd in by the next read. Removing ids does change the
+ * version, since a removed id may still be granted by another authz in the composite. Concurrent misses for an expression wait on
+ * a single composition, and the size is accounted as composites come and go rather than walked.
  */
 public class MiruAuthzCache<BM extends IBM, IBM> {
 
     private final MiruBitmaps<BM, IBM> bitmaps;
-    private final Cache<VersionedAuthzExpression, BM> cache;
+    private final Cache<VersionedAuthzExpression, CompositeAuthz> cache;
     private final ConcurrentMap<String, VersionableAuthz> versionables = Maps.newConcurrentMap();
     private final MiruActivityInternExtern interner;
     private final MiruAuthzUtils<BM, IBM> utils;
 
+    private final AtomicLong compositesSizeInBytes = new AtomicLong();
+    private final AtomicLong versionablesSizeInBytes = new AtomicLong();
+
     public MiruAuthzCache(MiruBitmaps<BM, IBM> bitmaps,
-        Cache<VersionedAuthzExpression, BM> cache,
+        CacheBuilder<Object, Object> cacheBuilder,
         MiruActivityInternExtern interner,
         MiruAuthzUtils<BM, IBM> utils) {
         this.bitmaps = bitmaps;
-        this.cache = cache;
+        this.cache = cacheBuilder
+            .removalListener((RemovalListener<VersionedAuthzExpression, CompositeAuthz>) notification -> notification.getValue().removed())
+            .build();
         this.interner = interner;
         this.utils = utils;
     }
 
     public long sizeInBytes() {
-        long sizeInBytes = 0;
-        for (Map.Entry<VersionedAuthzExpression, BM> entry : cache.asMap().entrySet()) {
-            sizeInBytes += entry.getKey().sizeInBytes() + bitmaps.sizeInBytes(entry.getValue());
-        }
-        for (String key : versionables.keySet()) {
-            sizeInBytes += key.length() * 2;
-        }
-        sizeInBytes += versionables.size() * 16; // reference, long
-        return sizeInBytes;
+        return compositesSizeInBytes.get() + versionablesSizeInBytes.get();
     }
 
+    /**
+     * Invalidates every composite containing the authz, for when ids have been removed from it.
+     */
     public void increment(String authz) {
         currentVersion(authz).increment();
     }
 
+    /**
+     * Adds the ids to every cached composite containing the authz, for when ids have been set for it.
+     */
+    public void append(String authz, int... ids) {
+        if (ids.length > 0) {
+            currentVersion(authz).append(ids.clone());
+        }
+    }
+
     public BM getOrCompose(MiruAuthzExpression authzExpression, MiruAuthzUtils.IndexRetriever<IBM> indexRetriever) throws Exception {
-        VersionedAuthzExpression key = new VersionedAuthzExpression(currentVersions(authzExpression));
-        BM got = cache.getIfPresent(key);
-        if (got == null) {
-            got = utils.getCompositeAuthz(authzExpression, indexRetriever);
-            cache.put(key, got);
+        MiruSolutionProfile profile = MiruSolutionProfile.bound();
+        long profileStart = profile != null ? profile.start() : 0;
+        List<VersionableAuthz> expressionVersionables = Lists.newArrayListWithCapacity(authzExpression.values.size());
+        Set<VersionedAuthz> versions = Sets.newHashSet();
+        for (String authz : authzExpression.values) {
+            VersionableAuthz versionableAuthz = currentVersion(interner.internString(authz));
+            expressionVersionables.add(versionableAuthz);
+            versions.add(versionableAuthz.getLatest());
+        }
+        VersionedAuthzExpression key = new VersionedAuthzExpression(versions);
+
+        CompositeAuthz composite;
+        try {
+            composite = cache.get(key, () -> compose(key, expressionVersionables, authzExpression, indexRetriever));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        BM got = composite.current();
+        if (profile != null) {
+            profile.stop(MiruSolutionProfile.Stage.authz, profileStart);
         }
         return got;
     }
@@ -61,14 +100,26 @@ public class MiruAuthzCache<BM extends IBM, IBM> {
     public void clear() {
         cache.invalidateAll();
         versionables.clear();
+        versionablesSizeInBytes.set(0);
     }
 
-    private Set<VersionedAuthz> currentVersions(MiruAuthzExpression authzExpression) {
-        Set<VersionedAuthz> versions = Sets.newHashSet();
-        for (String authz : authzExpression.values) {
-            versions.add(currentVersion(interner.internString(authz)).getLatest());
+    private CompositeAuthz compose(VersionedAuthzExpression key,
+        List<VersionableAuthz> expressionVersionables,
+        MiruAuthzExpression authzExpression,
+        MiruAuthzUtils.IndexRetriever<IBM> indexRetriever) throws Exception {
+
+        // registered before reading the indexes, so ids set while composing are queued rather than missed
+        CompositeAuthz composite = new CompositeAuthz(key, expressionVersionables);
+        for (VersionableAuthz versionableAuthz : expressionVersionables) {
+            versionableAuthz.composites.add(composite);
+        }
+        try {
+            composite.composed(utils.getCompositeAuthz(authzExpression, indexRetriever));
+        } catch (Exception e) {
+            composite.removed();
+            throw e;
         }
-        return versions;
+        return composite;
     }
 
     private VersionableAuthz currentVersion(String authz) {
@@ -78,15 +129,89 @@ public class MiruAuthzCache<BM extends IBM, IBM> {
             VersionableAuthz existing = versionables.putIfAbsent(authz, versionableAuthz);
             if (existing != null) {
                 versionableAuthz = existing;
+            } else {
+                versionablesSizeInBytes.addAndGet(authz.length() * 2 + 16); // chars, reference, long
             }
         }
         return versionableAuthz;
     }
 
-    private static class VersionableAuthz {
+    private class CompositeAuthz {
+
+        private final VersionedAuthzExpression key;
+        private final List<VersionableAuthz> expressionVersionables;
+
+        private BM bitmap;
+        private List<int[]> pending;
+        private long sizeInBytes;
+        private boolean removed;
+
+        private CompositeAuthz(VersionedAuthzExpression key, List<VersionableAuthz> expressionVersionables) {
+            this.key = key;
+            this.expressionVersionables = expressionVersionables;
+        }
+
+        synchronized private void composed(BM bitmap) {
+            this.bitmap = bitmap;
+            if (!removed) {
+                resize(key.sizeInBytes() + bitmaps.sizeInBytes(bitmap));
+            }
+        }
+
+        synchronized private void append(int[] ids) {
+            if (!removed) {
+                if (pending == null) {
+                    pending = Lists.newArrayList();
+                }
+                pending.add(ids);
+            }
+        }
+
+        synchronized private BM current() {
+            if (pending != null) {
+                int count = 0;
+                for (int[] ids : pending) {
+                    count += ids.length;
+                }
+                int[] appended = new int[count];
+                int offset = 0;
+                for (int[] ids : pending) {
+                    System.arraycopy(ids, 0, appended, offset, ids.length);
+                    offset += ids.length;
+                }
+                pending = null;
+
+                // readers may still hold the previous bitmap, so never modify it in place
+                bitmap = bitmaps.or(Arrays.<IBM>asList(bitmap, bitmaps.createWithBits(appended)));
+                if (!removed) {
+                    resize(key.sizeInBytes() + bitmaps.sizeInBytes(bitmap));
+                }
+            }
+            return bitmap;
+        }
+
+        synchronized private void removed() {
+            if (!removed) {
+                removed = true;
+                pending = null;
+                resize(0);
+                for (VersionableAuthz versionableAuthz : expressionVersionables) {
+                    versionableAuthz.composites.remove(this);
+                }
+            }
+        }
+
+        private void resize(long sizeInBytes) {
+            compositesSizeInBytes.addAndGet(sizeInBytes - this.sizeInBytes);
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    private class VersionableAuthz {
 
         private final String authz;
         private final AtomicLong version = new AtomicLong();
+        private final Set<CompositeAuthz> composites = Sets.newConcurrentHashSet();
 
         private VersionedAuthz versionedAuthz;
 
@@ -94,9 +219,17 @@ public class MiruAuthzCache<BM extends IBM, IBM> {
             this.authz = authz;
         }
 
+        private void append(int[] ids) {
+            for (CompositeAuthz composite : composites) {
+                composite.append(ids);
+            }
+        }
+
         synchronized private void increment() {
             version.incrementAndGet();
             versionedAuthz = null;
+            // composites of the previous version are no longer looked up, so stop feeding them
+            composites.clear();
         }
 
         synchronized private VersionedAuthz getLatest() {
@@ -59,6 +59,13 @@ public class MiruFilerFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<
         mergeCardinalities(fieldDefinition, termId, ids, counts, stackBuffer);
     }
 
+    @Override
+    public void multiSet(MiruFieldDefinition fieldDefinition, MiruTermId[] termIds, int[][] ids, long[][] counts, StackBuffer stackBuffer) throws Exception {
+        for (int i = 0; i < termIds.length; i++) {
+            set(fieldDefinition, termIds[i], ids[i], counts != null ? counts[i] : null, stackBuffer);
+        }
+    }
+
     @Override
     public void setIfEmpty(MiruFieldDefinition fieldDefinition, MiruTermId termId, int id, long count, StackBuffer stackBuffer) throws Exception {
         if (getIndex("setIfEmpty", fieldDefinition.fieldId, termId).setIfEmpty(stackBuffer, id)) {
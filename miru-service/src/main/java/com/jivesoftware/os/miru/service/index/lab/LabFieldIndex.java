@@ -23,10 +23,17 @@ import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.index.MultiIndexTx;
 import com.jivesoftware.os.miru.plugin.index.TermIdStream;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import gnu.trove.list.array.TIntArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import org.apache.commons.lang.mutable.MutableLong;
 
 /**
@@ -36,6 +43,9 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final int MULTI_SET_BATCH_SIZE = 1_024;
+    private static final Object TIE_LOCK = new Object();
+
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
@@ -50,6 +60,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
     // We could lock on both field + termId for improved hash/striping, but we favor just termId to reduce object creation
     private final StripingLocksProvider<MiruTermId> stripingLocksProvider;
     private final MiruInterner<MiruTermId> termInterner;
+    private final int deltaFoldThreshold;
 
     public LabFieldIndex(OrderIdProvider idProvider,
         MiruBitmaps<BM, IBM> bitmaps,
@@ -62,7 +73,8 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         byte[] cardinalityPrefix,
         ValueIndex<byte[]>[] cardinalities,
         StripingLocksProvider<MiruTermId> stripingLocksProvider,
-        MiruInterner<MiruTermId> termInterner) throws Exception {
+        MiruInterner<MiruTermId> termInterner,
+        int deltaFoldThreshold) throws Exception {
 
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
@@ -77,6 +89,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         this.cardinalities = cardinalities;
         this.stripingLocksProvider = stripingLocksProvider;
         this.termInterner = termInterner;
+        this.deltaFoldThreshold = atomized ? deltaFoldThreshold : 0;
     }
 
     private ValueIndex<byte[]> getBitmapIndex(int fieldId) {
@@ -97,6 +110,277 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         mergeCardinalities(fieldDefinition, termId, ids, counts);
     }
 
+    @Override
+    public void multiSet(MiruFieldDefinition fieldDefinition, MiruTermId[] termIds, int[][] ids, long[][] counts, StackBuffer stackBuffer) throws Exception {
+        for (int from = 0; from < termIds.length; from += MULTI_SET_BATCH_SIZE) {
+            int to = Math.min(from + MULTI_SET_BATCH_SIZE, termIds.length);
+            MiruTermId[] batchTermIds = Arrays.copyOfRange(termIds, from, to);
+            int[][] batchIds = Arrays.copyOfRange(ids, from, to);
+            long[][] batchCounts = counts != null ? Arrays.copyOfRange(counts, from, to) : null;
+            withTermLocks(batchTermIds, () -> {
+                multiSetLocked(fieldDefinition, batchTermIds, batchIds, batchCounts);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Holds the mutation lock of every given term while the work runs. Locks are taken in identity hash order so that concurrent
+     * batches cannot deadlock, and batches whose locks collide on identity hash are serialized by a shared tie lock.
+     */
+    private void withTermLocks(MiruTermId[] termIds, Callable<Void> work) throws Exception {
+        Set<Object> lockSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MiruTermId termId : termIds) {
+            lockSet.add(stripingLocksProvider.lock(termId, 0));
+        }
+        Object[] locks = lockSet.toArray();
+        Arrays.sort(locks, (o1, o2) -> Integer.compare(System.identityHashCode(o1), System.identityHashCode(o2)));
+        boolean ties = false;
+        for (int i = 1; i < locks.length; i++) {
+            if (System.identityHashCode(locks[i - 1]) == System.identityHashCode(locks[i])) {
+                ties = true;
+                break;
+            }
+        }
+        if (ties) {
+            synchronized (TIE_LOCK) {
+                withLocks(locks, 0, work);
+            }
+        } else {
+            withLocks(locks, 0, work);
+        }
+    }
+
+    private static void withLocks(Object[] locks, int index, Callable<Void> work) throws Exception {
+        if (index == locks.length) {
+            work.call();
+        } else {
+            synchronized (locks[index]) {
+                withLocks(locks, index + 1, work);
+            }
+        }
+    }
+
+    private void multiSetLocked(MiruFieldDefinition fieldDefinition, MiruTermId[] termIds, int[][] ids, long[][] counts) throws Exception {
+        int fieldId = fieldDefinition.fieldId;
+        byte[] fieldIdBytes = FilerIO.intBytes(fieldId);
+        ValueIndex<byte[]> bitmapIndex = getBitmapIndex(fieldId);
+        MutableLong bytesRead = new MutableLong();
+
+        byte[][] bitmapKeys = new byte[termIds.length][];
+        for (int i = 0; i < termIds.length; i++) {
+            bitmapKeys[i] = bitmapIndexKey(fieldIdBytes, termIds[i].getBytes());
+        }
+
+        // terms with few pending ids take a delta, the rest fold their deltas into the read-modify-write
+        int[][] setIds = ids;
+        byte[][] deltaValues = new byte[termIds.length][];
+        byte[][][] foldedDeltaKeys = new byte[termIds.length][][];
+        int deltaCount = 0;
+        if (deltaFoldThreshold > 0) {
+            setIds = new int[termIds.length][];
+            for (int i = 0; i < termIds.length; i++) {
+                LabInvertedIndex.Deltas deltas = LabInvertedIndex.readDeltas(bitmapIndex, bitmapKeys[i]);
+                if (deltas.ids.size() + ids[i].length <= deltaFoldThreshold) {
+                    deltaValues[i] = LabInvertedIndex.deltaValue(ids[i]);
+                    setIds[i] = new int[0];
+                    deltaCount++;
+                } else if (!deltas.keys.isEmpty()) {
+                    foldedDeltaKeys[i] = deltas.keys.toArray(new byte[0][]);
+                    TIntArrayList foldIds = new TIntArrayList(deltas.ids.size() + ids[i].length);
+                    foldIds.addAll(deltas.ids);
+                    foldIds.add(ids[i]);
+                    setIds[i] = foldIds.toArray();
+                } else {
+                    setIds[i] = ids[i];
+                }
+            }
+        }
+
+        int[][] keys = new int[termIds.length][];
+        for (int i = 0; i < termIds.length; i++) {
+            keys[i] = LabInvertedIndex.keysFromIds(bitmaps, setIds[i]);
+        }
+
+        // read every touched container in one pass
+        @SuppressWarnings("unchecked")
+        BitmapAndLastId<BM>[] containers = new BitmapAndLastId[termIds.length];
+        for (int i = 0; i < containers.length; i++) {
+            containers[i] = new BitmapAndLastId<>();
+        }
+        ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
+        if (atomized) {
+            int atomCount = 0;
+            for (int[] termKeys : keys) {
+                atomCount += termKeys.length;
+            }
+            int[] atomTerms = new int[atomCount];
+            byte[][] atomKeys = new byte[atomCount][];
+            for (int i = 0, a = 0; i < termIds.length; i++) {
+                for (int key : keys[i]) {
+                    atomTerms[a] = i;
+                    atomKeys[a] = LabInvertedIndex.atomize(bitmapKeys[i], key);
+                    a++;
+                }
+            }
+            int[] atomLabKeys = new int[atomCount];
+            byte[][] atomPayloads = new byte[atomCount][];
+            bitmapIndex.get(
+                keyStream -> {
+                    for (int a = 0; a < atomKeys.length; a++) {
+                        if (!keyStream.key(a, atomKeys[a], 0, atomKeys[a].length)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                (index, key, timestamp, tombstoned, version, payload) -> {
+                    if (payload != null) {
+                        bytesRead.add(payload.length);
+                        atomLabKeys[index] = LabInvertedIndex.deatomize(key.asByteBuffer());
+                        atomPayloads[index] = payload.copy();
+                    }
+                    return true;
+                },
+                true);
+
+            for (int i = 0, a = 0; i < termIds.length; i++) {
+                int fromAtom = a;
+                int toAtom = a + keys[i].length;
+                bitmaps.deserializeAtomized(containers[i],
+                    atomStream -> {
+                        for (int j = fromAtom; j < toAtom; j++) {
+                            if (atomPayloads[j] != null) {
+                                in.setBuffer(ByteBuffer.wrap(atomPayloads[j]));
+                                if (!atomStream.stream(atomLabKeys[j], in)) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    });
+                a = toAtom;
+            }
+        } else {
+            bitmapIndex.get(
+                keyStream -> {
+                    for (int i = 0; i < bitmapKeys.length; i++) {
+                        if (!keyStream.key(i, bitmapKeys[i], 0, bitmapKeys[i].length)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                (index, key, timestamp, tombstoned, version, payload) -> {
+                    if (payload != null) {
+                        bytesRead.add(payload.length);
+                        LabInvertedIndex.deserNonAtomized(bitmaps, trackError, in, payload.asByteBuffer(), containers[index]);
+                    }
+                    return true;
+                },
+                true);
+        }
+
+        // mutate in memory
+        byte[][][] values = new byte[termIds.length][][];
+        long bytesWritten = 0;
+        for (int i = 0; i < termIds.length; i++) {
+            if (deltaValues[i] != null) {
+                bytesWritten += deltaValues[i].length;
+                continue;
+            }
+            BM index = containers[i].isSet() ? containers[i].getBitmap() : bitmaps.create();
+            BM r = bitmaps.set(index, setIds[i]);
+            bitmaps.optimize(r, keys[i]);
+            values[i] = LabInvertedIndex.serialize(bitmaps, atomized, keys[i], r, bitmaps.lastSetBit(r));
+            for (byte[] value : values[i]) {
+                if (value != null) {
+                    bytesWritten += value.length;
+                }
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+        long version = idProvider.nextId();
+        ValueIndex<byte[]> termIndex = getTermIndex(fieldId);
+        if (termIndex != null) {
+            byte[][] termKeys = new byte[termIds.length][];
+            for (int i = 0; i < termIds.length; i++) {
+                termKeys[i] = termIndexKey(fieldIdBytes, termIds[i].getBytes());
+            }
+            boolean[] exists = new boolean[termIds.length];
+            termIndex.get(
+                keyStream -> {
+                    for (int i = 0; i < termKeys.length; i++) {
+                        if (!keyStream.key(i, termKeys[i], 0, termKeys[i].length)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                (index, key, timestamp1, tombstoned, version1, payload) -> {
+                    exists[index] = timestamp1 > 0 && !tombstoned;
+                    return true;
+                },
+                false);
+            termIndex.append(
+                stream -> {
+                    for (int i = 0; i < termKeys.length; i++) {
+                        if (!exists[i] && !stream.stream(-1, termKeys[i], timestamp, false, version, null)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                true,
+                new BolBuffer(),
+                new BolBuffer());
+        }
+
+        // commit every container in one append
+        bitmapIndex.append(
+            stream -> {
+                for (int i = 0; i < termIds.length; i++) {
+                    if (deltaValues[i] != null) {
+                        if (!stream.stream(-1, LabInvertedIndex.deltaKey(bitmapKeys[i], version), timestamp, false, version, deltaValues[i])) {
+                            return false;
+                        }
+                    } else if (atomized) {
+                        for (int j = 0; j < keys[i].length; j++) {
+                            if (!stream.stream(-1, LabInvertedIndex.atomize(bitmapKeys[i], keys[i][j]), timestamp, false, version, values[i][j])) {
+                                return false;
+                            }
+                        }
+                        if (foldedDeltaKeys[i] != null) {
+                            for (byte[] foldedDeltaKey : foldedDeltaKeys[i]) {
+                                if (!stream.stream(-1, foldedDeltaKey, timestamp, true, version, null)) {
+                                    return false;
+                                }
+                            }
+                        }
+                    } else {
+                        if (!stream.stream(-1, bitmapKeys[i], timestamp, false, version, values[i][0])) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            },
+            true,
+            new BolBuffer(),
+            new BolBuffer());
+
+        multiMergeCardinalities(fieldDefinition, fieldIdBytes, termIds, ids, counts);
+
+        LOG.inc("count>multiSet>total");
+        LOG.inc("count>multiSet>terms", termIds.length);
+        LOG.inc("count>multiSet>deltas", deltaCount);
+        LOG.inc("count>multiSet>" + fieldId);
+        LOG.inc("bytes>multiSet>read", bytesRead.longValue());
+        LOG.inc("bytes>multiSet>written", bytesWritten);
+        LOG.inc("bytes>multiSet>" + fieldId, bytesWritten);
+    }
+
     @Override
     public void setIfEmpty(MiruFieldDefinition fieldDefinition, MiruTermId termId, int id, long count, StackBuffer stackBuffer) throws Exception {
         if (getIndex("setIfEmpty", fieldDefinition.fieldId, termId).setIfEmpty(stackBuffer, id)) {
@@ -201,7 +485,9 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
             getBitmapIndex(fieldId),
             termIndexKey(fieldIdBytes, termId.getBytes()),
             getTermIndex(fieldId),
-            stripingLocksProvider.lock(termId, 0));
+            stripingLocksProvider.lock(termId, 0),
+            atomized,
+            deltaFoldThreshold);
     }
 
     @Override
@@ -215,6 +501,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                 if (termIds[i] != null) {
                     byte[] termBytes = termIds[i].getBytes();
                     BitmapAndLastId<BM> bitmapAndLastId = new BitmapAndLastId<>();
+                    TIntArrayList deltaIds = new TIntArrayList(0);
                     bitmaps.deserializeAtomized(
                         bitmapAndLastId,
                         atomStream -> {
@@ -222,6 +509,13 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                             byte[] to = LABUtils.prefixUpperExclusive(from);
                             return bitmapIndex.rangeScan(from, to,
                                 (index1, key, timestamp, tombstoned, version, payload) -> {
+                                    if (LabInvertedIndex.isDeltaKey(key.length, from.length)) {
+                                        if (payload != null && !tombstoned) {
+                                            bytes.add(payload.length);
+                                            LabInvertedIndex.readDeltaIds(payload, deltaIds);
+                                        }
+                                        return true;
+                                    }
                                     if (payload != null) {
                                         bytes.add(payload.length);
                                         int labKey = LabInvertedIndex.deatomize(key.asByteBuffer());
@@ -232,6 +526,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                                 },
                                 true);
                         });
+                    LabInvertedIndex.mergeDeltaIds(bitmaps, bitmapAndLastId, deltaIds);
                     results[i] = bitmapAndLastId.isSet() ? bitmapAndLastId : null;
                 }
             }
@@ -267,6 +562,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         LOG.inc("count>multiGet>" + name + ">total");
         LOG.inc("count>multiGet>" + name + ">" + fieldId);
         LOG.inc("bytes>multiGet>total", bytes.longValue());
+        MiruSolutionProfile.count(MiruSolutionProfile.Counter.bytesDeserialized, bytes.longValue());
         LOG.inc("bytes>multiGet>" + name + ">total", bytes.longValue());
         LOG.inc("bytes>multiGet>" + name + ">" + fieldId, bytes.longValue());
     }
@@ -279,13 +575,23 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         if (atomized) {
             ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
             int[] lastId = new int[1];
+            int[] deltaId = new int[1];
             for (int i = 0; i < termIds.length; i++) {
                 if (termIds[i] != null) {
                     lastId[0] = -1;
+                    deltaId[0] = -1;
                     byte[] from = bitmapIndexKey(fieldIdBytes, termIds[i].getBytes());
                     byte[] to = LABUtils.prefixUpperExclusive(from);
                     bitmapIndex.rangeScan(from, to,
                         (index, key, timestamp, tombstoned, version, payload) -> {
+                            if (LabInvertedIndex.isDeltaKey(key.length, from.length)) {
+                                // delta ids are sorted, so the last one is the greatest
+                                if (payload != null && !tombstoned && payload.length >= 4) {
+                                    bytes.add(payload.length);
+                                    deltaId[0] = Math.max(deltaId[0], payload.getInt(payload.length - 4));
+                                }
+                                return true;
+                            }
                             if (payload != null) {
                                 if (lastId[0] == -1) {
                                     bytes.add(payload.length);
@@ -301,7 +607,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                             return true;
                         },
                         true);
-                    results[i] = lastId[0];
+                    results[i] = Math.max(lastId[0], deltaId[0]);
                 }
             }
         } else {
@@ -348,12 +654,16 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         ValueIndex<byte[]> bitmapIndex = getBitmapIndex(fieldId);
         if (atomized) {
             int[] lastId = new int[1];
+            int[] deltaId = new int[1];
+            TIntArrayList deltaIds = new TIntArrayList(0);
             BitmapAndLastId<BM> container = new BitmapAndLastId<>();
             ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
             for (int i = 0; i < termIds.length; i++) {
                 if (termIds[i] != null) {
                     container.clear();
                     lastId[0] = -1;
+                    deltaId[0] = -1;
+                    deltaIds.resetQuick();
                     byte[] termBytes = termIds[i].getBytes();
                     byte[] from = bitmapIndexKey(fieldIdBytes, termBytes);
                     byte[] to = LABUtils.prefixUpperExclusive(from);
@@ -363,12 +673,20 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                         atomStream -> {
                             return bitmapIndex.rangeScan(from, to,
                                 (index, key, timestamp, tombstoned, version, payload) -> {
+                                    if (LabInvertedIndex.isDeltaKey(key.length, from.length)) {
+                                        if (payload != null && !tombstoned && payload.length >= 4) {
+                                            bytes.add(payload.length);
+                                            LabInvertedIndex.readDeltaIds(payload, deltaIds);
+                                            deltaId[0] = Math.max(deltaId[0], payload.getInt(payload.length - 4));
+                                        }
+                                        return true;
+                                    }
                                     if (payload != null) {
                                         bytes.add(payload.length);
                                         int labKey = LabInvertedIndex.deatomize(key.asByteBuffer());
                                         if (lastId[0] == -1) {
                                             lastId[0] = LabInvertedIndex.deserLastId(bitmaps, atomized, labKey, in, payload.asByteBuffer());
-                                            if (lastId[0] != -1 && lastId[0] < considerIfLastIdGreaterThanN) {
+                                            if (lastId[0] != -1 && Math.max(lastId[0], deltaId[0]) < considerIfLastIdGreaterThanN) {
                                                 return false;
                                             }
                                         }
@@ -379,6 +697,8 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
                                 },
                                 true);
                         });
+                    LabInvertedIndex.mergeDeltaIds(bitmaps, container, deltaIds);
+                    lastId[0] = Math.max(lastId[0], deltaId[0]);
 
                     if (container.isSet() && (considerIfLastIdGreaterThanN < 0 || lastId[0] > considerIfLastIdGreaterThanN)) {
                         indexTx.tx(i, container.getLastId(), container.getBitmap(), null, -1, stackBuffer);
@@ -414,6 +734,7 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         LOG.inc("count>multiTxIndex>" + name + ">total");
         LOG.inc("count>multiTxIndex>" + name + ">" + fieldId);
         LOG.inc("bytes>multiTxIndex>total", bytes.longValue());
+        MiruSolutionProfile.count(MiruSolutionProfile.Counter.bytesDeserialized, bytes.longValue());
         LOG.inc("bytes>multiTxIndex>" + name + ">total", bytes.longValue());
         LOG.inc("bytes>multiTxIndex>" + name + ">" + fieldId, bytes.longValue());
     }
@@ -475,6 +796,83 @@ public class LabFieldIndex<BM extends IBM, IBM> implements MiruFieldIndex<BM, IB
         return getCardinality(fieldDefinition, termId, -1, stackBuffer);
     }
 
+    private void multiMergeCardinalities(MiruFieldDefinition fieldDefinition,
+        byte[] fieldBytes,
+        MiruTermId[] termIds,
+        int[][] ids,
+        long[][] counts) throws Exception {
+
+        if (!fieldDefinition.type.hasFeature(Feature.cardinality) || counts == null) {
+            return;
+        }
+
+        // each term with counts contributes its id keys followed by its global key
+        int[] offsets = new int[termIds.length + 1];
+        for (int i = 0; i < termIds.length; i++) {
+            offsets[i + 1] = offsets[i] + (counts[i] != null ? ids[i].length + 1 : 0);
+        }
+        int keyCount = offsets[termIds.length];
+        if (keyCount == 0) {
+            return;
+        }
+
+        byte[][] cardinalityKeys = new byte[keyCount][];
+        for (int i = 0; i < termIds.length; i++) {
+            if (counts[i] != null) {
+                byte[] termBytes = termIds[i].getBytes();
+                for (int j = 0; j < ids[i].length; j++) {
+                    cardinalityKeys[offsets[i] + j] = cardinalityIndexKey(fieldBytes, ids[i][j], termBytes);
+                }
+                cardinalityKeys[offsets[i + 1] - 1] = cardinalityIndexKey(fieldBytes, -1, termBytes);
+            }
+        }
+
+        long[] existing = new long[keyCount];
+        ValueIndex<byte[]> cardinalityIndex = getCardinalityIndex(fieldDefinition.fieldId);
+        cardinalityIndex.get(
+            keyStream -> {
+                for (int k = 0; k < cardinalityKeys.length; k++) {
+                    if (!keyStream.key(k, cardinalityKeys[k], 0, cardinalityKeys[k].length)) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            (index, key, timestamp, tombstoned, version, payload) -> {
+                if (payload != null && !tombstoned) {
+                    existing[index] = payload.getLong(0);
+                }
+                return true;
+            },
+            true);
+
+        long timestamp = System.currentTimeMillis();
+        long version = idProvider.nextId();
+        cardinalityIndex.append(
+            valueStream -> {
+                for (int i = 0; i < termIds.length; i++) {
+                    if (counts[i] != null) {
+                        long globalCount = existing[offsets[i + 1] - 1];
+                        for (int j = 0; j < ids[i].length; j++) {
+                            int k = offsets[i] + j;
+                            globalCount += counts[i][j] - existing[k];
+                            if (!valueStream.stream(-1, cardinalityKeys[k], timestamp, false, version, UIO.longBytes(counts[i][j]))) {
+                                return false;
+                            }
+                        }
+                        int globalKey = offsets[i + 1] - 1;
+                        if (!valueStream.stream(-1, cardinalityKeys[globalKey], timestamp, false, version, UIO.longBytes(globalCount))) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            },
+            true,
+            new BolBuffer(),
+            new BolBuffer());
+    }
+
     private void mergeCardinalities(MiruFieldDefinition fieldDefinition, MiruTermId termId, int[] ids, long[] counts) throws Exception {
         if (fieldDefinition.type.hasFeature(Feature.cardinality) && counts != null) {
             int fieldId = fieldDefinition.fieldId;
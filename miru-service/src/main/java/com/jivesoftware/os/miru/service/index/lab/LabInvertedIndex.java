@@ -3,6 +3,7 @@ package com.jivesoftware.os.miru.service.index.lab;
 import com.google.common.base.Preconditions;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
 import com.jivesoftware.os.filer.io.ByteBufferBackedFiler;
 import com.jivesoftware.os.filer.io.FilerIO;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
@@ -10,18 +11,23 @@ import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.lab.LABUtils;
 import com.jivesoftware.os.lab.api.ValueIndex;
 import com.jivesoftware.os.lab.io.BolBuffer;
+import com.jivesoftware.os.lab.io.api.UIO;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.IndexTx;
 import com.jivesoftware.os.miru.plugin.index.MiruInvertedIndex;
 import com.jivesoftware.os.miru.plugin.partition.TrackError;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang.mutable.MutableLong;
 
@@ -34,6 +40,10 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
 
     public static final int LAST_ID_LENGTH = 4;
 
+    // delta keys are the bitmap key, a zero marker which sorts before every atom, and the version of the delta
+    private static final byte[] DELTA_MARKER = { 0, 0 };
+    private static final int DELTA_SUFFIX_LENGTH = DELTA_MARKER.length + 8;
+
     private final OrderIdProvider idProvider;
     private final MiruBitmaps<BM, IBM> bitmaps;
     private final TrackError trackError;
@@ -45,6 +55,8 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     private final byte[] termKeyBytes;
     private final ValueIndex<byte[]> termIndex;
     private final Object mutationLock;
+    private final boolean deltaAware;
+    private final int deltaFoldThreshold;
     private volatile int lastId = Integer.MIN_VALUE;
 
     public LabInvertedIndex(OrderIdProvider idProvider,
@@ -58,6 +70,27 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         byte[] termKeyBytes,
         ValueIndex<byte[]> termIndex,
         Object mutationLock) {
+        this(idProvider, bitmaps, trackError, name, fieldId, atomized, bitmapKeyBytes, bitmapIndex, termKeyBytes, termIndex, mutationLock, false, 0);
+    }
+
+    /**
+     * @param deltaAware         whether delta keys are merged into reads, which requires that no other index key extends the bitmap key
+     * @param deltaFoldThreshold calls to set append sorted id deltas until this many ids are pending, after which the deltas are
+     *                           folded into the atoms, or 0 to always write the atoms
+     */
+    public LabInvertedIndex(OrderIdProvider idProvider,
+        MiruBitmaps<BM, IBM> bitmaps,
+        TrackError trackError,
+        String name,
+        int fieldId,
+        boolean atomized,
+        byte[] bitmapKeyBytes,
+        ValueIndex<byte[]> bitmapIndex,
+        byte[] termKeyBytes,
+        ValueIndex<byte[]> termIndex,
+        Object mutationLock,
+        boolean deltaAware,
+        int deltaFoldThreshold) {
 
         this.idProvider = idProvider;
         this.bitmaps = bitmaps;
@@ -70,6 +103,8 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         this.termKeyBytes = termKeyBytes;
         this.termIndex = termIndex;
         this.mutationLock = mutationLock;
+        this.deltaAware = atomized && deltaAware;
+        this.deltaFoldThreshold = this.deltaAware ? deltaFoldThreshold : 0;
     }
 
     @Override
@@ -80,6 +115,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         LOG.inc("count>getIndex>" + name + ">total");
         LOG.inc("count>getIndex>" + name + ">" + fieldId);
         LOG.inc("bytes>getIndex>total", bytes.longValue());
+        MiruSolutionProfile.count(MiruSolutionProfile.Counter.bytesDeserialized, bytes.longValue());
         LOG.inc("bytes>getIndex>" + name + ">total", bytes.longValue());
         LOG.inc("bytes>getIndex>" + name + ">" + fieldId, bytes.longValue());
     }
@@ -87,6 +123,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     private void getIndexInternal(int[] keys, BitmapAndLastId<BM> container, MutableLong bytes) throws Exception {
         container.clear();
         ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
+        TIntArrayList deltaIds = new TIntArrayList(0);
         if (atomized) {
             bitmaps.deserializeAtomized(
                 container,
@@ -123,6 +160,13 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                         int[] atoms = { 0 };
                         bitmapIndex.rangeScan(from, to,
                             (index, key, timestamp, tombstoned, version, payload) -> {
+                                if (deltaAware && isDeltaKey(key.length, bitmapKeyBytes.length)) {
+                                    if (payload != null && !tombstoned) {
+                                        bytes.add(payload.length);
+                                        readDeltaIds(payload, deltaIds);
+                                    }
+                                    return true;
+                                }
                                 if (payload != null) {
                                     int labKey = deatomize(key.asByteBuffer());
                                     bytes.add(payload.length);
@@ -138,6 +182,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                     }
                     return true;
                 });
+            mergeDeltaIds(bitmaps, container, deltaIds);
         } else {
             bitmapIndex.get((keyStream) -> keyStream.key(0, bitmapKeyBytes, 0, bitmapKeyBytes.length),
                 (index, key, timestamp, tombstoned, version, payload) -> {
@@ -167,6 +212,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         if (atomized) {
             BitmapAndLastId<BM> container = new BitmapAndLastId<>();
             ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
+            TIntArrayList deltaIds = new TIntArrayList(0);
             bitmaps.deserializeAtomized(
                 container,
                 atomStream -> {
@@ -175,6 +221,13 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                     int[] atoms = { 0 };
                     bitmapIndex.rangeScan(from, to,
                         (index, key, timestamp, tombstoned, version, payload) -> {
+                            if (deltaAware && isDeltaKey(key.length, bitmapKeyBytes.length)) {
+                                if (payload != null && !tombstoned) {
+                                    bytes.add(payload.length);
+                                    readDeltaIds(payload, deltaIds);
+                                }
+                                return true;
+                            }
                             if (payload != null) {
                                 int labKey = deatomize(key.asByteBuffer());
                                 bytes.add(payload.length);
@@ -189,6 +242,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                     LOG.inc("txIndex>atomized>getRange>atoms", atoms[0]);
                     return true;
                 });
+            mergeDeltaIds(bitmaps, container, deltaIds);
             result = tx.tx(container.getBitmap(), null, -1, stackBuffer);
         } else {
             @SuppressWarnings("unchecked")
@@ -222,6 +276,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         LOG.inc("count>txIndex>" + name + ">total");
         LOG.inc("count>txIndex>" + name + ">" + fieldId);
         LOG.inc("bytes>txIndex>total", bytes.longValue());
+        MiruSolutionProfile.count(MiruSolutionProfile.Counter.bytesDeserialized, bytes.longValue());
         LOG.inc("bytes>txIndex>" + name + ">total", bytes.longValue());
         LOG.inc("bytes>txIndex>" + name + ">" + fieldId, bytes.longValue());
         return result;
@@ -291,6 +346,68 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         return 0xFFFF - v;
     }
 
+    static boolean isDeltaKey(int keyLength, int bitmapKeyLength) {
+        return keyLength == bitmapKeyLength + DELTA_SUFFIX_LENGTH;
+    }
+
+    static byte[] deltaKey(byte[] bitmapKeyBytes, long version) {
+        return Bytes.concat(bitmapKeyBytes, DELTA_MARKER, UIO.longBytes(version));
+    }
+
+    static byte[] deltaValue(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        byte[] value = new byte[sorted.length * 4];
+        for (int i = 0; i < sorted.length; i++) {
+            UIO.intBytes(sorted[i], value, i * 4);
+        }
+        return value;
+    }
+
+    static void readDeltaIds(BolBuffer payload, TIntArrayList into) {
+        for (int offset = 0; offset + 4 <= payload.length; offset += 4) {
+            into.add(payload.getInt(offset));
+        }
+    }
+
+    /**
+     * Reads the pending deltas for the given bitmap key. Keys are copied so the deltas can be tombstoned when they are folded.
+     */
+    static Deltas readDeltas(ValueIndex<byte[]> bitmapIndex, byte[] bitmapKeyBytes) throws Exception {
+        Deltas deltas = new Deltas();
+        byte[] from = Bytes.concat(bitmapKeyBytes, DELTA_MARKER);
+        byte[] to = LABUtils.prefixUpperExclusive(from);
+        bitmapIndex.rangeScan(from, to,
+            (index, key, timestamp, tombstoned, version, payload) -> {
+                if (isDeltaKey(key.length, bitmapKeyBytes.length) && payload != null && !tombstoned) {
+                    deltas.keys.add(key.copy());
+                    readDeltaIds(payload, deltas.ids);
+                }
+                return true;
+            },
+            true);
+        return deltas;
+    }
+
+    static <BM extends IBM, IBM> void mergeDeltaIds(MiruBitmaps<BM, IBM> bitmaps, BitmapAndLastId<BM> container, TIntArrayList deltaIds) {
+        if (!deltaIds.isEmpty()) {
+            int[] ids = deltaIds.toArray();
+            Arrays.sort(ids);
+            int maxId = ids[ids.length - 1];
+            if (container.isSet()) {
+                container.set(bitmaps.set(container.getBitmap(), ids), Math.max(container.getLastId(), maxId));
+            } else {
+                container.set(bitmaps.createWithBits(ids), maxId);
+            }
+        }
+    }
+
+    static class Deltas {
+
+        final List<byte[]> keys = new ArrayList<>();
+        final TIntArrayList ids = new TIntArrayList();
+    }
+
     private BM getOrCreateIndex(int[] keys) throws Exception {
         MutableLong bytes = new MutableLong();
         BitmapAndLastId<BM> index = new BitmapAndLastId<>();
@@ -310,6 +427,10 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     }
 
     private byte[][] keyBytes(int[] keys, IBM index) throws Exception {
+        return serialize(bitmaps, atomized, keys, index, lastId);
+    }
+
+    static <BM extends IBM, IBM> byte[][] serialize(MiruBitmaps<BM, IBM> bitmaps, boolean atomized, int[] keys, IBM index, int lastId) throws Exception {
         byte[][] bytes;
         if (atomized) {
             long[] sizes = bitmaps.serializeAtomizedSizeInBytes(index, keys);
@@ -333,31 +454,16 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     }
 
     private void setIndex(int[] keys, IBM index) throws Exception {
+        setIndex(keys, index, Collections.emptyList());
+    }
+
+    private void setIndex(int[] keys, IBM index, List<byte[]> foldedDeltaKeys) throws Exception {
         bitmaps.optimize(index, keys);
         byte[][] bytes = keyBytes(keys, index);
 
         long timestamp = System.currentTimeMillis();
         long version = idProvider.nextId();
-        if (termIndex != null) {
-            boolean[] exists = { false };
-            termIndex.get(keyStream -> keyStream.key(-1, termKeyBytes, 0, termKeyBytes.length),
-                (index1, key, timestamp1, tombstoned, version1, payload) -> {
-                    exists[0] = timestamp1 > 0 && !tombstoned;
-                    return true;
-                }, false);
-            if (!exists[0]) {
-                termIndex.append(
-                    stream -> {
-                        if (!stream.stream(-1, termKeyBytes, timestamp, false, version, null)) {
-                            return false;
-                        }
-                        return true;
-                    },
-                    true,
-                    new BolBuffer(),
-                    new BolBuffer());
-            }
-        }
+        registerTerm(timestamp, version);
 
         bitmapIndex.append(
             stream -> {
@@ -372,6 +478,11 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                         return false;
                     }
                 }
+                for (byte[] foldedDeltaKey : foldedDeltaKeys) {
+                    if (!stream.stream(-1, foldedDeltaKey, timestamp, true, version, null)) {
+                        return false;
+                    }
+                }
                 return true;
             },
             true,
@@ -398,7 +509,34 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         }
     }
 
+    private void registerTerm(long timestamp, long version) throws Exception {
+        if (termIndex != null) {
+            boolean[] exists = { false };
+            termIndex.get(keyStream -> keyStream.key(-1, termKeyBytes, 0, termKeyBytes.length),
+                (index1, key, timestamp1, tombstoned, version1, payload) -> {
+                    exists[0] = timestamp1 > 0 && !tombstoned;
+                    return true;
+                }, false);
+            if (!exists[0]) {
+                termIndex.append(
+                    stream -> {
+                        if (!stream.stream(-1, termKeyBytes, timestamp, false, version, null)) {
+                            return false;
+                        }
+                        return true;
+                    },
+                    true,
+                    new BolBuffer(),
+                    new BolBuffer());
+            }
+        }
+    }
+
     private int[] keysFromIds(int... ids) {
+        return keysFromIds(bitmaps, ids);
+    }
+
+    static <BM extends IBM, IBM> int[] keysFromIds(MiruBitmaps<BM, IBM> bitmaps, int... ids) {
         TIntSet keySet = new TIntHashSet();
         for (int id : ids) {
             keySet.add(bitmaps.key(id));
@@ -411,6 +549,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     @Override
     public void remove(StackBuffer stackBuffer, int... ids) throws Exception {
         synchronized (mutationLock) {
+            foldDeltas();
             int[] keys = keysFromIds(ids);
             BM index = getOrCreateIndex(keys);
             BM r = bitmaps.remove(index, ids);
@@ -425,6 +564,20 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
             return;
         }
         synchronized (mutationLock) {
+            if (deltaFoldThreshold > 0) {
+                Deltas deltas = readDeltas(bitmapIndex, bitmapKeyBytes);
+                if (deltas.ids.size() + ids.length <= deltaFoldThreshold) {
+                    appendDelta(ids);
+                    return;
+                }
+                if (!deltas.keys.isEmpty()) {
+                    TIntArrayList foldIds = new TIntArrayList(deltas.ids.size() + ids.length);
+                    foldIds.addAll(deltas.ids);
+                    foldIds.add(ids);
+                    fold(foldIds.toArray(), deltas.keys);
+                    return;
+                }
+            }
             int[] keys = keysFromIds(ids);
             BM index = getOrCreateIndex(keys);
             BM r = bitmaps.set(index, ids);
@@ -433,6 +586,56 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
         }
     }
 
+    private void appendDelta(int[] ids) throws Exception {
+        long timestamp = System.currentTimeMillis();
+        long version = idProvider.nextId();
+        registerTerm(timestamp, version);
+
+        byte[] deltaKey = deltaKey(bitmapKeyBytes, version);
+        byte[] deltaValue = deltaValue(ids);
+        bitmapIndex.append(
+            stream -> stream.stream(-1, deltaKey, timestamp, false, version, deltaValue),
+            true,
+            new BolBuffer(),
+            new BolBuffer());
+
+        if (lastId != Integer.MIN_VALUE) {
+            int maxId = lastId;
+            for (int id : ids) {
+                maxId = Math.max(maxId, id);
+            }
+            lastId = maxId;
+        }
+
+        LOG.inc("count>delta>total");
+        LOG.inc("count>delta>" + name + ">total");
+        LOG.inc("bytes>delta>total", deltaValue.length);
+        LOG.inc("bytes>delta>" + name + ">total", deltaValue.length);
+    }
+
+    private void fold(int[] ids, List<byte[]> deltaKeys) throws Exception {
+        int[] keys = keysFromIds(ids);
+        BM index = getOrCreateIndex(keys);
+        BM r = bitmaps.set(index, ids);
+
+        setIndex(keys, r, deltaKeys);
+        LOG.inc("count>fold>total");
+        LOG.inc("count>fold>" + name + ">total");
+        LOG.inc("count>fold>deltas", deltaKeys.size());
+    }
+
+    /**
+     * Deltas only ever add ids, so they are folded into the atoms before any mutation which might clear or replace them.
+     */
+    private void foldDeltas() throws Exception {
+        if (deltaAware) {
+            Deltas deltas = readDeltas(bitmapIndex, bitmapKeyBytes);
+            if (!deltas.keys.isEmpty()) {
+                fold(deltas.ids.toArray(), deltas.keys);
+            }
+        }
+    }
+
     @Override
     public boolean setIfEmpty(StackBuffer stackBuffer, int id) throws Exception {
         synchronized (mutationLock) {
@@ -455,8 +658,16 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                     ReusableByteBufferDataInput in = new ReusableByteBufferDataInput();
                     byte[] from = bitmapKeyBytes;
                     byte[] to = LABUtils.prefixUpperExclusive(bitmapKeyBytes);
+                    int[] deltaId = { -1 };
                     bitmapIndex.rangeScan(from, to,
                         (index, key, timestamp, tombstoned, version, payload) -> {
+                            if (deltaAware && isDeltaKey(key.length, bitmapKeyBytes.length)) {
+                                // delta ids are sorted, so the last one is the greatest
+                                if (payload != null && !tombstoned && payload.length >= 4) {
+                                    deltaId[0] = Math.max(deltaId[0], payload.getInt(payload.length - 4));
+                                }
+                                return true;
+                            }
                             if (payload != null) {
                                 if (id[0] == -1) {
                                     bytes.add(payload.length);
@@ -472,6 +683,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
                             return true;
                         },
                         true);
+                    id[0] = Math.max(id[0], deltaId[0]);
                 } else {
                     bitmapIndex.get(
                         (keyStream) -> keyStream.key(0, bitmapKeyBytes, 0, bitmapKeyBytes.length),
@@ -500,6 +712,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     @Override
     public void andNot(IBM mask, StackBuffer stackBuffer) throws Exception {
         synchronized (mutationLock) {
+            foldDeltas();
             int[] keys = bitmaps.keys(mask);
             BM index = getOrCreateIndex(keys);
             BM r = bitmaps.andNot(index, mask);
@@ -511,6 +724,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     @Override
     public void or(IBM mask, StackBuffer stackBuffer) throws Exception {
         synchronized (mutationLock) {
+            foldDeltas();
             int[] keys = bitmaps.keys(mask);
             BM index = getOrCreateIndex(keys);
             BM r = bitmaps.or(Arrays.asList(index, mask));
@@ -522,6 +736,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     @Override
     public void andNotToSourceSize(List<IBM> masks, StackBuffer stackBuffer) throws Exception {
         synchronized (mutationLock) {
+            foldDeltas();
             TIntSet keySet = new TIntHashSet();
             for (IBM mask : masks) {
                 keySet.addAll(bitmaps.keys(mask));
@@ -538,6 +753,7 @@ public class LabInvertedIndex<BM extends IBM, IBM> implements MiruInvertedIndex<
     @Override
     public void orToSourceSize(IBM mask, StackBuffer stackBuffer) throws Exception {
         synchronized (mutationLock) {
+            foldDeltas();
             int[] keys = bitmaps.keys(mask);
             BM index = getOrCreateIndex(keys);
             BM or = bitmaps.orToSourceSize(index, mask);
@@ -2,7 +2,6 @@ package com.jivesoftware.os.miru.service.partition;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
@@ -13,11 +12,10 @@ import com.jivesoftware.os.miru.plugin.solution.MiruSolution;
 import com.jivesoftware.os.miru.service.partition.cluster.PartitionAndHost;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
@@ -28,7 +26,7 @@ public class MiruHostedPartitionComparison {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
-    private final ConcurrentMap<TenantPartitionAndQuery, ConcurrentSkipListMap<PartitionAndHost, Long>> coordRecency = Maps.newConcurrentMap();
+    private final ConcurrentMap<TenantAndQuery, ConcurrentSkipListMap<PartitionAndHost, Long>> coordRecency = Maps.newConcurrentMap();
     private final ConcurrentMap<TenantPartitionAndQuery, RunningPercentile> queryPercentile = Maps.newConcurrentMap();
 
     private final int windowSize;
@@ -73,10 +71,7 @@ public class MiruHostedPartitionComparison {
         String queryKey,
         Collection<MiruRoutablePartition> partitions) {
 
-        ConcurrentSkipListMap<PartitionAndHost, Long> skipList = coordRecency.get(new TenantPartitionAndQuery(tenantId, partitionId, requestName, queryKey));
-        Iterator<Map.Entry<PartitionAndHost, Long>> skipIter = skipList != null
-            ? skipList.entrySet().iterator() : Iterators.emptyIterator();
-        Map.Entry<PartitionAndHost, Long> skipEntry = skipIter.hasNext() ? skipIter.next() : null;
+        ConcurrentSkipListMap<PartitionAndHost, Long> skipList = coordRecency.get(new TenantAndQuery(tenantId, requestName, queryKey));
 
         List<PartitionAndTime> partitionAndTimes = Lists.newArrayListWithCapacity(partitions.size());
 
@@ -87,13 +82,12 @@ public class MiruHostedPartitionComparison {
             }
 
             allDestroyed = false;
-            PartitionAndHost partitionAndHost = new PartitionAndHost(partition.partitionId, partition.host);
-            while (skipEntry != null && skipEntry.getKey().compareTo(partitionAndHost) < 0) {
-                skipEntry = skipIter.hasNext() ? skipIter.next() : null;
-            }
             long time = Long.MIN_VALUE;
-            if (skipEntry != null && skipEntry.getKey().compareTo(partitionAndHost) == 0) {
-                time = skipEntry.getValue();
+            if (skipList != null) {
+                Long recency = skipList.get(new PartitionAndHost(partition.partitionId, partition.host));
+                if (recency != null) {
+                    time = recency;
+                }
             }
             partitionAndTimes.add(new PartitionAndTime(partition, time));
         }
@@ -106,6 +100,63 @@ public class MiruHostedPartitionComparison {
         }
     }
 
+    /**
+     * Returns the recency of every replica that has answered the given query for the tenant, or null if none has.
+     */
+    public ConcurrentSkipListMap<PartitionAndHost, Long> getRecency(MiruTenantId tenantId, String requestName, String queryKey) {
+        return coordRecency.get(new TenantAndQuery(tenantId, requestName, queryKey));
+    }
+
+    /**
+     * Orders a replica set the same way as {@link #orderPartitions}, given replicas of a single partition already in host order
+     * along with their recency. The replicas themselves are returned when no adjustment is needed, so the common case is free.
+     *
+     * @param replicas the replicas in host order
+     * @param times    the recency of each replica from {@link #getRecency}, or Long.MIN_VALUE if it has none, may be null if none do
+     * @param now      the current time, for checking destruction
+     * @return the ordered replicas, or null if all are destroyed
+     */
+    public List<MiruRoutablePartition> orderReplicas(List<MiruRoutablePartition> replicas, long[] times, long now) {
+        int size = replicas.size();
+        MiruRoutablePartition[] ordered = null;
+        long[] orderedTimes = null;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            MiruRoutablePartition partition = replicas.get(i);
+            boolean destroyed = partition.destroyAfterTimestamp > 0 && now > partition.destroyAfterTimestamp;
+            long time = (times == null) ? Long.MIN_VALUE : times[i];
+            if (ordered == null && (destroyed || time != Long.MIN_VALUE)) {
+                ordered = new MiruRoutablePartition[size];
+                orderedTimes = new long[size];
+                for (int j = 0; j < i; j++) {
+                    ordered[j] = replicas.get(j);
+                    orderedTimes[j] = Long.MIN_VALUE;
+                }
+                count = i;
+            }
+            if (ordered != null && !destroyed) {
+                // insertion sort by descending time, ties stay in host order
+                int j = count;
+                while (j > 0 && orderedTimes[j - 1] < time) {
+                    ordered[j] = ordered[j - 1];
+                    orderedTimes[j] = orderedTimes[j - 1];
+                    j--;
+                }
+                ordered[j] = partition;
+                orderedTimes[j] = time;
+                count++;
+            }
+        }
+
+        if (ordered == null) {
+            return size == 0 ? null : replicas;
+        } else if (count == 0) {
+            return null;
+        } else {
+            return Arrays.asList(ordered).subList(0, count);
+        }
+    }
+
     /**
      * Analyzes the latest winning solutions for a replica set.
      *
@@ -115,17 +166,18 @@ public class MiruHostedPartitionComparison {
     public void analyzeSolutions(List<MiruSolution> solutions, String requestName, String queryKey) {
         for (MiruSolution solution : solutions) {
             MiruPartitionCoord coord = solution.usedPartition;
-            TenantPartitionAndQuery key = new TenantPartitionAndQuery(coord.tenantId, coord.partitionId, requestName, queryKey);
-            ConcurrentSkipListMap<PartitionAndHost, Long> skipList = coordRecency.get(key);
+            TenantAndQuery recencyKey = new TenantAndQuery(coord.tenantId, requestName, queryKey);
+            ConcurrentSkipListMap<PartitionAndHost, Long> skipList = coordRecency.get(recencyKey);
             if (skipList == null) {
                 skipList = new ConcurrentSkipListMap<>();
-                ConcurrentSkipListMap<PartitionAndHost, Long> existing = coordRecency.putIfAbsent(key, skipList);
+                ConcurrentSkipListMap<PartitionAndHost, Long> existing = coordRecency.putIfAbsent(recencyKey, skipList);
                 if (existing != null) {
                     skipList = existing;
                 }
             }
             skipList.put(new PartitionAndHost(coord.partitionId, coord.host), timestamper.get());
 
+            TenantPartitionAndQuery key = new TenantPartitionAndQuery(coord.tenantId, coord.partitionId, requestName, queryKey);
             RunningPercentile runningPercentile = queryPercentile.get(key);
             if (runningPercentile == null) {
                 queryPercentile.putIfAbsent(key, new RunningPercentile(windowSize, percentile));
@@ -197,6 +249,47 @@ public class MiruHostedPartitionComparison {
         }
     }
 
+    private static class TenantAndQuery {
+
+        private final MiruTenantId tenantId;
+        private final String requestName;
+        private final String queryKey;
+
+        private TenantAndQuery(MiruTenantId tenantId, String requestName, String queryKey) {
+            this.tenantId = tenantId;
+            this.requestName = requestName;
+            this.queryKey = queryKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            TenantAndQuery that = (TenantAndQuery) o;
+
+            if (tenantId != null ? !tenantId.equals(that.tenantId) : that.tenantId != null) {
+                return false;
+            }
+            if (requestName != null ? !requestName.equals(that.requestName) : that.requestName != null) {
+                return false;
+            }
+            return !(queryKey != null ? !queryKey.equals(that.queryKey) : that.queryKey != null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tenantId != null ? tenantId.hashCode() : 0;
+            result = 31 * result + (requestName != null ? requestName.hashCode() : 0);
+            result = 31 * result + (queryKey != null ? queryKey.hashCode() : 0);
+            return result;
+        }
+    }
+
     public interface Timestamper {
         long get();
     }
@@ -40,6 +40,7 @@ import com.jivesoftware.os.miru.service.stream.MiruIndexer;
 import com.jivesoftware.os.miru.service.stream.MiruRebuildDirector;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.routing.bird.health.api.HealthCounter;
 import com.jivesoftware.os.routing.bird.health.api.HealthFactory;
 import com.jivesoftware.os.routing.bird.health.api.MinMaxHealthCheckConfig;
@@ -67,6 +68,8 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
     implements MiruHostedPartition, MiruQueryablePartition<BM, IBM> {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final AtomicLong SIP_RESULT_CALLS = new AtomicLong();
+    private static final AtomicLong SIP_RESULT_EMPTY = new AtomicLong();
 
     private final MiruStats miruStats;
     private final MiruBitmaps<BM, IBM> bitmaps;
@@ -303,8 +306,10 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     clearFutures();
                     futures.add(scheduledRebuildExecutor.scheduleWithFixedDelay(new RebuildIndexRunnable(),
                         0, timings.partitionRebuildIntervalInMillis, TimeUnit.MILLISECONDS));
-                    futures.add(scheduledSipExecutor.scheduleWithFixedDelay(new SipMigrateIndexRunnable(),
+                    SipMigrateIndexRunnable sipMigrateIndexRunnable = new SipMigrateIndexRunnable();
+                    futures.add(scheduledSipExecutor.scheduleWithFixedDelay(sipMigrateIndexRunnable,
                         0, timings.partitionSipMigrateIntervalInMillis, TimeUnit.MILLISECONDS));
+                    heartbeatHandler.registerSipWaker(coord, () -> scheduledSipExecutor.submit(sipMigrateIndexRunnable));
                 }
                 if (state == MiruPartitionState.online) {
                     if (contextFactory.checkClosed(coord)) {
@@ -414,6 +419,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
         LOG.info("Removing partition by request: {}", coord);
         removed.set(true);
         close();
+        heartbeatHandler.removed(coord);
     }
 
     private boolean close() throws Exception {
@@ -1014,9 +1020,28 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
 
         private final AtomicBoolean checkedObsolete = new AtomicBoolean(false);
         private final AtomicLong updatedLastTimestamp = new AtomicLong(-1);
-
+        private final AtomicLong sippedWALChangedCount = new AtomicLong(-1);
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicBoolean rerun = new AtomicBoolean();
+
+        /**
+         * Runs on a fixed delay and whenever the WAL reports a change, never concurrently. A wake which arrives while running
+         * causes one more pass so the change is not left for the next scheduled run.
+         */
         @Override
         public void run() {
+            rerun.set(true);
+            while (rerun.get() && running.compareAndSet(false, true)) {
+                try {
+                    rerun.set(false);
+                    sipMigrate();
+                } finally {
+                    running.set(false);
+                }
+            }
+        }
+
+        private void sipMigrate() {
             StackBuffer stackBuffer = new StackBuffer();
             try {
                 MiruPartitionAccessor<BM, IBM, C, S> accessor = accessorRef.get();
@@ -1055,7 +1080,11 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                             long sipIngressTimestamp = accessor.getSipIngressTimestamp();
                             long cyaSipAfterTimestamp = accessor.getSipClockTimestamp() + timings.partitionCyaSipIntervalInMillis;
                             long sipClockTimestamp = System.currentTimeMillis();
-                            boolean sipIngress = sipIngressTimestamp == -1 || partitionActive.lastIngressTimestamp != sipIngressTimestamp;
+                            boolean walNotifying = heartbeatHandler.isWALNotifying(walClient.getChangeFeedHosts(coord.tenantId, coord.partitionId));
+                            long walChangedCount = heartbeatHandler.getWALChangedCount(coord);
+                            boolean sipIngress = walNotifying
+                                ? walChangedCount > sippedWALChangedCount.get()
+                                : sipIngressTimestamp == -1 || partitionActive.lastIngressTimestamp != sipIngressTimestamp;
                             boolean sipCya = sipClockTimestamp > cyaSipAfterTimestamp;
                             if (sipIngress || sipCya) {
                                 if (!partitionAllowNonLatestSchemaInteractions && accessor.persistentContext.isPresent()) {
@@ -1068,13 +1097,16 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
 
                                 boolean recovery = !accessor.getSipEndOfWAL();
                                 SipResult sipResult = sip(accessor, recovery, stackBuffer);
+                                String trigger = sipIngress ? (walNotifying ? "notified" : "ingress") : "cya";
                                 if (sipIngress) {
-                                    LOG.inc("sip>trigger>ingress");
+                                    LOG.inc("sip>trigger>" + trigger);
                                 }
                                 if (sipCya) {
                                     LOG.inc("sip>trigger>cya");
                                 }
-                                accessor.setSipIngressTimestamp(sipIngressTimestamp);
+                                recordSipResult(trigger, sipResult.sippedCount);
+                                sippedWALChangedCount.set(walChangedCount);
+                                accessor.setSipIngressTimestamp(partitionActive.lastIngressTimestamp);
                                 accessor.setSipClockTimestamp(sipClockTimestamp);
 
                                 if (sipResult.sippedEndOfWAL) {
@@ -1183,6 +1215,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
 
             boolean sippedEndOfWAL = false;
             boolean sippedEndOfStream = false;
+            int sippedCount = 0;
 
             while (accessorRef.get() == accessor && sippedActivity != null) {
                 if (Thread.interrupted()) {
@@ -1207,6 +1240,7 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     sipTracker.track(e.activity);
                 }
 
+                sippedCount += partitionedActivities.size();
                 S lastCursor = sipCursor;
                 sipCursor = deliver(partitionedActivities, accessor, sipTracker, sipCursor, sippedActivity.cursor, recovery, stackBuffer);
                 partitionedActivities.clear();
@@ -1234,17 +1268,19 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                 sippedActivity = walClient.sipActivity(coord.tenantId, coord.partitionId, sipCursor, sipTracker.getSeenThisSip(), partitionSipBatchSize);
             }
 
-            return new SipResult(sippedEndOfWAL, sippedEndOfStream);
+            return new SipResult(sippedEndOfWAL, sippedEndOfStream, sippedCount);
         }
 
         private class SipResult {
 
             private final boolean sippedEndOfWAL;
             private final boolean sippedEndOfStream;
+            private final int sippedCount;
 
-            public SipResult(boolean sippedEndOfWAL, boolean sippedEndOfStream) {
+            public SipResult(boolean sippedEndOfWAL, boolean sippedEndOfStream, int sippedCount) {
                 this.sippedEndOfWAL = sippedEndOfWAL;
                 this.sippedEndOfStream = sippedEndOfStream;
+                this.sippedCount = sippedCount;
             }
         }
 
@@ -1275,6 +1311,9 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
                     heartbeatHandler.updateLastTimestamp(coord, lastTimestamp);
                     updatedLastTimestamp.set(lastTimestamp);
                 }
+                if (count > 0 && !recovery) {
+                    recordWriteToQueryable(partitionedActivities);
+                }
             }
 
             S suggestion = sipTracker.suggest(sipCursor, nextSipCursor);
@@ -1303,6 +1342,35 @@ public class MiruLocalHostedPartition<BM extends IBM, IBM, C extends MiruCursor<
 
     }
 
+    private static void recordSipResult(String trigger, int sippedCount) {
+        long calls = SIP_RESULT_CALLS.incrementAndGet();
+        long empty = sippedCount == 0 ? SIP_RESULT_EMPTY.incrementAndGet() : SIP_RESULT_EMPTY.get();
+        LOG.inc("sip>result>calls");
+        LOG.inc("sip>result>calls>" + trigger);
+        if (sippedCount == 0) {
+            LOG.inc("sip>result>empty");
+            LOG.inc("sip>result>empty>" + trigger);
+        }
+        LOG.set(ValueType.VALUE, "sip>result>emptyPercent", empty * 100 / calls);
+    }
+
+    /**
+     * Latency from the writer's clock to the sipped activities being indexed and visible to queries.
+     */
+    private static void recordWriteToQueryable(List<MiruPartitionedActivity> partitionedActivities) {
+        long latestClockTimestamp = -1;
+        for (MiruPartitionedActivity partitionedActivity : partitionedActivities) {
+            if (partitionedActivity.type.isActivityType()) {
+                latestClockTimestamp = Math.max(latestClockTimestamp, partitionedActivity.clockTimestamp);
+            }
+        }
+        if (latestClockTimestamp > 0) {
+            long latency = Math.max(0, System.currentTimeMillis() - latestClockTimestamp);
+            LOG.set(ValueType.VALUE, "sip>writeToQueryable>latency", latency);
+            LOG.inc("sip>writeToQueryable>power>" + FilerIO.chunkPower(latency, 0));
+        }
+    }
+
     private void deliverRealtime(String name, MiruPartitionAccessor<BM, IBM, C, S> accessor, StackBuffer stackBuffer) throws Exception {
         if (!accessor.persistentContext.isPresent()) {
             return;
@@ -2,10 +2,13 @@ package com.jivesoftware.os.miru.service.partition;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.jivesoftware.os.miru.api.MiruHost;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
 import com.jivesoftware.os.miru.api.MiruPartitionCoordInfo;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.topology.MiruClusterClient;
 import com.jivesoftware.os.miru.api.topology.MiruHeartbeatRequest;
 import com.jivesoftware.os.miru.api.topology.MiruHeartbeatResponse;
@@ -15,14 +18,20 @@ import com.jivesoftware.os.miru.api.topology.NamedCursor;
 import com.jivesoftware.os.miru.api.topology.PartitionInfo;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import com.jivesoftware.os.routing.bird.shared.HostPort;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Heartbeats carry only partitions whose info, query timestamp or last timestamp differs from what the manage side last
+ * acknowledged. Every {@code fullSnapshotEvery} heartbeats (and on the first one) the complete acknowledged state is resent so
+ * the registry can recover from anything it missed. The cursor lock is only held to copy and merge cursors, never across
+ * the remote call.
  */
 public class MiruPartitionHeartbeatHandler {
 
@@ -30,8 +39,12 @@ public class MiruPartitionHeartbeatHandler {
 
     private final MiruClusterClient clusterClient;
     private final AtomicBoolean atleastOneThumpThump;
+    private final int fullSnapshotEvery;
 
     private final Map<MiruPartitionCoord, PartitionInfo> heartbeats = Maps.newConcurrentMap();
+    private final Map<MiruPartitionCoord, PartitionInfo> acknowledged = Maps.newConcurrentMap();
+    private final Set<MiruPartitionCoord> removed = Sets.newConcurrentHashSet();
+    private final AtomicLong thumpCount = new AtomicLong();
     private final Map<MiruPartitionCoord, MiruPartitionActive> active = Maps.newConcurrentMap();
 
     private final Object cursorLock = new Object();
@@ -39,13 +52,19 @@ public class MiruPartitionHeartbeatHandler {
     private final Map<String, NamedCursor> topologyUpdatesSinceCursors = Maps.newHashMap();
     private final AtomicBoolean destructionPermit = new AtomicBoolean();
 
-    public MiruPartitionHeartbeatHandler(MiruClusterClient clusterClient, AtomicBoolean atleastOneThumpThump) {
+    private final Map<TenantAndPartition, Runnable> sipWakers = Maps.newConcurrentMap();
+    private final Map<TenantAndPartition, AtomicLong> walChangedCounts = Maps.newConcurrentMap();
+    private final Set<HostPort> walNotifyingHosts = Sets.newConcurrentHashSet();
+
+    public MiruPartitionHeartbeatHandler(MiruClusterClient clusterClient, AtomicBoolean atleastOneThumpThump, int fullSnapshotEvery) {
         this.clusterClient = clusterClient;
         this.atleastOneThumpThump = atleastOneThumpThump;
+        this.fullSnapshotEvery = fullSnapshotEvery;
     }
 
     public void updateInfo(MiruPartitionCoord coord, MiruPartitionCoordInfo info) throws Exception {
         LOG.inc("update>count>info");
+        removed.remove(coord);
         updateHeartbeat(coord, info, -1, -1);
     }
 
@@ -59,6 +78,97 @@ public class MiruPartitionHeartbeatHandler {
         updateHeartbeat(coord, null, -1, lastTimestamp);
     }
 
+    /**
+     * Stops resending the partition in full snapshots. Pending changes are still delivered, and a later info update
+     * (i.e. the partition is hosted again) starts tracking it anew.
+     */
+    public void removed(MiruPartitionCoord coord) {
+        removed.add(coord);
+        acknowledged.remove(coord);
+        TenantAndPartition tenantAndPartition = new TenantAndPartition(coord.tenantId, coord.partitionId);
+        sipWakers.remove(tenantAndPartition);
+        walChangedCounts.remove(tenantAndPartition);
+    }
+
+    /**
+     * Registers the task which sips the partition, run whenever the WAL reports new writes for it.
+     */
+    public void registerSipWaker(MiruPartitionCoord coord, Runnable waker) {
+        sipWakers.put(new TenantAndPartition(coord.tenantId, coord.partitionId), waker);
+    }
+
+    public void walChanged(MiruTenantId tenantId, MiruPartitionId partitionId) {
+        TenantAndPartition tenantAndPartition = new TenantAndPartition(tenantId, partitionId);
+        Runnable waker = sipWakers.get(tenantAndPartition);
+        if (waker != null) {
+            walChangedCounts.computeIfAbsent(tenantAndPartition, key -> new AtomicLong()).incrementAndGet();
+            wake(tenantAndPartition, waker);
+            LOG.inc("wal>changed>hosted");
+        } else {
+            LOG.inc("wal>changed>unhosted");
+        }
+    }
+
+    /**
+     * Treats every hosted partition as changed, e.g. when a WAL node restarted and its change sequence was lost.
+     */
+    public void walResync() {
+        for (Map.Entry<TenantAndPartition, Runnable> entry : sipWakers.entrySet()) {
+            walChangedCounts.computeIfAbsent(entry.getKey(), key -> new AtomicLong()).incrementAndGet();
+            wake(entry.getKey(), entry.getValue());
+        }
+        LOG.inc("wal>changed>resync");
+    }
+
+    private void wake(TenantAndPartition tenantAndPartition, Runnable waker) {
+        try {
+            waker.run();
+        } catch (Exception e) {
+            LOG.warn("Failed to wake sip for {}", new Object[] { tenantAndPartition }, e);
+        }
+    }
+
+    /**
+     * @return the last time the partition was queried locally, or -1 if it has not been
+     */
+    public long getQueryTimestamp(MiruPartitionCoord coord) {
+        PartitionInfo pending = heartbeats.get(coord);
+        PartitionInfo acked = acknowledged.get(coord);
+        return Math.max(pending != null ? pending.queryTimestamp : -1, acked != null ? acked.queryTimestamp : -1);
+    }
+
+    /**
+     * @return the number of WAL changes notified for the partition, which only increases while it is hosted, or 0 if there were none
+     */
+    public long getWALChangedCount(MiruPartitionCoord coord) {
+        AtomicLong count = walChangedCounts.get(new TenantAndPartition(coord.tenantId, coord.partitionId));
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Marks whether the change feed of a WAL host is currently being polled successfully.
+     */
+    public void setWALNotifying(HostPort host, boolean notifying) {
+        if (notifying) {
+            walNotifyingHosts.add(host);
+        } else {
+            walNotifyingHosts.remove(host);
+        }
+    }
+
+    /**
+     * Any node in a ring sees the ring's writes, so a partition is notified as long as one of the hosts serving its WAL is. While
+     * notified, its sips are triggered by WAL change notifications instead of heartbeat ingress updates.
+     */
+    public boolean isWALNotifying(List<HostPort> hosts) {
+        for (HostPort host : hosts) {
+            if (walNotifyingHosts.contains(host)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void updateHeartbeat(MiruPartitionCoord coord,
         MiruPartitionCoordInfo info,
         long queryTimestamp,
@@ -98,38 +208,121 @@ public class MiruPartitionHeartbeatHandler {
     }
 
     public MiruHeartbeatResponse thumpthump(MiruHost host) throws Exception {
+        long lockStart = System.nanoTime();
+        List<NamedCursor> partitionActiveCursors;
+        List<NamedCursor> topologyCursors;
         synchronized (cursorLock) {
-            Collection<PartitionInfo> heartbeats = heartbeats();
-            MiruHeartbeatResponse thumpthump;
-            try {
-                thumpthump = clusterClient.thumpthump(host,
-                    new MiruHeartbeatRequest(heartbeats, partitionActiveUpdatesSinceCursors.values(), topologyUpdatesSinceCursors.values()));
-            } catch (Exception e) {
-                for (PartitionInfo partitionInfo : heartbeats) {
-                    retry(host, partitionInfo);
-                }
-                throw e;
+            partitionActiveCursors = Lists.newArrayList(partitionActiveUpdatesSinceCursors.values());
+            topologyCursors = Lists.newArrayList(topologyUpdatesSinceCursors.values());
+        }
+        long lockNanos = System.nanoTime() - lockStart;
+
+        boolean fullSnapshot = fullSnapshotEvery <= 1 || thumpCount.getAndIncrement() % fullSnapshotEvery == 0;
+        List<PartitionInfo> pending = heartbeats();
+        List<PartitionInfo> beats = fullSnapshot ? snapshot(host, pending) : delta(host, pending);
+
+        MiruHeartbeatResponse thumpthump;
+        try {
+            thumpthump = clusterClient.thumpthump(host,
+                new MiruHeartbeatRequest(beats, partitionActiveCursors, topologyCursors, fullSnapshot));
+        } catch (Exception e) {
+            for (PartitionInfo partitionInfo : pending) {
+                retry(host, partitionInfo);
             }
+            throw e;
+        }
+
+        for (PartitionInfo partitionInfo : pending) {
+            acknowledge(host, partitionInfo);
+        }
 
-            if (thumpthump != null) {
+        if (thumpthump != null) {
+            lockStart = System.nanoTime();
+            synchronized (cursorLock) {
+                // active and its cursors move together so an overlapping heartbeat cannot regress either
                 if (thumpthump.activeHasChanged != null) {
                     setActive(host, thumpthump.activeHasChanged.result);
                     handleCursors(partitionActiveUpdatesSinceCursors, thumpthump.activeHasChanged.cursors);
-                } else {
-                    LOG.warn("Missing thumpthump active changes");
                 }
-
                 if (thumpthump.topologyHasChanged != null) {
                     handleCursors(topologyUpdatesSinceCursors, thumpthump.topologyHasChanged.cursors);
-                } else {
-                    LOG.warn("Missing thumpthump topology changes");
                 }
+            }
+            lockNanos += System.nanoTime() - lockStart;
+
+            if (thumpthump.activeHasChanged == null) {
+                LOG.warn("Missing thumpthump active changes");
+            }
+            if (thumpthump.topologyHasChanged == null) {
+                LOG.warn("Missing thumpthump topology changes");
+            }
+        } else {
+            LOG.warn("Missing thumpthump response");
+        }
+
+        LOG.inc(fullSnapshot ? "heartbeat>snapshot" : "heartbeat>delta");
+        LOG.set(ValueType.COUNT, "heartbeat>pending", pending.size());
+        LOG.set(ValueType.COUNT, "heartbeat>sent", beats.size());
+        LOG.set(ValueType.COUNT, "heartbeat>acknowledged", acknowledged.size());
+        LOG.set(ValueType.VALUE, "heartbeat>cursorLockMicros", lockNanos / 1_000);
+        atleastOneThumpThump.set(true);
+        return thumpthump;
+    }
+
+    /**
+     * Only the fields that differ from the acknowledged state, dropping partitions with nothing new.
+     */
+    private List<PartitionInfo> delta(MiruHost host, List<PartitionInfo> pending) {
+        List<PartitionInfo> beats = Lists.newArrayListWithExpectedSize(pending.size());
+        int suppressed = 0;
+        for (PartitionInfo partitionInfo : pending) {
+            PartitionInfo acked = acknowledged.get(new MiruPartitionCoord(partitionInfo.tenantId, MiruPartitionId.of(partitionInfo.partitionId), host));
+            if (acked == null) {
+                beats.add(partitionInfo);
+                continue;
+            }
+            boolean infoChanged = partitionInfo.info != null && !partitionInfo.info.equals(acked.info);
+            boolean queryChanged = partitionInfo.queryTimestamp > acked.queryTimestamp;
+            boolean lastChanged = partitionInfo.lastTimestamp != -1 && partitionInfo.lastTimestamp != acked.lastTimestamp;
+            if (infoChanged || queryChanged || lastChanged) {
+                beats.add(new PartitionInfo(partitionInfo.tenantId,
+                    partitionInfo.partitionId,
+                    queryChanged ? partitionInfo.queryTimestamp : -1,
+                    infoChanged ? partitionInfo.info : null,
+                    lastChanged ? partitionInfo.lastTimestamp : -1));
             } else {
-                LOG.warn("Missing thumpthump response");
+                suppressed++;
             }
-            atleastOneThumpThump.set(true);
-            return thumpthump;
         }
+        LOG.inc("heartbeat>suppressed", suppressed);
+        return beats;
+    }
+
+    /**
+     * The acknowledged state of every partition with pending changes merged in.
+     */
+    private List<PartitionInfo> snapshot(MiruHost host, List<PartitionInfo> pending) {
+        Map<MiruPartitionCoord, PartitionInfo> merged = Maps.newHashMap(acknowledged);
+        for (PartitionInfo partitionInfo : pending) {
+            MiruPartitionCoord coord = new MiruPartitionCoord(partitionInfo.tenantId, MiruPartitionId.of(partitionInfo.partitionId), host);
+            merged.merge(coord, partitionInfo, MiruPartitionHeartbeatHandler::merge);
+        }
+        return Lists.newArrayList(merged.values());
+    }
+
+    private void acknowledge(MiruHost host, PartitionInfo partitionInfo) {
+        MiruPartitionCoord coord = new MiruPartitionCoord(partitionInfo.tenantId, MiruPartitionId.of(partitionInfo.partitionId), host);
+        if (!removed.contains(coord)) {
+            acknowledged.merge(coord, partitionInfo, MiruPartitionHeartbeatHandler::merge);
+        }
+    }
+
+    private static PartitionInfo merge(PartitionInfo existing, PartitionInfo update) {
+        return new PartitionInfo(existing.tenantId,
+            existing.partitionId,
+            Math.max(existing.queryTimestamp, update.queryTimestamp),
+            update.info != null ? update.info : existing.info,
+            update.lastTimestamp != -1 ? update.lastTimestamp : existing.lastTimestamp);
     }
 
     public MiruPartitionActive getPartitionActive(MiruPartitionCoord coord) throws Exception {
@@ -140,7 +333,7 @@ public class MiruPartitionHeartbeatHandler {
         return new MiruPartitionActive(-1, -1, -1, -1, -1);
     }
 
-    private Collection<PartitionInfo> heartbeats() {
+    private List<PartitionInfo> heartbeats() {
         Set<MiruPartitionCoord> keys = heartbeats.keySet();
         List<PartitionInfo> beats = Lists.newArrayListWithExpectedSize(keys.size());
         for (MiruPartitionCoord coord : keys) {
@@ -1,56 +1,146 @@
 package com.jivesoftware.os.miru.service.partition;
 
-import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Maps;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.plugin.partition.MiruRoutablePartition;
 import com.jivesoftware.os.miru.service.partition.cluster.PartitionAndHost;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * An immutable snapshot of a tenant's routing topology, grouped into replica sets in descending partition order when it is
+ * built. Queries only apply the per-query replica ordering on top, and get the snapshot itself back when no replica needs to
+ * move. A new snapshot is built whenever the tenant's topology changes.
+ */
 public class MiruTenantRoutingTopology {
 
-    private final ConcurrentSkipListMap<PartitionAndHost, MiruRoutablePartition> topology;
+    private final MiruTenantId tenantId;
     private final MiruHostedPartitionComparison partitionComparison;
+    private final ReplicaSet[] replicaSets;
+    private final Map<MiruPartitionId, ReplicaSet> replicaSetsById;
+    private final List<PartitionGroup> unadjustedOrder;
+    private final long earliestDestroyAfterTimestamp;
+    private final int maxReplicas;
 
-    public MiruTenantRoutingTopology(MiruHostedPartitionComparison partitionComparison,
-        ConcurrentSkipListMap<PartitionAndHost, MiruRoutablePartition> topology) {
+    public MiruTenantRoutingTopology(MiruTenantId tenantId,
+        MiruHostedPartitionComparison partitionComparison,
+        NavigableMap<PartitionAndHost, MiruRoutablePartition> topology) {
+        this.tenantId = tenantId;
         this.partitionComparison = partitionComparison;
-        this.topology = topology;
-    }
 
-    public List<PartitionGroup> allPartitionsInOrder(MiruTenantId tenantId, String requestName, String queryKey) {
-        List<MiruRoutablePartition> allPartitions = Lists.newArrayList(topology.values());
+        List<ReplicaSet> replicaSetsInOrder = Lists.newArrayList();
+        List<MiruRoutablePartition> replicas = Lists.newArrayList();
+        List<PartitionAndHost> keys = Lists.newArrayList();
+        long earliestDestroyAfterTimestamp = Long.MAX_VALUE;
+        // the topology is ordered by partition and then host, so every replica set is contiguous and already in host order
+        for (Map.Entry<PartitionAndHost, MiruRoutablePartition> entry : topology.entrySet()) {
+            MiruRoutablePartition partition = entry.getValue();
+            if (!replicas.isEmpty() && !replicas.get(0).partitionId.equals(partition.partitionId)) {
+                replicaSetsInOrder.add(new ReplicaSet(tenantId, replicas, keys));
+                replicas.clear();
+                keys.clear();
+            }
+            replicas.add(partition);
+            keys.add(entry.getKey());
+            if (partition.destroyAfterTimestamp > 0) {
+                earliestDestroyAfterTimestamp = Math.min(earliestDestroyAfterTimestamp, partition.destroyAfterTimestamp);
+            }
+        }
+        if (!replicas.isEmpty()) {
+            replicaSetsInOrder.add(new ReplicaSet(tenantId, replicas, keys));
+        }
+        Collections.reverse(replicaSetsInOrder);
 
-        ListMultimap<MiruPartitionId, MiruRoutablePartition> partitionsPerId = Multimaps.index(allPartitions,
-            input -> input.partitionId);
+        this.replicaSets = replicaSetsInOrder.toArray(new ReplicaSet[replicaSetsInOrder.size()]);
+        this.replicaSetsById = Maps.newHashMapWithExpectedSize(replicaSets.length);
+        List<PartitionGroup> unadjustedOrder = Lists.newArrayListWithCapacity(replicaSets.length);
+        int maxReplicas = 0;
+        for (ReplicaSet replicaSet : replicaSets) {
+            maxReplicas = Math.max(maxReplicas, replicaSet.keys.length);
+            replicaSetsById.put(replicaSet.group.partitionId, replicaSet);
+            unadjustedOrder.add(replicaSet.group);
+        }
+        this.unadjustedOrder = Collections.unmodifiableList(unadjustedOrder);
+        this.earliestDestroyAfterTimestamp = earliestDestroyAfterTimestamp;
+        this.maxReplicas = maxReplicas;
+    }
 
-        List<PartitionGroup> allOrderedPartitions = Lists.newArrayList();
-        List<MiruPartitionId> partitionIds = Lists.newArrayList(partitionsPerId.keySet());
-        Collections.sort(partitionIds);
-        Collections.reverse(partitionIds);
-        for (MiruPartitionId partitionId : partitionIds) {
-            List<MiruRoutablePartition> partitions = partitionsPerId.get(partitionId);
-            List<MiruRoutablePartition> orderedPartitions = partitionComparison.orderPartitions(tenantId, partitionId, requestName, queryKey, partitions);
-            allOrderedPartitions.add(new PartitionGroup(tenantId, partitionId, orderedPartitions));
+    public List<PartitionGroup> allPartitionsInOrder(String requestName, String queryKey) {
+        long now = System.currentTimeMillis();
+        ConcurrentSkipListMap<PartitionAndHost, Long> recency = partitionComparison.getRecency(tenantId, requestName, queryKey);
+        if (recency == null && now <= earliestDestroyAfterTimestamp) {
+            return unadjustedOrder;
         }
 
-        return allOrderedPartitions;
+        // merge the recency into the replica sets, both in ascending key order, instead of looking up every replica
+        Iterator<Map.Entry<PartitionAndHost, Long>> recencyIter = (recency != null) ? recency.entrySet().iterator() : null;
+        Map.Entry<PartitionAndHost, Long> recencyEntry = (recencyIter != null && recencyIter.hasNext()) ? recencyIter.next() : null;
+        long[] times = new long[maxReplicas];
+        PartitionGroup[] allOrderedPartitions = new PartitionGroup[replicaSets.length];
+        for (int i = replicaSets.length - 1; i >= 0; i--) {
+            ReplicaSet replicaSet = replicaSets[i];
+            boolean hasRecency = false;
+            for (int j = 0; j < replicaSet.keys.length; j++) {
+                PartitionAndHost key = replicaSet.keys[j];
+                while (recencyEntry != null && recencyEntry.getKey().compareTo(key) < 0) {
+                    recencyEntry = recencyIter.hasNext() ? recencyIter.next() : null;
+                }
+                if (recencyEntry != null && recencyEntry.getKey().compareTo(key) == 0) {
+                    times[j] = recencyEntry.getValue();
+                    hasRecency = true;
+                } else {
+                    times[j] = Long.MIN_VALUE;
+                }
+            }
+            allOrderedPartitions[i] = replicaSet.inOrder(partitionComparison, hasRecency ? times : null, now);
+        }
+        return Arrays.asList(allOrderedPartitions);
     }
 
-    public PartitionGroup partitionInOrder(MiruTenantId tenantId, MiruPartitionId partitionId, String requestName, String queryKey) {
-        List<MiruRoutablePartition> partitions = Lists.newArrayList();
-        for (MiruRoutablePartition routablePartition : topology.values()) {
-            if (routablePartition.partitionId.equals(partitionId)) {
-                partitions.add(routablePartition);
+    public PartitionGroup partitionInOrder(MiruPartitionId partitionId, String requestName, String queryKey) {
+        ReplicaSet replicaSet = replicaSetsById.get(partitionId);
+        if (replicaSet == null) {
+            return new PartitionGroup(tenantId, partitionId, null);
+        }
+        ConcurrentSkipListMap<PartitionAndHost, Long> recency = partitionComparison.getRecency(tenantId, requestName, queryKey);
+        long[] times = null;
+        if (recency != null) {
+            for (int j = 0; j < replicaSet.keys.length; j++) {
+                Long time = recency.get(replicaSet.keys[j]);
+                if (time != null) {
+                    if (times == null) {
+                        times = new long[replicaSet.keys.length];
+                        Arrays.fill(times, Long.MIN_VALUE);
+                    }
+                    times[j] = time;
+                }
             }
         }
+        return replicaSet.inOrder(partitionComparison, times, System.currentTimeMillis());
+    }
+
+    private static class ReplicaSet {
+
+        private final PartitionAndHost[] keys;
+        private final PartitionGroup group;
+
+        private ReplicaSet(MiruTenantId tenantId, List<MiruRoutablePartition> replicas, List<PartitionAndHost> keys) {
+            this.keys = keys.toArray(new PartitionAndHost[keys.size()]);
+            this.group = new PartitionGroup(tenantId, replicas.get(0).partitionId,
+                Collections.unmodifiableList(Lists.newArrayList(replicas)));
+        }
 
-        List<MiruRoutablePartition> orderedPartitions = partitionComparison.orderPartitions(tenantId, partitionId, requestName, queryKey, partitions);
-        return new PartitionGroup(tenantId, partitionId, orderedPartitions);
+        private PartitionGroup inOrder(MiruHostedPartitionComparison partitionComparison, long[] times, long now) {
+            List<MiruRoutablePartition> ordered = partitionComparison.orderReplicas(group.partitions, times, now);
+            return ordered == group.partitions ? group : new PartitionGroup(group.tenantId, group.partitionId, ordered);
+        }
     }
 
     public static class PartitionGroup {
@@ -69,7 +159,8 @@ public class MiruTenantRoutingTopology {
     @Override
     public String toString() {
         return "MiruTenantRoutingTopology{"
-            + ", topology=" + topology.values()
+            + "tenantId=" + tenantId
+            + ", partitions=" + replicaSets.length
             + '}';
     }
 
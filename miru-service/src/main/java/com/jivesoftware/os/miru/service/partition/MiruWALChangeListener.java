@@ -0,0 +1,114 @@
+package com.jivesoftware.os.miru.service.partition;
+
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.wal.MiruWALChanges;
+import com.jivesoftware.os.miru.api.wal.MiruWALClient;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.routing.bird.shared.HostPort;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-polls every WAL node the reader sips from and wakes the sip of each hosted partition the WAL reports as written. Any
+ * node in a partition's ring sees its writes through replication, so a single healthy poller per ring is enough. The periodic
+ * cya sip remains the safety sweep, and heartbeat ingress updates trigger the sips of a partition again whenever no poller for
+ * its ring is healthy. Only started for WAL clients which {@link MiruWALClient#supportsChangeFeed()}.
+ */
+public class MiruWALChangeListener {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final MiruWALClient<?, ?> walClient;
+    private final MiruPartitionHeartbeatHandler heartbeatHandler;
+    private final ExecutorService pollExecutor;
+    private final long pollTimeoutMillis;
+    private final long failureBackoffMillis;
+
+    private final Set<HostPort> polling = Sets.newConcurrentHashSet();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public MiruWALChangeListener(MiruWALClient<?, ?> walClient,
+        MiruPartitionHeartbeatHandler heartbeatHandler,
+        ExecutorService pollExecutor,
+        long pollTimeoutMillis,
+        long failureBackoffMillis) {
+        this.walClient = walClient;
+        this.heartbeatHandler = heartbeatHandler;
+        this.pollExecutor = pollExecutor;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        this.failureBackoffMillis = failureBackoffMillis;
+    }
+
+    /**
+     * Starts polling any WAL node the client has routed to since the last call.
+     */
+    public void discover() {
+        try {
+            for (HostPort host : walClient.getChangeFeedHosts()) {
+                if (running.get() && polling.add(host)) {
+                    LOG.info("Subscribing to WAL changes from {}", host);
+                    pollExecutor.submit(() -> poll(host));
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to discover WAL change feeds", e);
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+        for (HostPort host : polling) {
+            heartbeatHandler.setWALNotifying(host, false);
+        }
+    }
+
+    private void poll(HostPort host) {
+        long instanceId = -1;
+        long sequence = -1;
+        boolean wasHealthy = false;
+        try {
+            while (running.get()) {
+                try {
+                    MiruWALChanges changes = walClient.pollChanges(host, instanceId, sequence, pollTimeoutMillis);
+                    if (changes == null) {
+                        throw new IllegalStateException("Empty response");
+                    }
+                    if (changes.reset) {
+                        if (instanceId != -1) {
+                            LOG.info("WAL change feed reset for {}", host);
+                            heartbeatHandler.walResync();
+                        }
+                    } else {
+                        for (TenantAndPartition change : changes.changes) {
+                            heartbeatHandler.walChanged(change.tenantId, change.partitionId);
+                        }
+                        LOG.inc("wal>changes>notified", changes.changes.size());
+                    }
+                    instanceId = changes.instanceId;
+                    sequence = changes.sequence;
+                    if (!wasHealthy) {
+                        wasHealthy = true;
+                        heartbeatHandler.setWALNotifying(host, running.get());
+                    }
+                } catch (Exception e) {
+                    LOG.inc("wal>changes>failure");
+                    LOG.warn("Failed to poll WAL changes from {}, will retry in {} ms", new Object[] { host, failureBackoffMillis }, e);
+                    if (wasHealthy) {
+                        wasHealthy = false;
+                        heartbeatHandler.setWALNotifying(host, false);
+                    }
+                    // the feed retains every partition at its latest sequence, so resuming from our sequence misses nothing
+                    Thread.sleep(failureBackoffMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            heartbeatHandler.setWALNotifying(host, false);
+            polling.remove(host);
+        }
+    }
+}
@@ -43,8 +43,9 @@ import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -108,7 +109,7 @@ public class MiruClusterExpectedTenants implements MiruExpectedTenants {
         if (topology == null) {
             return null;
         }
-        PartitionGroup partitionGroup = topology.partitionInOrder(tenantId, partitionId, requestName, queryKey);
+        PartitionGroup partitionGroup = topology.partitionInOrder(partitionId, requestName, queryKey);
         if (partitionGroup.partitions == null) {
             return null;
         }
@@ -120,7 +121,7 @@ public class MiruClusterExpectedTenants implements MiruExpectedTenants {
         return routingTopologies.get(tenantId, () -> {
 
             MiruTopologyResponse topologyResponse = clusterClient.routingTopology(tenantId);
-            ConcurrentSkipListMap<PartitionAndHost, MiruRoutablePartition> partitionHostTopology = new ConcurrentSkipListMap<>();
+            NavigableMap<PartitionAndHost, MiruRoutablePartition> partitionHostTopology = new TreeMap<>();
             for (MiruTopologyPartition partition : topologyResponse.topology) {
                 MiruPartitionId partitionId = MiruPartitionId.of(partition.partitionId);
                 MiruRoutablePartition routablePartition = new MiruRoutablePartition(partition.host,
@@ -128,7 +129,7 @@ public class MiruClusterExpectedTenants implements MiruExpectedTenants {
                     partition.state, partition.storage, partition.destroyAfterTimestamp);
                 partitionHostTopology.put(new PartitionAndHost(partitionId, partition.host), routablePartition);
             }
-            return new MiruTenantRoutingTopology(partitionComparison, partitionHostTopology);
+            return new MiruTenantRoutingTopology(tenantId, partitionComparison, partitionHostTopology);
         });
     }
 
@@ -138,7 +139,7 @@ public class MiruClusterExpectedTenants implements MiruExpectedTenants {
         MiruTenantRoutingTopology topology,
         MiruTenantTopology<BM, IBM> localTopology) {
 
-        List<PartitionGroup> allPartitionsInOrder = topology.allPartitionsInOrder(tenantId, requestName, queryKey);
+        List<PartitionGroup> allPartitionsInOrder = topology.allPartitionsInOrder(requestName, queryKey);
         List<OrderedPartitions<BM, IBM>>  orderedPartitions = Lists.newArrayListWithCapacity(allPartitionsInOrder.size());
         for (PartitionGroup partitionGroup : allPartitionsInOrder) {
             if (partitionGroup.partitions != null) {
@@ -120,7 +120,8 @@ public class MiruLowestLatencySolver implements MiruSolver {
                                             totalElapsed,
                                             triedPartitions,
                                             response.log),
-                                        response.answer);
+                                        response.answer,
+                                        response.profile);
                                     log.inc("solve>success");
                                     log.inc("solve>request>" + requestName + ">" + queryKey + ">success");
                                     String locality = f.solvable.isLocal() ? "local" : "remote";
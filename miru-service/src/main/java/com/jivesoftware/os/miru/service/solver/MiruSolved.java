@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.service.solver;
 
 import com.jivesoftware.os.miru.plugin.solution.MiruSolution;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionProfile;
 
 /**
  *
@@ -9,9 +10,11 @@ public class MiruSolved<A> {
 
     public final MiruSolution solution; // show your work!
     public final A answer; // circle the answer!
+    public final MiruSolutionProfile profile; // time yourself!
 
-    public MiruSolved(MiruSolution solution, A answer) {
+    public MiruSolved(MiruSolution solution, A answer, MiruSolutionProfile profile) {
         this.solution = solution;
         this.answer = answer;
+        this.profile = profile;
     }
 }
@@ -2,7 +2,6 @@ package com.jivesoftware.os.miru.service.stream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.jivesoftware.os.filer.chunk.store.transaction.MapBackedKeyedFPIndex;
@@ -65,7 +64,6 @@ import com.jivesoftware.os.miru.service.index.MiruFilerProvider;
 import com.jivesoftware.os.miru.service.index.TimeIdIndex;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzCache;
 import com.jivesoftware.os.miru.service.index.auth.MiruAuthzUtils;
-import com.jivesoftware.os.miru.service.index.auth.VersionedAuthzExpression;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerActivityIndex;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerAuthzIndex;
 import com.jivesoftware.os.miru.service.index.filer.MiruFilerFieldIndex;
@@ -132,6 +130,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
     private final MiruSipIndexMarshaller<S> sipMarshaller;
     private final MiruResourceLocator diskResourceLocator;
     private final int partitionAuthzCacheSize;
+    private final int fieldIndexDeltaFoldThreshold;
     private final StripingLocksProvider<MiruTermId> fieldIndexStripingLocksProvider;
     private final StripingLocksProvider<MiruStreamId> streamStripingLocksProvider;
     private final StripingLocksProvider<String> authzStripingLocksProvider;
@@ -160,6 +159,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         MiruSipIndexMarshaller<S> sipMarshaller,
         MiruResourceLocator diskResourceLocator,
         int partitionAuthzCacheSize,
+        int fieldIndexDeltaFoldThreshold,
         StripingLocksProvider<MiruTermId> fieldIndexStripingLocksProvider,
         StripingLocksProvider<MiruStreamId> streamStripingLocksProvider,
         StripingLocksProvider<String> authzStripingLocksProvider,
@@ -188,6 +188,7 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
         this.sipMarshaller = sipMarshaller;
         this.diskResourceLocator = diskResourceLocator;
         this.partitionAuthzCacheSize = partitionAuthzCacheSize;
+        this.fieldIndexDeltaFoldThreshold = fieldIndexDeltaFoldThreshold;
         this.fieldIndexStripingLocksProvider = fieldIndexStripingLocksProvider;
         this.streamStripingLocksProvider = streamStripingLocksProvider;
         this.authzStripingLocksProvider = authzStripingLocksProvider;
@@ -369,11 +370,10 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
 
         MiruAuthzUtils<BM, IBM> authzUtils = new MiruAuthzUtils<>(bitmaps);
 
-        Cache<VersionedAuthzExpression, BM> authzCache = CacheBuilder.newBuilder()
+        CacheBuilder<Object, Object> authzCacheBuilder = CacheBuilder.newBuilder()
             .maximumSize(partitionAuthzCacheSize)
-            .expireAfterAccess(1, TimeUnit.MINUTES) //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
-            .build();
-        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCache, activityInternExtern, authzUtils);
+            .expireAfterAccess(1, TimeUnit.MINUTES); //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
+        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCacheBuilder, activityInternExtern, authzUtils);
 
         MiruAuthzIndex<BM, IBM> authzIndex = new MiruFilerAuthzIndex<>(
             bitmaps,
@@ -698,7 +698,8 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
                 cardinalityPrefix,
                 cardinalityIndex,
                 fieldIndexStripingLocksProvider,
-                termInterner);
+                termInterner,
+                fieldIndexDeltaFoldThreshold);
         }
         MiruFieldIndexProvider<BM, IBM> fieldIndexProvider = new MiruFieldIndexProvider<>(fieldIndexes);
 
@@ -742,11 +743,10 @@ public class MiruContextFactory<S extends MiruSipCursor<S>> {
 
         MiruAuthzUtils<BM, IBM> authzUtils = new MiruAuthzUtils<>(bitmaps);
 
-        Cache<VersionedAuthzExpression, BM> authzCache = CacheBuilder.newBuilder()
+        CacheBuilder<Object, Object> authzCacheBuilder = CacheBuilder.newBuilder()
             .maximumSize(partitionAuthzCacheSize)
-            .expireAfterAccess(1, TimeUnit.MINUTES) //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
-            .build();
-        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCache, activityInternExtern, authzUtils);
+            .expireAfterAccess(1, TimeUnit.MINUTES); //TODO should be adjusted with respect to tuning GC (prevent promotion from eden space)
+        MiruAuthzCache<BM, IBM> miruAuthzCache = new MiruAuthzCache<>(bitmaps, authzCacheBuilder, activityInternExtern, authzUtils);
 
         MiruAuthzIndex<BM, IBM> authzIndex = new LabAuthzIndex<>(
             idProvider,
@@ -109,27 +109,42 @@ public class MiruIndexPrimaryFields<BM extends IBM, IBM> {
         for (int fieldId = 0; fieldId < work.length; fieldId++) {
             List<PrimaryIndexWork> fieldWork = work[fieldId];
             MiruFieldDefinition fieldDefinition = context.getSchema().getFieldDefinition(fieldId);
-            for (final PrimaryIndexWork primaryIndexWork : fieldWork) {
+            if (fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexed)) {
+                if (fieldWork.isEmpty()) {
+                    continue;
+                }
+                // all terms for the field are written together so their containers are read and committed in bulk
                 futures.add(indexExecutor.submit(() -> {
                     StackBuffer stackBuffer = new StackBuffer();
-                    if (fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexed)) {
-                        log.inc("count>set", primaryIndexWork.ids.size());
-                        log.inc("count>set", primaryIndexWork.ids.size(), tenantId.toString());
-                        fieldIndex.set(fieldDefinition,
-                            primaryIndexWork.fieldValue,
-                            primaryIndexWork.ids.toArray(),
-                            primaryIndexWork.counts != null ? primaryIndexWork.counts.toArray() : null,
-                            stackBuffer);
-                    } else if (fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexedFirst)) {
+                    MiruTermId[] termIds = new MiruTermId[fieldWork.size()];
+                    int[][] ids = new int[fieldWork.size()][];
+                    long[][] counts = new long[fieldWork.size()][];
+                    int setCount = 0;
+                    for (int i = 0; i < termIds.length; i++) {
+                        PrimaryIndexWork primaryIndexWork = fieldWork.get(i);
+                        termIds[i] = primaryIndexWork.fieldValue;
+                        ids[i] = primaryIndexWork.ids.toArray();
+                        counts[i] = primaryIndexWork.counts != null ? primaryIndexWork.counts.toArray() : null;
+                        setCount += ids[i].length;
+                    }
+                    log.inc("count>set", setCount);
+                    log.inc("count>set", setCount, tenantId.toString());
+                    fieldIndex.multiSet(fieldDefinition, termIds, ids, counts, stackBuffer);
+                    return null;
+                }));
+            } else if (fieldDefinition.type.hasFeature(MiruFieldDefinition.Feature.indexedFirst)) {
+                for (final PrimaryIndexWork primaryIndexWork : fieldWork) {
+                    futures.add(indexExecutor.submit(() -> {
+                        StackBuffer stackBuffer = new StackBuffer();
                         log.inc("count>setIfEmpty", 1);
                         fieldIndex.setIfEmpty(fieldDefinition,
                             primaryIndexWork.fieldValue,
                             primaryIndexWork.ids.get(0),
                             primaryIndexWork.counts != null ? primaryIndexWork.counts.get(0) : -1,
                             stackBuffer);
-                    }
-                    return null;
-                }));
+                        return null;
+                    }));
+                }
             }
         }
         return futures;
@@ -1,55 +1,143 @@
 package com.jivesoftware.os.miru.service.stream;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.jivesoftware.os.miru.api.MiruPartitionCoord;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.service.partition.MiruLocalHostedPartition;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import com.jivesoftware.os.mlogger.core.ValueType;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Hands out rebuild tokens from a shared activity-count budget. Partitions asking for a token are ranked into tiers:
+ * explicitly prioritized, then recently queried, then idle. Within a tier, heavier tenants, more recent queries and smaller
+ * WALs go first. A partition is only granted a token once the budget also covers every better ranked partition that fits in it,
+ * so the partitions that make the reader useful soonest come online first. A better ranked partition that does not fit yet
+ * holds back lower tiers until the budget frees up, while partitions in its own tier may still fill the gap.
+ * <p>
+ * Since every rebuildable partition asks for a token on each rebuild interval, partitions which stop asking are forgotten after a
+ * few intervals. The estimated time until each tenant has nothing left to rebuild is published as a tenant metric.
  */
 public class MiruRebuildDirector {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final long RANK_INTERVAL_MILLIS = 1_000;
+    private static final long MIN_THROUGHPUT_SAMPLE_MILLIS = 1_000;
+    private static final double THROUGHPUT_SMOOTHING = 0.2;
+
+    public enum Tier {
+        prioritized, demanded, idle
+    }
+
+    public interface QueryTimestamps {
+
+        /**
+         * @return the last time the partition was queried, or -1 if never
+         */
+        long get(MiruPartitionCoord coord);
+    }
+
+    private final long maxConcurrentActivityCount;
     private final AtomicLong activityCount;
+    private final QueryTimestamps queryTimestamps;
+    private final Map<MiruTenantId, Double> tenantWeights;
+    private final long demandWindowMillis;
+    private final long candidateTimeoutMillis;
+
     private final Set<MiruPartitionCoord> prioritized = Sets.newHashSet();
+    private final Map<MiruPartitionCoord, Candidate> candidates = Maps.newHashMap();
+    private final Map<MiruPartitionCoord, Token> inFlight = Maps.newHashMap();
+    private List<Candidate> ranked = Lists.newArrayList();
+    private long rankedTimestamp = -1;
+    private double activitiesPerMillis;
+    private volatile Map<MiruTenantId, Long> timeToServe = ImmutableMap.of();
 
-    public MiruRebuildDirector(long maxConcurrentActivityCount) {
+    public MiruRebuildDirector(long maxConcurrentActivityCount,
+        QueryTimestamps queryTimestamps,
+        Map<MiruTenantId, Double> tenantWeights,
+        long demandWindowMillis,
+        long rebuildIntervalMillis,
+        long estimatedActivitiesPerSecond) {
+        this.maxConcurrentActivityCount = maxConcurrentActivityCount;
         this.activityCount = new AtomicLong(maxConcurrentActivityCount);
+        this.queryTimestamps = queryTimestamps;
+        this.tenantWeights = tenantWeights;
+        this.demandWindowMillis = demandWindowMillis;
+        this.candidateTimeoutMillis = 3 * rebuildIntervalMillis;
+        this.activitiesPerMillis = Math.max(estimatedActivitiesPerSecond, 1) / 1_000d;
     }
 
     public Optional<Token> acquire(MiruPartitionCoord coord, long count) {
-        if (activityCount.get() >= count) {
-            if (isPermitted(coord)) {
-                synchronized (activityCount) {
-                    if (activityCount.get() >= count) {
-                        long remaining = activityCount.addAndGet(-count);
-                        LOG.set(ValueType.COUNT, "count", remaining);
-                        if (prioritized.remove(coord)) {
-                            LOG.info("Prioritized rebuild of {} has begun", coord);
-                        }
-                        return Optional.of(new Token(coord, count));
+        long now = System.currentTimeMillis();
+        synchronized (activityCount) {
+            Candidate candidate = candidates.get(coord);
+            boolean unranked = (candidate == null);
+            if (unranked) {
+                candidate = new Candidate(coord);
+                candidates.put(coord, candidate);
+            }
+            candidate.count = count;
+            candidate.lastSeenTimestamp = now;
+            if (unranked) {
+                // ranked last until the next ranking, but its tier still applies
+                rank(candidate, now);
+            }
+
+            if (activityCount.get() >= count) {
+                if (now - rankedTimestamp >= RANK_INTERVAL_MILLIS) {
+                    rankAll(now);
+                }
+                if (isPermitted(candidate, now)) {
+                    long remaining = activityCount.addAndGet(-count);
+                    LOG.set(ValueType.COUNT, "count", remaining);
+                    LOG.inc("acquire>" + candidate.tier.name());
+                    candidates.remove(coord);
+                    candidate.pending = false;
+                    if (prioritized.remove(coord)) {
+                        LOG.info("Prioritized rebuild of {} has begun", coord);
                     }
+                    Token token = new Token(coord, count, now);
+                    inFlight.put(coord, token);
+                    return Optional.of(token);
+                } else {
+                    LOG.inc("refuse>" + candidate.tier.name());
+                    LOG.debug("Refusing to rebuild {} in tier {} ahead of better ranked partitions", coord, candidate.tier);
                 }
-            } else {
-                LOG.debug("Refusing to rebuild {} due to prioritization: {}", coord, prioritized);
             }
         }
         return Optional.absent();
     }
 
     public void release(Token token) {
+        long now = System.currentTimeMillis();
         synchronized (activityCount) {
             long remaining = activityCount.addAndGet(token.count);
             LOG.set(ValueType.COUNT, "count", remaining);
             // prioritization should already have been removed on token acquire, but remove just in case priority was given while partition was rebuilding.
             prioritized.remove(token.coord);
+            // freed budget goes to the best partitions as of now
+            rankedTimestamp = -1;
+            if (inFlight.remove(token.coord, token)) {
+                long elapsed = now - token.acquiredTimestamp;
+                if (elapsed >= MIN_THROUGHPUT_SAMPLE_MILLIS) {
+                    double sample = (double) token.count / elapsed;
+                    activitiesPerMillis += THROUGHPUT_SMOOTHING * (sample - activitiesPerMillis);
+                    LOG.set(ValueType.VALUE, "throughput>activitiesPerSecond", (long) (activitiesPerMillis * 1_000));
+                }
+            }
         }
     }
 
@@ -59,20 +147,157 @@ public class MiruRebuildDirector {
 
     public void prioritize(MiruLocalHostedPartition<?, ?, ?, ?> partition) {
         LOG.info("Prioritizing rebuild of {}", partition.getCoord());
-        prioritized.add(partition.getCoord());
+        synchronized (activityCount) {
+            prioritized.add(partition.getCoord());
+            rankedTimestamp = -1;
+        }
+    }
+
+    /**
+     * @return the estimated millis until each tenant with pending or running rebuilds has none left, as of the last ranking
+     */
+    public Map<MiruTenantId, Long> getTimeToServe() {
+        return timeToServe;
+    }
+
+    private boolean isPermitted(Candidate candidate, long now) {
+        long remaining = activityCount.get();
+        for (Candidate better : ranked) {
+            if (better == candidate || RANKING.compare(better, candidate) > 0) {
+                break;
+            }
+            if (!better.pending || now - better.lastSeenTimestamp > candidateTimeoutMillis || better.count > maxConcurrentActivityCount) {
+                continue;
+            }
+            if (better.count <= remaining) {
+                // leave room for it, it will ask again within an interval
+                remaining -= better.count;
+            } else if (better.tier.ordinal() < candidate.tier.ordinal()) {
+                return false;
+            }
+        }
+        return candidate.count <= remaining;
+    }
+
+    private void rank(Candidate candidate, long now) {
+        long queryTimestamp = queryTimestamps.get(candidate.coord);
+        long age = now - queryTimestamp;
+        double demand = 0;
+        if (prioritized.contains(candidate.coord)) {
+            candidate.tier = Tier.prioritized;
+        } else if (queryTimestamp > 0 && age <= demandWindowMillis) {
+            candidate.tier = Tier.demanded;
+            demand = 1d - (double) Math.max(age, 0) / demandWindowMillis;
+        } else {
+            candidate.tier = Tier.idle;
+        }
+        Double weight = tenantWeights.get(candidate.coord.tenantId);
+        candidate.score = (weight != null ? weight : 1d) * (1d + demand) / Math.max(candidate.count, 1);
     }
 
-    private boolean isPermitted(MiruPartitionCoord coord) {
-        return prioritized.isEmpty() || prioritized.contains(coord);
+    private void rankAll(long now) {
+        List<Candidate> ranking = Lists.newArrayListWithCapacity(candidates.size());
+        int[] tierCounts = new int[Tier.values().length];
+        Iterator<Candidate> iter = candidates.values().iterator();
+        while (iter.hasNext()) {
+            Candidate candidate = iter.next();
+            if (now - candidate.lastSeenTimestamp > candidateTimeoutMillis) {
+                candidate.pending = false;
+                iter.remove();
+            } else {
+                rank(candidate, now);
+                ranking.add(candidate);
+                tierCounts[candidate.tier.ordinal()]++;
+            }
+        }
+        ranking.sort(RANKING);
+        ranked = ranking;
+        rankedTimestamp = now;
+
+        for (Tier tier : Tier.values()) {
+            LOG.set(ValueType.COUNT, "pending>" + tier.name(), tierCounts[tier.ordinal()]);
+        }
+        publishTimeToServe(now);
+    }
+
+    private void publishTimeToServe(long now) {
+        // running rebuilds finish first, then pending ones in rank order, at the observed throughput for the current concurrency
+        double backlog = 0;
+        Map<MiruTenantId, Double> tenantBacklogs = Maps.newHashMap();
+        for (Token token : inFlight.values()) {
+            backlog += Math.max(token.count - (now - token.acquiredTimestamp) * activitiesPerMillis, 0);
+        }
+        for (Token token : inFlight.values()) {
+            tenantBacklogs.put(token.coord.tenantId, backlog);
+        }
+        for (Candidate candidate : ranked) {
+            backlog += candidate.count;
+            tenantBacklogs.put(candidate.coord.tenantId, backlog);
+        }
+
+        double rate = activitiesPerMillis * Math.max(inFlight.size(), 1);
+        Map<MiruTenantId, Long> published = Maps.newHashMapWithExpectedSize(tenantBacklogs.size());
+        for (Map.Entry<MiruTenantId, Double> entry : tenantBacklogs.entrySet()) {
+            long millis = (long) (entry.getValue() / rate);
+            published.put(entry.getKey(), millis);
+            LOG.set(ValueType.VALUE, "timeToServeMillis", millis, entry.getKey().toString());
+        }
+        for (MiruTenantId tenantId : timeToServe.keySet()) {
+            if (!published.containsKey(tenantId)) {
+                LOG.set(ValueType.VALUE, "timeToServeMillis", 0, tenantId.toString());
+            }
+        }
+        LOG.set(ValueType.VALUE, "timeToServeMillis", (long) (backlog / rate));
+        timeToServe = ImmutableMap.copyOf(published);
+    }
+
+    /**
+     * Parses tenant weights of the form {@code tenantA:2.0,tenantB:0.5}. Unlisted tenants have a weight of 1.
+     */
+    public static Map<MiruTenantId, Double> parseTenantWeights(String tenantWeights) {
+        Map<MiruTenantId, Double> weights = Maps.newHashMap();
+        for (String tenantWeight : Splitter.on(',').omitEmptyStrings().trimResults().split(tenantWeights)) {
+            int index = tenantWeight.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid tenant weight: " + tenantWeight);
+            }
+            weights.put(new MiruTenantId(tenantWeight.substring(0, index).trim().getBytes(Charsets.UTF_8)),
+                Double.parseDouble(tenantWeight.substring(index + 1).trim()));
+        }
+        return weights;
+    }
+
+    private static final Comparator<Candidate> RANKING = (c1, c2) -> {
+        int c = Integer.compare(c1.tier.ordinal(), c2.tier.ordinal());
+        if (c == 0) {
+            c = Double.compare(c2.score, c1.score);
+        }
+        return c;
+    };
+
+    private static class Candidate {
+
+        private final MiruPartitionCoord coord;
+        private long count;
+        private long lastSeenTimestamp;
+        private Tier tier;
+        private double score;
+        private boolean pending = true;
+
+        private Candidate(MiruPartitionCoord coord) {
+            this.coord = coord;
+        }
     }
 
     public static class Token {
         private final MiruPartitionCoord coord;
         private final long count;
+        private final long acquiredTimestamp;
 
-        private Token(MiruPartitionCoord coord, long count) {
+        private Token(MiruPartitionCoord coord, long count, long acquiredTimestamp) {
             this.coord = coord;
             this.count = count;
+            this.acquiredTimestamp = acquiredTimestamp;
         }
     }
 }
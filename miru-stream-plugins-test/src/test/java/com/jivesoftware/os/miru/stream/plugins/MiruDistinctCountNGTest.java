@@ -0,0 +1,176 @@
+package com.jivesoftware.os.miru.stream.plugins;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.miru.api.MiruActorId;
+import com.jivesoftware.os.miru.api.MiruBackingStorage;
+import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
+import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
+import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
+import com.jivesoftware.os.miru.api.base.MiruStreamId;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.query.filter.MiruAuthzExpression;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
+import com.jivesoftware.os.miru.bitmaps.roaring6.MiruBitmapsRoaring;
+import com.jivesoftware.os.miru.plugin.MiruProvider;
+import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
+import com.jivesoftware.os.miru.plugin.solution.MiruSolutionLogLevel;
+import com.jivesoftware.os.miru.plugin.solution.MiruTimeRange;
+import com.jivesoftware.os.miru.plugin.test.MiruPluginTestBootstrap;
+import com.jivesoftware.os.miru.service.MiruService;
+import com.jivesoftware.os.miru.stream.plugins.count.DistinctCount;
+import com.jivesoftware.os.miru.stream.plugins.count.DistinctCountAnswer;
+import com.jivesoftware.os.miru.stream.plugins.count.DistinctCountInjectable;
+import com.jivesoftware.os.miru.stream.plugins.count.DistinctCountQuery;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruDistinctCountNGTest {
+
+    private final MiruTenantId tenant1 = new MiruTenantId("tenant1".getBytes());
+    private final MiruPartitionId partitionId = MiruPartitionId.of(1);
+    private final MiruPartitionedActivityFactory partitionedActivityFactory = new MiruPartitionedActivityFactory();
+
+    private final int numberOfAuthors = 5;
+    private final int numberOfContainers = 20;
+    private final int numberOfTargets = 30;
+
+    private MiruService service;
+    private DistinctCountInjectable fromScratchInjectable;
+    private DistinctCountInjectable incrementalInjectable;
+    private DistinctCountInjectable overflowingInjectable;
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+        MiruFieldDefinition[] fieldDefinitions = new MiruFieldDefinition[] {
+            new MiruFieldDefinition(0, "container", MiruFieldDefinition.Type.singleTerm, MiruFieldDefinition.Prefix.NONE),
+            new MiruFieldDefinition(1, "target", MiruFieldDefinition.Type.singleTermIndexLatest, MiruFieldDefinition.Prefix.NONE),
+            new MiruFieldDefinition(2, "author", MiruFieldDefinition.Type.singleTerm, MiruFieldDefinition.Prefix.NONE)
+        };
+        MiruSchema miruSchema = new MiruSchema.Builder("test", 1)
+            .setFieldDefinitions(fieldDefinitions)
+            .build();
+
+        MiruProvider<MiruService> miruProvider = new MiruPluginTestBootstrap().bootstrap(tenant1, partitionId, new MiruHost("logicalName"),
+            miruSchema, MiruBackingStorage.disk, new MiruBitmapsRoaring(), Collections.emptyList());
+        this.service = miruProvider.getMiru(tenant1);
+
+        this.fromScratchInjectable = new DistinctCountInjectable(miruProvider, new DistinctCount());
+        this.incrementalInjectable = new DistinctCountInjectable(miruProvider, new DistinctCount(true, 1024 * 1024, 2d, 1_000));
+        this.overflowingInjectable = new DistinctCountInjectable(miruProvider, new DistinctCount(true, 1024 * 1024, 2d, 4));
+    }
+
+    @Test
+    public void testIncrementalMatchesFromScratch() throws Exception {
+        AtomicLong time = new AtomicLong(0);
+        Random rand = new Random(1234);
+        List<MiruPartitionedActivity> written = Lists.newArrayList();
+
+        writeActivities(100, time, rand, written);
+        int firstCollected = assertIncrementalMatches();
+        assertIncrementalMatches();
+
+        writeActivities(100, time, rand, written);
+        int secondCollected = assertIncrementalMatches();
+        assertTrue(secondCollected >= firstCollected);
+
+        List<MiruPartitionedActivity> removes = Lists.newArrayList();
+        for (int i = 0; i < written.size(); i += 3) {
+            MiruPartitionedActivity activity = written.get(i);
+            removes.add(partitionedActivityFactory.remove(1, partitionId, 1, activity.activity.get()));
+        }
+        service.writeToIndex(removes);
+        assertIncrementalMatches();
+
+        writeActivities(50, time, rand, written);
+        assertIncrementalMatches();
+    }
+
+    private void writeActivities(int count, AtomicLong time, Random rand, List<MiruPartitionedActivity> written) throws Exception {
+        for (int i = 0; i < count; i++) {
+            // skew containers so that the replay order by latest id differs from the order of first appearance
+            MiruPartitionedActivity activity = buildActivity(time.incrementAndGet(),
+                rand.nextInt(rand.nextBoolean() ? numberOfContainers : 3),
+                rand.nextInt(numberOfTargets),
+                rand.nextInt(numberOfAuthors));
+            service.writeToIndex(Collections.singletonList(activity));
+            written.add(activity);
+        }
+    }
+
+    /**
+     * @return the number of distincts collected by the unlimited primary query, which must be the same with and without incremental counts
+     */
+    private int assertIncrementalMatches() throws Exception {
+        MiruFilter authorFilter = new MiruFilter(MiruFilterOperation.or, false,
+            Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.primary, "author", "0", "1", "2")), null);
+        String[] targets = new String[numberOfTargets];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = String.valueOf(i);
+        }
+        MiruFilter latestTargetFilter = new MiruFilter(MiruFilterOperation.or, false,
+            Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.latest, "target", targets)), null);
+
+        int collected = -1;
+        for (MiruFilter constraintsFilter : Arrays.asList(MiruFilter.NO_FILTER, latestTargetFilter)) {
+            for (int desiredNumberOfDistincts : new int[] { 2, 5, 100 }) {
+                MiruRequest<DistinctCountQuery> request = request(authorFilter, constraintsFilter, desiredNumberOfDistincts);
+                DistinctCountAnswer expected = fromScratchInjectable.countCustomStream(request).answer;
+                assertEquals(incrementalInjectable.countCustomStream(request).answer, expected,
+                    "Incremental count for desired:" + desiredNumberOfDistincts + " constraints:" + constraintsFilter);
+                assertEquals(overflowingInjectable.countCustomStream(request).answer, expected,
+                    "Overflowed count for desired:" + desiredNumberOfDistincts + " constraints:" + constraintsFilter);
+                if (constraintsFilter == MiruFilter.NO_FILTER && desiredNumberOfDistincts == 100) {
+                    collected = expected.collectedDistincts;
+                }
+            }
+        }
+        return collected;
+    }
+
+    private MiruRequest<DistinctCountQuery> request(MiruFilter streamFilter, MiruFilter constraintsFilter, int desiredNumberOfDistincts) {
+        return new MiruRequest<>("test",
+            tenant1,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new DistinctCountQuery(
+                MiruStreamId.NULL,
+                null,
+                MiruTimeRange.ALL_TIME,
+                streamFilter,
+                constraintsFilter,
+                "container",
+                desiredNumberOfDistincts,
+                false),
+            MiruSolutionLogLevel.NONE);
+    }
+
+    private MiruPartitionedActivity buildActivity(long time, int container, int target, int author) {
+        Map<String, List<String>> fieldsValues = Maps.newHashMap();
+        fieldsValues.put("container", Collections.singletonList(String.valueOf(container)));
+        fieldsValues.put("target", Collections.singletonList(String.valueOf(target)));
+        fieldsValues.put("author", Collections.singletonList(String.valueOf(author)));
+        MiruActivity activity = new MiruActivity(tenant1, time, 0, false, new String[0], fieldsValues, Collections.emptyMap());
+        return partitionedActivityFactory.activity(1, partitionId, 1, activity);
+    }
+
+}
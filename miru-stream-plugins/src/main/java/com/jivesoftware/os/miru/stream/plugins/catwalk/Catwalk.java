@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.stream.plugins.catwalk;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -35,6 +36,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  *
@@ -44,11 +46,35 @@ public class Catwalk {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private final boolean verboseLogging;
+    private final ExecutorService gatherExecutor;
+    private final int defaultGatherThreads;
+    private final Map<String, Integer> gatherThreadsByCatwalkId;
 
     private final MiruAggregateUtil aggregateUtil = new MiruAggregateUtil();
 
-    public Catwalk(boolean verboseLogging) {
+    public Catwalk(boolean verboseLogging,
+        ExecutorService gatherExecutor,
+        int defaultGatherThreads,
+        Map<String, Integer> gatherThreadsByCatwalkId) {
         this.verboseLogging = verboseLogging;
+        this.gatherExecutor = gatherExecutor;
+        this.defaultGatherThreads = defaultGatherThreads;
+        this.gatherThreadsByCatwalkId = gatherThreadsByCatwalkId;
+    }
+
+    /**
+     * Parses per catwalk gather thread counts of the form {@code catwalkA:4,catwalkB:1}.
+     */
+    public static Map<String, Integer> parseGatherThreads(String gatherThreads) {
+        Map<String, Integer> threads = Maps.newHashMap();
+        for (String catwalkThreads : Splitter.on(',').omitEmptyStrings().trimResults().split(gatherThreads)) {
+            int index = catwalkThreads.lastIndexOf(':');
+            if (index <= 0) {
+                throw new IllegalArgumentException("Invalid catwalk gather threads: " + catwalkThreads);
+            }
+            threads.put(catwalkThreads.substring(0, index).trim(), Integer.parseInt(catwalkThreads.substring(index + 1).trim()));
+        }
+        return threads;
     }
 
     public interface ConsumeAnswers<BM extends IBM, IBM> {
@@ -102,6 +128,9 @@ public class Catwalk {
             }
         }
 
+        Integer catwalkGatherThreads = catwalkDefinition.catwalkId == null ? null : gatherThreadsByCatwalkId.get(catwalkDefinition.catwalkId);
+        int gatherThreads = catwalkGatherThreads != null ? catwalkGatherThreads : defaultGatherThreads;
+
         long[] modelCounts = new long[features.length];
         aggregateUtil.gatherFeatures(name,
             coord,
@@ -132,6 +161,8 @@ public class Catwalk {
                 }
                 return true;
             },
+            gatherExecutor,
+            gatherThreads,
             solutionLog,
             stackBuffer);
 
@@ -26,7 +26,12 @@ public class CatwalkPlugin implements MiruPlugin<CatwalkEndpoints, CatwalkInject
     public Collection<MiruEndpointInjectable<CatwalkInjectable>> getInjectables(MiruProvider<? extends Miru> miruProvider) {
 
         StrutConfig config = miruProvider.getConfig(StrutConfig.class);
-        Catwalk catwalk = new Catwalk(config.getVerboseLogging());
+        int gatherThreadPoolSize = config.getCatwalkGatherThreadPoolSize();
+        ExecutorService gatherExecutor = gatherThreadPoolSize <= 1 ? null : miruProvider.allocateThreadPool("catwalk-gather", gatherThreadPoolSize);
+        Catwalk catwalk = new Catwalk(config.getVerboseLogging(),
+            gatherExecutor,
+            gatherThreadPoolSize,
+            Catwalk.parseGatherThreads(config.getCatwalkGatherThreads()));
         ExecutorService catwalkExecutor = miruProvider.allocateThreadPool("catwalk-solver", config.getCatwalkSolverPoolSize());
 
         return Collections.singletonList(new MiruEndpointInjectable<>(
@@ -1,6 +1,8 @@
 package com.jivesoftware.os.miru.stream.plugins.count;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.jivesoftware.os.filer.io.api.StackBuffer;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
@@ -9,6 +11,8 @@ import com.jivesoftware.os.miru.api.base.MiruTermId;
 import com.jivesoftware.os.miru.api.field.MiruFieldType;
 import com.jivesoftware.os.miru.api.query.filter.MiruValue;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
+import com.jivesoftware.os.miru.plugin.cache.MiruIncrementalCacheIds;
+import com.jivesoftware.os.miru.plugin.cache.MiruPluginCacheProvider.LastIdCacheKeyValues;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
 import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.index.MiruFieldIndex;
@@ -16,6 +20,9 @@ import com.jivesoftware.os.miru.plugin.index.MiruTermComposer;
 import com.jivesoftware.os.miru.plugin.solution.MiruRequest;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -27,6 +34,33 @@ public class DistinctCount {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private static final byte COMPLETE = 1;
+    private static final byte OVERFLOWED = 2;
+
+    private final boolean incrementalEnabled;
+    private final long incrementalMaxHeapPressureInBytes;
+    private final double incrementalHashIndexLoadFactor;
+    private final int incrementalMaxDistincts;
+
+    public DistinctCount() {
+        this(false, 0, 0d, 0);
+    }
+
+    /**
+     * @param incrementalEnabled when true, the latest id of every distinct term in an answer is cached per partition along with the
+     * lastId it covers, and later queries only gather the terms above that lastId
+     * @param incrementalMaxDistincts answers with more distinct terms than this are always counted from scratch
+     */
+    public DistinctCount(boolean incrementalEnabled,
+        long incrementalMaxHeapPressureInBytes,
+        double incrementalHashIndexLoadFactor,
+        int incrementalMaxDistincts) {
+        this.incrementalEnabled = incrementalEnabled;
+        this.incrementalMaxHeapPressureInBytes = incrementalMaxHeapPressureInBytes;
+        this.incrementalHashIndexLoadFactor = incrementalHashIndexLoadFactor;
+        this.incrementalMaxDistincts = incrementalMaxDistincts;
+    }
+
     public <BM extends IBM, IBM> DistinctCountAnswer numberOfDistincts(String name,
         MiruBitmaps<BM, IBM> bitmaps,
         MiruRequestContext<BM, IBM, ?> requestContext,
@@ -34,6 +68,22 @@ public class DistinctCount {
         Optional<DistinctCountReport> lastReport,
         BM answer)
         throws Exception {
+        return numberOfDistincts(name, bitmaps, requestContext, request, lastReport, answer, null, -1);
+    }
+
+    /**
+     * @param canonicalQuery everything other than the field which decided the answer, or null to always count from scratch
+     * @param lastId the lastId to which the answer was masked
+     */
+    public <BM extends IBM, IBM> DistinctCountAnswer numberOfDistincts(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        MiruRequest<DistinctCountQuery> request,
+        Optional<DistinctCountReport> lastReport,
+        BM answer,
+        String canonicalQuery,
+        int lastId)
+        throws Exception {
 
         StackBuffer stackBuffer = new StackBuffer();
 
@@ -61,47 +111,78 @@ public class DistinctCount {
             MiruFieldIndex<BM, IBM> fieldIndex = requestContext.getFieldIndexProvider().getFieldIndex(MiruFieldType.primary);
 
             BitmapAndLastId<BM> container = new BitmapAndLastId<>();
-            for (MiruValue aggregateTerm : aggregateTerms) {
-                MiruTermId aggregateTermId = termComposer.compose(schema, fieldDefinition, stackBuffer, aggregateTerm.parts);
-                container.clear();
-                fieldIndex.get(name, fieldId, aggregateTermId).getIndex(container, stackBuffer);
-                if (!container.isSet()) {
-                    continue;
-                }
 
-                IBM termIndex = container.getBitmap();
-                bitmaps.inPlaceAndNot(answer, termIndex);
+            // the latest id is only a faithful proxy for the gather below when each activity has a single term
+            Map<MiruTermId, Integer> latestIds = null;
+            if (incrementalEnabled && canonicalQuery != null && fieldDefinition.type == MiruFieldDefinition.Type.singleTerm) {
+                latestIds = latestIds(name, bitmaps, requestContext, fieldIndex, fieldId, fieldDefinition, answer, canonicalQuery, lastId,
+                    stackBuffer);
             }
 
-            while (true) {
-                int lastSetBit = bitmaps.lastSetBit(answer);
-                log.trace("lastSetBit={}", lastSetBit);
-                if (lastSetBit < 0) {
-                    break;
+            if (latestIds != null) {
+                Set<MiruTermId> reportedTermIds = Sets.newHashSet();
+                for (MiruValue aggregateTerm : aggregateTerms) {
+                    reportedTermIds.add(termComposer.compose(schema, fieldDefinition, stackBuffer, aggregateTerm.parts));
                 }
-                MiruTermId[] fieldValues = requestContext.getActivityIndex().get(name, lastSetBit, fieldDefinition, stackBuffer);
-                log.trace("fieldValues={}", (Object) fieldValues);
-                if (fieldValues == null || fieldValues.length == 0) {
-                    // could make this a reusable buffer, but this is effectively an error case and would require 3 buffers
-                    BM removeUnknownField = bitmaps.createWithBits(lastSetBit);
-                    bitmaps.inPlaceAndNot(answer, removeUnknownField);
-
-                } else {
-                    MiruTermId aggregateTermId = fieldValues[0];
-                    MiruValue aggregateTerm = new MiruValue(termComposer.decompose(schema, fieldDefinition, stackBuffer, aggregateTermId));
+                List<Map.Entry<MiruTermId, Integer>> unreported = Lists.newArrayList();
+                for (Map.Entry<MiruTermId, Integer> entry : latestIds.entrySet()) {
+                    if (!reportedTermIds.contains(entry.getKey())) {
+                        unreported.add(entry);
+                    }
+                }
+                // the gather below visits terms in descending order of their latest id
+                unreported.sort((o1, o2) -> Integer.compare(o2.getValue(), o1.getValue()));
+                for (Map.Entry<MiruTermId, Integer> entry : unreported) {
+                    aggregateTerms.add(new MiruValue(termComposer.decompose(schema, fieldDefinition, stackBuffer, entry.getKey())));
+                    collectedDistincts++;
 
-                    aggregateTerms.add(aggregateTerm);
+                    if (collectedDistincts > request.query.desiredNumberOfDistincts) {
+                        break;
+                    }
+                }
+            } else {
+                for (MiruValue aggregateTerm : aggregateTerms) {
+                    MiruTermId aggregateTermId = termComposer.compose(schema, fieldDefinition, stackBuffer, aggregateTerm.parts);
                     container.clear();
                     fieldIndex.get(name, fieldId, aggregateTermId).getIndex(container, stackBuffer);
-                    checkState(container.isSet(), "Unable to load inverted index for aggregateTermId: %s", aggregateTermId);
-
-                    bitmaps.inPlaceAndNot(answer, container.getBitmap());
+                    if (!container.isSet()) {
+                        continue;
+                    }
 
-                    collectedDistincts++;
+                    IBM termIndex = container.getBitmap();
+                    bitmaps.inPlaceAndNot(answer, termIndex);
+                }
 
-                    if (collectedDistincts > request.query.desiredNumberOfDistincts) {
+                while (true) {
+                    int lastSetBit = bitmaps.lastSetBit(answer);
+                    log.trace("lastSetBit={}", lastSetBit);
+                    if (lastSetBit < 0) {
                         break;
                     }
+                    MiruTermId[] fieldValues = requestContext.getActivityIndex().get(name, lastSetBit, fieldDefinition, stackBuffer);
+                    log.trace("fieldValues={}", (Object) fieldValues);
+                    if (fieldValues == null || fieldValues.length == 0) {
+                        // could make this a reusable buffer, but this is effectively an error case and would require 3 buffers
+                        BM removeUnknownField = bitmaps.createWithBits(lastSetBit);
+                        bitmaps.inPlaceAndNot(answer, removeUnknownField);
+
+                    } else {
+                        MiruTermId aggregateTermId = fieldValues[0];
+                        MiruValue aggregateTerm = new MiruValue(termComposer.decompose(schema, fieldDefinition, stackBuffer, aggregateTermId));
+
+                        aggregateTerms.add(aggregateTerm);
+                        container.clear();
+                        fieldIndex.get(name, fieldId, aggregateTermId).getIndex(container, stackBuffer);
+                        checkState(container.isSet(), "Unable to load inverted index for aggregateTermId: %s", aggregateTermId);
+
+                        bitmaps.inPlaceAndNot(answer, container.getBitmap());
+
+                        collectedDistincts++;
+
+                        if (collectedDistincts > request.query.desiredNumberOfDistincts) {
+                            break;
+                        }
+                    }
                 }
             }
         }
@@ -112,4 +193,134 @@ public class DistinctCount {
         return result;
     }
 
+    /**
+     * @return the latest id of every distinct term in the answer, or null if there are too many to maintain
+     */
+    private <BM extends IBM, IBM> Map<MiruTermId, Integer> latestIds(String name,
+        MiruBitmaps<BM, IBM> bitmaps,
+        MiruRequestContext<BM, IBM, ?> requestContext,
+        MiruFieldIndex<BM, IBM> fieldIndex,
+        int fieldId,
+        MiruFieldDefinition fieldDefinition,
+        BM answer,
+        String canonicalQuery,
+        int lastId,
+        StackBuffer stackBuffer) throws Exception {
+
+        LastIdCacheKeyValues latestIdCache = requestContext.getCacheProvider().getLastIdKeyValues("distinct-count-latest", -1, false,
+            incrementalMaxHeapPressureInBytes, "cuckoo", incrementalHashIndexLoadFactor);
+        byte[] cacheId = MiruIncrementalCacheIds.cacheId(bitmaps, requestContext, canonicalQuery, stackBuffer);
+        byte[] key = MiruIncrementalCacheIds.termKey(fieldDefinition.name);
+
+        Map<MiruTermId, Integer> latestIds = Maps.newHashMap();
+        int[] cachedLastId = { -1 };
+        boolean[] overflowed = { false };
+        latestIdCache.get(cacheId, new byte[][] { key }, (index, value, valueLastId) -> {
+            if (value != null && valueLastId <= lastId) {
+                if (value.capacity() == 1 && value.get(0) == OVERFLOWED) {
+                    overflowed[0] = true;
+                    cachedLastId[0] = valueLastId;
+                } else if (readLatestIds(value, latestIds)) {
+                    cachedLastId[0] = valueLastId;
+                } else {
+                    log.warn("Ignored distinct count latest ids for cache:{} with invalid length {}", latestIdCache.name(), value.capacity());
+                    latestIds.clear();
+                }
+            }
+            return true;
+        }, stackBuffer);
+
+        if (overflowed[0]) {
+            log.inc("distinctCount>incremental>overflowed");
+            return null;
+        }
+        if (cachedLastId[0] == lastId) {
+            log.inc("distinctCount>incremental>current");
+            return latestIds;
+        }
+
+        BM delta = bitmaps.copy(answer);
+        if (cachedLastId[0] >= 0) {
+            bitmaps.inPlaceRemoveRange(delta, 0, cachedLastId[0] + 1);
+            log.inc("distinctCount>incremental>advanced");
+        } else {
+            log.inc("distinctCount>incremental>missed");
+        }
+
+        // same gather as a full count, but every term is visited and the ids are all newer than any cached
+        boolean complete = true;
+        BitmapAndLastId<BM> container = new BitmapAndLastId<>();
+        while (true) {
+            int lastSetBit = bitmaps.lastSetBit(delta);
+            if (lastSetBit < 0) {
+                break;
+            }
+            MiruTermId[] fieldValues = requestContext.getActivityIndex().get(name, lastSetBit, fieldDefinition, stackBuffer);
+            if (fieldValues == null || fieldValues.length == 0) {
+                BM removeUnknownField = bitmaps.createWithBits(lastSetBit);
+                bitmaps.inPlaceAndNot(delta, removeUnknownField);
+            } else {
+                MiruTermId aggregateTermId = fieldValues[0];
+                latestIds.put(aggregateTermId, lastSetBit);
+                if (latestIds.size() > incrementalMaxDistincts) {
+                    complete = false;
+                    break;
+                }
+
+                container.clear();
+                fieldIndex.get(name, fieldId, aggregateTermId).getIndex(container, stackBuffer);
+                checkState(container.isSet(), "Unable to load inverted index for aggregateTermId: %s", aggregateTermId);
+                bitmaps.inPlaceAndNot(delta, container.getBitmap());
+            }
+        }
+
+        byte[] value = complete ? writeLatestIds(latestIds) : new byte[] { OVERFLOWED };
+        latestIdCache.put(cacheId, false, false, stream -> stream.stream(key, value, lastId), stackBuffer);
+        return complete ? latestIds : null;
+    }
+
+    private static boolean readLatestIds(ByteBuffer value, Map<MiruTermId, Integer> latestIds) {
+        int capacity = value.capacity();
+        if (capacity < 5 || value.get(0) != COMPLETE) {
+            return false;
+        }
+        int count = value.getInt(1);
+        int offset = 5;
+        for (int i = 0; i < count; i++) {
+            if (offset + 8 > capacity) {
+                return false;
+            }
+            int latestId = value.getInt(offset);
+            int length = value.getInt(offset + 4);
+            offset += 8;
+            if (length < 0 || offset + length > capacity) {
+                return false;
+            }
+            byte[] termBytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                termBytes[j] = value.get(offset + j);
+            }
+            offset += length;
+            latestIds.put(new MiruTermId(termBytes), latestId);
+        }
+        return offset == capacity;
+    }
+
+    private static byte[] writeLatestIds(Map<MiruTermId, Integer> latestIds) {
+        int length = 5;
+        for (MiruTermId termId : latestIds.keySet()) {
+            length += 8 + termId.length();
+        }
+        ByteBuffer value = ByteBuffer.allocate(length);
+        value.put(COMPLETE);
+        value.putInt(latestIds.size());
+        for (Map.Entry<MiruTermId, Integer> entry : latestIds.entrySet()) {
+            byte[] termBytes = entry.getKey().getBytes();
+            value.putInt(entry.getValue());
+            value.putInt(termBytes.length);
+            value.put(termBytes);
+        }
+        return value.array();
+    }
+
 }
@@ -0,0 +1,30 @@
+package com.jivesoftware.os.miru.stream.plugins.count;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
+import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
+
+/**
+ *
+ */
+public interface DistinctCountConfig extends Config {
+
+    /**
+     * Cached latest ids are keyed by the absolute time range of the query, so only repeated counts over a fixed range are
+     * served incrementally. Sliding windows such as "the last 24 hours" miss on every poll and are always counted from scratch.
+     */
+    @BooleanDefault(false)
+    boolean getIncrementalEnabled();
+
+    @LongDefault(1024 * 1024)
+    long getIncrementalMaxHeapPressureInBytes();
+
+    @DoubleDefault(2d)
+    double getIncrementalHashIndexLoadFactor();
+
+    @IntDefault(10_000)
+    int getIncrementalMaxDistincts();
+
+}
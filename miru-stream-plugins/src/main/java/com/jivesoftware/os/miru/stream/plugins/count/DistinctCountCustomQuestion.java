@@ -12,6 +12,7 @@ import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
 import com.jivesoftware.os.miru.plugin.backfill.MiruJustInTimeBackfillerizer;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmaps;
 import com.jivesoftware.os.miru.plugin.bitmap.MiruBitmapsDebug;
+import com.jivesoftware.os.miru.plugin.cache.MiruIncrementalCacheIds;
 import com.jivesoftware.os.miru.plugin.context.MiruRequestContext;
 import com.jivesoftware.os.miru.plugin.index.BitmapAndLastId;
 import com.jivesoftware.os.miru.plugin.solution.MiruAggregateUtil;
@@ -92,9 +93,10 @@ public class DistinctCountCustomQuestion implements Question<DistinctCountQuery,
         // 4) Mask out anything that hasn't made it into the activityIndex yet, or that has been removed from the index
         ands.add(bitmaps.buildIndexMask(lastId, context.getRemovalIndex(), null, stackBuffer));
 
-        if (request.query.streamId != null
+        boolean unreadOnly = request.query.streamId != null
             && !MiruStreamId.NULL.equals(request.query.streamId)
-            && request.query.unreadOnly) {
+            && request.query.unreadOnly;
+        if (unreadOnly) {
             if (request.query.suppressUnreadFilter != null && handle.canBackfill()) {
                 backfillerizer.backfillUnread(request.name,
                     bitmaps,
@@ -123,7 +125,15 @@ public class DistinctCountCustomQuestion implements Question<DistinctCountQuery,
         bitmapsDebug.debug(solutionLog, bitmaps, "ands", ands);
         BM answer = bitmaps.and(ands);
 
-        return new MiruPartitionResponse<>(distinctCount.numberOfDistincts("distinctCountCustom", bitmaps, context, request, report, answer),
+        // unread state and non-primary field indexes change for old ids, so only answers without them can be maintained incrementally
+        boolean incremental = !unreadOnly && MiruIncrementalCacheIds.isIncrementalFilter(request.query.streamFilter, request.query.constraintsFilter);
+        String canonicalQuery = !incremental ? null : "distinctCountCustom"
+            + '|' + request.authzExpression
+            + '|' + request.query.timeRange
+            + '|' + request.query.streamFilter
+            + '|' + request.query.constraintsFilter;
+        return new MiruPartitionResponse<>(
+            distinctCount.numberOfDistincts("distinctCountCustom", bitmaps, context, request, report, answer, canonicalQuery, lastId),
             solutionLog.asList());
     }
 
@@ -23,7 +23,11 @@ public class DistinctCountPlugin implements MiruPlugin<DistinctCountEndpoints, D
     @Override
     public Collection<MiruEndpointInjectable<DistinctCountInjectable>> getInjectables(MiruProvider<? extends Miru> miruProvider) {
 
-        DistinctCount distinctCount = new DistinctCount();
+        DistinctCountConfig config = miruProvider.getConfig(DistinctCountConfig.class);
+        DistinctCount distinctCount = new DistinctCount(config.getIncrementalEnabled(),
+            config.getIncrementalMaxHeapPressureInBytes(),
+            config.getIncrementalHashIndexLoadFactor(),
+            config.getIncrementalMaxDistincts());
         return Collections.singletonList(new MiruEndpointInjectable<>(
             DistinctCountInjectable.class,
             new DistinctCountInjectable(miruProvider, distinctCount)
@@ -49,6 +49,15 @@ public interface StrutConfig extends Config {
     @IntDefault(4)
     int getCatwalkSolverPoolSize();
 
+    @IntDefault(1)
+    int getCatwalkGatherThreadPoolSize();
+
+    /**
+     * Per catwalk gather threads, e.g. "catwalkA:4,catwalkB:2". Unlisted catwalks use the whole gather pool.
+     */
+    @StringDefault("")
+    String getCatwalkGatherThreads();
+
     @BooleanDefault(false)
     boolean getAllowImmediateStrutRescore();
 
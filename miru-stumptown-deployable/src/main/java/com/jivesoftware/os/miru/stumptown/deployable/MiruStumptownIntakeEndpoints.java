@@ -1,5 +1,6 @@
 package com.jivesoftware.os.miru.stumptown.deployable;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Objects;
 import com.jivesoftware.os.filer.queue.guaranteed.delivery.GuaranteedDeliveryService;
@@ -16,12 +17,15 @@ import javax.ws.rs.Path;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.xerial.snappy.Snappy;
 
 @Singleton
 @Path("/miru/stumptown")
 public class MiruStumptownIntakeEndpoints {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final TypeReference<List<MiruLogEvent>> LOG_EVENTS = new TypeReference<List<MiruLogEvent>>() {
+    };
 
     private final IngressGuaranteedDeliveryQueueProvider deliveryQueueProvider;
     private final ObjectMapper mapper;
@@ -35,6 +39,24 @@ public class MiruStumptownIntakeEndpoints {
     @Path("/intake")
     @Consumes(MediaType.APPLICATION_JSON)
     public Response intake(List<MiruLogEvent> logEvents) {
+        return ingress(logEvents);
+    }
+
+    @POST
+    @Path("/intake/snappy")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public Response intakeSnappy(byte[] rawBytes) {
+        List<MiruLogEvent> logEvents;
+        try {
+            logEvents = mapper.readValue(Snappy.uncompress(rawBytes), LOG_EVENTS);
+        } catch (Throwable t) {
+            LOG.error("Error decoding snappy intake of {} bytes", new Object[] { rawBytes.length }, t);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return ingress(logEvents);
+    }
+
+    private Response ingress(List<MiruLogEvent> logEvents) {
         try {
             for (MiruLogEvent logEvent : logEvents) {
                 LOG.debug("host:{} service:{} instance:{} message:{}",
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.miru.stumptown.plugins;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.miru.analytics.plugins.analytics.Analytics;
 import com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsAnswer;
@@ -10,6 +11,7 @@ import com.jivesoftware.os.miru.analytics.plugins.analytics.AnalyticsQueryScoreS
 import com.jivesoftware.os.miru.api.MiruActorId;
 import com.jivesoftware.os.miru.api.MiruBackingStorage;
 import com.jivesoftware.os.miru.api.MiruHost;
+import com.jivesoftware.os.miru.api.activity.MiruActivity;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.schema.MiruFieldDefinition;
 import com.jivesoftware.os.miru.api.activity.schema.MiruSchema;
@@ -29,12 +31,15 @@ import com.jivesoftware.os.miru.plugin.test.MiruPluginTestBootstrap;
 import com.jivesoftware.os.miru.service.MiruService;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.testng.Assert.assertEquals;
+
 /**
  * @author jonathan
  */
@@ -57,12 +62,13 @@ public class MiruStumptownNGTest {
     MiruHost miruHost = new MiruHost("logicalName");
     ActivityUtil util = new ActivityUtil();
 
+    MiruProvider<MiruService> miruProvider;
     MiruService service;
     AnalyticsInjectable injectable;
 
     @BeforeMethod
     public void setUpMethod() throws Exception {
-        MiruProvider<MiruService> miruProvider = new MiruPluginTestBootstrap().bootstrap(tenant1, partitionId, miruHost,
+        this.miruProvider = new MiruPluginTestBootstrap().bootstrap(tenant1, partitionId, miruHost,
             miruSchema, MiruBackingStorage.disk, new MiruBitmapsRoaring(), Collections.emptyList());
 
         this.service = miruProvider.getMiru(tenant1);
@@ -140,4 +146,39 @@ public class MiruStumptownNGTest {
 
     }
 
+    @Test
+    public void testTailResults() throws Exception {
+        StumptownInjectable stumptownInjectable = new StumptownInjectable(miruProvider, new Stumptown(miruProvider));
+        SnowflakeIdPacker snowflakeIdPacker = new SnowflakeIdPacker();
+        long smallestTime = snowflakeIdPacker.pack(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1), 0, 0);
+        long interval = snowflakeIdPacker.pack(1_000, 0, 0);
+
+        List<Long> evenTimes = Lists.newArrayList();
+        for (int i = 0; i < 1_000; i++) {
+            long activityTime = smallestTime + i * interval;
+            String user = (i % 2 == 0) ? "even" : "odd";
+            service.writeToIndex(Collections.singletonList(util.viewActivity(tenant1, partitionId, activityTime, user, String.valueOf(i))));
+            if (i % 2 == 0) {
+                evenTimes.add(activityTime);
+            }
+        }
+
+        MiruFilter filter = new MiruFilter(MiruFilterOperation.or, false,
+            Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.primary, "user", "even")), null);
+        MiruResponse<StumptownAnswer> response = stumptownInjectable.score(new MiruRequest<>("test",
+            tenant1,
+            MiruActorId.NOT_PROVIDED,
+            MiruAuthzExpression.NOT_PROVIDED,
+            new StumptownQuery(new MiruTimeRange(smallestTime, smallestTime + 1_000 * interval), 4, 5, MiruFilter.NO_FILTER,
+                ImmutableMap.of("even", filter)),
+            MiruSolutionLogLevel.NONE));
+
+        // only the tail of the answer is hydrated, most recent first
+        List<MiruActivity> results = response.answer.waveforms.get("even").results;
+        assertEquals(results.size(), 5);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).time, (long) evenTimes.get(evenTimes.size() - 1 - i));
+        }
+    }
+
 }
@@ -18,7 +18,7 @@ import com.jivesoftware.os.miru.plugin.index.TimeVersionRealtime;
 import com.jivesoftware.os.miru.stumptown.plugins.StumptownAnswer.Waveform;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,6 +28,10 @@ public class Stumptown {
 
     private static final MetricLogger log = MetricLoggerFactory.getLogger();
 
+    private static final String[] NO_AUTHZ = new String[0];
+    private static final MiruTermId[][] NO_FIELDS = new MiruTermId[0][];
+    private static final MiruIBA[][] NO_PROPS = new MiruIBA[0][];
+
     private final MiruProvider<? extends Miru> miruProvider;
 
     public Stumptown(MiruProvider<? extends Miru> miruProvider) {
@@ -50,20 +54,30 @@ public class Stumptown {
         MiruActivityInternExtern internExtern = miruProvider.getActivityInternExtern(tenantId);
         MiruSchema schema = requestContext.getSchema();
 
-        List<MiruActivity> results = Lists.newArrayListWithCapacity(desiredNumberOfResults);
-        long cardinality = bitmaps.cardinality(answer);
-        MiruIntIterator iter = bitmaps.intIterator(answer);
-        for (long i = 0; i < cardinality && iter.hasNext(); i++) {
-            int index = iter.next();
-            if (i > (cardinality - 1 - desiredNumberOfResults)) {
-                //TODO formalize gathering of fields/terms
-                TimeVersionRealtime tvr = requestContext.getActivityIndex().getTimeVersionRealtime(name, index, stackBuffer);
-                MiruInternalActivity activity = new MiruInternalActivity(tenantId, tvr.timestamp, tvr.version, tvr.realtimeDelivery, new String[0],
-                    new MiruTermId[0][], new MiruIBA[0][]);
-                results.add(internExtern.extern(activity, schema, stackBuffer));
+        // walk back from the tail so the cost is bounded by the number of results rather than the size of the answer
+        int[] ids = new int[(int) Math.max(Math.min(desiredNumberOfResults, bitmaps.cardinality(answer)), 0)];
+        int count = 0;
+        MiruIntIterator iter = bitmaps.descendingIntIterator(answer);
+        while (count < ids.length && iter.hasNext()) {
+            ids[count++] = iter.next();
+        }
+        if (count < ids.length) {
+            ids = Arrays.copyOf(ids, count);
+        }
+
+        // chronologically descending (for proper alignment when merging/appending older partitions)
+        List<MiruActivity> results = Lists.newArrayListWithCapacity(ids.length);
+        if (ids.length > 0) {
+            TimeVersionRealtime[] tvrs = requestContext.getActivityIndex().getAllTimeVersionRealtime(name, ids, stackBuffer);
+            for (TimeVersionRealtime tvr : tvrs) {
+                if (tvr != null) {
+                    //TODO formalize gathering of fields/terms
+                    MiruInternalActivity activity = new MiruInternalActivity(tenantId, tvr.timestamp, tvr.version, tvr.realtimeDelivery, NO_AUTHZ,
+                        NO_FIELDS, NO_PROPS);
+                    results.add(internExtern.extern(activity, schema, stackBuffer));
+                }
             }
         }
-        Collections.reverse(results); // chronologically descending (for proper alignment when merging/appending older partitions)
 
         long[] waveform = new long[indexes.length - 1];
         bitmaps.boundedCardinalities(answer, new int[][] { indexes }, new long[][] { waveform });
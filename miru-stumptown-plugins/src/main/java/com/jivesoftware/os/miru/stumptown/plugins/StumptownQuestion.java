@@ -125,7 +125,7 @@ public class StumptownQuestion implements Question<StumptownQuery, StumptownAnsw
             if (closestId < 0) {
                 closestId = -(closestId + 1); // handle negative "theoretical insertion" index
             }
-            indexes[i] = timeIndex.getClosestId(currentTime, stackBuffer);
+            indexes[i] = closestId;
             currentTime += segmentDuration;
         }
 
@@ -40,6 +40,9 @@ public interface MiruSyncConfig extends Config {
     @IntDefault(10_000)
     int getCopyBatchSize();
 
+    @IntDefault(4)
+    int getCopyFetchThreadCount();
+
     @StringDefault("")
     String getSyncLoopback();
 
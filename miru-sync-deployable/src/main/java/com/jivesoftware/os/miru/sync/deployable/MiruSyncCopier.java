@@ -1,6 +1,8 @@
 package com.jivesoftware.os.miru.sync.deployable;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.jivesoftware.os.miru.api.MiruStats;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -12,6 +14,10 @@ import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.commons.lang.mutable.MutableLong;
 
 /**
  *
@@ -20,16 +26,37 @@ public class MiruSyncCopier<C extends MiruCursor<C, S>, S extends MiruSipCursor<
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    public interface CursorSeeker<C> {
+
+        /**
+         * @return a cursor from which the WAL streams no activity at or before the given timestamp that it would stream after it,
+         * or null if the WAL cannot seek by timestamp
+         */
+        C seek(long afterTimestamp);
+    }
+
+    private final MiruStats stats;
     private final MiruWALClient<C, S> walClient;
     private final int batchSize;
     private final C defaultCursor;
+    private final CursorSeeker<C> cursorSeeker;
     private final Class<C> cursorClass;
+    private final ExecutorService fetchExecutor;
 
-    public MiruSyncCopier(MiruWALClient<C, S> walClient, int batchSize, C defaultCursor, Class<C> cursorClass) {
+    public MiruSyncCopier(MiruStats stats,
+        MiruWALClient<C, S> walClient,
+        int batchSize,
+        C defaultCursor,
+        CursorSeeker<C> cursorSeeker,
+        Class<C> cursorClass,
+        ExecutorService fetchExecutor) {
+        this.stats = stats;
         this.walClient = walClient;
         this.batchSize = batchSize;
         this.defaultCursor = defaultCursor;
+        this.cursorSeeker = cursorSeeker;
         this.cursorClass = cursorClass;
+        this.fetchExecutor = fetchExecutor;
     }
 
     public int copyLocal(MiruTenantId fromTenantId,
@@ -38,46 +65,110 @@ public class MiruSyncCopier<C extends MiruCursor<C, S>, S extends MiruSipCursor<
         MiruPartitionId toPartitionId,
         long fromTimestamp) throws Exception {
 
-        C cursor = defaultCursor;
+        long start = System.currentTimeMillis();
+        C cursor = cursorSeeker.seek(fromTimestamp);
+        boolean seeked = cursor != null;
+        if (!seeked) {
+            cursor = defaultCursor;
+        }
+
         int copied = 0;
+        long bytes = 0;
+        long fetchWaitMillis = 0;
         boolean started = false;
-        while (true) {
-            StreamBatch<MiruWALEntry, C> batch = walClient.getActivity(fromTenantId, fromPartitionId, cursor, batchSize, -1, null);
-            int activityTypes = 0;
-            if (batch.activities != null && !batch.activities.isEmpty()) {
-                List<MiruPartitionedActivity> copyOfActivities = Lists.newArrayListWithCapacity(batch.activities.size());
-                for (MiruWALEntry entry : batch.activities) {
-                    MiruPartitionedActivity activity = entry.activity;
-                    if (activity.type.isActivityType()) {
-                        activityTypes++;
-                        if (activity.timestamp > fromTimestamp) {
-                            started = true;
+        // the next batch is fetched while the current batch is written
+        Future<FetchedBatch> next = fetch(fromTenantId, fromPartitionId, cursor);
+        try {
+            while (true) {
+                long waitStart = System.currentTimeMillis();
+                FetchedBatch fetched;
+                try {
+                    fetched = next.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), Exception.class);
+                    throw e;
+                } finally {
+                    next = null;
+                }
+                fetchWaitMillis += System.currentTimeMillis() - waitStart;
+                bytes += fetched.bytes;
+
+                StreamBatch<MiruWALEntry, C> batch = fetched.batch;
+                int activityTypes = 0;
+                List<MiruPartitionedActivity> copyOfActivities = null;
+                if (batch.activities != null && !batch.activities.isEmpty()) {
+                    stats.ingressed("copy/local/bytes", fetched.bytes, fetched.latency);
+                    stats.ingressed("copy/local/count", batch.activities.size(), fetched.latency);
+
+                    copyOfActivities = Lists.newArrayListWithCapacity(batch.activities.size());
+                    for (MiruWALEntry entry : batch.activities) {
+                        MiruPartitionedActivity activity = entry.activity;
+                        if (activity.type.isActivityType()) {
+                            activityTypes++;
+                            if (activity.timestamp > fromTimestamp) {
+                                started = true;
+                            }
                         }
-                    }
 
-                    if (started) {
-                        // hacky use of fromJson()
-                        copyOfActivities.add(MiruPartitionedActivity.fromJson(activity.type,
-                            activity.writerId,
-                            toPartitionId.getId(),
-                            toTenantId.getBytes(),
-                            activity.index,
-                            activity.timestamp,
-                            activity.clockTimestamp,
-                            activity.activity.orNull(),
-                            activity.readEvent.orNull()));
+                        if (started) {
+                            // hacky use of fromJson()
+                            copyOfActivities.add(MiruPartitionedActivity.fromJson(activity.type,
+                                activity.writerId,
+                                toPartitionId.getId(),
+                                toTenantId.getBytes(),
+                                activity.index,
+                                activity.timestamp,
+                                activity.clockTimestamp,
+                                activity.activity.orNull(),
+                                activity.readEvent.orNull()));
+                        }
                     }
+                    cursor = batch.cursor;
                 }
+                if (activityTypes == 0) {
+                    break;
+                }
+
+                next = fetch(fromTenantId, fromPartitionId, cursor);
                 if (!copyOfActivities.isEmpty()) {
+                    long writeStart = System.currentTimeMillis();
                     walClient.writeActivity(toTenantId, toPartitionId, copyOfActivities);
+                    stats.egressed("copy/local/count", copyOfActivities.size(), System.currentTimeMillis() - writeStart);
                     copied += copyOfActivities.size();
                 }
-                cursor = batch.cursor;
             }
-            if (activityTypes == 0) {
-                break;
+        } finally {
+            if (next != null) {
+                next.cancel(true);
             }
         }
+
+        long elapsed = System.currentTimeMillis() - start;
+        LOG.info("Copied {} activities and {} bytes from {} {} to {} {} after {} in {}ms at {}/sec, seeked:{} waited on fetch:{}ms",
+            copied, bytes, fromTenantId, fromPartitionId, toTenantId, toPartitionId, fromTimestamp, elapsed,
+            elapsed > 0 ? copied * 1_000L / elapsed : copied, seeked, fetchWaitMillis);
         return copied;
     }
+
+    private Future<FetchedBatch> fetch(MiruTenantId tenantId, MiruPartitionId partitionId, C cursor) {
+        return fetchExecutor.submit(() -> {
+            MutableLong bytesCount = new MutableLong();
+            long start = System.currentTimeMillis();
+            StreamBatch<MiruWALEntry, C> batch = walClient.getActivity(tenantId, partitionId, cursor, batchSize, -1, bytesCount);
+            return new FetchedBatch(batch, bytesCount.longValue(), System.currentTimeMillis() - start);
+        });
+    }
+
+    private class FetchedBatch {
+
+        private final StreamBatch<MiruWALEntry, C> batch;
+        private final long bytes;
+        private final long latency;
+
+        private FetchedBatch(StreamBatch<MiruWALEntry, C> batch, long bytes, long latency) {
+            this.batch = batch;
+            this.bytes = bytes;
+            this.latency = latency;
+        }
+    }
 }
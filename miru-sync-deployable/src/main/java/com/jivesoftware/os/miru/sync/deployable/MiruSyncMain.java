@@ -39,6 +39,7 @@ import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import com.jivesoftware.os.miru.api.MiruStats;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.sync.ActivityReadEventConverter;
 import com.jivesoftware.os.miru.api.topology.MiruClusterClient;
@@ -394,6 +395,7 @@ public class MiruSyncMain {
             MiruWALConfig walConfig = deployable.config(MiruWALConfig.class);
             MiruSyncReceiver<?, ?> syncReceiver;
             MiruSyncCopier<?, ?> syncCopier;
+            ExecutorService copyFetchExecutor = deployable.newBoundedExecutor(syncConfig.getCopyFetchThreadCount(), "sync-copy-fetch");
             MiruSyncSenders<?, ?> syncSenders = null;
 
             boolean syncLoopback = false;
@@ -419,7 +421,16 @@ public class MiruSyncMain {
                     10_000);
 
                 // do not remove cast; jenkins will fail to compile
-                syncCopier = (MiruSyncCopier) new MiruSyncCopier<>(rcvsWALClient, syncConfig.getCopyBatchSize(), RCVSCursor.INITIAL, RCVSCursor.class);
+                syncCopier = (MiruSyncCopier) new MiruSyncCopier<>(miruStats,
+                    rcvsWALClient,
+                    syncConfig.getCopyBatchSize(),
+                    RCVSCursor.INITIAL,
+                    afterTimestamp -> new RCVSCursor(MiruPartitionedActivity.Type.ACTIVITY.getSort(),
+                        afterTimestamp == Long.MAX_VALUE ? afterTimestamp : afterTimestamp + 1,
+                        false,
+                        null),
+                    RCVSCursor.class,
+                    copyFetchExecutor);
 
                 MiruSyncReceiver<RCVSCursor, RCVSSipCursor> rcvsMiruSyncReceiver = new MiruSyncReceiver<>(rcvsWALClient,
                     writerHttpClient,
@@ -484,7 +495,14 @@ public class MiruSyncMain {
                     walClientSickThreads,
                     10_000);
 
-                syncCopier = (MiruSyncCopier) new MiruSyncCopier<>(amzaWALClient, syncConfig.getCopyBatchSize(), null, AmzaCursor.class);
+                // amza cursors are transaction ids, so copies scan from the start of the partition
+                syncCopier = (MiruSyncCopier) new MiruSyncCopier<>(miruStats,
+                    amzaWALClient,
+                    syncConfig.getCopyBatchSize(),
+                    null,
+                    afterTimestamp -> null,
+                    AmzaCursor.class,
+                    copyFetchExecutor);
 
                 MiruSyncReceiver<AmzaCursor, AmzaSipCursor> amzaMiruSyncReceiver = new MiruSyncReceiver<>(amzaWALClient,
                     writerHttpClient,
@@ -7,10 +7,13 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.CountingInputStream;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
 import com.jivesoftware.os.miru.api.activity.StreamIdPartitionedActivities;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
 import com.jivesoftware.os.miru.api.activity.TimeAndVersion;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -18,16 +21,20 @@ import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALChanges;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALFrames;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import com.jivesoftware.os.routing.bird.health.checkers.SickThreads;
 import com.jivesoftware.os.routing.bird.http.client.ConnectionDescriptorSelectiveStrategy;
 import com.jivesoftware.os.routing.bird.http.client.HttpClient;
 import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
 import com.jivesoftware.os.routing.bird.http.client.HttpResponseMapper;
+import com.jivesoftware.os.routing.bird.http.client.HttpStreamResponse;
 import com.jivesoftware.os.routing.bird.http.client.TailAtScaleStrategy;
 import com.jivesoftware.os.routing.bird.http.client.TenantAwareHttpClient;
 import com.jivesoftware.os.routing.bird.shared.ClientCall;
@@ -35,7 +42,11 @@ import com.jivesoftware.os.routing.bird.shared.ClientCall.ClientResponse;
 import com.jivesoftware.os.routing.bird.shared.HostPort;
 import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import com.jivesoftware.os.routing.bird.shared.NextClientStrategy;
+import java.io.BufferedInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -48,6 +59,7 @@ import org.apache.http.HttpStatus;
 public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCursor> {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
 
     private final String routingTenantId;
     private final TenantAwareHttpClient<String> walClient;
@@ -59,9 +71,13 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
     private final HttpResponseMapper responseMapper;
     private final SickThreads sickThreads;
     private final long sleepOnFailureMillis;
+    private final boolean binaryActivityTransport;
+    private final MiruWALFrames walFrames;
     private final Cache<TenantRoutingGroup<?>, NextClientStrategy> tenantRoutingCache;
 
     private final Map<MiruTenantId, NextClientStrategy> tenantNextClientStrategy = Maps.newConcurrentMap();
+    private final Set<HostPort> changeFeedHosts = Sets.newConcurrentHashSet();
+    private final Map<TenantAndPartition, List<HostPort>> changeFeedRoutes = Maps.newConcurrentMap();
 
     public AmzaHttpWALClient(String routingTenantId,
         TenantAwareHttpClient<String> walClient,
@@ -72,6 +88,21 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         ObjectMapper requestMapper,
         HttpResponseMapper responseMapper,
         SickThreads sickThreads, long sleepOnFailureMillis) {
+        this(routingTenantId, walClient, tasExecutors, tasWindowSize, tasPercentile, tasInitialSLAMillis, requestMapper, responseMapper, sickThreads,
+            sleepOnFailureMillis, false);
+    }
+
+    public AmzaHttpWALClient(String routingTenantId,
+        TenantAwareHttpClient<String> walClient,
+        ExecutorService tasExecutors,
+        int tasWindowSize,
+        float tasPercentile,
+        long tasInitialSLAMillis,
+        ObjectMapper requestMapper,
+        HttpResponseMapper responseMapper,
+        SickThreads sickThreads,
+        long sleepOnFailureMillis,
+        boolean binaryActivityTransport) {
 
         this.routingTenantId = routingTenantId;
         this.walClient = walClient;
@@ -83,6 +114,8 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         this.responseMapper = responseMapper;
         this.sickThreads = sickThreads;
         this.sleepOnFailureMillis = sleepOnFailureMillis;
+        this.binaryActivityTransport = binaryActivityTransport;
+        this.walFrames = new MiruWALFrames(requestMapper, 1_000); // frame size is chosen by the writer
         this.tenantRoutingCache = CacheBuilder.newBuilder()
             .maximumSize(50_000) //TODO config
             .expireAfterWrite(5, TimeUnit.MINUTES) //TODO config
@@ -247,7 +280,16 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
             while (true) {
                 try {
                     @SuppressWarnings("unchecked")
-                    StreamBatch<MiruWALEntry, AmzaSipCursor> response = sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
+                    StreamBatch<MiruWALEntry, AmzaSipCursor> response = binaryActivityTransport
+                        ? sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
+                        "sipActivityBinary",
+                        client -> extractFrames(
+                            client.streamingPost("/miru/wal/amza/sip/activity/binary/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize,
+                                jsonCursor, null),
+                            MiruWALFrames.SIP_CURSOR_CODEC,
+                            "sip>activity",
+                            null))
+                        : sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
                         "sipActivity",
                         client -> extract(
                             client.postJson("/miru/wal/amza/sip/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize, jsonCursor,
@@ -271,6 +313,33 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         }
     }
 
+    @Override
+    public boolean supportsChangeFeed() {
+        return true;
+    }
+
+    @Override
+    public List<HostPort> getChangeFeedHosts() throws Exception {
+        return Lists.newArrayList(changeFeedHosts);
+    }
+
+    @Override
+    public List<HostPort> getChangeFeedHosts(MiruTenantId tenantId, MiruPartitionId partitionId) {
+        List<HostPort> hosts = changeFeedRoutes.get(new TenantAndPartition(tenantId, partitionId));
+        return hosts != null ? hosts : Collections.emptyList();
+    }
+
+    @Override
+    public MiruWALChanges pollChanges(HostPort host, long instanceId, long sinceSequence, long timeoutMillis) throws Exception {
+        return walClient.call(routingTenantId,
+            new ConnectionDescriptorSelectiveStrategy(new HostPort[] { host }),
+            "pollChanges",
+            client -> {
+                HttpResponse httpResponse = client.get("/miru/wal/amza/changes/" + instanceId + "/" + sinceSequence + "/" + timeoutMillis, null);
+                return new ClientResponse<>(responseMapper.extractResultFromResponse(httpResponse, MiruWALChanges.class, null), true);
+            });
+    }
+
     @Override
     public long getActivityCount(MiruTenantId tenantId, MiruPartitionId partitionId) throws Exception {
         try {
@@ -308,12 +377,18 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         long stopAtTimestamp,
         MutableLong bytesCount) throws Exception {
         try {
-            String endpoint = "/miru/wal/amza/activity/" + tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize + "/" + stopAtTimestamp;
+            String path = tenantId.toString() + "/" + partitionId.getId() + "/" + batchSize + "/" + stopAtTimestamp;
+            String endpoint = "/miru/wal/amza/activity/" + path;
+            String binaryEndpoint = "/miru/wal/amza/activity/binary/" + path;
             String jsonCursor = requestMapper.writeValueAsString(cursor);
             while (true) {
                 try {
                     @SuppressWarnings("unchecked")
-                    StreamBatch<MiruWALEntry, AmzaCursor> response = sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
+                    StreamBatch<MiruWALEntry, AmzaCursor> response = binaryActivityTransport
+                        ? sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
+                        "getActivityBinary",
+                        client -> extractFrames(client.streamingPost(binaryEndpoint, jsonCursor, null), MiruWALFrames.CURSOR_CODEC, "activity", bytesCount))
+                        : sendWithTenantPartition(RoutingGroupType.activity, tenantId, partitionId, false,
                         "getActivity",
                         client -> {
                             HttpResponse httpResponse = client.postJson(endpoint, jsonCursor, null);
@@ -403,6 +478,10 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
                         if (hostPorts == null || hostPorts.length == 0) {
                             throw new MiruRouteUnavailableException("No route available for tenant " + tenantId + " partition " + partitionId);
                         }
+                        if (routingGroupType == RoutingGroupType.activity) {
+                            Collections.addAll(changeFeedHosts, hostPorts);
+                            changeFeedRoutes.put(new TenantAndPartition(tenantId, partitionId), Arrays.asList(hostPorts));
+                        }
                         return new ConnectionDescriptorSelectiveStrategy(hostPorts);
                     });
                 SendResult<R> sendResult = walClient.call(routingTenantId, strategy, family, call);
@@ -503,6 +582,41 @@ public class AmzaHttpWALClient implements MiruWALClient<AmzaCursor, AmzaSipCurso
         return new ClientResponse<>(new SendResult<>(result, true, false), true);
     }
 
+    private <C> ClientResponse<SendResult<StreamBatch<MiruWALEntry, C>>> extractFrames(HttpStreamResponse response,
+        MiruWALFrames.CursorCodec<C> cursorCodec,
+        String metricPrefix,
+        MutableLong bytesCount) {
+        try {
+            if (response.getStatusCode() == HttpStatus.SC_NOT_FOUND || response.getStatusCode() == HttpStatus.SC_CONFLICT) {
+                return new ClientResponse<>(new SendResult<>(null, false, false), true);
+            } else if (!responseMapper.isSuccessStatusCode(response.getStatusCode())) {
+                return new ClientResponse<>(new SendResult<>(null, false, true), true);
+            }
+            CountingInputStream in = new CountingInputStream(new BufferedInputStream(response.getInputStream(), 8192));
+            long startCpu = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+            StreamBatch<MiruWALEntry, C> result = walFrames.read(in, cursorCodec);
+            long decodeCpuNanos = THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpu;
+
+            long bytes = in.getCount();
+            int count = result.activities.size();
+            if (bytesCount != null) {
+                bytesCount.add(bytes);
+            }
+            LOG.inc(metricPrefix + ">binary>bytes", bytes);
+            LOG.inc(metricPrefix + ">binary>activities", count);
+            LOG.inc(metricPrefix + ">binary>decodeCpuMicros", decodeCpuNanos / 1_000);
+            if (count > 0) {
+                LOG.set(ValueType.VALUE, metricPrefix + ">binary>bytesPer10k", bytes * 10_000 / count);
+                LOG.set(ValueType.VALUE, metricPrefix + ">binary>decodeCpuMicrosPer10k", decodeCpuNanos * 10 / count);
+            }
+            return new ClientResponse<>(new SendResult<>(result, true, false), true);
+        } catch (Exception x) {
+            throw new RuntimeException("Failed to decode activity frames", x);
+        } finally {
+            response.close();
+        }
+    }
+
     private static class TenantRoutingGroup<P> {
 
         private final RoutingGroupType type;
@@ -17,6 +17,20 @@ public class AmzaWALClientInitializer {
         ObjectMapper mapper,
         SickThreads sickThreads,
         long sleepOnFailureMillis) throws Exception {
+        return initialize(routingTenantId, client, tasExecutors, tasWindowSize, tasPercentile, tasInitialSLAMillis, mapper, sickThreads,
+            sleepOnFailureMillis, false);
+    }
+
+    public AmzaHttpWALClient initialize(String routingTenantId,
+        TenantAwareHttpClient<String> client,
+        ExecutorService tasExecutors,
+        int tasWindowSize,
+        float tasPercentile,
+        long tasInitialSLAMillis,
+        ObjectMapper mapper,
+        SickThreads sickThreads,
+        long sleepOnFailureMillis,
+        boolean binaryActivityTransport) throws Exception {
 
         return new AmzaHttpWALClient(routingTenantId,
             client,
@@ -27,6 +41,7 @@ public class AmzaWALClientInitializer {
             mapper,
             new HttpResponseMapper(mapper),
             sickThreads,
-            sleepOnFailureMillis);
+            sleepOnFailureMillis,
+            binaryActivityTransport);
     }
 }
@@ -42,6 +42,7 @@ import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALConfig;
+import com.jivesoftware.os.miru.api.wal.MiruWALFrames;
 import com.jivesoftware.os.miru.api.wal.RCVSCursor;
 import com.jivesoftware.os.miru.api.wal.RCVSSipCursor;
 import com.jivesoftware.os.miru.cluster.client.MiruClusterClientInitializer;
@@ -56,6 +57,7 @@ import com.jivesoftware.os.miru.ui.MiruSoyRendererInitializer;
 import com.jivesoftware.os.miru.ui.MiruSoyRendererInitializer.MiruSoyRendererConfig;
 import com.jivesoftware.os.miru.wal.AmzaWALDirector;
 import com.jivesoftware.os.miru.wal.AmzaWALUtil;
+import com.jivesoftware.os.miru.wal.MiruWALChangeFeed;
 import com.jivesoftware.os.miru.wal.MiruWALDirector;
 import com.jivesoftware.os.miru.wal.MiruWALRepair;
 import com.jivesoftware.os.miru.wal.RCVSWALDirector;
@@ -257,6 +259,7 @@ public class MiruWALMain {
             }
 
             MiruStats miruStats = new MiruStats();
+            MiruWALChangeFeed changeFeed = new MiruWALChangeFeed(walConfig.getChangeFeedMaxChangesPerPoll());
 
             Lifecycle amzaLifecycle = new MiruAmzaServiceInitializer().initialize(deployable,
                 clientHealthProvider,
@@ -272,8 +275,7 @@ public class MiruWALMain {
                 amzaServiceConfig,
                 true,
                 -1,
-                changes -> {
-                });
+                changeFeed);
 
             EmbeddedClientProvider clientProvider = new EmbeddedClientProvider(amzaLifecycle.amzaService);
             PartitionProperties activityProperties = new PartitionProperties(Durability.fsync_async, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -452,6 +454,8 @@ public class MiruWALMain {
 
                 deployable.addEndpoints(AmzaWALEndpoints.class);
                 deployable.addInjectables(AmzaWALDirector.class, amzaWALDirector);
+                deployable.addInjectables(MiruWALFrames.class, new MiruWALFrames(mapper, walConfig.getActivityFrameSize()));
+                deployable.addInjectables(MiruWALChangeFeed.class, changeFeed);
 
                 if (primaryAmzaWAL) {
                     activityWALReader = amzaActivityWALReader;
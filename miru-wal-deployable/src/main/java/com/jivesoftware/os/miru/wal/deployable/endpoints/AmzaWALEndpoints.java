@@ -10,14 +10,17 @@ import com.jivesoftware.os.miru.api.base.MiruTenantId;
 import com.jivesoftware.os.miru.api.wal.AmzaCursor;
 import com.jivesoftware.os.miru.api.wal.AmzaSipCursor;
 import com.jivesoftware.os.miru.api.wal.MiruActivityWALStatus;
+import com.jivesoftware.os.miru.api.wal.MiruWALChanges;
 import com.jivesoftware.os.miru.api.wal.MiruVersionedActivityLookupEntry;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.OldestReadResult;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.RoutingGroupType;
 import com.jivesoftware.os.miru.api.wal.MiruWALClient.StreamBatch;
 import com.jivesoftware.os.miru.api.wal.MiruWALEntry;
+import com.jivesoftware.os.miru.api.wal.MiruWALFrames;
 import com.jivesoftware.os.miru.api.wal.SipAndLastSeen;
 import com.jivesoftware.os.miru.wal.AmzaWALDirector;
+import com.jivesoftware.os.miru.wal.MiruWALChangeFeed;
 import com.jivesoftware.os.miru.wal.MiruWALNotInitializedException;
 import com.jivesoftware.os.miru.wal.MiruWALWrongRouteException;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -36,6 +39,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * @author jonathan.colt
@@ -48,11 +52,18 @@ public class AmzaWALEndpoints {
 
     private final AmzaWALDirector walDirector;
     private final MiruStats stats;
+    private final MiruWALFrames walFrames;
+    private final MiruWALChangeFeed changeFeed;
     private final ResponseHelper responseHelper = ResponseHelper.INSTANCE;
 
-    public AmzaWALEndpoints(@Context AmzaWALDirector walDirector, @Context MiruStats stats) {
+    public AmzaWALEndpoints(@Context AmzaWALDirector walDirector,
+        @Context MiruStats stats,
+        @Context MiruWALFrames walFrames,
+        @Context MiruWALChangeFeed changeFeed) {
         this.walDirector = walDirector;
         this.stats = stats;
+        this.walFrames = walFrames;
+        this.changeFeed = changeFeed;
     }
 
     @GET
@@ -327,6 +338,23 @@ public class AmzaWALEndpoints {
         }
     }
 
+    @GET
+    @Path("/changes/{instanceId}/{sinceSequence}/{timeoutMillis}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pollChanges(@PathParam("instanceId") long instanceId,
+        @PathParam("sinceSequence") long sinceSequence,
+        @PathParam("timeoutMillis") long timeoutMillis) throws Exception {
+        try {
+            long start = System.currentTimeMillis();
+            MiruWALChanges changes = changeFeed.poll(instanceId, sinceSequence, timeoutMillis);
+            stats.ingressed("/changes", changes.changes.size(), System.currentTimeMillis() - start);
+            return responseHelper.jsonResponse(changes);
+        } catch (Exception x) {
+            log.error("Failed calling pollChanges({},{},{})", new Object[] { instanceId, sinceSequence, timeoutMillis }, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/sip/activity/{tenantId}/{partitionId}/{batchSize}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -356,6 +384,39 @@ public class AmzaWALEndpoints {
         }
     }
 
+    @POST
+    @Path("/sip/activity/binary/{tenantId}/{partitionId}/{batchSize}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response sipActivityBinary(@PathParam("tenantId") String tenantId,
+        @PathParam("partitionId") int partitionId,
+        @PathParam("batchSize") int batchSize,
+        SipAndLastSeen<AmzaSipCursor> sipAndLastSeen)
+        throws Exception {
+        try {
+            long start = System.currentTimeMillis();
+            StreamBatch<MiruWALEntry, AmzaSipCursor> sipActivity = walDirector.sipActivity(new MiruTenantId(tenantId.getBytes(Charsets.UTF_8)),
+                MiruPartitionId.of(partitionId), sipAndLastSeen.sipCursor, sipAndLastSeen.lastSeen, batchSize);
+            stats.ingressed("/sip/activity/binary/" + batchSize, 1, System.currentTimeMillis() - start);
+            StreamingOutput stream = os -> {
+                long bytes = walFrames.write(sipActivity, MiruWALFrames.SIP_CURSOR_CODEC, os);
+                log.inc("sip>activity>binary>bytes", bytes);
+            };
+            return Response.ok(stream).build();
+        } catch (MiruWALNotInitializedException x) {
+            log.error("WAL not initialized calling sipActivityBinary({},{},{},{})",
+                new Object[] { tenantId, partitionId, batchSize, sipAndLastSeen }, x);
+            return responseHelper.errorResponse(Response.Status.SERVICE_UNAVAILABLE, "WAL not initialized", x);
+        } catch (MiruWALWrongRouteException x) {
+            log.error("Wrong route calling sipActivityBinary({},{},{},{})",
+                new Object[] { tenantId, partitionId, batchSize, sipAndLastSeen }, x);
+            return responseHelper.errorResponse(Response.Status.CONFLICT, "Wrong route", x);
+        } catch (Exception x) {
+            log.error("Failed calling sipActivityBinary({},{},{},{})", new Object[] { tenantId, partitionId, batchSize, sipAndLastSeen }, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/activityCount/{tenantId}/{partitionId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -412,6 +473,40 @@ public class AmzaWALEndpoints {
         }
     }
 
+    @POST
+    @Path("/activity/binary/{tenantId}/{partitionId}/{batchSize}/{stopAtTimestamp}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getActivityBinary(@PathParam("tenantId") String tenantId,
+        @PathParam("partitionId") int partitionId,
+        @PathParam("batchSize") int batchSize,
+        @PathParam("stopAtTimestamp") long stopAtTimestamp,
+        AmzaCursor cursor)
+        throws Exception {
+        try {
+            long start = System.currentTimeMillis();
+            StreamBatch<MiruWALEntry, AmzaCursor> activity = walDirector.getActivity(new MiruTenantId(tenantId.getBytes(Charsets.UTF_8)),
+                MiruPartitionId.of(partitionId), cursor, batchSize, stopAtTimestamp, null);
+            stats.ingressed("/activity/binary/" + tenantId + "/" + partitionId + "/" + batchSize, 1, System.currentTimeMillis() - start);
+            StreamingOutput stream = os -> {
+                long bytes = walFrames.write(activity, MiruWALFrames.CURSOR_CODEC, os);
+                log.inc("activity>binary>bytes", bytes);
+            };
+            return Response.ok(stream).build();
+        } catch (MiruWALNotInitializedException x) {
+            log.error("WAL not initialized calling getActivityBinary({},{},{},{})",
+                new Object[] { tenantId, partitionId, batchSize, cursor }, x);
+            return responseHelper.errorResponse(Response.Status.SERVICE_UNAVAILABLE, "WAL not initialized", x);
+        } catch (MiruWALWrongRouteException x) {
+            log.error("Wrong route calling getActivityBinary({},{},{},{})",
+                new Object[] { tenantId, partitionId, batchSize, cursor }, x);
+            return responseHelper.errorResponse(Response.Status.CONFLICT, "Wrong route", x);
+        } catch (Exception x) {
+            log.error("Failed calling getActivityBinary({},{},{},{})", new Object[] { tenantId, partitionId, batchSize, cursor }, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/oldestReadEventId/{tenantId}/{streamId}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -145,7 +145,8 @@ public class MiruWALUIServiceNGTest {
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.HOURS.toMillis(1),
             TimeUnit.DAYS.toMillis(365),
-            TimeUnit.DAYS.toMillis(730));
+            TimeUnit.DAYS.toMillis(730),
+            4);
         MiruRegistryClusterClient clusterClient = new MiruRegistryClusterClient(clusterRegistry, new MiruReplicaSetDirector(orderIdProvider, clusterRegistry,
             stream -> {
             }, false));
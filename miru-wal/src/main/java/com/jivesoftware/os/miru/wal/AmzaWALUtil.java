@@ -8,6 +8,7 @@ import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.take.TakeCursors;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.service.AmzaService;
@@ -33,6 +34,7 @@ import java.util.Map;
  */
 public class AmzaWALUtil {
 
+    private static final byte[] ACTIVITY_WAL_PREFIX = "activityWAL-".getBytes(Charsets.UTF_8);
     private static final PartitionName LOOKUP_TENANTS_PARTITION_NAME = new PartitionName(false,
         "lookup-tenants".getBytes(Charsets.UTF_8),
         "lookup-tenants".getBytes(Charsets.UTF_8));
@@ -117,26 +119,31 @@ public class AmzaWALUtil {
     }
 
     public void allActivityPartitions(PartitionsStream partitionsStream) throws Exception {
-        byte[] prefix = "activityWAL-".getBytes(Charsets.UTF_8);
-
-        partition:
         for (PartitionName partitionName : amzaService.getAllPartitionNames()) {
-            byte[] nameBytes = partitionName.getName();
-            if (nameBytes.length > prefix.length) {
-                for (int i = 0; i < prefix.length; i++) {
-                    if (nameBytes[i] != prefix[i]) {
-                        continue partition;
-                    }
-                }
-                String name = new String(nameBytes, Charsets.UTF_8);
-                int firstHyphen = name.indexOf('-');
-                int lastHyphen = name.lastIndexOf('-');
-                if (!partitionsStream.stream(new MiruTenantId(name.substring(firstHyphen + 1, lastHyphen).getBytes(Charsets.UTF_8)),
-                    MiruPartitionId.of(Integer.parseInt(name.substring(lastHyphen + 1))))) {
-                    break;
-                }
+            TenantAndPartition tenantAndPartition = fromActivityPartitionName(partitionName.getName());
+            if (tenantAndPartition != null && !partitionsStream.stream(tenantAndPartition.tenantId, tenantAndPartition.partitionId)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the tenant and partition for an activity WAL partition name, or null if the name belongs to some other partition
+     */
+    public static TenantAndPartition fromActivityPartitionName(byte[] nameBytes) {
+        if (nameBytes.length <= ACTIVITY_WAL_PREFIX.length) {
+            return null;
+        }
+        for (int i = 0; i < ACTIVITY_WAL_PREFIX.length; i++) {
+            if (nameBytes[i] != ACTIVITY_WAL_PREFIX[i]) {
+                return null;
             }
         }
+        String name = new String(nameBytes, Charsets.UTF_8);
+        int firstHyphen = name.indexOf('-');
+        int lastHyphen = name.lastIndexOf('-');
+        return new TenantAndPartition(new MiruTenantId(name.substring(firstHyphen + 1, lastHyphen).getBytes(Charsets.UTF_8)),
+            MiruPartitionId.of(Integer.parseInt(name.substring(lastHyphen + 1))));
     }
 
     private PartitionName getActivityPartitionName(MiruTenantId tenantId, MiruPartitionId partitionId) {
@@ -228,6 +235,17 @@ public class AmzaWALUtil {
         return client.takeFromTransactionId(prefix, transactionId, scan);
     }
 
+    /**
+     * Same as {@link #take(EmbeddedClient, Map, byte[], TxKeyValueStream)} for callers whose keys carry everything they need, so
+     * values are never handed out to be deserialized.
+     */
+    public TakeCursors takeKeys(EmbeddedClient client, Map<String, NamedCursor> cursorsByName, byte[] prefix, TxKeyStream scan) throws Exception {
+        return take(client, cursorsByName, prefix,
+            (rowTxId, prefix1, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                return scan.stream(rowTxId, prefix1, key, valueTimestamp, valueTombstoned, valueVersion);
+            });
+    }
+
     public long scan(EmbeddedClient client,
         long id,
         byte[] prefix,
@@ -292,4 +310,9 @@ public class AmzaWALUtil {
     public String getRingMemberName() {
         return amzaService.getRingReader().getRingMember().getMember();
     }
+
+    public interface TxKeyStream {
+
+        TxResult stream(long rowTxId, byte[] prefix, byte[] key, long valueTimestamp, boolean valueTombstoned, long valueVersion) throws Exception;
+    }
 }
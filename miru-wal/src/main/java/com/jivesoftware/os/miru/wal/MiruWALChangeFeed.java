@@ -0,0 +1,107 @@
+package com.jivesoftware.os.miru.wal;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.scan.RowChanges;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.wal.MiruWALChanges;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks which activity WAL partitions this node has seen writes for, locally or through replication, so readers can long-poll
+ * for changes instead of sipping every partition. Changes to the same partition coalesce to its latest sequence, so the feed is
+ * bounded by the number of partitions on the node and a slow subscriber never misses a partition.
+ */
+public class MiruWALChangeFeed implements RowChanges {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final long instanceId = new Random().nextLong() & Long.MAX_VALUE;
+    private final Map<TenantAndPartition, Long> latest = Maps.newConcurrentMap();
+    private final NavigableMap<Long, TenantAndPartition> bySequence = new ConcurrentSkipListMap<>();
+    private final Object sequenceLock = new Object();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxChangesPerPoll;
+
+    private long sequence = 0;
+
+    public MiruWALChangeFeed(int maxChangesPerPoll) {
+        this.maxChangesPerPoll = maxChangesPerPoll;
+    }
+
+    @Override
+    public void changes(RowsChanged rowsChanged) throws Exception {
+        TenantAndPartition tenantAndPartition = AmzaWALUtil.fromActivityPartitionName(rowsChanged.getVersionedPartitionName().getPartitionName().getName());
+        if (tenantAndPartition != null) {
+            changed(tenantAndPartition);
+        }
+    }
+
+    public void changed(TenantAndPartition tenantAndPartition) {
+        synchronized (sequenceLock) {
+            sequence++;
+            Long previous = latest.put(tenantAndPartition, sequence);
+            if (previous != null) {
+                bySequence.remove(previous);
+            }
+            bySequence.put(sequence, tenantAndPartition);
+            if (waiting.get() > 0) {
+                sequenceLock.notifyAll();
+            }
+        }
+        LOG.inc("wal>changes>changed");
+    }
+
+    public MiruWALChanges poll(long subscriberInstanceId, long sinceSequence, long timeoutMillis) throws InterruptedException {
+        if (subscriberInstanceId != instanceId) {
+            LOG.inc("wal>changes>reset");
+            synchronized (sequenceLock) {
+                return new MiruWALChanges(instanceId, sequence, true, Lists.newArrayList());
+            }
+        }
+
+        long current;
+        synchronized (sequenceLock) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            waiting.incrementAndGet();
+            try {
+                long remaining = timeoutMillis;
+                while (sequence <= sinceSequence && remaining > 0) {
+                    sequenceLock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+            current = sequence;
+        }
+
+        List<TenantAndPartition> changes = Lists.newArrayList();
+        long next = sinceSequence;
+        for (Map.Entry<Long, TenantAndPartition> entry : bySequence.subMap(sinceSequence, false, current, true).entrySet()) {
+            if (changes.size() == maxChangesPerPoll) {
+                break;
+            }
+            changes.add(entry.getValue());
+            next = entry.getKey();
+        }
+        if (changes.size() < maxChangesPerPoll) {
+            next = current;
+        }
+        LOG.inc("wal>changes>poll");
+        LOG.inc(changes.isEmpty() ? "wal>changes>poll>empty" : "wal>changes>poll>changed");
+        return new MiruWALChanges(instanceId, next, false, changes);
+    }
+
+    public long getInstanceId() {
+        return instanceId;
+    }
+}
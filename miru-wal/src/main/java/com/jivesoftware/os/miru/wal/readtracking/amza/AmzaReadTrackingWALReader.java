@@ -9,6 +9,7 @@ import com.jivesoftware.os.amza.api.take.TakeCursors;
 import com.jivesoftware.os.amza.service.EmbeddedClientProvider.EmbeddedClient;
 import com.jivesoftware.os.amza.service.PartitionIsDisposedException;
 import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
+import com.jivesoftware.os.filer.io.FilerIO;
 import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
 import com.jivesoftware.os.miru.api.base.MiruStreamId;
 import com.jivesoftware.os.miru.api.base.MiruTenantId;
@@ -62,19 +63,23 @@ public class AmzaReadTrackingWALReader implements MiruReadTrackingWALReader<Amza
         EmbeddedClient client,
         MiruStreamId streamId,
         Map<String, NamedCursor> cursorsByName) throws Exception {
-        return amzaWALUtil.take(client, cursorsByName, streamId.getBytes(),
-            (long rowTxId, byte[] prefix, byte[] key, byte[] value, long valueTimestamp, boolean valueTombstoned, long valueVersion) -> {
-                MiruPartitionedActivity partitionedActivity = partitionedActivityMarshaller.fromBytes(value);
-                if (partitionedActivity != null) {
-                    //TODO key->bytes is sufficient for the activity timestamp, so technically we don't need values at all
-                    if (!streamMiruReadTrackingSipWAL.stream(partitionedActivity.timestamp, rowTxId)) {
-                        return TxResult.ACCEPT_AND_STOP;
-                    }
-                }
-                return TxResult.MORE;
+        return amzaWALUtil.takeKeys(client, cursorsByName, streamId.getBytes(),
+            (rowTxId, prefix, key, valueTimestamp, valueTombstoned, valueVersion) -> {
+                return streamSipKey(streamMiruReadTrackingSipWAL, rowTxId, key, valueTombstoned);
             });
     }
 
+    static TxResult streamSipKey(MiruReadTrackingWALReader.StreamReadTrackingSipWAL streamMiruReadTrackingSipWAL,
+        long rowTxId,
+        byte[] key,
+        boolean valueTombstoned) throws Exception {
+        // the key is the activity timestamp (see AmzaReadTrackingWALWriter), so sips never need to deserialize the activity
+        if (!valueTombstoned && !streamMiruReadTrackingSipWAL.stream(FilerIO.bytesLong(key), rowTxId)) {
+            return TxResult.ACCEPT_AND_STOP;
+        }
+        return TxResult.MORE;
+    }
+
     public HostPort[] getRoutingGroup(MiruTenantId tenantId, boolean createIfAbsent) throws Exception {
         return amzaWALUtil.getReadTrackingRoutingGroup(tenantId, Optional.absent(), createIfAbsent);
     }
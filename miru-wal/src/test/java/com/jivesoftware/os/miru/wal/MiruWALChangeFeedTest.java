@@ -0,0 +1,95 @@
+package com.jivesoftware.os.miru.wal;
+
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.TenantAndPartition;
+import com.jivesoftware.os.miru.api.base.MiruTenantId;
+import com.jivesoftware.os.miru.api.wal.MiruWALChanges;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MiruWALChangeFeedTest {
+
+    private final MiruTenantId tenantId = new MiruTenantId("tenant1".getBytes(StandardCharsets.UTF_8));
+    private final TenantAndPartition partition1 = new TenantAndPartition(tenantId, MiruPartitionId.of(1));
+    private final TenantAndPartition partition2 = new TenantAndPartition(tenantId, MiruPartitionId.of(2));
+    private final TenantAndPartition partition3 = new TenantAndPartition(tenantId, MiruPartitionId.of(3));
+
+    @Test
+    public void testSubscribeAndCoalesce() throws Exception {
+        MiruWALChangeFeed feed = new MiruWALChangeFeed(100);
+        feed.changed(partition1);
+
+        MiruWALChanges subscribed = feed.poll(-1, -1, 0);
+        assertTrue(subscribed.reset);
+        assertTrue(subscribed.changes.isEmpty());
+        assertEquals(subscribed.instanceId, feed.getInstanceId());
+
+        feed.changed(partition1);
+        feed.changed(partition2);
+        feed.changed(partition1);
+        MiruWALChanges changes = feed.poll(subscribed.instanceId, subscribed.sequence, 0);
+        assertFalse(changes.reset);
+        assertEquals(changes.changes.size(), 2);
+        assertEquals(changes.changes.get(0), partition2);
+        assertEquals(changes.changes.get(1), partition1);
+
+        MiruWALChanges none = feed.poll(changes.instanceId, changes.sequence, 0);
+        assertTrue(none.changes.isEmpty());
+        assertEquals(none.sequence, changes.sequence);
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        MiruWALChangeFeed feed = new MiruWALChangeFeed(2);
+        MiruWALChanges subscribed = feed.poll(-1, -1, 0);
+        feed.changed(partition1);
+        feed.changed(partition2);
+        feed.changed(partition3);
+
+        MiruWALChanges page1 = feed.poll(subscribed.instanceId, subscribed.sequence, 0);
+        assertEquals(page1.changes.size(), 2);
+        MiruWALChanges page2 = feed.poll(page1.instanceId, page1.sequence, 0);
+        assertEquals(page2.changes.size(), 1);
+        assertEquals(page2.changes.get(0), partition3);
+    }
+
+    @Test
+    public void testLongPollWakesOnChange() throws Exception {
+        MiruWALChangeFeed feed = new MiruWALChangeFeed(100);
+        MiruWALChanges subscribed = feed.poll(-1, -1, 0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long start = System.currentTimeMillis();
+            Future<MiruWALChanges> future = executor.submit(() -> feed.poll(subscribed.instanceId, subscribed.sequence, 60_000));
+            Thread.sleep(100);
+            assertFalse(future.isDone());
+            feed.changed(partition3);
+            MiruWALChanges changes = future.get(10, TimeUnit.SECONDS);
+            assertEquals(changes.changes.size(), 1);
+            assertEquals(changes.changes.get(0), partition3);
+            assertTrue(System.currentTimeMillis() - start < 60_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testActivityPartitionName() throws Exception {
+        assertEquals(AmzaWALUtil.fromActivityPartitionName("activityWAL-tenant1-1".getBytes(StandardCharsets.UTF_8)), partition1);
+        assertNull(AmzaWALUtil.fromActivityPartitionName("readTrackingWAL-tenant1".getBytes(StandardCharsets.UTF_8)));
+        assertNull(AmzaWALUtil.fromActivityPartitionName("activityWAL-".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,119 @@
+package com.jivesoftware.os.miru.wal.readtracking.amza;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.filer.io.FilerIO;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionId;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivity;
+import com.jivesoftware.os.miru.api.activity.MiruPartitionedActivityFactory;
+import com.jivesoftware.os.miru.api.activity.MiruReadEvent;
+import com.jivesoftware.os.miru.api.field.MiruFieldType;
+import com.jivesoftware.os.miru.api.marshall.JacksonJsonObjectTypeMarshaller;
+import com.jivesoftware.os.miru.api.query.filter.MiruFieldFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilter;
+import com.jivesoftware.os.miru.api.query.filter.MiruFilterOperation;
+import com.jivesoftware.os.miru.wal.readtracking.MiruReadTrackingWALReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class AmzaReadTrackingWALReaderTest {
+
+    private final byte[] tenantId = "tenant1".getBytes(StandardCharsets.UTF_8);
+    private final byte[] streamId = "stream1".getBytes(StandardCharsets.UTF_8);
+    private final JacksonJsonObjectTypeMarshaller<MiruPartitionedActivity> marshaller =
+        new JacksonJsonObjectTypeMarshaller<>(MiruPartitionedActivity.class, new ObjectMapper());
+
+    @Test
+    public void testKeyOnlySipMatchesDecodedSip() throws Exception {
+        List<byte[]> keys = Lists.newArrayList();
+        List<byte[]> values = Lists.newArrayList();
+        write(1_000, keys, values);
+
+        List<long[]> decoded = Lists.newArrayList();
+        for (int i = 0; i < values.size(); i++) {
+            MiruPartitionedActivity partitionedActivity = marshaller.fromBytes(values.get(i));
+            decoded.add(new long[] { partitionedActivity.timestamp, i });
+        }
+
+        List<long[]> sipped = Lists.newArrayList();
+        for (int i = 0; i < keys.size(); i++) {
+            long rowTxId = i;
+            TxResult result = AmzaReadTrackingWALReader.streamSipKey((eventId, timestamp) -> sipped.add(new long[] { eventId, timestamp }),
+                rowTxId, keys.get(i), false);
+            assertEquals(result, TxResult.MORE);
+        }
+
+        assertEquals(sipped.size(), decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertEquals(sipped.get(i)[0], decoded.get(i)[0]);
+            assertEquals(sipped.get(i)[1], decoded.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testKeyOnlySipStopsAndSkipsTombstones() throws Exception {
+        List<byte[]> keys = Lists.newArrayList();
+        write(3, keys, Lists.newArrayList());
+
+        List<Long> sipped = Lists.newArrayList();
+        MiruReadTrackingWALReader.StreamReadTrackingSipWAL stopAfterOne = (eventId, timestamp) -> {
+            sipped.add(eventId);
+            return false;
+        };
+        assertEquals(AmzaReadTrackingWALReader.streamSipKey(stopAfterOne, 0, keys.get(0), true), TxResult.MORE);
+        assertEquals(sipped.size(), 0);
+        assertEquals(AmzaReadTrackingWALReader.streamSipKey(stopAfterOne, 1, keys.get(1), false), TxResult.ACCEPT_AND_STOP);
+        assertEquals(sipped, Collections.singletonList(FilerIO.bytesLong(keys.get(1))));
+    }
+
+    @Test(enabled = false)
+    public void testKeyOnlySipPerformance() throws Exception {
+        List<byte[]> keys = Lists.newArrayList();
+        List<byte[]> values = Lists.newArrayList();
+        write(100_000, keys, values);
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long decodedSum = 0;
+            for (byte[] value : values) {
+                decodedSum += marshaller.fromBytes(value).timestamp;
+            }
+            long decodeElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long[] keySum = new long[1];
+            for (int i = 0; i < keys.size(); i++) {
+                AmzaReadTrackingWALReader.streamSipKey((eventId, timestamp) -> {
+                    keySum[0] += eventId;
+                    return true;
+                }, i, keys.get(i), false);
+            }
+            long keyElapsed = System.nanoTime() - start;
+
+            assertEquals(keySum[0], decodedSum);
+            System.out.println("Sipped " + keys.size() + " reads, decoded in " + (decodeElapsed / 1_000_000) + " ms"
+                + ", key only in " + (keyElapsed / 1_000_000) + " ms");
+        }
+    }
+
+    private void write(int count, List<byte[]> keys, List<byte[]> values) throws Exception {
+        MiruPartitionedActivityFactory partitionedActivityFactory = new MiruPartitionedActivityFactory();
+        MiruFilter filter = new MiruFilter(MiruFilterOperation.and, false,
+            Collections.singletonList(MiruFieldFilter.ofTerms(MiruFieldType.primary, "user", "user1")), null);
+        for (int i = 0; i < count; i++) {
+            MiruReadEvent readEvent = new MiruReadEvent(tenantId, System.currentTimeMillis(), streamId, filter);
+            MiruPartitionedActivity partitionedActivity = partitionedActivityFactory.read(1, MiruPartitionId.of(0), i, readEvent);
+            // same key and value as AmzaReadTrackingWALWriter
+            keys.add(FilerIO.longBytes(partitionedActivity.timestamp));
+            values.add(marshaller.toBytes(partitionedActivity));
+        }
+    }
+}